@@ -0,0 +1,308 @@
+package fr.itinerennes.commons.dataset;
+
+/*
+ * [license]
+ * Common tools
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads a dataset written by {@link ColumnarDatasetWriter}.
+ * <p>
+ * The format stores each column contiguously:
+ * 
+ * <pre>
+ * int     magic number
+ * byte    format version
+ * long    checksum of the source data
+ * varint  row count
+ * varint  column count
+ * for each column:
+ *   byte    column type
+ *   varint  length of the column data
+ *   text column:    varint dictionary size, dictionary entries (varint length + UTF-8 bytes),
+ *                   then a varint dictionary index per row
+ *   integer column: a varint per row, 0 for null, otherwise the zigzag encoded difference with
+ *                   the previous value plus one
+ * </pre>
+ * 
+ * Dictionaries are decoded when the reader is created. Rows are then decoded by reading each
+ * column at its own position in the buffer, so reading a row doesn't allocate anything: strings
+ * are shared instances from the dictionaries.
+ */
+public final class ColumnarDatasetReader {
+
+    /** The magic number starting a dataset ("IRDS"). */
+    public static final int MAGIC = 0x49524453;
+
+    /** The version of the format. */
+    public static final int VERSION = 1;
+
+    /** Type of a column containing text. */
+    public static final int TYPE_TEXT = 0;
+
+    /** Type of a column containing an integer. */
+    public static final int TYPE_INTEGER = 1;
+
+    /** The buffer containing the dataset. */
+    private final ByteBuffer buffer;
+
+    /** The checksum of the source data. */
+    private final long checksum;
+
+    /** The amount of rows. */
+    private final int rowCount;
+
+    /** The type of each column. */
+    private final int[] types;
+
+    /** The dictionary of each text column. */
+    private final String[][] dictionaries;
+
+    /** The position in the buffer of the next value of each column. */
+    private final int[] positions;
+
+    /** The text values of the current row. */
+    private final String[] texts;
+
+    /** The integer values of the current row, also the previous values used to decode deltas. */
+    private final long[] values;
+
+    /** The null flags of the integer values of the current row. */
+    private final boolean[] nulls;
+
+    /** The amount of rows read. */
+    private int row = 0;
+
+    /**
+     * Creates a reader and decodes the header and the dictionaries of a dataset.
+     * 
+     * @param buffer
+     *            the buffer containing the dataset, from its current position
+     * @throws IllegalArgumentException
+     *             the buffer doesn't contain a dataset of a supported version
+     */
+    public ColumnarDatasetReader(final ByteBuffer buffer) {
+
+        this.buffer = buffer;
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a columnar dataset");
+        }
+        final int version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException(String.format(
+                    "Unsupported columnar dataset version: %d", version));
+        }
+        checksum = buffer.getLong();
+        rowCount = (int) readVarint();
+
+        final int columnCount = (int) readVarint();
+        types = new int[columnCount];
+        dictionaries = new String[columnCount][];
+        positions = new int[columnCount];
+        texts = new String[columnCount];
+        values = new long[columnCount];
+        nulls = new boolean[columnCount];
+
+        for (int c = 0; c < columnCount; c++) {
+            types[c] = buffer.get();
+            final int length = (int) readVarint();
+            final int end = buffer.position() + length;
+            if (types[c] == TYPE_TEXT) {
+                dictionaries[c] = readDictionary();
+            } else if (types[c] != TYPE_INTEGER) {
+                throw new IllegalArgumentException(String.format("Unknown column type: %d",
+                        types[c]));
+            }
+            positions[c] = buffer.position();
+            buffer.position(end);
+        }
+    }
+
+    /**
+     * Reads the dictionary of a text column.
+     * 
+     * @return the strings of the dictionary
+     */
+    private String[] readDictionary() {
+
+        final String[] dictionary = new String[(int) readVarint()];
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < dictionary.length; i++) {
+            final int length = (int) readVarint();
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            buffer.get(bytes, 0, length);
+            try {
+                dictionary[i] = new String(bytes, 0, length, "UTF-8");
+            } catch (final UnsupportedEncodingException e) {
+                throw new IllegalStateException("UTF-8 is not supported", e);
+            }
+        }
+        return dictionary;
+    }
+
+    /**
+     * Reads a variable-length integer at the current position of the buffer.
+     * 
+     * @return the integer
+     */
+    private long readVarint() {
+
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     * Reads the next variable-length integer of a column.
+     * 
+     * @param column
+     *            the index of the column
+     * @return the integer
+     */
+    private long readVarint(final int column) {
+
+        int position = positions[column];
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get(position++);
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        positions[column] = position;
+        return value;
+    }
+
+    /**
+     * Decodes the next row.
+     * 
+     * @return false if all the rows have been read
+     */
+    public boolean next() {
+
+        if (row >= rowCount) {
+            return false;
+        }
+        for (int c = 0; c < types.length; c++) {
+            final long encoded = readVarint(c);
+            if (types[c] == TYPE_TEXT) {
+                texts[c] = dictionaries[c][(int) encoded];
+            } else if (encoded == 0) {
+                nulls[c] = true;
+            } else {
+                final long zigzag = encoded - 1;
+                values[c] += (zigzag >>> 1) ^ -(zigzag & 1);
+                nulls[c] = false;
+            }
+        }
+        row++;
+        return true;
+    }
+
+    /**
+     * Gets the checksum of the data the dataset was generated from.
+     * 
+     * @return the checksum of the source data
+     */
+    public long getChecksum() {
+
+        return checksum;
+    }
+
+    /**
+     * Gets the amount of rows.
+     * 
+     * @return the amount of rows
+     */
+    public int getRowCount() {
+
+        return rowCount;
+    }
+
+    /**
+     * Gets the amount of columns.
+     * 
+     * @return the amount of columns
+     */
+    public int getColumnCount() {
+
+        return types.length;
+    }
+
+    /**
+     * Gets the type of a column.
+     * 
+     * @param column
+     *            the index of the column
+     * @return {@link #TYPE_TEXT} or {@link #TYPE_INTEGER}
+     */
+    public int getColumnType(final int column) {
+
+        return types[column];
+    }
+
+    /**
+     * Gets the value of a text column in the current row.
+     * 
+     * @param column
+     *            the index of the column
+     * @return the value
+     */
+    public String getString(final int column) {
+
+        return texts[column];
+    }
+
+    /**
+     * Gets the value of an integer column in the current row.
+     * 
+     * @param column
+     *            the index of the column
+     * @return the value
+     */
+    public long getLong(final int column) {
+
+        return values[column];
+    }
+
+    /**
+     * Gets whether or not the value of an integer column in the current row is null.
+     * 
+     * @param column
+     *            the index of the column
+     * @return true if the value is null
+     */
+    public boolean isNull(final int column) {
+
+        return nulls[column];
+    }
+}
@@ -0,0 +1,171 @@
+package fr.itinerennes.commons.dataset;
+
+/*
+ * [license]
+ * Common tools
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a dataset in the format read by {@link ColumnarDatasetReader}. Rows are kept in memory
+ * until {@link #write(OutputStream, long)} is called.
+ */
+public final class ColumnarDatasetWriter {
+
+    /** The type of each column. */
+    private final int[] types;
+
+    /** The dictionary of each text column. */
+    private final List<List<String>> dictionaries = new ArrayList<List<String>>();
+
+    /** The index of each string in the dictionary of each text column. */
+    private final List<Map<String, Integer>> indexes = new ArrayList<Map<String, Integer>>();
+
+    /** The dictionary index (text columns) or the value (integer columns) of each row. */
+    private final List<List<Long>> columns = new ArrayList<List<Long>>();
+
+    /**
+     * Creates a writer.
+     * 
+     * @param types
+     *            the type of each column, {@link ColumnarDatasetReader#TYPE_TEXT} or
+     *            {@link ColumnarDatasetReader#TYPE_INTEGER}
+     */
+    public ColumnarDatasetWriter(final int[] types) {
+
+        this.types = types.clone();
+        for (int c = 0; c < types.length; c++) {
+            dictionaries.add(new ArrayList<String>());
+            indexes.add(new HashMap<String, Integer>());
+            columns.add(new ArrayList<Long>());
+        }
+    }
+
+    /**
+     * Adds a row.
+     * 
+     * @param fields
+     *            the value of each column, integers are written in decimal and an empty integer
+     *            is null
+     */
+    public void addRow(final String[] fields) {
+
+        if (fields.length < types.length) {
+            throw new IllegalArgumentException(String.format("%d fields expected, %d found",
+                    types.length, fields.length));
+        }
+        for (int c = 0; c < types.length; c++) {
+            if (types[c] == ColumnarDatasetReader.TYPE_TEXT) {
+                Integer index = indexes.get(c).get(fields[c]);
+                if (index == null) {
+                    index = dictionaries.get(c).size();
+                    dictionaries.get(c).add(fields[c]);
+                    indexes.get(c).put(fields[c], index);
+                }
+                columns.get(c).add(index.longValue());
+            } else if (fields[c].length() == 0) {
+                columns.get(c).add(null);
+            } else {
+                columns.get(c).add(Long.valueOf(fields[c]));
+            }
+        }
+    }
+
+    /**
+     * Writes the dataset.
+     * 
+     * @param out
+     *            the stream to write to, it isn't closed
+     * @param checksum
+     *            the checksum of the source data
+     * @throws IOException
+     *             the dataset can't be written
+     */
+    public void write(final OutputStream out, final long checksum) throws IOException {
+
+        final int rowCount = types.length > 0 ? columns.get(0).size() : 0;
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(ColumnarDatasetReader.MAGIC);
+        data.writeByte(ColumnarDatasetReader.VERSION);
+        data.writeLong(checksum);
+        writeVarint(data, rowCount);
+        writeVarint(data, types.length);
+
+        for (int c = 0; c < types.length; c++) {
+            final ByteArrayOutputStream column = new ByteArrayOutputStream();
+            if (types[c] == ColumnarDatasetReader.TYPE_TEXT) {
+                final List<String> dictionary = dictionaries.get(c);
+                writeVarint(column, dictionary.size());
+                for (final String value : dictionary) {
+                    final byte[] bytes = value.getBytes("UTF-8");
+                    writeVarint(column, bytes.length);
+                    column.write(bytes);
+                }
+                for (final Long index : columns.get(c)) {
+                    writeVarint(column, index);
+                }
+            } else {
+                long previous = 0;
+                for (final Long value : columns.get(c)) {
+                    if (value == null) {
+                        writeVarint(column, 0);
+                    } else {
+                        final long delta = value - previous;
+                        writeVarint(column, ((delta << 1) ^ (delta >> 63)) + 1);
+                        previous = value;
+                    }
+                }
+            }
+            data.writeByte(types[c]);
+            writeVarint(data, column.size());
+            column.writeTo(data);
+        }
+        data.flush();
+    }
+
+    /**
+     * Writes a variable-length integer: 7 bits per byte, the highest bit is set when more bytes
+     * follow.
+     * 
+     * @param out
+     *            the stream to write to
+     * @param value
+     *            the value to write
+     * @throws IOException
+     *             the value can't be written
+     */
+    private static void writeVarint(final OutputStream out, final long value) throws IOException {
+
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            out.write((int) (remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        out.write((int) remaining);
+    }
+}
@@ -0,0 +1,164 @@
+package fr.itinerennes.commons.utils;
+
+/*
+ * [license]
+ * Common tools
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe in-memory cache holding at most a given count of entries. When the cache is full,
+ * storing a new entry evicts the least recently used one: the one which wasn't read nor stored for
+ * the longest time.
+ * 
+ * @param <K>
+ *            the type of the keys
+ * @param <V>
+ *            the type of the values
+ */
+public final class LruCache<K, V> {
+
+    /** The entries, from the least to the most recently used. */
+    private final Entries<K, V> entries;
+
+    /**
+     * Creates an empty cache.
+     * 
+     * @param maxSize
+     *            the maximum count of entries of the cache
+     */
+    public LruCache(final int maxSize) {
+
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        entries = new Entries<K, V>(maxSize);
+    }
+
+    /**
+     * Gets the value of a key and marks it as the most recently used entry.
+     * 
+     * @param key
+     *            a key
+     * @return the value of the key, or null if it isn't cached
+     */
+    public synchronized V get(final K key) {
+
+        return entries.get(key);
+    }
+
+    /**
+     * Stores the value of a key as the most recently used entry, evicting the least recently used
+     * entry if the cache is full.
+     * 
+     * @param key
+     *            a key
+     * @param value
+     *            the value of the key
+     * @return the previous value of the key, or null
+     */
+    public synchronized V put(final K key, final V value) {
+
+        return entries.put(key, value);
+    }
+
+    /**
+     * Removes the value of a key.
+     * 
+     * @param key
+     *            a key
+     * @return the removed value, or null if the key wasn't cached
+     */
+    public synchronized V remove(final K key) {
+
+        return entries.remove(key);
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public synchronized void clear() {
+
+        entries.clear();
+    }
+
+    /**
+     * Gets the count of entries of the cache.
+     * 
+     * @return the count of entries
+     */
+    public synchronized int size() {
+
+        return entries.size();
+    }
+
+    /**
+     * Gets the maximum count of entries of the cache.
+     * 
+     * @return the maximum count of entries
+     */
+    public int getMaxSize() {
+
+        return entries.maxSize;
+    }
+
+    /**
+     * A map iterated in access order, which removes its eldest entry when it exceeds a maximum
+     * size.
+     * 
+     * @param <K>
+     *            the type of the keys
+     * @param <V>
+     *            the type of the values
+     */
+    private static final class Entries<K, V> extends LinkedHashMap<K, V> {
+
+        /** Serial version UID. */
+        private static final long serialVersionUID = 1L;
+
+        /** The maximum count of entries. */
+        private final int maxSize;
+
+        /**
+         * Creates an empty map.
+         * 
+         * @param maxSize
+         *            the maximum count of entries
+         */
+        private Entries(final int maxSize) {
+
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * {@inheritDoc}
+         * 
+         * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+         */
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+
+            return size() > maxSize;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package fr.itinerennes.commons.utils;
+
+/*
+ * [license]
+ * Common tools
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An in-memory index of documents by the prefixes of their words.
+ * <p>
+ * The distinct words of all the documents are kept in a sorted array, so the words starting with
+ * a prefix are a range of this array found with two binary searches. The documents containing
+ * each word are stored in a single array of postings. A query matches the documents having, for
+ * each word of the query, a word starting with it: it is the semantic of a full-text query built
+ * by {@link SearchUtils#toFullTextQuery(String)}.
+ * <p>
+ * When a query extends the previous one (e.g. the user typed one more character), the documents
+ * matching it are a subset of the ones matching the previous query, so they are found by
+ * filtering the previous {@link Result} with {@link #refine(Result, String)} instead of looking
+ * up the index again.
+ */
+public final class PrefixIndex {
+
+    /** The distinct words of the documents, sorted. */
+    private final String[] words;
+
+    /** The position in {@link #postings} of the documents of each word, plus the end. */
+    private final int[] offsets;
+
+    /** The documents containing each word, sorted by document. */
+    private final int[] postings;
+
+    /** The words of each document. */
+    private final String[][] documents;
+
+    /**
+     * Indexes the given documents. Each document is identified by its position in the list.
+     * 
+     * @param documents
+     *            the documents to index, as built by
+     *            {@link SearchUtils#toFullTextDocument(String...)}
+     */
+    public PrefixIndex(final List<String> documents) {
+
+        this.documents = new String[documents.size()][];
+        final Map<String, List<Integer>> index = new TreeMap<String, List<Integer>>();
+        int postingCount = 0;
+        for (int d = 0; d < this.documents.length; d++) {
+            this.documents[d] = split(documents.get(d));
+            for (final String word : this.documents[d]) {
+                List<Integer> docs = index.get(word);
+                if (docs == null) {
+                    docs = new ArrayList<Integer>();
+                    index.put(word, docs);
+                }
+                // documents are indexed in order, a word repeated in a document is indexed once
+                if (docs.isEmpty() || docs.get(docs.size() - 1) != d) {
+                    docs.add(d);
+                    postingCount++;
+                }
+            }
+        }
+
+        words = index.keySet().toArray(new String[index.size()]);
+        offsets = new int[words.length + 1];
+        postings = new int[postingCount];
+        int p = 0;
+        for (int w = 0; w < words.length; w++) {
+            offsets[w] = p;
+            for (final Integer d : index.get(words[w])) {
+                postings[p++] = d;
+            }
+        }
+        offsets[words.length] = p;
+    }
+
+    /**
+     * Splits a full-text document or query into its words.
+     * 
+     * @param text
+     *            words separated by spaces, as built by
+     *            {@link SearchUtils#toFullTextDocument(String...)}
+     * @return the words of the text
+     */
+    private static String[] split(final String text) {
+
+        return text.length() == 0 ? new String[0] : text.split(" ");
+    }
+
+    /**
+     * Gets the amount of indexed documents.
+     * 
+     * @return the amount of indexed documents
+     */
+    public int getDocumentCount() {
+
+        return documents.length;
+    }
+
+    /**
+     * Searches the documents matching a query.
+     * 
+     * @param query
+     *            the query, accents and non alphanumeric characters are ignored
+     * @return the documents matching each word of the query
+     */
+    public Result search(final String query) {
+
+        final String[] queryWords = split(SearchUtils.toFullTextDocument(query));
+        if (queryWords.length == 0) {
+            return new Result(queryWords, new int[0], 0);
+        }
+
+        // the longest word of the query is likely to be the most selective one
+        String longest = queryWords[0];
+        for (final String word : queryWords) {
+            if (word.length() > longest.length()) {
+                longest = word;
+            }
+        }
+        final int from = offsets[lowerBound(longest)];
+        final int to = offsets[lowerBound(longest + Character.MAX_VALUE)];
+
+        final int[] candidates = new int[to - from];
+        System.arraycopy(postings, from, candidates, 0, candidates.length);
+        Arrays.sort(candidates);
+
+        int size = 0;
+        for (int i = 0; i < candidates.length; i++) {
+            final int d = candidates[i];
+            if ((size == 0 || candidates[size - 1] != d) && matches(d, queryWords)) {
+                candidates[size++] = d;
+            }
+        }
+        return new Result(queryWords, candidates, size);
+    }
+
+    /**
+     * Searches the documents matching a query, reusing the result of the previous query when the
+     * new query extends it.
+     * 
+     * @param previous
+     *            the result of the previous query, or null
+     * @param query
+     *            the query, accents and non alphanumeric characters are ignored
+     * @return the documents matching each word of the query
+     */
+    public Result refine(final Result previous, final String query) {
+
+        final String[] queryWords = split(SearchUtils.toFullTextDocument(query));
+        if (previous == null || previous.words.length == 0
+                || !extendsQuery(queryWords, previous.words)) {
+            return search(query);
+        }
+
+        final int[] matching = new int[previous.size];
+        int size = 0;
+        for (int i = 0; i < previous.size; i++) {
+            if (matches(previous.documents[i], queryWords)) {
+                matching[size++] = previous.documents[i];
+            }
+        }
+        return new Result(queryWords, matching, size);
+    }
+
+    /**
+     * Returns true if every document matching a query also matches another one: each word of the
+     * other query must be a word of the query, except the last one which may be a prefix.
+     * 
+     * @param queryWords
+     *            the words of the query
+     * @param otherWords
+     *            the words of the other query
+     * @return true if the documents matching the query are a subset of the documents matching the
+     *         other one
+     */
+    private static boolean extendsQuery(final String[] queryWords, final String[] otherWords) {
+
+        if (queryWords.length < otherWords.length) {
+            return false;
+        }
+        final int last = otherWords.length - 1;
+        for (int i = 0; i < last; i++) {
+            if (!queryWords[i].equals(otherWords[i])) {
+                return false;
+            }
+        }
+        return queryWords[last].startsWith(otherWords[last]);
+    }
+
+    /**
+     * Returns true if a document has, for each word of the query, a word starting with it.
+     * 
+     * @param document
+     *            the document
+     * @param queryWords
+     *            the words of the query
+     * @return true if the document matches the query
+     */
+    private boolean matches(final int document, final String[] queryWords) {
+
+        final String[] documentWords = documents[document];
+        for (final String queryWord : queryWords) {
+            boolean found = false;
+            for (int i = 0; !found && i < documentWords.length; i++) {
+                found = documentWords[i].startsWith(queryWord);
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the position of the first word greater than or equal to the given one.
+     * 
+     * @param word
+     *            a word
+     * @return the position of the first word greater than or equal to the given one
+     */
+    private int lowerBound(final String word) {
+
+        int low = 0;
+        int high = words.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (words[middle].compareTo(word) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The documents matching a query.
+     */
+    public static final class Result {
+
+        /** The words of the query. */
+        private final String[] words;
+
+        /** The matching documents, sorted. */
+        private final int[] documents;
+
+        /** The amount of matching documents. */
+        private final int size;
+
+        /**
+         * Creates a result.
+         * 
+         * @param words
+         *            the words of the query
+         * @param documents
+         *            the matching documents, sorted
+         * @param size
+         *            the amount of matching documents
+         */
+        private Result(final String[] words, final int[] documents, final int size) {
+
+            this.words = words;
+            this.documents = documents;
+            this.size = size;
+        }
+
+        /**
+         * Gets the amount of matching documents.
+         * 
+         * @return the amount of matching documents
+         */
+        public int size() {
+
+            return size;
+        }
+
+        /**
+         * Gets a matching document.
+         * 
+         * @param i
+         *            the position of the document in the result, from 0 to {@link #size()}
+         *            excluded
+         * @return the document, i.e. its position in the indexed list
+         */
+        public int get(final int i) {
+
+            return documents[i];
+        }
+
+        /**
+         * Gets the words of the query, concatenated. Documents whose label starts with it are
+         * usually the most relevant ones.
+         * 
+         * @return the words of the query, without separators
+         */
+        public String getPrefix() {
+
+            final StringBuilder prefix = new StringBuilder();
+            for (final String word : words) {
+                prefix.append(word);
+            }
+            return prefix.toString();
+        }
+    }
+}
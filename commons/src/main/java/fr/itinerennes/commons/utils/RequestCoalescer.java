@@ -0,0 +1,187 @@
+package fr.itinerennes.commons.utils;
+
+/*
+ * [license]
+ * Common tools
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shares the result of a request between the callers executing concurrently the same request.
+ * <p>
+ * The first caller executing a request identified by a given key executes it, the callers
+ * executing a request with the same key before it completes wait for it and get the same result,
+ * or the same exception. Once the request is completed, the next caller executes the request
+ * again: nothing is cached.
+ * 
+ * @param <K>
+ *            the type of the keys identifying the requests
+ * @param <V>
+ *            the type of the results of the requests
+ */
+public final class RequestCoalescer<K, V> {
+
+    /** The requests being executed, by key. */
+    private final Map<K, Execution<V>> executions = new HashMap<K, Execution<V>>();
+
+    /**
+     * Executes a request, or waits for the execution of the same request by another caller.
+     * 
+     * @param key
+     *            the key identifying the request
+     * @param request
+     *            the request to execute
+     * @return the result of the request
+     * @throws IOException
+     *             the request failed
+     */
+    public V execute(final K key, final Request<V> request) throws IOException {
+
+        final Execution<V> execution;
+        final boolean executor;
+        synchronized (executions) {
+            final Execution<V> running = executions.get(key);
+            executor = null == running;
+            if (executor) {
+                execution = new Execution<V>();
+                executions.put(key, execution);
+            } else {
+                execution = running;
+            }
+        }
+
+        if (!executor) {
+            return execution.await();
+        }
+        try {
+            final V result = request.execute();
+            execution.complete(result, null);
+            return result;
+        } catch (final IOException e) {
+            execution.complete(null, e);
+            throw e;
+        } catch (final RuntimeException e) {
+            execution.complete(null, e);
+            throw e;
+        } catch (final Error e) {
+            execution.complete(null, e);
+            throw e;
+        } finally {
+            synchronized (executions) {
+                executions.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Gets the count of requests being executed.
+     * 
+     * @return the count of requests being executed
+     */
+    public int getExecutionCount() {
+
+        synchronized (executions) {
+            return executions.size();
+        }
+    }
+
+    /**
+     * A request.
+     * 
+     * @param <V>
+     *            the type of the result of the request
+     */
+    public interface Request<V> {
+
+        /**
+         * Executes the request.
+         * 
+         * @return the result of the request
+         * @throws IOException
+         *             the request failed
+         */
+        V execute() throws IOException;
+    }
+
+    /**
+     * The execution of a request, which the callers of the same request wait for.
+     * 
+     * @param <V>
+     *            the type of the result of the request
+     */
+    private static final class Execution<V> {
+
+        /** True once the request is completed. */
+        private boolean completed = false;
+
+        /** The result of the request. */
+        private V result;
+
+        /** The exception thrown by the request. */
+        private Throwable failure;
+
+        /**
+         * Sets the result of the request and wakes up the waiting callers.
+         * 
+         * @param result
+         *            the result of the request
+         * @param failure
+         *            the exception thrown by the request, or null
+         */
+        private synchronized void complete(final V result, final Throwable failure) {
+
+            this.result = result;
+            this.failure = failure;
+            completed = true;
+            notifyAll();
+        }
+
+        /**
+         * Waits for the request to complete.
+         * 
+         * @return the result of the request
+         * @throws IOException
+         *             the request failed, or the waiting thread was interrupted
+         */
+        private synchronized V await() throws IOException {
+
+            while (!completed) {
+                try {
+                    wait();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while waiting for a request");
+                }
+            }
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            return result;
+        }
+    }
+}
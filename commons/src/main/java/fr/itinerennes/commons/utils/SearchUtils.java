@@ -22,6 +22,8 @@ package fr.itinerennes.commons.utils;
  * [/license]
  */
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -72,6 +74,121 @@ public class SearchUtils {
         return null;
     }
 
+    /**
+     * Builds a full-text search query from the given query: each word of the query must match the
+     * beginning of a word of the indexed documents.
+     * <p>
+     * Example: <em>"Répu. Nem"</em> given as an input parameter the result value will be
+     * <em>"repu* nem*"</em>.
+     * <p>
+     * In case parameter <code>query</code> doesn't contain any alphanumeric characters, an empty
+     * query is returned.
+     * 
+     * @param query
+     *            the query string
+     * @return the full-text query
+     * @see #toFullTextDocument(String...)
+     */
+    public static String toFullTextQuery(final String query) {
+
+        final List<String> words = tokenize(query);
+        if (null == words) {
+            return null;
+        }
+
+        final StringBuilder ftsQuery = new StringBuilder();
+        for (final String word : words) {
+            if (ftsQuery.length() > 0) {
+                ftsQuery.append(' ');
+            }
+            ftsQuery.append(word).append('*');
+        }
+        return ftsQuery.toString();
+    }
+
+    /**
+     * Normalizes the given query, so that the queries differing only by their case, their accents
+     * or their punctuation have the same normalized form.
+     * <p>
+     * Example: <em>"  Répu. Nem "</em> given as an input parameter the result value will be
+     * <em>"repu nem"</em>.
+     * 
+     * @param query
+     *            the query string
+     * @return the words of the query, without accents and in lower case, separated by spaces
+     */
+    public static String normalize(final String query) {
+
+        final List<String> words = tokenize(query);
+        if (null == words) {
+            return null;
+        }
+
+        final StringBuilder normalized = new StringBuilder();
+        for (final String word : words) {
+            if (normalized.length() > 0) {
+                normalized.append(' ');
+            }
+            normalized.append(word);
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Builds the content to index in a full-text search table from the given texts: the words of
+     * all the texts, without accents and in lower case, separated by spaces.
+     * <p>
+     * Example: <em>"République Nemours"</em> and <em>"republiquenemours"</em> given as input
+     * parameters the result value will be <em>"republique nemours republiquenemours"</em>.
+     * 
+     * @param texts
+     *            the texts to index
+     * @return the content of the full-text document
+     * @see #toFullTextQuery(String)
+     */
+    public static String toFullTextDocument(final String... texts) {
+
+        final StringBuilder document = new StringBuilder();
+        if (null != texts) {
+            for (final String text : texts) {
+                final List<String> words = tokenize(text);
+                if (null != words) {
+                    for (final String word : words) {
+                        if (document.length() > 0) {
+                            document.append(' ');
+                        }
+                        document.append(word);
+                    }
+                }
+            }
+        }
+        return document.toString();
+    }
+
+    /**
+     * Splits the given text into words without accents and in lower case. All the non
+     * alphanumeric characters are considered as word separators.
+     * 
+     * @param text
+     *            the text to split
+     * @return the words of the text, or null if the text is null
+     */
+    private static List<String> tokenize(final String text) {
+
+        if (null == text) {
+            return null;
+        }
+
+        final List<String> words = new ArrayList<String>();
+        for (final String word : StringUtils.toLowerCase(StringUtils.unaccent(text)).split(
+                "[^a-z0-9]+")) {
+            if (word.length() > 0) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
     /**
      * Highlights the query in the given text using specified prefix and suffix.
      * <ul>
@@ -0,0 +1,209 @@
+package fr.itinerennes.commons.utils;
+
+/*
+ * [license]
+ * Common tools
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.Arrays;
+
+/**
+ * Facilities to index geographic positions on a space filling curve.
+ * <p>
+ * Coordinates (in microdegrees) are quantized on a grid of <code>2^{@value #BITS}</code> cells per
+ * axis, then the cell coordinates are interleaved to compute a Morton code (Z-order curve). Two
+ * positions close to each other often have close codes, so a bounding box can be translated to a
+ * few ranges of codes which can be looked up in a sorted index.
+ */
+public final class SpatialUtils {
+
+    /** Amount of bits used to quantize each axis. */
+    public static final int BITS = 16;
+
+    /** The amount of cells per axis. */
+    private static final long CELLS = 1L << BITS;
+
+    /** Minimum latitude in microdegrees. */
+    private static final long LAT_MIN_E6 = -90000000L;
+
+    /** Latitude amplitude in microdegrees. */
+    private static final long LAT_SPAN_E6 = 180000001L;
+
+    /** Minimum longitude in microdegrees. */
+    private static final long LON_MIN_E6 = -180000000L;
+
+    /** Longitude amplitude in microdegrees. */
+    private static final long LON_SPAN_E6 = 360000001L;
+
+    /** Maximum amount of grid cells used to cover a bounding box. */
+    private static final int MAX_COVERING_CELLS = 16;
+
+    /**
+     * Private constructor to avoid instantiation.
+     */
+    private SpatialUtils() {
+
+    }
+
+    /**
+     * Gets the row of the grid cell containing the given latitude.
+     * 
+     * @param latE6
+     *            a latitude in microdegrees
+     * @return the row of the cell containing the latitude
+     */
+    public static int toCellY(final int latE6) {
+
+        return (int) ((clamp(latE6, -90000000, 90000000) - LAT_MIN_E6) * CELLS / LAT_SPAN_E6);
+    }
+
+    /**
+     * Gets the column of the grid cell containing the given longitude.
+     * 
+     * @param lonE6
+     *            a longitude in microdegrees
+     * @return the column of the cell containing the longitude
+     */
+    public static int toCellX(final int lonE6) {
+
+        return (int) ((clamp(lonE6, -180000000, 180000000) - LON_MIN_E6) * CELLS / LON_SPAN_E6);
+    }
+
+    /**
+     * Computes the Morton code of the given position.
+     * 
+     * @param latE6
+     *            the latitude in microdegrees
+     * @param lonE6
+     *            the longitude in microdegrees
+     * @return the Morton code of the cell containing the position
+     */
+    public static long encode(final int latE6, final int lonE6) {
+
+        return interleave(toCellX(lonE6), toCellY(latE6));
+    }
+
+    /**
+     * Interleaves the bits of the two given cell coordinates: bits of <code>x</code> are put on
+     * even positions and bits of <code>y</code> on odd positions.
+     * 
+     * @param x
+     *            the cell column
+     * @param y
+     *            the cell row
+     * @return the Morton code of the cell
+     */
+    public static long interleave(final int x, final int y) {
+
+        return spread(x) | (spread(y) << 1);
+    }
+
+    /**
+     * Computes the ranges of Morton codes covering the given bounding box. Returned ranges are
+     * sorted, disjoint and inclusive: <code>[start0, end0, start1, end1...]</code>. They may
+     * cover cells which are partially out of the bounding box, so an exact filter still has to be
+     * applied on the results.
+     * 
+     * @param latSouthE6
+     *            the southern latitude in microdegrees
+     * @param lonWestE6
+     *            the western longitude in microdegrees
+     * @param latNorthE6
+     *            the northern latitude in microdegrees
+     * @param lonEastE6
+     *            the eastern longitude in microdegrees
+     * @return the bounds of the ranges of Morton codes to look up
+     */
+    public static long[] getRanges(final int latSouthE6, final int lonWestE6,
+            final int latNorthE6, final int lonEastE6) {
+
+        final int xMin = toCellX(Math.min(lonWestE6, lonEastE6));
+        final int xMax = toCellX(Math.max(lonWestE6, lonEastE6));
+        final int yMin = toCellY(Math.min(latSouthE6, latNorthE6));
+        final int yMax = toCellY(Math.max(latSouthE6, latNorthE6));
+
+        // find the coarsest level where the bounding box is covered by a few cells
+        int shift = 0;
+        long cellCount = (long) (xMax - xMin + 1) * (yMax - yMin + 1);
+        while (cellCount > MAX_COVERING_CELLS) {
+            shift++;
+            cellCount = (long) ((xMax >> shift) - (xMin >> shift) + 1)
+                    * ((yMax >> shift) - (yMin >> shift) + 1);
+        }
+
+        final long[] starts = new long[(int) cellCount];
+        int i = 0;
+        for (int x = xMin >> shift; x <= xMax >> shift; x++) {
+            for (int y = yMin >> shift; y <= yMax >> shift; y++) {
+                starts[i++] = interleave(x, y) << (2 * shift);
+            }
+        }
+        Arrays.sort(starts);
+
+        // each cell of the covering level is a contiguous range of codes, merge the adjacent ones
+        final long cellLength = 1L << (2 * shift);
+        final long[] ranges = new long[2 * starts.length];
+        int count = 0;
+        for (final long start : starts) {
+            if (count > 0 && ranges[count - 1] + 1 == start) {
+                ranges[count - 1] = start + cellLength - 1;
+            } else {
+                ranges[count++] = start;
+                ranges[count++] = start + cellLength - 1;
+            }
+        }
+        final long[] result = new long[count];
+        System.arraycopy(ranges, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Spreads the {@value #BITS} lower bits of the given value on even bit positions.
+     * 
+     * @param value
+     *            the value to spread
+     * @return the spread value
+     */
+    private static long spread(final int value) {
+
+        long v = value & (CELLS - 1);
+        v = (v | (v << 8)) & 0x00FF00FFL;
+        v = (v | (v << 4)) & 0x0F0F0F0FL;
+        v = (v | (v << 2)) & 0x33333333L;
+        v = (v | (v << 1)) & 0x55555555L;
+        return v;
+    }
+
+    /**
+     * Bounds the given value.
+     * 
+     * @param value
+     *            a value
+     * @param min
+     *            the lower bound
+     * @param max
+     *            the upper bound
+     * @return the bounded value
+     */
+    private static long clamp(final int value, final int min, final int max) {
+
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,138 @@
+package fr.itinerennes.commons.dataset;
+
+/*
+ * [license]
+ * Common tools
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ColumnarDatasetWriter} and {@link ColumnarDatasetReader}.
+ */
+public final class ColumnarDatasetTest {
+
+    /** The column types of the markers dataset. */
+    private static final int[] MARKERS_TYPES = new int[] { ColumnarDatasetReader.TYPE_TEXT,
+            ColumnarDatasetReader.TYPE_TEXT, ColumnarDatasetReader.TYPE_INTEGER,
+            ColumnarDatasetReader.TYPE_INTEGER, ColumnarDatasetReader.TYPE_TEXT };
+
+    /**
+     * Writes rows and opens a reader on the result.
+     * 
+     * @param types
+     *            the column types
+     * @param rows
+     *            the rows
+     * @return a reader on the written dataset
+     * @throws IOException
+     *             the dataset can't be written
+     */
+    private static ColumnarDatasetReader writeAndRead(final int[] types, final String[]... rows)
+            throws IOException {
+
+        final ColumnarDatasetWriter writer = new ColumnarDatasetWriter(types);
+        for (final String[] row : rows) {
+            writer.addRow(row);
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(out, 0xCAFEBABEL);
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(out.size());
+        buffer.put(out.toByteArray());
+        buffer.flip();
+        return new ColumnarDatasetReader(buffer);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+
+        final ColumnarDatasetReader reader = writeAndRead(MARKERS_TYPES, new String[] { "BIKE",
+                "10", "48109600", "-1674081", "MUSEE BEAUX ARTS" }, new String[] { "BUS", "2_1001",
+                "48121000", "-1700000", "Répu" }, new String[] { "BIKE", "11", "48107513",
+                "-1678163", "" });
+
+        assertEquals(0xCAFEBABEL, reader.getChecksum());
+        assertEquals(3, reader.getRowCount());
+        assertEquals(5, reader.getColumnCount());
+        assertEquals(ColumnarDatasetReader.TYPE_INTEGER, reader.getColumnType(2));
+
+        assertTrue(reader.next());
+        assertEquals("BIKE", reader.getString(0));
+        assertEquals(48109600L, reader.getLong(2));
+        assertEquals(-1674081L, reader.getLong(3));
+        final String bike = reader.getString(0);
+
+        assertTrue(reader.next());
+        assertEquals("2_1001", reader.getString(1));
+        assertEquals(48121000L, reader.getLong(2));
+        assertEquals(-1700000L, reader.getLong(3));
+        assertEquals("Répu", reader.getString(4));
+
+        assertTrue(reader.next());
+        assertSame(bike, reader.getString(0));
+        assertEquals(48107513L, reader.getLong(2));
+        assertEquals("", reader.getString(4));
+
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void testNullIntegers() throws IOException {
+
+        final int[] types = new int[] { ColumnarDatasetReader.TYPE_TEXT,
+                ColumnarDatasetReader.TYPE_INTEGER };
+        final ColumnarDatasetReader reader = writeAndRead(types, new String[] { "a", "1" },
+                new String[] { "b", "" }, new String[] { "c", "0" });
+
+        assertTrue(reader.next());
+        assertFalse(reader.isNull(1));
+        assertEquals(1L, reader.getLong(1));
+        assertTrue(reader.next());
+        assertTrue(reader.isNull(1));
+        assertTrue(reader.next());
+        assertFalse(reader.isNull(1));
+        assertEquals(0L, reader.getLong(1));
+    }
+
+    @Test
+    public void testEmptyDataset() throws IOException {
+
+        final ColumnarDatasetReader reader = writeAndRead(MARKERS_TYPES);
+
+        assertEquals(0, reader.getRowCount());
+        assertFalse(reader.next());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotADataset() {
+
+        new ColumnarDatasetReader(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5 }));
+    }
+}
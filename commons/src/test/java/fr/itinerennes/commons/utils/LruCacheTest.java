@@ -0,0 +1,95 @@
+package fr.itinerennes.commons.utils;
+
+/*
+ * [license]
+ * Common tools
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link LruCache}.
+ */
+public final class LruCacheTest {
+
+    /**
+     * Checks the least recently stored entry is evicted when the cache is full.
+     */
+    @Test
+    public void testEviction() {
+
+        final LruCache<String, Integer> cache = new LruCache<String, Integer>(2);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("a"));
+        assertEquals(Integer.valueOf(2), cache.get("b"));
+        assertEquals(Integer.valueOf(3), cache.get("c"));
+    }
+
+    /**
+     * Checks reading an entry makes it the most recently used one.
+     */
+    @Test
+    public void testAccessOrder() {
+
+        final LruCache<String, Integer> cache = new LruCache<String, Integer>(2);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a");
+        cache.put("c", 3);
+
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(Integer.valueOf(3), cache.get("c"));
+    }
+
+    /**
+     * Checks replacing and removing entries.
+     */
+    @Test
+    public void testPutAndRemove() {
+
+        final LruCache<String, Integer> cache = new LruCache<String, Integer>(2);
+        assertNull(cache.put("a", 1));
+        assertEquals(Integer.valueOf(1), cache.put("a", 2));
+        assertEquals(1, cache.size());
+        assertEquals(Integer.valueOf(2), cache.remove("a"));
+        assertNull(cache.get("a"));
+
+        cache.put("b", 3);
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Checks the maximum size must be positive.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxSize() {
+
+        new LruCache<String, Integer>(0);
+    }
+}
@@ -0,0 +1,136 @@
+package fr.itinerennes.commons.utils;
+
+/*
+ * [license]
+ * Common tools
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link PrefixIndex}.
+ */
+public final class PrefixIndexTest {
+
+    /** The indexed labels. */
+    private static final List<String> LABELS = Arrays.asList("République Nemours",
+            "République Pré Botté", "Repos", "Gares", "Gare Sud-Féval",
+            "Place de la République");
+
+    /** The index of the labels. */
+    private final PrefixIndex index;
+
+    /**
+     * Creates the index of the labels.
+     */
+    public PrefixIndexTest() {
+
+        final String[] documents = new String[LABELS.size()];
+        for (int i = 0; i < documents.length; i++) {
+            documents[i] = SearchUtils.toFullTextDocument(LABELS.get(i));
+        }
+        index = new PrefixIndex(Arrays.asList(documents));
+    }
+
+    /**
+     * Gets the documents of a result.
+     * 
+     * @param result
+     *            a result
+     * @return the documents of the result
+     */
+    private static int[] toArray(final PrefixIndex.Result result) {
+
+        final int[] documents = new int[result.size()];
+        for (int i = 0; i < documents.length; i++) {
+            documents[i] = result.get(i);
+        }
+        return documents;
+    }
+
+    @Test
+    public void testSearchPrefix() {
+
+        assertEquals("[0, 1, 2, 5]", Arrays.toString(toArray(index.search("re"))));
+        assertEquals("[0, 1, 5]", Arrays.toString(toArray(index.search("repu"))));
+        assertEquals("[3, 4]", Arrays.toString(toArray(index.search("gare"))));
+        assertEquals("[3]", Arrays.toString(toArray(index.search("gares"))));
+        assertEquals("[]", Arrays.toString(toArray(index.search("z"))));
+    }
+
+    @Test
+    public void testSearchIgnoresAccentsAndCase() {
+
+        assertEquals("[1]", Arrays.toString(toArray(index.search("PRÉ"))));
+        assertEquals("[4]", Arrays.toString(toArray(index.search("feval"))));
+    }
+
+    @Test
+    public void testSearchEveryWordMustMatch() {
+
+        assertEquals("[0]", Arrays.toString(toArray(index.search("rep nem"))));
+        assertEquals("[5]", Arrays.toString(toArray(index.search("place, répu"))));
+        assertEquals("[]", Arrays.toString(toArray(index.search("gare nem"))));
+    }
+
+    @Test
+    public void testBlankQuery() {
+
+        assertEquals(0, index.search("").size());
+        assertEquals(0, index.search(" - ").size());
+    }
+
+    @Test
+    public void testRefine() {
+
+        final PrefixIndex.Result re = index.search("re");
+        final String[] queries = new String[] { "rep", "repu", "repu ", "repu b", "repu bo",
+                "repubx" };
+        PrefixIndex.Result previous = re;
+        for (final String query : queries) {
+            final PrefixIndex.Result refined = index.refine(previous, query);
+            assertEquals(query, Arrays.toString(toArray(index.search(query))),
+                    Arrays.toString(toArray(refined)));
+            previous = refined;
+        }
+    }
+
+    @Test
+    public void testRefineAnotherQuery() {
+
+        // the query doesn't extend the previous one, the index is looked up again
+        final PrefixIndex.Result gare = index.search("gare");
+        assertEquals("[0, 1, 5]", Arrays.toString(toArray(index.refine(gare, "repu"))));
+        assertEquals("[0, 1, 2, 5]", Arrays.toString(toArray(index.refine(gare, "re"))));
+        assertEquals("[0, 1, 2, 5]", Arrays.toString(toArray(index.refine(null, "re"))));
+    }
+
+    @Test
+    public void testPrefix() {
+
+        assertEquals("republiquene", index.search("Républi-que ne").getPrefix());
+        assertEquals(6, index.getDocumentCount());
+    }
+}
@@ -0,0 +1,194 @@
+package fr.itinerennes.commons.utils;
+
+/*
+ * [license]
+ * Common tools
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link RequestCoalescer}.
+ */
+public final class RequestCoalescerTest {
+
+    /** The count of concurrent callers. */
+    private static final int CALLERS = 5;
+
+    /** The coalescer. */
+    private final RequestCoalescer<String, Object> coalescer;
+
+    /** The count of executions of the request. */
+    private final AtomicInteger executions = new AtomicInteger();
+
+    /** Released when the request may complete. */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * Creates the coalescer.
+     */
+    public RequestCoalescerTest() {
+
+        coalescer = new RequestCoalescer<String, Object>();
+    }
+
+    /**
+     * Executes the request concurrently from several threads, then lets it complete.
+     * 
+     * @param request
+     *            the request to execute
+     * @return the result or the exception got by each caller
+     * @throws InterruptedException
+     *             the test was interrupted
+     */
+    private List<Object> executeConcurrently(final RequestCoalescer.Request<Object> request)
+            throws InterruptedException {
+
+        final List<Object> results = new ArrayList<Object>();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < CALLERS; i++) {
+            final Thread thread = new Thread() {
+
+                @Override
+                public void run() {
+
+                    Object result;
+                    try {
+                        result = coalescer.execute("key", request);
+                    } catch (final IOException e) {
+                        result = e;
+                    }
+                    synchronized (results) {
+                        results.add(result);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+
+        // lets the callers reach the coalescer before the request completes
+        Thread.sleep(200);
+        release.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        return results;
+    }
+
+    /**
+     * Checks concurrent callers share one execution and its result.
+     * 
+     * @throws InterruptedException
+     *             the test was interrupted
+     */
+    @Test
+    public void testSharedResult() throws InterruptedException {
+
+        final Object expected = new Object();
+        final List<Object> results = executeConcurrently(new RequestCoalescer.Request<Object>() {
+
+            @Override
+            public Object execute() throws IOException {
+
+                executions.incrementAndGet();
+                await();
+                return expected;
+            }
+        });
+
+        assertEquals(1, executions.get());
+        assertEquals(CALLERS, results.size());
+        for (final Object result : results) {
+            assertSame(expected, result);
+        }
+        assertEquals(0, coalescer.getExecutionCount());
+    }
+
+    /**
+     * Checks concurrent callers share the exception of a failed execution.
+     * 
+     * @throws InterruptedException
+     *             the test was interrupted
+     */
+    @Test
+    public void testSharedFailure() throws InterruptedException {
+
+        final IOException expected = new IOException("failure");
+        final List<Object> results = executeConcurrently(new RequestCoalescer.Request<Object>() {
+
+            @Override
+            public Object execute() throws IOException {
+
+                executions.incrementAndGet();
+                await();
+                throw expected;
+            }
+        });
+
+        assertEquals(1, executions.get());
+        for (final Object result : results) {
+            assertSame(expected, result);
+        }
+    }
+
+    /**
+     * Checks the results aren't cached: sequential callers execute the request each.
+     * 
+     * @throws IOException
+     *             unexpected error
+     */
+    @Test
+    public void testSequentialExecutions() throws IOException {
+
+        final RequestCoalescer.Request<Object> request = new RequestCoalescer.Request<Object>() {
+
+            @Override
+            public Object execute() {
+
+                return executions.incrementAndGet();
+            }
+        };
+
+        assertEquals(Integer.valueOf(1), coalescer.execute("key", request));
+        assertEquals(Integer.valueOf(2), coalescer.execute("key", request));
+    }
+
+    /**
+     * Waits until the request may complete.
+     */
+    private void await() {
+
+        try {
+            release.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package fr.itinerennes.commons.utils;
+
+/*
+ * [license]
+ * Common tools
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link SpatialUtils}.
+ */
+public final class SpatialUtilsTest {
+
+    @Test
+    public void testInterleave() {
+
+        assertEquals(0L, SpatialUtils.interleave(0, 0));
+        assertEquals(1L, SpatialUtils.interleave(1, 0));
+        assertEquals(2L, SpatialUtils.interleave(0, 1));
+        assertEquals(3L, SpatialUtils.interleave(1, 1));
+        assertEquals(0xFFFFFFFFL, SpatialUtils.interleave(0xFFFF, 0xFFFF));
+    }
+
+    @Test
+    public void testWholeWorldIsASingleRange() {
+
+        final long[] ranges = SpatialUtils.getRanges(-90000000, -180000000, 90000000, 180000000);
+
+        assertArrayEquals(new long[] { 0L, 0xFFFFFFFFL }, ranges);
+    }
+
+    @Test
+    public void testRangesAreSortedAndDisjoint() {
+
+        final long[] ranges = SpatialUtils.getRanges(48080000, -1720000, 48140000, -1620000);
+
+        for (int i = 1; i < ranges.length; i++) {
+            assertTrue(ranges[i - 1] < ranges[i]);
+        }
+    }
+
+    @Test
+    public void testRangesContainPositionsOfTheBoundingBox() {
+
+        final Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            final int south = 48000000 + random.nextInt(200000);
+            final int west = -1800000 + random.nextInt(300000);
+            final int north = south + random.nextInt(100000);
+            final int east = west + random.nextInt(100000);
+            final long[] ranges = SpatialUtils.getRanges(south, west, north, east);
+
+            final int lat = south + random.nextInt(north - south + 1);
+            final int lon = west + random.nextInt(east - west + 1);
+            final long code = SpatialUtils.encode(lat, lon);
+
+            boolean found = false;
+            for (int r = 0; r < ranges.length && !found; r += 2) {
+                found = code >= ranges[r] && code <= ranges[r + 1];
+            }
+            assertTrue(String.format("position %d,%d should be in the ranges", lat, lon), found);
+        }
+    }
+}
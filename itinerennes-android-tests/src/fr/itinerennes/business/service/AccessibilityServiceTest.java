@@ -0,0 +1,91 @@
+package fr.itinerennes.business.service;
+
+/*
+ * [license]
+ * Instrumentation tests
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import fr.itinerennes.ItineRennesApplication;
+import fr.itinerennes.database.BinaryDataReader;
+import fr.itinerennes.database.Columns.AccessibilityColumns;
+import fr.itinerennes.startup.DatabaseLoaderListener;
+
+/**
+ * Test class for {@link AccessibilityService}.
+ */
+public class AccessibilityServiceTest extends AndroidTestCase implements AccessibilityColumns {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(AccessibilityServiceTest.class);
+
+    /** The application context. */
+    private ItineRennesApplication appCtx;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see android.test.AndroidTestCase#setUp()
+     */
+    @Override
+    protected final void setUp() throws Exception {
+
+        super.setUp();
+
+        appCtx = (ItineRennesApplication) getContext().getApplicationContext();
+
+        // load data if necessary
+        new DatabaseLoaderListener(appCtx, null, BinaryDataReader.accessibility(appCtx)).execute();
+    }
+
+    /**
+     * Test method for {@link AccessibilityService#isAccessible(String, String)}: the in-memory
+     * attributes must match the accessibility table.
+     */
+    public final void testIsAccessible() {
+
+        LOGGER.info("testIsAccessible.start");
+
+        final AccessibilityService service = new AccessibilityService(appCtx.getDatabaseHelper());
+        service.load();
+
+        final Cursor c = appCtx.getDatabaseHelper().getReadOnlyDatabase()
+                .query(ACCESSIBILITY_TABLE_NAME, new String[] { ID, TYPE, WHEELCHAIR }, null,
+                        null, null, null, null);
+        try {
+            assertTrue("accessibility table shouldn't be empty", c.getCount() > 0);
+            while (c.moveToNext()) {
+                final boolean expected = !c.isNull(2) && c.getInt(2) == 1;
+                assertEquals(String.format("%s %s", c.getString(1), c.getString(0)), expected,
+                        service.isAccessible(c.getString(0), c.getString(1)));
+            }
+        } finally {
+            c.close();
+        }
+        assertFalse(service.isAccessible("unknown", "unknown"));
+
+        LOGGER.info("testIsAccessible.end");
+    }
+}
@@ -0,0 +1,181 @@
+package fr.itinerennes.business.service;
+
+/*
+ * [license]
+ * Instrumentation tests
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import android.test.AndroidTestCase;
+
+import fr.dudie.keolis.client.KeolisClient;
+import fr.dudie.keolis.model.BikeStation;
+
+/**
+ * Test class for {@link BikeStationRepository}.
+ */
+public class BikeStationRepositoryTest extends AndroidTestCase {
+
+    /** The method of the client fetching the bike stations. */
+    private static final String GET_ALL = "getAllBikeStations";
+
+    /** One hour in milliseconds. */
+    private static final long ONE_HOUR = 3600000L;
+
+    /** The client answering the requests with scripted results. */
+    private ScriptedClient<KeolisClient> server;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see android.test.AndroidTestCase#setUp()
+     */
+    @Override
+    protected final void setUp() throws Exception {
+
+        super.setUp();
+        server = new ScriptedClient<KeolisClient>(KeolisClient.class);
+    }
+
+    /**
+     * Creates a list of bike stations.
+     * 
+     * @param ids
+     *            the identifiers of the bike stations
+     * @return the bike stations
+     */
+    private static List<BikeStation> stations(final String... ids) {
+
+        final BikeStation[] stations = new BikeStation[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            stations[i] = new BikeStation();
+            stations[i].setId(ids[i]);
+        }
+        return Arrays.asList(stations);
+    }
+
+    /**
+     * Checks the snapshot is indexed by station identifier.
+     * 
+     * @throws IOException
+     *             unexpected failure
+     */
+    public final void testGetBikeStation() throws IOException {
+
+        server.script(GET_ALL, stations("1", "2"));
+        final BikeStationRepository repository = new BikeStationRepository(server.getClient(),
+                ONE_HOUR);
+
+        assertNull(repository.getCachedSnapshot());
+        assertEquals("2", repository.getBikeStation("2").getId());
+        assertNull(repository.getBikeStation("3"));
+        assertEquals(2, repository.getCachedSnapshot().getAll().size());
+        assertEquals(1, server.getCallCount(GET_ALL));
+    }
+
+    /**
+     * Checks the bike stations are fetched again only once the snapshot is older than the time to
+     * live.
+     * 
+     * @throws IOException
+     *             unexpected failure
+     */
+    public final void testTimeToLive() throws IOException {
+
+        server.script(GET_ALL, stations("1"));
+        server.script(GET_ALL, stations("1", "2"));
+
+        final BikeStationRepository fresh = new BikeStationRepository(server.getClient(),
+                ONE_HOUR);
+        fresh.getSnapshot();
+        assertEquals(1, fresh.getSnapshot().getAll().size());
+        assertEquals(1, server.getCallCount(GET_ALL));
+
+        final BikeStationRepository expired = new BikeStationRepository(server.getClient(), 0);
+        expired.getSnapshot();
+        assertEquals(2, server.getCallCount(GET_ALL));
+    }
+
+    /**
+     * Checks a failed fetch is reported and keeps the previous snapshot.
+     * 
+     * @throws IOException
+     *             unexpected failure
+     */
+    public final void testFailure() throws IOException {
+
+        server.script(GET_ALL, stations("1"));
+        server.script(GET_ALL, new IOException("unreachable"));
+        final BikeStationRepository repository = new BikeStationRepository(server.getClient(), 0);
+
+        final BikeStationRepository.Snapshot first = repository.getSnapshot();
+        try {
+            repository.getSnapshot();
+            fail("the failure should be reported");
+        } catch (final IOException e) {
+            assertEquals("unreachable", e.getMessage());
+        }
+        assertTrue(first == repository.getCachedSnapshot());
+    }
+
+    /**
+     * Checks the callers requesting the bike stations concurrently share the same request.
+     * 
+     * @throws Exception
+     *             unexpected failure
+     */
+    public final void testSingleFlight() throws Exception {
+
+        server.script(GET_ALL, stations("1"));
+        final BikeStationRepository repository = new BikeStationRepository(server.getClient(),
+                ONE_HOUR);
+        final BikeStationRepository.Snapshot[] snapshots = new BikeStationRepository.Snapshot[2];
+
+        server.hold();
+        final Thread[] callers = new Thread[snapshots.length];
+        for (int i = 0; i < callers.length; i++) {
+            final int caller = i;
+            callers[i] = new Thread() {
+
+                @Override
+                public void run() {
+
+                    try {
+                        snapshots[caller] = repository.getSnapshot();
+                    } catch (final IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+            callers[i].start();
+            ScriptedClient.awaitWaiting(callers[i]);
+        }
+        server.release();
+        for (final Thread caller : callers) {
+            caller.join();
+        }
+
+        assertEquals(1, server.getCallCount(GET_ALL));
+        assertTrue(snapshots[0] != null && snapshots[0] == snapshots[1]);
+    }
+}
@@ -0,0 +1,114 @@
+package fr.itinerennes.business.service;
+
+/*
+ * [license]
+ * Instrumentation tests
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.test.AndroidTestCase;
+
+import fr.itinerennes.ItineRennesApplication;
+import fr.itinerennes.TypeConstants;
+import fr.itinerennes.business.event.IBookmarkModificationListener;
+
+/**
+ * Test class for {@link BookmarkService}.
+ */
+public class BookmarkServiceTest extends AndroidTestCase implements
+        IBookmarkModificationListener {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookmarkServiceTest.class);
+
+    /** The identifier of the starred resource. */
+    private static final String ID = "2_1016";
+
+    /** The bookmark service. */
+    private BookmarkService bookmarks;
+
+    /** The state of the resource when the last notification was received. */
+    private Boolean notifiedState;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see android.test.AndroidTestCase#setUp()
+     */
+    @Override
+    protected final void setUp() throws Exception {
+
+        super.setUp();
+
+        final ItineRennesApplication appCtx = (ItineRennesApplication) getContext()
+                .getApplicationContext();
+
+        bookmarks = new BookmarkService(appCtx.getDatabaseHelper());
+        bookmarks.addListener(this);
+        bookmarks.setNotStarred(TypeConstants.TYPE_BUS, ID);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see fr.itinerennes.business.event.IBookmarkModificationListener#onBookmarkStateChanged(java.lang.String,
+     *      java.lang.String, boolean)
+     */
+    @Override
+    public void onBookmarkStateChanged(final String type, final String id,
+            final boolean bookmarked) {
+
+        // the in-memory state must be updated before listeners are notified
+        assertEquals(bookmarked, bookmarks.isStarred(type, id));
+        notifiedState = bookmarked;
+    }
+
+    /**
+     * Test method for {@link BookmarkService#isStarred(String, String)}: the in-memory state must
+     * follow the modifications and match the database.
+     */
+    public final void testWriteThrough() {
+
+        LOGGER.info("testWriteThrough.start");
+
+        assertFalse(bookmarks.isStarred(TypeConstants.TYPE_BUS, ID));
+
+        bookmarks.setStarred(TypeConstants.TYPE_BUS, ID, "République");
+        assertEquals(Boolean.TRUE, notifiedState);
+        assertTrue(bookmarks.isStarred(TypeConstants.TYPE_BUS, ID));
+        assertFalse(bookmarks.isStarred(TypeConstants.TYPE_BIKE, ID));
+        assertNotNull(bookmarks.getBookmark(TypeConstants.TYPE_BUS, ID));
+
+        // a new service loads the bookmarks from the database
+        final BookmarkService reloaded = new BookmarkService(((ItineRennesApplication) getContext()
+                .getApplicationContext()).getDatabaseHelper());
+        reloaded.load();
+        assertTrue(reloaded.isStarred(TypeConstants.TYPE_BUS, ID));
+
+        bookmarks.setNotStarred(TypeConstants.TYPE_BUS, ID);
+        assertEquals(Boolean.FALSE, notifiedState);
+        assertFalse(bookmarks.isStarred(TypeConstants.TYPE_BUS, ID));
+        assertNull(bookmarks.getBookmark(TypeConstants.TYPE_BUS, ID));
+
+        LOGGER.info("testWriteThrough.end");
+    }
+}
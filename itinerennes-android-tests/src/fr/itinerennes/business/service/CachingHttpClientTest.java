@@ -0,0 +1,277 @@
+package fr.itinerennes.business.service;
+
+/*
+ * [license]
+ * Instrumentation tests
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedList;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Test class for {@link CachingHttpClient}.
+ */
+public class CachingHttpClientTest extends AndroidTestCase {
+
+    /** The URL of the test requests. */
+    private static final String URL = "http://example.com/resource";
+
+    /** The client answering the requests with scripted responses. */
+    private ScriptedHttpClient server;
+
+    /** The directory of the cache. */
+    private File directory;
+
+    /** The tested client. */
+    private CachingHttpClient client;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see android.test.AndroidTestCase#setUp()
+     */
+    @Override
+    protected final void setUp() throws Exception {
+
+        super.setUp();
+
+        directory = new File(getContext().getCacheDir(), "http-test");
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+
+        server = new ScriptedHttpClient();
+        client = new CachingHttpClient(server, new HttpResponseCache(directory, 4096));
+    }
+
+    /**
+     * Creates a response.
+     * 
+     * @param statusCode
+     *            the status code of the response
+     * @param body
+     *            the body of the response
+     * @param headers
+     *            the names and the values of the headers of the response
+     * @return a response
+     * @throws IOException
+     *             the body can't be encoded
+     */
+    private static HttpResponse response(final int statusCode, final String body,
+            final String... headers) throws IOException {
+
+        final BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1,
+                statusCode, "");
+        for (int i = 0; i < headers.length; i += 2) {
+            response.addHeader(headers[i], headers[i + 1]);
+        }
+        response.setEntity(new StringEntity(body));
+        return response;
+    }
+
+    /**
+     * Executes a GET request with the tested client.
+     * 
+     * @return the body of the response
+     * @throws IOException
+     *             the request failed
+     */
+    private String get() throws IOException {
+
+        return EntityUtils.toString(client.execute(new HttpGet(URL)).getEntity());
+    }
+
+    /**
+     * A response having a max-age must be reused without any request until it expires.
+     * 
+     * @throws IOException
+     *             unexpected error
+     */
+    public final void testFreshResponse() throws IOException {
+
+        server.responses.add(response(200, "content", "Cache-Control", "max-age=60"));
+
+        assertEquals("content", get());
+        assertEquals("content", get());
+        assertEquals(1, server.requestCount);
+        assertEquals(1, client.getMissCount());
+        assertEquals(1, client.getHitCount());
+        assertEquals("content".length(), client.getBytesSaved());
+    }
+
+    /**
+     * An expired response must be revalidated with its ETag, and reused if it isn't modified.
+     * 
+     * @throws IOException
+     *             unexpected error
+     */
+    public final void testRevalidation() throws IOException {
+
+        server.responses.add(response(200, "content", "Cache-Control", "no-cache", "ETag",
+                "\"v1\""));
+        server.responses.add(response(304, "", "ETag", "\"v1\""));
+
+        assertEquals("content", get());
+        assertEquals("content", get());
+        assertEquals(2, server.requestCount);
+        assertEquals("\"v1\"", server.lastRequest.getFirstHeader("If-None-Match").getValue());
+        assertEquals(1, client.getConditionalHitCount());
+    }
+
+    /**
+     * A modified response must replace the cached one.
+     * 
+     * @throws IOException
+     *             unexpected error
+     */
+    public final void testModifiedResponse() throws IOException {
+
+        server.responses.add(response(200, "content", "ETag", "\"v1\""));
+        server.responses.add(response(200, "modified", "ETag", "\"v2\""));
+        server.responses.add(response(304, "", "ETag", "\"v2\""));
+
+        assertEquals("content", get());
+        assertEquals("modified", get());
+        assertEquals("modified", get());
+        assertEquals("\"v2\"", server.lastRequest.getFirstHeader("If-None-Match").getValue());
+    }
+
+    /**
+     * A response with the no-store directive mustn't be cached.
+     * 
+     * @throws IOException
+     *             unexpected error
+     */
+    public final void testNoStore() throws IOException {
+
+        server.responses.add(response(200, "content", "Cache-Control", "no-store, max-age=60"));
+        server.responses.add(response(200, "content", "Cache-Control", "no-store, max-age=60"));
+
+        assertEquals("content", get());
+        assertEquals("content", get());
+        assertEquals(2, server.requestCount);
+        assertNull(server.lastRequest.getFirstHeader("If-None-Match"));
+    }
+
+    /**
+     * A client answering the requests with the responses of a queue.
+     */
+    private static final class ScriptedHttpClient implements HttpClient {
+
+        /** The responses to return. */
+        private final LinkedList<HttpResponse> responses = new LinkedList<HttpResponse>();
+
+        /** The count of executed requests. */
+        private int requestCount = 0;
+
+        /** The last executed request. */
+        private HttpUriRequest lastRequest;
+
+        @Override
+        public HttpResponse execute(final HttpUriRequest request, final HttpContext context) {
+
+            requestCount++;
+            // copies the request, the caching client removes the conditional headers it adds
+            lastRequest = new HttpGet(request.getURI());
+            lastRequest.setHeaders(request.getAllHeaders());
+            return responses.removeFirst();
+        }
+
+        @Override
+        public HttpParams getParams() {
+
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ClientConnectionManager getConnectionManager() {
+
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public HttpResponse execute(final HttpUriRequest request) {
+
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public HttpResponse execute(final HttpHost target, final HttpRequest request) {
+
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public HttpResponse execute(final HttpHost target, final HttpRequest request,
+                final HttpContext context) {
+
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> T execute(final HttpUriRequest request,
+                final ResponseHandler<? extends T> responseHandler) {
+
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> T execute(final HttpUriRequest request,
+                final ResponseHandler<? extends T> responseHandler, final HttpContext context) {
+
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> T execute(final HttpHost target, final HttpRequest request,
+                final ResponseHandler<? extends T> responseHandler) {
+
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> T execute(final HttpHost target, final HttpRequest request,
+                final ResponseHandler<? extends T> responseHandler, final HttpContext context) {
+
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package fr.itinerennes.business.service;
+
+/*
+ * [license]
+ * Instrumentation tests
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import android.test.AndroidTestCase;
+
+import fr.dudie.keolis.client.KeolisClient;
+import fr.dudie.keolis.model.LineAlert;
+import fr.dudie.keolis.model.RelayPark;
+
+import fr.itinerennes.Conf;
+import fr.itinerennes.ItineRennesApplication;
+import fr.itinerennes.database.CacheEntryDao;
+import fr.itinerennes.database.DatabaseHelper;
+import fr.itinerennes.database.Columns.CacheEntriesColumns;
+
+/**
+ * Test class for {@link KeolisCache}.
+ */
+public class KeolisCacheTest extends AndroidTestCase {
+
+    /** The method of the client fetching the relay parks. */
+    private static final String GET_PARKS = "getAllRelayParks";
+
+    /** The method of the client fetching the line alerts. */
+    private static final String GET_ALERTS = "getAllLinesAlerts";
+
+    /** One hour in milliseconds. */
+    private static final long ONE_HOUR = 3600000L;
+
+    /** The client answering the requests with scripted results. */
+    private ScriptedClient<KeolisClient> server;
+
+    /** The persistent cache. */
+    private CacheEntryDao entries;
+
+    /** The tested cache. */
+    private KeolisCache cache;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see android.test.AndroidTestCase#setUp()
+     */
+    @Override
+    protected final void setUp() throws Exception {
+
+        super.setUp();
+
+        final ItineRennesApplication appCtx = (ItineRennesApplication) getContext()
+                .getApplicationContext();
+
+        final DatabaseHelper dbHelper = appCtx.getDatabaseHelper();
+        dbHelper.getWritableDatabase().delete(CacheEntriesColumns.CACHE_ENTRIES_TABLE_NAME, null,
+                null);
+        entries = new CacheEntryDao(dbHelper, Conf.CACHE_MAX_ENTRIES);
+        server = new ScriptedClient<KeolisClient>(KeolisClient.class);
+        cache = new KeolisCache(server.getClient(), entries);
+    }
+
+    /**
+     * Checks the data younger than the time to live is returned without fetching it again.
+     * 
+     * @throws IOException
+     *             unexpected failure
+     */
+    public final void testTimeToLive() throws IOException {
+
+        server.script(GET_PARKS, Arrays.asList(new RelayPark(), new RelayPark()));
+
+        final List<RelayPark> parks = cache.getRelayParks();
+        assertEquals(2, parks.size());
+        assertTrue(parks == cache.getRelayParks());
+        assertEquals(1, server.getCallCount(GET_PARKS));
+    }
+
+    /**
+     * Checks a failure is reported when the data was never fetched.
+     */
+    public final void testFailureWithoutData() {
+
+        server.script(GET_PARKS, new IOException("unreachable"));
+        try {
+            cache.getRelayParks();
+            fail("the failure should be reported");
+        } catch (final IOException e) {
+            assertEquals("unreachable", e.getMessage());
+        }
+    }
+
+    /**
+     * Checks the line alerts are persisted and available to a new cache without fetching them.
+     * 
+     * @throws IOException
+     *             unexpected failure
+     */
+    public final void testPersistedAlerts() throws IOException {
+
+        server.script(GET_ALERTS, Arrays.asList(new LineAlert()));
+        assertEquals(1, cache.getLineAlerts().size());
+
+        final KeolisCache restarted = new KeolisCache(server.getClient(), entries);
+        assertEquals(1, restarted.getLineAlerts().size());
+        assertEquals(1, server.getCallCount(GET_ALERTS));
+    }
+
+    /**
+     * Checks the outdated line alerts are returned when they can't be fetched again.
+     * 
+     * @throws IOException
+     *             unexpected failure
+     */
+    public final void testStaleOnFailure() throws IOException {
+
+        final long now = System.currentTimeMillis();
+        entries.put("keolis", "lineAlerts", new LineAlert[] { new LineAlert() }, now
+                - Conf.CACHE_KEOLIS_ALERTS_TTL - 1, now + ONE_HOUR);
+        server.script(GET_ALERTS, new IOException("unreachable"));
+
+        assertEquals(1, cache.getLineAlerts().size());
+        assertEquals(1, server.getCallCount(GET_ALERTS));
+    }
+
+    /**
+     * Checks the outdated line alerts are replaced when they can be fetched again.
+     * 
+     * @throws IOException
+     *             unexpected failure
+     */
+    public final void testRefreshOutdated() throws IOException {
+
+        final long now = System.currentTimeMillis();
+        entries.put("keolis", "lineAlerts", new LineAlert[] { new LineAlert() }, now
+                - Conf.CACHE_KEOLIS_ALERTS_TTL - 1, now + ONE_HOUR);
+        server.script(GET_ALERTS, Arrays.asList(new LineAlert(), new LineAlert()));
+
+        assertEquals(2, cache.getLineAlerts().size());
+        assertEquals(1, server.getCallCount(GET_ALERTS));
+    }
+
+    /**
+     * Checks the callers requesting the relay parks concurrently share the same request.
+     * 
+     * @throws Exception
+     *             unexpected failure
+     */
+    public final void testSingleFlight() throws Exception {
+
+        server.script(GET_PARKS, Arrays.asList(new RelayPark()));
+        final Object[] results = new Object[2];
+
+        server.hold();
+        final Thread[] callers = new Thread[results.length];
+        for (int i = 0; i < callers.length; i++) {
+            final int caller = i;
+            callers[i] = new Thread() {
+
+                @Override
+                public void run() {
+
+                    try {
+                        results[caller] = cache.getRelayParks();
+                    } catch (final IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+            callers[i].start();
+            ScriptedClient.awaitWaiting(callers[i]);
+        }
+        server.release();
+        for (final Thread caller : callers) {
+            caller.join();
+        }
+
+        assertEquals(1, server.getCallCount(GET_PARKS));
+        assertTrue(results[0] != null && results[0] == results[1]);
+    }
+}
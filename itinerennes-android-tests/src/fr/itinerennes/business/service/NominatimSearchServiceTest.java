@@ -0,0 +1,223 @@
+package fr.itinerennes.business.service;
+
+/*
+ * [license]
+ * Instrumentation tests
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import android.test.AndroidTestCase;
+
+import fr.dudie.nominatim.client.NominatimClient;
+import fr.dudie.nominatim.model.Address;
+
+import fr.itinerennes.Conf;
+import fr.itinerennes.ItineRennesApplication;
+import fr.itinerennes.database.CacheEntryDao;
+import fr.itinerennes.database.DatabaseHelper;
+import fr.itinerennes.database.Columns.CacheEntriesColumns;
+
+/**
+ * Test class for {@link NominatimSearchService}.
+ */
+public class NominatimSearchServiceTest extends AndroidTestCase {
+
+    /** The method of the client searching addresses. */
+    private static final String SEARCH = "search";
+
+    /** The query of the test searches. */
+    private static final String QUERY = "Place de la République";
+
+    /** The query of the test searches, written differently. */
+    private static final String OTHER_QUERY = "PLACE DE LA REPUBLIQUE";
+
+    /** The client answering the requests with scripted results. */
+    private ScriptedClient<NominatimClient> server;
+
+    /** The persistent cache. */
+    private CacheEntryDao entries;
+
+    /** The tested service. */
+    private NominatimSearchService service;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see android.test.AndroidTestCase#setUp()
+     */
+    @Override
+    protected final void setUp() throws Exception {
+
+        super.setUp();
+
+        final ItineRennesApplication appCtx = (ItineRennesApplication) getContext()
+                .getApplicationContext();
+
+        final DatabaseHelper dbHelper = appCtx.getDatabaseHelper();
+        dbHelper.getWritableDatabase().delete(CacheEntriesColumns.CACHE_ENTRIES_TABLE_NAME, null,
+                null);
+        entries = new CacheEntryDao(dbHelper, Conf.CACHE_MAX_ENTRIES);
+        server = new ScriptedClient<NominatimClient>(NominatimClient.class);
+        service = new NominatimSearchService(server.getClient(), entries);
+    }
+
+    /**
+     * Creates a list of addresses.
+     * 
+     * @param names
+     *            the display names of the addresses
+     * @return the addresses
+     */
+    private static List<Address> addresses(final String... names) {
+
+        final Address[] addresses = new Address[names.length];
+        for (int i = 0; i < names.length; i++) {
+            addresses[i] = new Address();
+            addresses[i].setDisplayName(names[i]);
+        }
+        return Arrays.asList(addresses);
+    }
+
+    /**
+     * Checks the queries differing only by their case or their accents share the same results.
+     * 
+     * @throws IOException
+     *             unexpected failure
+     */
+    public final void testNormalizedQueries() throws IOException {
+
+        server.script(SEARCH, addresses("a", "b"));
+
+        assertEquals(2, service.search(QUERY).size());
+        assertTrue(service.search(QUERY) == service.search(OTHER_QUERY));
+        assertEquals(1, server.getCallCount(SEARCH));
+    }
+
+    /**
+     * Checks the results kept in memory are available without searching.
+     * 
+     * @throws IOException
+     *             unexpected failure
+     */
+    public final void testCachedResults() throws IOException {
+
+        server.script(SEARCH, addresses("a"));
+
+        assertNull(service.getCachedResults(QUERY));
+        service.search(QUERY);
+        assertEquals("a", service.getCachedResults(OTHER_QUERY).get(0).getDisplayName());
+        assertEquals(0, service.getCachedResults(" ").size());
+    }
+
+    /**
+     * Checks the results are persisted and available to a new service without searching.
+     * 
+     * @throws IOException
+     *             unexpected failure
+     */
+    public final void testPersistedResults() throws IOException {
+
+        server.script(SEARCH, addresses("a"));
+        service.search(QUERY);
+
+        final NominatimSearchService restarted = new NominatimSearchService(server.getClient(),
+                entries);
+        assertNull(restarted.getCachedResults(QUERY));
+        assertEquals("a", restarted.search(OTHER_QUERY).get(0).getDisplayName());
+        assertEquals(1, server.getCallCount(SEARCH));
+    }
+
+    /**
+     * Checks a blank query has no results and doesn't search.
+     * 
+     * @throws IOException
+     *             unexpected failure
+     */
+    public final void testBlankQuery() throws IOException {
+
+        assertEquals(0, service.search("  ").size());
+        assertEquals(0, server.getCallCount(SEARCH));
+    }
+
+    /**
+     * Checks a failed search is reported and isn't cached.
+     * 
+     * @throws IOException
+     *             unexpected failure
+     */
+    public final void testFailure() throws IOException {
+
+        server.script(SEARCH, new IOException("unreachable"));
+        server.script(SEARCH, addresses("a"));
+
+        try {
+            service.search(QUERY);
+            fail("the failure should be reported");
+        } catch (final IOException e) {
+            assertEquals("unreachable", e.getMessage());
+        }
+        assertNull(service.getCachedResults(QUERY));
+        assertEquals(1, service.search(QUERY).size());
+        assertEquals(2, server.getCallCount(SEARCH));
+    }
+
+    /**
+     * Checks the callers searching concurrently the same query share the same request.
+     * 
+     * @throws Exception
+     *             unexpected failure
+     */
+    public final void testSingleFlight() throws Exception {
+
+        server.script(SEARCH, addresses("a"));
+        final Object[] results = new Object[2];
+        final String[] queries = new String[] { QUERY, OTHER_QUERY };
+
+        server.hold();
+        final Thread[] callers = new Thread[results.length];
+        for (int i = 0; i < callers.length; i++) {
+            final int caller = i;
+            callers[i] = new Thread() {
+
+                @Override
+                public void run() {
+
+                    try {
+                        results[caller] = service.search(queries[caller]);
+                    } catch (final IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+            callers[i].start();
+            ScriptedClient.awaitWaiting(callers[i]);
+        }
+        server.release();
+        for (final Thread caller : callers) {
+            caller.join();
+        }
+
+        assertEquals(1, server.getCallCount(SEARCH));
+        assertTrue(results[0] != null && results[0] == results[1]);
+    }
+}
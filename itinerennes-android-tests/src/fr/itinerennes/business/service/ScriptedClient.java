@@ -0,0 +1,178 @@
+package fr.itinerennes.business.service;
+
+/*
+ * [license]
+ * Instrumentation tests
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A client of a web service answering scripted results. Each call of a method of the client
+ * returns the next result scripted for this method, or throws it if it is an exception. The calls
+ * can be held until {@link #release()} is called, to test concurrent callers.
+ * 
+ * @param <T>
+ *            the interface of the client
+ */
+public final class ScriptedClient<T> implements InvocationHandler {
+
+    /** The client. */
+    private final T client;
+
+    /** The results to return, by method name. */
+    private final Map<String, LinkedList<Object>> results =
+            new HashMap<String, LinkedList<Object>>();
+
+    /** The count of calls, by method name. */
+    private final Map<String, Integer> calls = new HashMap<String, Integer>();
+
+    /** When not null, the calls wait for it to be released. */
+    private volatile CountDownLatch gate;
+
+    /**
+     * Creates a scripted client.
+     * 
+     * @param type
+     *            the interface of the client
+     */
+    public ScriptedClient(final Class<T> type) {
+
+        client = type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                this));
+    }
+
+    /**
+     * Gets the client.
+     * 
+     * @return the client
+     */
+    public T getClient() {
+
+        return client;
+    }
+
+    /**
+     * Adds a result to return by a method.
+     * 
+     * @param method
+     *            the name of the method
+     * @param result
+     *            the result to return, or an exception to throw
+     */
+    public synchronized void script(final String method, final Object result) {
+
+        LinkedList<Object> methodResults = results.get(method);
+        if (null == methodResults) {
+            methodResults = new LinkedList<Object>();
+            results.put(method, methodResults);
+        }
+        methodResults.add(result);
+    }
+
+    /**
+     * Gets the count of calls of a method.
+     * 
+     * @param method
+     *            the name of the method
+     * @return the count of calls of the method
+     */
+    public synchronized int getCallCount(final String method) {
+
+        final Integer count = calls.get(method);
+        return null == count ? 0 : count;
+    }
+
+    /**
+     * Makes the next calls wait until {@link #release()} is called.
+     */
+    public void hold() {
+
+        gate = new CountDownLatch(1);
+    }
+
+    /**
+     * Lets the held calls complete.
+     */
+    public void release() {
+
+        final CountDownLatch held = gate;
+        gate = null;
+        if (held != null) {
+            held.countDown();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object,
+     *      java.lang.reflect.Method, java.lang.Object[])
+     */
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args)
+            throws Throwable {
+
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(this, args);
+        }
+
+        final Object result;
+        synchronized (this) {
+            calls.put(method.getName(), getCallCount(method.getName()) + 1);
+            final LinkedList<Object> methodResults = results.get(method.getName());
+            if (null == methodResults || methodResults.isEmpty()) {
+                throw new IllegalStateException(String.format("no result scripted for %s",
+                        method.getName()));
+            }
+            result = methodResults.removeFirst();
+        }
+
+        final CountDownLatch held = gate;
+        if (held != null) {
+            held.await();
+        }
+        if (result instanceof Throwable) {
+            throw (Throwable) result;
+        }
+        return result;
+    }
+
+    /**
+     * Waits until a thread waits, for example for a request executed by another thread.
+     * 
+     * @param thread
+     *            the thread
+     * @throws InterruptedException
+     *             interrupted while waiting
+     */
+    public static void awaitWaiting(final Thread thread) throws InterruptedException {
+
+        while (thread.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,497 @@
+package fr.itinerennes.business.service;
+
+/*
+ * [license]
+ * Instrumentation tests
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.util.EntityUtils;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Test class for {@link SimpleHttpClient}. Requests are sent to a local server answering a
+ * scripted response.
+ */
+public class SimpleHttpClientTest extends AndroidTestCase {
+
+    /** The local server. */
+    private ScriptedServer server;
+
+    /** The tested client. */
+    private SimpleHttpClient client;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see android.test.AndroidTestCase#setUp()
+     */
+    @Override
+    protected final void setUp() throws Exception {
+
+        super.setUp();
+
+        server = new ScriptedServer();
+        client = new SimpleHttpClient(5000, 5000);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see android.test.AndroidTestCase#tearDown()
+     */
+    @Override
+    protected final void tearDown() throws Exception {
+
+        server.close();
+        super.tearDown();
+    }
+
+    /**
+     * Gets the URL of a path on the local server.
+     * 
+     * @param path
+     *            the path
+     * @return the URL of the path
+     */
+    private String url(final String path) {
+
+        return String.format("http://127.0.0.1:%d%s", server.getPort(), path);
+    }
+
+    /**
+     * Test method for
+     * {@link SimpleHttpClient#execute(org.apache.http.client.methods.HttpUriRequest)}:
+     * the responses must be requested compressed and decoded transparently.
+     * 
+     * @throws Exception
+     *             unexpected error
+     */
+    public final void testGzip() throws Exception {
+
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        final GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        gzip.write("compressed content".getBytes("UTF-8"));
+        gzip.close();
+        server.respond(200, compressed.toByteArray(), "Content-Type", "text/plain",
+                "Content-Encoding", "gzip");
+
+        final HttpResponse response = client.execute(new HttpGet(url("/gzip")));
+
+        assertEquals("gzip", server.getHeader("accept-encoding"));
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        assertNull(response.getFirstHeader("Content-Encoding"));
+        assertEquals("text/plain", response.getEntity().getContentType().getValue());
+        assertEquals("compressed content", EntityUtils.toString(response.getEntity()));
+    }
+
+    /**
+     * Test method for
+     * {@link SimpleHttpClient#execute(org.apache.http.client.methods.HttpUriRequest)}:
+     * the content of an unsuccessful response must be read from the error stream.
+     * 
+     * @throws Exception
+     *             unexpected error
+     */
+    public final void testErrorStream() throws Exception {
+
+        server.respond(404, "not found".getBytes("UTF-8"));
+
+        final HttpResponse response = client.execute(new HttpGet(url("/missing")));
+
+        assertEquals(404, response.getStatusLine().getStatusCode());
+        assertEquals("not found", EntityUtils.toString(response.getEntity()));
+    }
+
+    /**
+     * Test method for
+     * {@link SimpleHttpClient#execute(org.apache.http.client.methods.HttpUriRequest)}:
+     * an entity of known length must be sent with its length.
+     * 
+     * @throws Exception
+     *             unexpected error
+     */
+    public final void testFixedLengthEntity() throws Exception {
+
+        server.respond(200, new byte[0]);
+
+        final HttpPost post = new HttpPost(url("/post"));
+        post.setEntity(new StringEntity("fixed length"));
+        client.execute(post).getEntity().consumeContent();
+
+        assertEquals("POST /post HTTP/1.1", server.getRequestLine());
+        assertEquals("12", server.getHeader("content-length"));
+        assertNull(server.getHeader("transfer-encoding"));
+        assertEquals("fixed length", new String(server.getBody(), "UTF-8"));
+    }
+
+    /**
+     * Test method for
+     * {@link SimpleHttpClient#execute(org.apache.http.client.methods.HttpUriRequest)}:
+     * an entity of unknown length must be sent chunked.
+     * 
+     * @throws Exception
+     *             unexpected error
+     */
+    public final void testChunkedEntity() throws Exception {
+
+        server.respond(200, new byte[0]);
+
+        final HttpPost post = new HttpPost(url("/post"));
+        post.setEntity(new InputStreamEntity(new ByteArrayInputStream("unknown length"
+                .getBytes("UTF-8")), -1));
+        client.execute(post).getEntity().consumeContent();
+
+        assertEquals("chunked", server.getHeader("transfer-encoding"));
+        assertNull(server.getHeader("content-length"));
+        assertEquals("unknown length", new String(server.getBody(), "UTF-8"));
+    }
+
+    /**
+     * Test method for
+     * {@link SimpleHttpClient#execute(HttpHost, org.apache.http.HttpRequest)}:
+     * a relative URI must be resolved against the target.
+     * 
+     * @throws Exception
+     *             unexpected error
+     */
+    public final void testTarget() throws Exception {
+
+        server.respond(200, "ok".getBytes("UTF-8"));
+
+        final HttpResponse response = client.execute(new HttpHost("127.0.0.1", server.getPort()),
+                new BasicHttpRequest("GET", "/relative?q=1"));
+
+        assertEquals("GET /relative?q=1 HTTP/1.1", server.getRequestLine());
+        assertEquals("ok", EntityUtils.toString(response.getEntity()));
+    }
+
+    /**
+     * Test method for {@link SimpleHttpClient#getParams()}: the timeouts and the user agent must
+     * be read from the parameters.
+     * 
+     * @throws Exception
+     *             unexpected error
+     */
+    public final void testParams() throws Exception {
+
+        assertEquals(5000, HttpConnectionParams.getConnectionTimeout(client.getParams()));
+        assertEquals(5000, HttpConnectionParams.getSoTimeout(client.getParams()));
+
+        HttpProtocolParams.setUserAgent(client.getParams(), "ItineRennes/test");
+        server.respond(200, new byte[0]);
+        client.execute(new HttpGet(url("/agent"))).getEntity().consumeContent();
+        assertEquals("ItineRennes/test", server.getHeader("user-agent"));
+
+        // the server doesn't answer the second request
+        HttpConnectionParams.setSoTimeout(client.getParams(), 100);
+        try {
+            client.execute(new HttpGet(url("/timeout")));
+            fail("the request should time out");
+        } catch (final SocketTimeoutException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test method for {@link SimpleHttpClient#getConnectionManager()}: the client mustn't execute
+     * requests once it is shut down.
+     * 
+     * @throws Exception
+     *             unexpected error
+     */
+    public final void testShutdown() throws Exception {
+
+        assertNotNull(client.getConnectionManager().getSchemeRegistry().get("http"));
+        client.getConnectionManager().shutdown();
+        try {
+            client.execute(new HttpGet(url("/shutdown")));
+            fail("a shut down client shouldn't execute requests");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /**
+     * A local HTTP server answering a scripted response to the first request of each connection.
+     * The following requests of a connection aren't answered.
+     */
+    private static final class ScriptedServer extends Thread {
+
+        /** The server socket. */
+        private final ServerSocket socket;
+
+        /** The connection being answered. */
+        private volatile Socket connection;
+
+        /** The response to the next request. */
+        private byte[] response = null;
+
+        /** The request line of the last request. */
+        private String requestLine;
+
+        /** The headers of the last request, by lower case name. */
+        private final Map<String, String> headers = new HashMap<String, String>();
+
+        /** The body of the last request. */
+        private byte[] body;
+
+        /**
+         * Starts a server listening on a free port.
+         * 
+         * @throws IOException
+         *             the server socket can't be opened
+         */
+        ScriptedServer() throws IOException {
+
+            socket = new ServerSocket(0);
+            setDaemon(true);
+            start();
+        }
+
+        /**
+         * Gets the port the server listens on.
+         * 
+         * @return the port of the server
+         */
+        int getPort() {
+
+            return socket.getLocalPort();
+        }
+
+        /**
+         * Sets the response to the next request.
+         * 
+         * @param statusCode
+         *            the status code of the response
+         * @param content
+         *            the content of the response
+         * @param headerNamesAndValues
+         *            the names and the values of the headers of the response
+         * @throws IOException
+         *             the response can't be encoded
+         */
+        synchronized void respond(final int statusCode, final byte[] content,
+                final String... headerNamesAndValues) throws IOException {
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final StringBuilder head = new StringBuilder();
+            head.append("HTTP/1.1 ").append(statusCode).append(" Scripted\r\n");
+            for (int i = 0; i < headerNamesAndValues.length; i += 2) {
+                head.append(headerNamesAndValues[i]).append(": ")
+                        .append(headerNamesAndValues[i + 1]).append("\r\n");
+            }
+            head.append("Content-Length: ").append(content.length).append("\r\n\r\n");
+            out.write(head.toString().getBytes("ISO-8859-1"));
+            out.write(content);
+            response = out.toByteArray();
+        }
+
+        /**
+         * Gets the request line of the last request.
+         * 
+         * @return the request line of the last request
+         */
+        synchronized String getRequestLine() {
+
+            return requestLine;
+        }
+
+        /**
+         * Gets a header of the last request.
+         * 
+         * @param name
+         *            the lower case name of the header
+         * @return the value of the header, or null
+         */
+        synchronized String getHeader(final String name) {
+
+            return headers.get(name);
+        }
+
+        /**
+         * Gets the body of the last request.
+         * 
+         * @return the body of the last request
+         */
+        synchronized byte[] getBody() {
+
+            return body;
+        }
+
+        /**
+         * Closes the server socket and the connection being answered.
+         * 
+         * @throws IOException
+         *             the sockets can't be closed
+         */
+        void close() throws IOException {
+
+            socket.close();
+            if (connection != null) {
+                connection.close();
+            }
+        }
+
+        /**
+         * Answers the requests until the server socket is closed.
+         * 
+         * @see java.lang.Thread#run()
+         */
+        @Override
+        public void run() {
+
+            try {
+                while (true) {
+                    connection = socket.accept();
+                    try {
+                        final InputStream in = connection.getInputStream();
+                        final byte[] answer = readRequest(in);
+                        if (answer != null) {
+                            final OutputStream out = connection.getOutputStream();
+                            out.write(answer);
+                            out.flush();
+                            // waits for the client to close the connection
+                            while (in.read() != -1) {
+                                continue;
+                            }
+                        }
+                    } catch (final IOException e) {
+                        // the client closed the connection
+                    } finally {
+                        connection.close();
+                    }
+                }
+            } catch (final IOException e) {
+                // the server socket is closed
+            }
+        }
+
+        /**
+         * Reads a request and records it.
+         * 
+         * @param in
+         *            the input stream of the connection
+         * @return the scripted response, or null if no response is scripted
+         * @throws IOException
+         *             the request can't be read
+         */
+        private synchronized byte[] readRequest(final InputStream in) throws IOException {
+
+            requestLine = readLine(in);
+            headers.clear();
+            String line = readLine(in);
+            while (line.length() > 0) {
+                final int colon = line.indexOf(':');
+                headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(
+                        colon + 1).trim());
+                line = readLine(in);
+            }
+
+            final ByteArrayOutputStream content = new ByteArrayOutputStream();
+            if ("chunked".equals(headers.get("transfer-encoding"))) {
+                int size = Integer.parseInt(readLine(in).trim(), 16);
+                while (size > 0) {
+                    copy(in, content, size);
+                    readLine(in);
+                    size = Integer.parseInt(readLine(in).trim(), 16);
+                }
+                readLine(in);
+            } else if (headers.containsKey("content-length")) {
+                copy(in, content, Integer.parseInt(headers.get("content-length")));
+            }
+            body = content.toByteArray();
+
+            final byte[] answer = response;
+            response = null;
+            return answer;
+        }
+
+        /**
+         * Reads a line ending with CRLF.
+         * 
+         * @param in
+         *            the input stream
+         * @return the line without its end
+         * @throws IOException
+         *             the line can't be read
+         */
+        private static String readLine(final InputStream in) throws IOException {
+
+            final StringBuilder line = new StringBuilder();
+            int c = in.read();
+            while (c != '\n') {
+                if (c == -1) {
+                    throw new IOException("unexpected end of the request");
+                }
+                if (c != '\r') {
+                    line.append((char) c);
+                }
+                c = in.read();
+            }
+            return line.toString();
+        }
+
+        /**
+         * Copies bytes from a stream to another.
+         * 
+         * @param in
+         *            the input stream
+         * @param out
+         *            the output stream
+         * @param count
+         *            the amount of bytes to copy
+         * @throws IOException
+         *             the bytes can't be read
+         */
+        private static void copy(final InputStream in, final OutputStream out, final int count)
+                throws IOException {
+
+            for (int i = 0; i < count; i++) {
+                final int b = in.read();
+                if (b == -1) {
+                    throw new IOException("unexpected end of the request");
+                }
+                out.write(b);
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package fr.itinerennes.database;
+
+/*
+ * [license]
+ * Instrumentation tests
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.Date;
+
+import android.test.AndroidTestCase;
+
+import fr.itinerennes.ItineRennesApplication;
+import fr.itinerennes.database.Columns.CacheEntriesColumns;
+
+/**
+ * Test class for {@link CacheEntryDao}.
+ */
+public class CacheEntryDaoTest extends AndroidTestCase {
+
+    /** The type of the test entries. */
+    private static final String TYPE = "test";
+
+    /** The maximum count of entries of the tested cache. */
+    private static final int MAX_ENTRIES = 3;
+
+    /** One hour in milliseconds. */
+    private static final long ONE_HOUR = 3600000L;
+
+    /** The tested cache. */
+    private CacheEntryDao cache;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see android.test.AndroidTestCase#setUp()
+     */
+    @Override
+    protected final void setUp() throws Exception {
+
+        super.setUp();
+
+        final ItineRennesApplication appCtx = (ItineRennesApplication) getContext()
+                .getApplicationContext();
+
+        final DatabaseHelper dbHelper = appCtx.getDatabaseHelper();
+        dbHelper.getWritableDatabase().delete(CacheEntriesColumns.CACHE_ENTRIES_TABLE_NAME, null,
+                null);
+        cache = new CacheEntryDao(dbHelper, MAX_ENTRIES);
+    }
+
+    /**
+     * Stores a sample in the cache.
+     * 
+     * @param id
+     *            the identifier of the sample
+     * @param fetched
+     *            the time at which the sample was fetched
+     * @param expires
+     *            the time after which the sample expires
+     */
+    private void put(final String id, final long fetched, final long expires) {
+
+        final Sample sample = new Sample();
+        sample.label = id;
+        sample.date = new Date(fetched);
+        cache.put(TYPE, id, sample, fetched, expires);
+    }
+
+    /**
+     * Test method for {@link CacheEntryDao#get(String, String, Class)}: a cached resource must be
+     * restored as it was stored.
+     */
+    public final void testGet() {
+
+        final long now = System.currentTimeMillis();
+        put("a", now, now + ONE_HOUR);
+
+        final CacheEntryDao.Entry<Sample> entry = cache.get(TYPE, "a", Sample.class);
+        assertNotNull(entry);
+        assertEquals("a", entry.getValue().label);
+        assertEquals(new Date(now), entry.getValue().date);
+        assertEquals(now, entry.getFetched());
+        assertNull(cache.get(TYPE, "b", Sample.class));
+    }
+
+    /**
+     * Test method for {@link CacheEntryDao.Entry#isFresh(long)}.
+     */
+    public final void testIsFresh() {
+
+        final long now = System.currentTimeMillis();
+        put("a", now - 2 * ONE_HOUR, now + ONE_HOUR);
+
+        final CacheEntryDao.Entry<Sample> entry = cache.get(TYPE, "a", Sample.class);
+        assertFalse(entry.isFresh(ONE_HOUR));
+        assertTrue(entry.isFresh(3 * ONE_HOUR));
+    }
+
+    /**
+     * Test method for {@link CacheEntryDao#put(String, String, Object, long, long)}: the expired
+     * entries must be evicted.
+     */
+    public final void testExpiration() {
+
+        final long now = System.currentTimeMillis();
+        put("a", now - 2 * ONE_HOUR, now - ONE_HOUR);
+        assertNull(cache.get(TYPE, "a", Sample.class));
+
+        put("b", now, now + ONE_HOUR);
+        assertNotNull(cache.get(TYPE, "b", Sample.class));
+    }
+
+    /**
+     * Test method for {@link CacheEntryDao#put(String, String, Object, long, long)}: the least
+     * recently stored entries must be evicted once the cache is full.
+     */
+    public final void testOverflow() {
+
+        final long now = System.currentTimeMillis();
+        put("a", now, now + ONE_HOUR);
+        put("b", now, now + ONE_HOUR);
+        put("c", now, now + ONE_HOUR);
+        // replacing "a" makes it the most recent entry
+        put("a", now, now + ONE_HOUR);
+        put("d", now, now + ONE_HOUR);
+
+        assertNotNull(cache.get(TYPE, "a", Sample.class));
+        assertNull(cache.get(TYPE, "b", Sample.class));
+        assertNotNull(cache.get(TYPE, "c", Sample.class));
+        assertNotNull(cache.get(TYPE, "d", Sample.class));
+    }
+
+    /**
+     * Test method for {@link CacheEntryDao#put(String, String, Object, long, long)}: the entries
+     * of a type must not be evicted by the entries of another type.
+     */
+    public final void testOverflowByType() {
+
+        final long now = System.currentTimeMillis();
+        cache.put("other", "a", new Sample(), now, now + ONE_HOUR);
+        for (int i = 0; i <= MAX_ENTRIES; i++) {
+            put(String.valueOf(i), now, now + ONE_HOUR);
+        }
+
+        assertNotNull(cache.get("other", "a", Sample.class));
+        assertNull(cache.get(TYPE, "0", Sample.class));
+        assertNotNull(cache.get(TYPE, String.valueOf(MAX_ENTRIES), Sample.class));
+    }
+
+    /**
+     * A cached resource.
+     */
+    private static final class Sample {
+
+        /** A label. */
+        private String label;
+
+        /** A date. */
+        private Date date;
+    }
+}
@@ -25,8 +25,13 @@ package fr.itinerennes.database;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
 import android.test.AndroidTestCase;
 
+import fr.itinerennes.database.Columns.BookmarksColumns;
+
 /**
  * Test class for {@link DatabaseHelper}.
  * 
@@ -47,4 +52,45 @@ public class DatabaseHelperTest extends AndroidTestCase {
         dbHlpr.getReadableDatabase();
         LOGGER.info("testOpenDatabase.end");
     }
+
+    /**
+     * Test method for {@link DatabaseHelper#getReadOnlyDatabase()}: with write-ahead logging, a
+     * write transaction doesn't prevent reading the last committed state of the database.
+     */
+    public final void testReadOnlyDatabase() {
+
+        LOGGER.info("testReadOnlyDatabase.start");
+        final DatabaseHelper dbHlpr = new DatabaseHelper(this.getContext());
+        final SQLiteDatabase writable = dbHlpr.getWritableDatabase();
+        final SQLiteDatabase readable = dbHlpr.getReadOnlyDatabase();
+        final long count = DatabaseUtils.queryNumEntries(readable,
+                BookmarksColumns.BOOKMARKS_TABLE_NAME);
+
+        final ContentValues values = new ContentValues();
+        values.put(BookmarksColumns.LABEL, "test");
+        values.put(BookmarksColumns.TYPE, "TEST");
+        values.put(BookmarksColumns.ID, "testReadOnlyDatabase");
+
+        DatabaseHelper.beginWriteTransaction(writable);
+        try {
+            writable.insert(BookmarksColumns.BOOKMARKS_TABLE_NAME, null, values);
+            if (dbHlpr.isWriteAheadLoggingEnabled()) {
+                assertNotSame(writable, readable);
+                assertEquals("uncommitted rows shouldn't be visible", count,
+                        DatabaseUtils.queryNumEntries(readable,
+                                BookmarksColumns.BOOKMARKS_TABLE_NAME));
+            }
+            writable.setTransactionSuccessful();
+        } finally {
+            writable.endTransaction();
+        }
+        assertEquals(count + 1, DatabaseUtils.queryNumEntries(readable,
+                BookmarksColumns.BOOKMARKS_TABLE_NAME));
+
+        writable.delete(BookmarksColumns.BOOKMARKS_TABLE_NAME,
+                String.format("%s = ?", BookmarksColumns.ID),
+                new String[] { "testReadOnlyDatabase" });
+        dbHlpr.close();
+        LOGGER.info("testReadOnlyDatabase.end");
+    }
 }
@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 
 import org.osmdroid.util.BoundingBoxE6;
+import org.osmdroid.util.GeoPoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,7 +37,10 @@ import android.test.AndroidTestCase;
 import fr.itinerennes.ItineRennesApplication;
 import fr.itinerennes.TypeConstants;
 import fr.itinerennes.database.Columns.MarkersColumns;
+import fr.itinerennes.database.Columns.StopGroupsColumns;
 import fr.itinerennes.startup.DatabaseLoaderListener;
+import fr.itinerennes.ui.views.overlays.StopOverlayItem;
+import fr.itinerennes.utils.MapUtils;
 
 /**
  * Test class for {@link MarkerDao}.
@@ -66,7 +70,7 @@ public class MarkerDaoTest extends AndroidTestCase {
 
         // load data if necessary
         final DatabaseLoaderListener loader = new DatabaseLoaderListener(appCtx, null,
-                CSVDataReader.markers(appCtx));
+                BinaryDataReader.markers(appCtx));
         loader.execute();
 
         markerDao = new MarkerDao(getContext(), appCtx.getDatabaseHelper());
@@ -160,6 +164,39 @@ public class MarkerDaoTest extends AndroidTestCase {
         LOGGER.info("testGetMarkers.end");
     }
 
+    /**
+     * Test method for {@link MarkerRowMapper}: each row of the markers contained in a bounding box
+     * is mapped to an item of one of the visible types.
+     */
+    public final void testMapMarkers() {
+
+        LOGGER.info("testMapMarkers.start");
+
+        final BoundingBoxE6 bbox = new BoundingBoxE6(48110000, -1680000, 48100000, -1681000);
+        final ArrayList<String> visibleLayers = new ArrayList<String>();
+        visibleLayers.add(TypeConstants.TYPE_SUBWAY);
+        visibleLayers.add(TypeConstants.TYPE_BUS);
+
+        final Cursor c = markerDao.getMarkers(bbox, visibleLayers);
+        assertNotNull("Cursor is null.", c);
+
+        final MarkerRowMapper mapper = new MarkerRowMapper(c);
+        int count = 0;
+        do {
+            final StopOverlayItem item = mapper.map(c);
+            assertNotNull(item.getId());
+            assertTrue(visibleLayers.contains(item.getType()));
+            assertTrue(item.getLocation().getLatitudeE6() <= bbox.getLatNorthE6());
+            assertTrue(item.getLocation().getLatitudeE6() >= bbox.getLatSouthE6());
+            count++;
+        } while (c.moveToNext());
+        c.close();
+
+        assertEquals("bad number of mapped results.", 5, count);
+
+        LOGGER.info("testMapMarkers.end");
+    }
+
     /**
      * Test method for {@link MarkerDao#getMarkers(String, String)} .
      */
@@ -183,4 +220,39 @@ public class MarkerDaoTest extends AndroidTestCase {
 
         LOGGER.info("testGetMarkersWithTextFilter.end");
     }
+
+    /**
+     * Test method for {@link MarkerDao#getStopGroup(String)}: the group must be located at the
+     * barycenter of the markers returned by {@link MarkerDao#getMarkersWithSameLabel(String)}.
+     */
+    public final void testGetStopGroup() {
+
+        LOGGER.info("testGetStopGroup.start");
+
+        final Cursor marker = markerDao.getMarker("2_1016", TypeConstants.TYPE_BUS);
+        assertNotNull("marker 2_1016 should exist", marker);
+        final String androidId = marker.getString(marker.getColumnIndex(MarkersColumns._ID));
+        marker.close();
+
+        final Cursor group = markerDao.getStopGroup(androidId);
+        assertNotNull("the marker should belong to a stop group", group);
+        assertEquals("République Nemours",
+                group.getString(group.getColumnIndex(StopGroupsColumns.LABEL)));
+        assertEquals(TypeConstants.TYPE_BUS,
+                group.getString(group.getColumnIndex(StopGroupsColumns.TYPE)));
+
+        final Cursor members = markerDao.getMarkersWithSameLabel(androidId);
+        final GeoPoint barycenter = MapUtils.getBarycenter(members);
+        assertEquals(members.getCount(),
+                group.getInt(group.getColumnIndex(StopGroupsColumns.MEMBER_COUNT)));
+        members.close();
+
+        assertEquals(barycenter.getLatitudeE6(),
+                group.getInt(group.getColumnIndex(StopGroupsColumns.LATITUDE)));
+        assertEquals(barycenter.getLongitudeE6(),
+                group.getInt(group.getColumnIndex(StopGroupsColumns.LONGITUDE)));
+        group.close();
+
+        LOGGER.info("testGetStopGroup.end");
+    }
 }
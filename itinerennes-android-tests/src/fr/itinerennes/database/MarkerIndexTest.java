@@ -0,0 +1,123 @@
+package fr.itinerennes.database;
+
+/*
+ * [license]
+ * Instrumentation tests
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.ArrayList;
+
+import org.osmdroid.util.BoundingBoxE6;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.test.AndroidTestCase;
+
+import fr.itinerennes.ItineRennesApplication;
+import fr.itinerennes.TypeConstants;
+import fr.itinerennes.database.MarkerIndex.Selection;
+import fr.itinerennes.startup.DatabaseLoaderListener;
+
+/**
+ * Test class for {@link MarkerIndex}.
+ */
+public class MarkerIndexTest extends AndroidTestCase {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MarkerIndexTest.class);
+
+    /** The marker index. */
+    private MarkerIndex markerIndex;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see android.test.AndroidTestCase#setUp()
+     */
+    @Override
+    protected final void setUp() throws Exception {
+
+        super.setUp();
+
+        final ItineRennesApplication appCtx = (ItineRennesApplication) getContext()
+                .getApplicationContext();
+
+        // load data if necessary
+        final DatabaseLoaderListener loader = new DatabaseLoaderListener(appCtx, null,
+                BinaryDataReader.markers(appCtx));
+        loader.execute();
+
+        markerIndex = MarkerIndex.load(appCtx.getDatabaseHelper());
+    }
+
+    /**
+     * Test method for {@link MarkerIndex#select(BoundingBoxE6, java.util.List, Selection)}: the
+     * index must return the same markers as
+     * {@link MarkerDao#getMarkers(BoundingBoxE6, java.util.List)}.
+     */
+    public final void testSelect() {
+
+        LOGGER.info("testSelect.start");
+
+        final BoundingBoxE6 bbox = new BoundingBoxE6(48110000, -1680000, 48100000, -1681000);
+        final ArrayList<String> visibleLayers = new ArrayList<String>();
+        visibleLayers.add(TypeConstants.TYPE_BUS);
+        visibleLayers.add(TypeConstants.TYPE_SUBWAY);
+
+        final Selection selection = new Selection();
+        markerIndex.select(bbox, visibleLayers, selection);
+        assertEquals("bad number of selected markers.", 5, selection.size());
+
+        visibleLayers.add(TypeConstants.TYPE_BIKE);
+
+        markerIndex.select(bbox, visibleLayers, selection);
+        assertEquals("bad number of selected markers.", 6, selection.size());
+
+        for (int i = 0; i < selection.size(); i++) {
+            final int position = selection.get(i);
+            assertTrue(markerIndex.getLatitudeE6(position) >= 48100000);
+            assertTrue(markerIndex.getLatitudeE6(position) <= 48110000);
+            assertTrue(markerIndex.getLongitudeE6(position) >= -1681000);
+            assertTrue(markerIndex.getLongitudeE6(position) <= -1680000);
+        }
+
+        LOGGER.info("testSelect.end");
+    }
+
+    /**
+     * Test method for {@link MarkerIndex#onBookmarkStateChanged(String, String, boolean)}.
+     */
+    public final void testBookmarkStateChanged() {
+
+        LOGGER.info("testBookmarkStateChanged.start");
+
+        final int position = markerIndex.indexOf(TypeConstants.TYPE_BUS, "2_1016");
+        assertTrue("marker 2_1016 should be indexed", position >= 0);
+
+        markerIndex.onBookmarkStateChanged(TypeConstants.TYPE_BUS, "2_1016", true);
+        assertTrue(markerIndex.isBookmarked(position));
+        assertTrue(markerIndex.toOverlayItem(position).isBookmarked());
+
+        markerIndex.onBookmarkStateChanged(TypeConstants.TYPE_BUS, "2_1016", false);
+        assertFalse(markerIndex.isBookmarked(position));
+
+        LOGGER.info("testBookmarkStateChanged.end");
+    }
+}
@@ -0,0 +1,171 @@
+package fr.itinerennes.database;
+
+/*
+ * [license]
+ * Instrumentation tests
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.osmdroid.util.BoundingBoxE6;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import fr.itinerennes.ItineRennesApplication;
+import fr.itinerennes.TypeConstants;
+import fr.itinerennes.startup.DatabaseLoaderListener;
+
+/**
+ * Checks the plans of the hot queries: the test fails if one of them stops using an index.
+ */
+public class QueryPlanTest extends AndroidTestCase {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryPlanTest.class);
+
+    /** The database helper. */
+    private DatabaseHelper dbHelper;
+
+    /** The query statistics, which record the SQL of each query shape. */
+    private QueryStats stats;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see android.test.AndroidTestCase#setUp()
+     */
+    @Override
+    protected final void setUp() throws Exception {
+
+        super.setUp();
+
+        final ItineRennesApplication appCtx = (ItineRennesApplication) getContext()
+                .getApplicationContext();
+
+        // load data if necessary
+        new DatabaseLoaderListener(appCtx, null, BinaryDataReader.markers(appCtx)).execute();
+        new DatabaseLoaderListener(appCtx, null, BinaryDataReader.accessibility(appCtx)).execute();
+
+        dbHelper = appCtx.getDatabaseHelper();
+        stats = dbHelper.getQueryStats();
+        stats.reset();
+
+        // execute each hot query once so its SQL is recorded
+        final MarkerDao markerDao = appCtx.getMarkerDao();
+        final List<String> types = new ArrayList<String>();
+        types.add(TypeConstants.TYPE_BUS);
+        types.add(TypeConstants.TYPE_BIKE);
+        close(markerDao.getMarkers(new BoundingBoxE6(48110000, -1680000, 48100000, -1681000),
+                types));
+        close(markerDao.getMarker("2_1016", TypeConstants.TYPE_BUS));
+        close(markerDao.getMarker("1"));
+        close(markerDao.getStopGroup("1"));
+        close(markerDao.getMarkersWithSameLabel("1"));
+        close(markerDao.getSuggestions("republique"));
+        close(markerDao.searchMarkers("republique"));
+
+        appCtx.getBookmarksService().getBookmark(TypeConstants.TYPE_BUS, "2_1016");
+        new CacheEntryDao(dbHelper, 1).get("test", "2_1016", Object.class);
+    }
+
+    /**
+     * Closes a cursor if it isn't null.
+     * 
+     * @param c
+     *            a cursor
+     */
+    private static void close(final Cursor c) {
+
+        if (c != null) {
+            c.close();
+        }
+    }
+
+    /**
+     * Asserts the plan of the last query of a shape doesn't contain any full scan.
+     * 
+     * @param shape
+     *            the shape of the query
+     */
+    private void assertUsesIndexes(final String shape) {
+
+        final QueryStats.Shape recorded = stats.getShape(shape);
+        assertNotNull(String.format("query %s wasn't executed", shape), recorded);
+
+        final SQLiteDatabase db = dbHelper.getReadOnlyDatabase();
+        final List<String> plan = QueryStats.explain(db, recorded.getSql(),
+                recorded.getSelectionArgs());
+        LOGGER.info("{}: {}", shape, plan);
+        for (final String step : plan) {
+            assertFalse(String.format("query %s doesn't use an index: %s", shape, plan),
+                    QueryStats.isFullScan(step));
+        }
+    }
+
+    /**
+     * Checks the plans of the marker queries.
+     */
+    public final void testMarkerQueries() {
+
+        for (final QueryStats.Shape shape : stats.getShapes()) {
+            if (shape.getName().startsWith("bbox:")) {
+                assertUsesIndexes(shape.getName());
+            }
+        }
+        assertUsesIndexes("markerByIdAndType");
+        assertUsesIndexes("markerByAndroidId");
+        assertUsesIndexes("stopGroup");
+        assertUsesIndexes("markersWithSameLabel");
+        assertUsesIndexes("suggestions");
+        assertUsesIndexes("search");
+    }
+
+    /**
+     * Checks the plans of the bookmarks and cache queries.
+     */
+    public final void testServiceQueries() {
+
+        assertUsesIndexes("getBookmark");
+        assertUsesIndexes("cacheEntry");
+    }
+
+    /**
+     * Checks {@link QueryStats#isFullScan(String)} recognizes the query plans of the different
+     * SQLite versions.
+     */
+    public final void testIsFullScan() {
+
+        assertTrue(QueryStats.isFullScan("TABLE markers AS m"));
+        assertTrue(QueryStats.isFullScan("SCAN TABLE markers AS m (~1000000 rows)"));
+        assertTrue(QueryStats.isFullScan("SCAN m"));
+        assertTrue(QueryStats.isFullScan("SCAN b USING COVERING INDEX bookmarks_idx"));
+        assertFalse(QueryStats.isFullScan("TABLE markers AS m WITH INDEX markers_tile_idx"));
+        assertFalse(QueryStats.isFullScan("TABLE markers AS m USING PRIMARY KEY"));
+        assertFalse(QueryStats.isFullScan("SEARCH m USING INDEX markers_idx (type=? AND id=?)"));
+        assertFalse(QueryStats.isFullScan("SCAN f VIRTUAL TABLE INDEX 2:"));
+        assertFalse(QueryStats.isFullScan("SCAN CONSTANT ROW"));
+        assertFalse(QueryStats.isFullScan("USE TEMP B-TREE FOR ORDER BY"));
+    }
+}
@@ -0,0 +1,190 @@
+package fr.itinerennes.database;
+
+/*
+ * [license]
+ * Instrumentation tests
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import fr.itinerennes.ItineRennesApplication;
+import fr.itinerennes.database.Columns.RoutesStopsColumns;
+import fr.itinerennes.startup.DatabaseLoaderListener;
+
+/**
+ * Test class for {@link RouteStopGraph}.
+ */
+public class RouteStopGraphTest extends AndroidTestCase {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RouteStopGraphTest.class);
+
+    /** The database helper. */
+    private DatabaseHelper dbHelper;
+
+    /** The graph of the routes and stops. */
+    private RouteStopGraph graph;
+
+    /** The DAO reading the graph. */
+    private GtfsDao gtfsDao;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see android.test.AndroidTestCase#setUp()
+     */
+    @Override
+    protected final void setUp() throws Exception {
+
+        super.setUp();
+
+        final ItineRennesApplication appCtx = (ItineRennesApplication) getContext()
+                .getApplicationContext();
+
+        // load data if necessary
+        new DatabaseLoaderListener(appCtx, null, BinaryDataReader.routesStops(appCtx)).execute();
+
+        dbHelper = appCtx.getDatabaseHelper();
+        graph = RouteStopGraph.load(dbHelper);
+        gtfsDao = new GtfsDao(graph);
+    }
+
+    /**
+     * Test method for {@link RouteStopGraph#getRouteForStop(int, int)}: the graph must return the
+     * same routes as the database.
+     */
+    public final void testGetRoutesForStop() {
+
+        LOGGER.info("testGetRoutesForStop.start");
+
+        final Set<String> expected = query(RoutesStopsColumns.ROUTE_ID,
+                RoutesStopsColumns.STOP_ID, "2_1016");
+        assertFalse("stop 2_1016 should be served", expected.isEmpty());
+
+        final int stop = graph.getStopIndex("2_1016");
+        assertTrue("stop 2_1016 should be in the graph", stop >= 0);
+        final Set<String> actual = new HashSet<String>();
+        for (int i = 0; i < graph.getRouteCountForStop(stop); i++) {
+            final int route = graph.getRouteForStop(stop, i);
+            assertTrue(graph.stopsAt(route, stop));
+            actual.add(graph.getRouteId(route));
+        }
+        assertEquals(expected, actual);
+
+        LOGGER.info("testGetRoutesForStop.end");
+    }
+
+    /**
+     * Test method for {@link RouteStopGraph#getStopForRoute(int, int)}: the graph must return the
+     * same stops as the database.
+     */
+    public final void testGetStopsForRoute() {
+
+        LOGGER.info("testGetStopsForRoute.start");
+
+        final Set<String> expected = query(RoutesStopsColumns.STOP_ID,
+                RoutesStopsColumns.ROUTE_ID, "2_0001");
+        assertFalse("route 2_0001 should have stops", expected.isEmpty());
+
+        final int route = graph.getRouteIndex("2_0001");
+        assertTrue("route 2_0001 should be in the graph", route >= 0);
+        final Set<String> actual = new HashSet<String>();
+        for (int i = 0; i < graph.getStopCountForRoute(route); i++) {
+            actual.add(graph.getStopId(graph.getStopForRoute(route, i)));
+        }
+        assertEquals(expected, actual);
+
+        LOGGER.info("testGetStopsForRoute.end");
+    }
+
+    /**
+     * Test method for {@link RouteStopGraph#getRouteIndex(String)} and
+     * {@link RouteStopGraph#getStopIndex(String)} with unknown identifiers.
+     */
+    public final void testUnknownIds() {
+
+        assertEquals(-1, graph.getRouteIndex("unknown"));
+        assertEquals(-1, graph.getStopIndex("unknown"));
+    }
+
+    /**
+     * Test method for {@link GtfsDao#getRoutesForStop(String)} and
+     * {@link GtfsDao#getStopsForRoute(String)}: the cursors must contain the same identifiers as
+     * the database.
+     */
+    public final void testGtfsDao() {
+
+        assertEquals(query(RoutesStopsColumns.ROUTE_ID, RoutesStopsColumns.STOP_ID, "2_1016"),
+                toSet(gtfsDao.getRoutesForStop("2_1016")));
+        assertEquals(query(RoutesStopsColumns.STOP_ID, RoutesStopsColumns.ROUTE_ID, "2_0001"),
+                toSet(gtfsDao.getStopsForRoute("2_0001")));
+
+        final Cursor c = gtfsDao.getStopsForRoute("unknown");
+        assertEquals(0, c.getCount());
+        c.close();
+    }
+
+    /**
+     * Reads the relationships between routes and stops from the database.
+     * 
+     * @param column
+     *            the column to read
+     * @param key
+     *            the column to filter on
+     * @param value
+     *            the value of the filtered column
+     * @return the values of the read column
+     */
+    private Set<String> query(final String column, final String key, final String value) {
+
+        return toSet(dbHelper.getReadOnlyDatabase().query(
+                RoutesStopsColumns.ROUTES_STOPS_TABLE_NAME, new String[] { column },
+                key + " = ?", new String[] { value }, null, null, null));
+    }
+
+    /**
+     * Reads the first column of a cursor and closes it.
+     * 
+     * @param c
+     *            a cursor, or null
+     * @return the values of the first column
+     */
+    private static Set<String> toSet(final Cursor c) {
+
+        final Set<String> values = new HashSet<String>();
+        if (c != null) {
+            try {
+                while (c.moveToNext()) {
+                    values.add(c.getString(0));
+                }
+            } finally {
+                c.close();
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,132 @@
+package fr.itinerennes.database;
+
+/*
+ * [license]
+ * Instrumentation tests
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.app.SearchManager;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import fr.itinerennes.ItineRennesApplication;
+import fr.itinerennes.R;
+import fr.itinerennes.startup.DatabaseLoaderListener;
+
+/**
+ * Test class for {@link SuggestionIndex}.
+ */
+public class SuggestionIndexTest extends AndroidTestCase {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(SuggestionIndexTest.class);
+
+    /** The marker DAO, whose suggestions are the expected ones. */
+    private MarkerDao markerDao;
+
+    /** The suggestion index. */
+    private SuggestionIndex suggestionIndex;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see android.test.AndroidTestCase#setUp()
+     */
+    @Override
+    protected final void setUp() throws Exception {
+
+        super.setUp();
+
+        final ItineRennesApplication appCtx = (ItineRennesApplication) getContext()
+                .getApplicationContext();
+
+        // load data if necessary
+        new DatabaseLoaderListener(appCtx, null, BinaryDataReader.markers(appCtx)).execute();
+
+        markerDao = appCtx.getMarkerDao();
+        suggestionIndex = SuggestionIndex.load(appCtx.getDatabaseHelper(),
+                appCtx.getBookmarksService(), appCtx.getString(R.string.search_address));
+    }
+
+    /**
+     * Reads the suggestions of a cursor and closes it.
+     * 
+     * @param c
+     *            a cursor of suggestions
+     * @return the icons and the label of each suggestion, sorted
+     */
+    private static List<String> toList(final Cursor c) {
+
+        final List<String> suggestions = new ArrayList<String>();
+        final int icon1 = c.getColumnIndexOrThrow(SearchManager.SUGGEST_COLUMN_ICON_1);
+        final int text = c.getColumnIndexOrThrow(SearchManager.SUGGEST_COLUMN_TEXT_1);
+        final int icon2 = c.getColumnIndexOrThrow(SearchManager.SUGGEST_COLUMN_ICON_2);
+        c.moveToPosition(-1);
+        while (c.moveToNext()) {
+            suggestions.add(String.format("%s|%s|%s", c.getString(icon1), c.getString(text),
+                    c.getString(icon2)));
+        }
+        c.close();
+        Collections.sort(suggestions);
+        return suggestions;
+    }
+
+    /**
+     * Test method for {@link SuggestionIndex#getSuggestions(String)}: the index must suggest the
+     * same markers as {@link MarkerDao#getSuggestions(String)}.
+     */
+    public final void testGetSuggestions() {
+
+        LOGGER.info("testGetSuggestions.start");
+
+        for (final String query : new String[] { "rep", "republique", "gare", "mai", "place rep",
+                "zzz" }) {
+            assertEquals(query, toList(markerDao.getSuggestions(query)),
+                    toList(suggestionIndex.getSuggestions(query)));
+        }
+
+        LOGGER.info("testGetSuggestions.end");
+    }
+
+    /**
+     * Test method for {@link SuggestionIndex#getSuggestions(String)}: refining the previous query
+     * as the user types must give the same suggestions as a new query.
+     */
+    public final void testRefineSuggestions() {
+
+        LOGGER.info("testRefineSuggestions.start");
+
+        final String typed = "république nem";
+        for (int i = 3; i <= typed.length(); i++) {
+            final String query = typed.substring(0, i);
+            assertEquals(query, toList(markerDao.getSuggestions(query)),
+                    toList(suggestionIndex.getSuggestions(query)));
+        }
+
+        LOGGER.info("testRefineSuggestions.end");
+    }
+}
@@ -0,0 +1,126 @@
+package fr.itinerennes.startup;
+
+/*
+ * [license]
+ * Instrumentation tests
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.test.AndroidTestCase;
+
+import fr.itinerennes.ItineRennesApplication;
+import fr.itinerennes.database.BinaryDataReader;
+import fr.itinerennes.database.IDataReader;
+
+/**
+ * Measures the throughput of the {@link DatabaseLoaderListener}. Each test empties a table, imports
+ * it again and logs the amount of rows inserted per second.
+ */
+public class DatabaseLoaderBenchmarkTest extends AndroidTestCase {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseLoaderBenchmarkTest.class);
+
+    /** The application. */
+    private ItineRennesApplication appCtx;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see android.test.AndroidTestCase#setUp()
+     */
+    @Override
+    protected final void setUp() throws Exception {
+
+        super.setUp();
+        appCtx = (ItineRennesApplication) getContext().getApplicationContext();
+    }
+
+    /**
+     * Benchmarks the import of the markers and their full-text index.
+     */
+    public final void testMarkersImport() {
+
+        benchmark(BinaryDataReader.markers(appCtx));
+    }
+
+    /**
+     * Benchmarks the import of the accessibility attributes.
+     */
+    public final void testAccessibilityImport() {
+
+        benchmark(BinaryDataReader.accessibility(appCtx));
+    }
+
+    /**
+     * Benchmarks the import of the routes and stops relationships.
+     */
+    public final void testRoutesStopsImport() {
+
+        benchmark(BinaryDataReader.routesStops(appCtx));
+    }
+
+    /**
+     * Empties the table of the given reader, imports it and logs the throughput.
+     * 
+     * @param reader
+     *            the reader providing the data to import
+     */
+    private void benchmark(final IDataReader reader) {
+
+        final SQLiteDatabase db = appCtx.getDatabaseHelper().getWritableDatabase();
+        db.delete(reader.getTable(), null, null);
+
+        final long start = System.nanoTime();
+        new DatabaseLoaderListener(appCtx, null, reader).execute();
+        final long duration = System.nanoTime() - start;
+
+        final long count = countRows(db, reader.getTable());
+        assertEquals("bad number of imported rows.", reader.getRowCount(), count);
+
+        LOGGER.info("{} ({}): {} rows imported in {} ms, {} rows/s", new Object[] {
+                reader.getTable(), reader.getClass().getSimpleName(), count, duration / 1000000,
+                count * 1000000000L / Math.max(duration, 1) });
+    }
+
+    /**
+     * Counts the rows of a table.
+     * 
+     * @param db
+     *            the database
+     * @param table
+     *            the table
+     * @return the amount of rows in the table
+     */
+    private static long countRows(final SQLiteDatabase db, final String table) {
+
+        final SQLiteStatement statement = db.compileStatement(String.format(
+                "SELECT count(*) FROM %s", table));
+        try {
+            return statement.simpleQueryForLong();
+        } finally {
+            statement.close();
+        }
+    }
+}
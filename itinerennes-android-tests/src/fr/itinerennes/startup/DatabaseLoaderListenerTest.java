@@ -0,0 +1,128 @@
+package fr.itinerennes.startup;
+
+/*
+ * [license]
+ * Instrumentation tests
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import fr.itinerennes.ItineRennesApplication;
+import fr.itinerennes.database.BinaryDataReader;
+import fr.itinerennes.database.Columns.DatasetsColumns;
+import fr.itinerennes.database.Columns.MarkersColumns;
+import fr.itinerennes.database.Columns.MarkersFtsColumns;
+
+/**
+ * Test class for {@link DatabaseLoaderListener}.
+ */
+public class DatabaseLoaderListenerTest extends AndroidTestCase {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseLoaderListenerTest.class);
+
+    /** The application. */
+    private ItineRennesApplication appCtx;
+
+    /** The database. */
+    private SQLiteDatabase db;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see android.test.AndroidTestCase#setUp()
+     */
+    @Override
+    protected final void setUp() throws Exception {
+
+        super.setUp();
+        appCtx = (ItineRennesApplication) getContext().getApplicationContext();
+        db = appCtx.getDatabaseHelper().getWritableDatabase();
+
+        // load data if necessary
+        new DatabaseLoaderListener(appCtx, null, BinaryDataReader.markers(appCtx)).execute();
+    }
+
+    /**
+     * A modified dataset must be applied on a table which isn't empty: modified rows are
+     * updated, missing rows are inserted and unknown rows are deleted.
+     */
+    public final void testUpdateAppliesDifferences() {
+
+        LOGGER.info("testUpdateAppliesDifferences.start");
+
+        final long count = count(MarkersColumns.MARKERS_TABLE_NAME, null);
+
+        // on 2012-01-28, 2_1024 means "Republique Nemours"
+        final ContentValues modified = new ContentValues();
+        modified.put(MarkersColumns.LABEL, "Modified");
+        db.update(MarkersColumns.MARKERS_TABLE_NAME, modified, "type = 'BUS' AND id = '2_1024'",
+                null);
+        db.delete(MarkersColumns.MARKERS_TABLE_NAME, "type = 'BUS' AND id = '2_1016'", null);
+        final ContentValues unknown = new ContentValues();
+        unknown.put(MarkersColumns.TYPE, "BUS");
+        unknown.put(MarkersColumns.ID, "unknown");
+        unknown.put(MarkersColumns.LABEL, "Unknown");
+        unknown.put(MarkersColumns.SEARCH_LABEL, "unknown");
+        unknown.put(MarkersColumns.LATITUDE, 0);
+        unknown.put(MarkersColumns.LONGITUDE, 0);
+        db.insert(MarkersColumns.MARKERS_TABLE_NAME, null, unknown);
+        db.delete(DatasetsColumns.DATASETS_TABLE_NAME, null, null);
+
+        new DatabaseLoaderListener(appCtx, null, BinaryDataReader.markers(appCtx)).execute();
+
+        assertEquals(count, count(MarkersColumns.MARKERS_TABLE_NAME, null));
+        assertEquals(0, count(MarkersColumns.MARKERS_TABLE_NAME, "label = 'Modified'"));
+        assertEquals(1, count(MarkersColumns.MARKERS_TABLE_NAME, "id = '2_1016'"));
+        assertEquals(0, count(MarkersColumns.MARKERS_TABLE_NAME, "id = 'unknown'"));
+        assertEquals(count, count(MarkersColumns.MARKERS_TABLE_NAME + " m JOIN "
+                + MarkersFtsColumns.MARKERS_FTS_TABLE_NAME + " f ON m._id = f.docid", null));
+        assertEquals(1, count(DatasetsColumns.DATASETS_TABLE_NAME, null));
+
+        LOGGER.info("testUpdateAppliesDifferences.end");
+    }
+
+    /**
+     * Counts the rows of a table.
+     * 
+     * @param table
+     *            the table
+     * @param where
+     *            an optional filter
+     * @return the amount of rows
+     */
+    private long count(final String table, final String where) {
+
+        final Cursor c = db.rawQuery(String.format("SELECT count(*) FROM %s%s", table,
+                where == null ? "" : " WHERE " + where), null);
+        try {
+            c.moveToFirst();
+            return c.getLong(0);
+        } finally {
+            c.close();
+        }
+    }
+}
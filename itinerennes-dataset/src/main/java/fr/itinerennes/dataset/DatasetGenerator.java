@@ -0,0 +1,535 @@
+package fr.itinerennes.dataset;
+
+/*
+ * [license]
+ * Dataset generator
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.itinerennes.commons.dataset.ColumnarDatasetReader;
+import fr.itinerennes.commons.dataset.ColumnarDatasetWriter;
+import fr.itinerennes.commons.utils.SearchUtils;
+import fr.itinerennes.commons.utils.SpatialUtils;
+
+/**
+ * Generates the SQLite database containing the initial dataset of the application.
+ * <p>
+ * The database is created with the same script as the application database, then the CSV files
+ * of the <code>dataset</code> directory are imported in it. Its <code>user_version</code> is set
+ * to the schema version of the application so the application can check the database is
+ * compatible before importing it, and the checksum of each CSV file is recorded in the
+ * <code>datasets</code> table so later updates of the files can be detected. The resulting file is
+ * gzipped.
+ * <p>
+ * Each CSV file is also converted to the binary, column-oriented format read by
+ * {@link ColumnarDatasetReader}.
+ */
+public final class DatasetGenerator {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatasetGenerator.class);
+
+    /** The database create script, relative to the assets directory. */
+    private static final String CREATE_SCRIPT = "database/create.sql";
+
+    /** The script building the stop groups, relative to the assets directory. */
+    private static final String STOP_GROUPS_SCRIPT = "database/stop_groups.sql";
+
+    /** The application configuration file, relative to the assets directory. */
+    private static final String PROPERTIES = "itinerennes.properties";
+
+    /** The property containing the database schema version. */
+    private static final String SCHEMA_VERSION_KEY = "database.schema.version";
+
+    /** The amount of rows inserted in a single batch. */
+    private static final int BATCH_SIZE = 500;
+
+    /** Type of a text column in the binary datasets. */
+    private static final int TEXT = ColumnarDatasetReader.TYPE_TEXT;
+
+    /** Type of an integer column in the binary datasets. */
+    private static final int INTEGER = ColumnarDatasetReader.TYPE_INTEGER;
+
+    /** Byte buffer length for file copies. */
+    private static final int BYTE_BUF_SIZE = 8192;
+
+    /** The directory containing the application assets. */
+    private final File assetsDir;
+
+    /** The directory containing the CSV files. */
+    private final File csvDir;
+
+    /**
+     * Creates the dataset generator.
+     * 
+     * @param assetsDir
+     *            the directory containing the application assets
+     * @param csvDir
+     *            the directory containing the CSV files
+     */
+    public DatasetGenerator(final File assetsDir, final File csvDir) {
+
+        this.assetsDir = assetsDir;
+        this.csvDir = csvDir;
+    }
+
+    /**
+     * Generates the database and the binary datasets.
+     * 
+     * @param args
+     *            the assets directory, the CSV files directory, the database output file and the
+     *            binary datasets output directory
+     * @throws Exception
+     *             the generation failed
+     */
+    public static void main(final String[] args) throws Exception {
+
+        if (args.length != 4) {
+            System.err.println("Usage: DatasetGenerator <assets dir> <CSV files dir>"
+                    + " <database output> <binary datasets output dir>");
+            System.exit(1);
+        }
+        final DatasetGenerator generator = new DatasetGenerator(new File(args[0]), new File(
+                args[1]));
+        generator.generate(new File(args[2]));
+        generator.generateColumnar(new File(args[3]));
+    }
+
+    /**
+     * Generates the gzipped database.
+     * 
+     * @param output
+     *            the file to write
+     * @throws IOException
+     *             an error occurred while reading the input files or writing the output file
+     * @throws SQLException
+     *             an error occurred while filling the database
+     */
+    public void generate(final File output) throws IOException, SQLException {
+
+        final int schemaVersion = readSchemaVersion();
+        LOGGER.info("Generating dataset {} with schema version {}", output, schemaVersion);
+
+        final File db = File.createTempFile("itinerennes", ".db");
+        try {
+            try {
+                Class.forName("org.sqlite.JDBC");
+            } catch (final ClassNotFoundException e) {
+                throw new IllegalStateException("SQLite JDBC driver is missing", e);
+            }
+
+            final Connection cnx = DriverManager.getConnection("jdbc:sqlite:"
+                    + db.getAbsolutePath());
+            try {
+                cnx.setAutoCommit(false);
+                execScript(cnx, read(new File(assetsDir, CREATE_SCRIPT)));
+                insertMarkers(cnx);
+                execScript(cnx, read(new File(assetsDir, STOP_GROUPS_SCRIPT)));
+                insert(cnx, "accessibility.csv", "accessibility", "id", "type", "wheelchair");
+                insert(cnx, "routes_stops.csv", "routesstops", "route_id", "stop_id");
+                insertChecksum(cnx, "markers.csv", "markers");
+                insertChecksum(cnx, "accessibility.csv", "accessibility");
+                insertChecksum(cnx, "routes_stops.csv", "routesstops");
+                cnx.commit();
+
+                cnx.setAutoCommit(true);
+                execute(cnx, String.format("PRAGMA user_version = %d", schemaVersion));
+                execute(cnx, "VACUUM");
+            } finally {
+                cnx.close();
+            }
+
+            gzip(db, output);
+        } finally {
+            db.delete();
+        }
+
+        LOGGER.info("Dataset generated: {} ({} bytes)", output, output.length());
+    }
+
+    /**
+     * Converts the CSV files to binary datasets.
+     * 
+     * @param outputDir
+     *            the directory where the datasets are written
+     * @throws IOException
+     *             an error occurred while reading the CSV files or writing the datasets
+     */
+    public void generateColumnar(final File outputDir) throws IOException {
+
+        outputDir.mkdirs();
+        writeColumnar("markers", outputDir, TEXT, TEXT, INTEGER, INTEGER, TEXT, TEXT, TEXT);
+        writeColumnar("accessibility", outputDir, TEXT, TEXT, INTEGER);
+        writeColumnar("routes_stops", outputDir, TEXT, TEXT);
+    }
+
+    /**
+     * Converts a CSV file to a binary dataset. The checksum of the CSV file is stored in the
+     * dataset.
+     * 
+     * @param name
+     *            the name of the CSV file, without extension
+     * @param outputDir
+     *            the directory where the dataset is written
+     * @param types
+     *            the type of each column
+     * @throws IOException
+     *             an error occurred while reading the CSV file or writing the dataset
+     */
+    private void writeColumnar(final String name, final File outputDir, final int... types)
+            throws IOException {
+
+        final String csv = name + ".csv";
+        final ColumnarDatasetWriter writer = new ColumnarDatasetWriter(types);
+        final BufferedReader reader = open(csv);
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                writer.addRow(line.split(";", -1));
+            }
+        } finally {
+            reader.close();
+        }
+
+        final File output = new File(outputDir, name + ".bin");
+        final OutputStream out = new FileOutputStream(output);
+        try {
+            writer.write(out, checksum(csv));
+        } finally {
+            out.close();
+        }
+        LOGGER.info("Binary dataset generated: {} ({} bytes)", output, output.length());
+    }
+
+    /**
+     * Inserts the markers and their full-text index. The columns of the CSV file are
+     * <code>type;id;lat;lon;label;search_label;city</code>.
+     * 
+     * @param cnx
+     *            the connection to the database
+     * @throws IOException
+     *             an error occurred while reading the CSV file
+     * @throws SQLException
+     *             an error occurred while inserting the rows
+     */
+    private void insertMarkers(final Connection cnx) throws IOException, SQLException {
+
+        final PreparedStatement markers = cnx.prepareStatement("INSERT INTO markers"
+                + " (_id, type, id, lat, lon, label, search_label, city, tile)"
+                + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        final PreparedStatement fts = cnx
+                .prepareStatement("INSERT INTO markers_fts (docid, words) VALUES (?, ?)");
+
+        final BufferedReader reader = open("markers.csv");
+        try {
+            int rowId = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] data = line.split(";", -1);
+                rowId++;
+
+                markers.setInt(1, rowId);
+                for (int i = 0; i < 7; i++) {
+                    markers.setString(i + 2, data[i]);
+                }
+                markers.setLong(9, SpatialUtils.encode(Integer.parseInt(data[2]),
+                        Integer.parseInt(data[3])));
+                markers.addBatch();
+
+                fts.setInt(1, rowId);
+                fts.setString(2, SearchUtils.toFullTextDocument(data[4], data[5]));
+                fts.addBatch();
+
+                if (rowId % BATCH_SIZE == 0) {
+                    markers.executeBatch();
+                    fts.executeBatch();
+                }
+            }
+            markers.executeBatch();
+            fts.executeBatch();
+            LOGGER.info("{} rows inserted in table markers", rowId);
+        } finally {
+            reader.close();
+            markers.close();
+            fts.close();
+        }
+    }
+
+    /**
+     * Inserts the rows of a CSV file into a table.
+     * 
+     * @param cnx
+     *            the connection to the database
+     * @param csv
+     *            the name of the CSV file
+     * @param table
+     *            the name of the table
+     * @param columns
+     *            the columns of the CSV file
+     * @throws IOException
+     *             an error occurred while reading the CSV file
+     * @throws SQLException
+     *             an error occurred while inserting the rows
+     */
+    private void insert(final Connection cnx, final String csv, final String table,
+            final String... columns) throws IOException, SQLException {
+
+        final StringBuilder sql = new StringBuilder();
+        sql.append("INSERT INTO ").append(table).append(" (");
+        final StringBuilder values = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+                values.append(", ");
+            }
+            sql.append(columns[i]);
+            values.append('?');
+        }
+        sql.append(") VALUES (").append(values).append(')');
+
+        final PreparedStatement statement = cnx.prepareStatement(sql.toString());
+        final BufferedReader reader = open(csv);
+        try {
+            int count = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] data = line.split(";", -1);
+                for (int i = 0; i < columns.length; i++) {
+                    statement.setString(i + 1, data[i]);
+                }
+                statement.addBatch();
+
+                if (++count % BATCH_SIZE == 0) {
+                    statement.executeBatch();
+                }
+            }
+            statement.executeBatch();
+            LOGGER.info("{} rows inserted in table {}", count, table);
+        } finally {
+            reader.close();
+            statement.close();
+        }
+    }
+
+    /**
+     * Records the checksum of a CSV file in the <code>datasets</code> table.
+     * 
+     * @param cnx
+     *            the connection to the database
+     * @param csv
+     *            the name of the CSV file
+     * @param table
+     *            the name of the table the file was imported into
+     * @throws IOException
+     *             an error occurred while reading the CSV file
+     * @throws SQLException
+     *             an error occurred while inserting the checksum
+     */
+    private void insertChecksum(final Connection cnx, final String csv, final String table)
+            throws IOException, SQLException {
+
+        final PreparedStatement statement = cnx
+                .prepareStatement("INSERT INTO datasets (name, checksum) VALUES (?, ?)");
+        try {
+            statement.setString(1, table);
+            statement.setLong(2, checksum(csv));
+            statement.executeUpdate();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Computes the CRC32 checksum of a CSV file. It is recorded with the imported table and stored
+     * in the binary dataset, so the application can detect the dataset changed.
+     * 
+     * @param csv
+     *            the name of the CSV file
+     * @return the checksum of the file
+     * @throws IOException
+     *             an error occurred while reading the CSV file
+     */
+    private long checksum(final String csv) throws IOException {
+
+        final CRC32 crc = new CRC32();
+        final InputStream in = new FileInputStream(new File(csvDir, csv));
+        try {
+            final byte[] buffer = new byte[BYTE_BUF_SIZE];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, len);
+            }
+        } finally {
+            in.close();
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Opens a CSV file and skips its first line containing the row count.
+     * 
+     * @param csv
+     *            the name of the CSV file
+     * @return a reader positioned on the first row
+     * @throws IOException
+     *             the file can't be read
+     */
+    private BufferedReader open(final String csv) throws IOException {
+
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(new File(csvDir, csv)), "UTF-8"));
+        reader.readLine();
+        return reader;
+    }
+
+    /**
+     * Reads the database schema version from the application configuration.
+     * 
+     * @return the database schema version
+     * @throws IOException
+     *             the configuration can't be read
+     */
+    private int readSchemaVersion() throws IOException {
+
+        final Properties props = new Properties();
+        final InputStream in = new FileInputStream(new File(assetsDir, PROPERTIES));
+        try {
+            props.load(in);
+        } finally {
+            in.close();
+        }
+        return Integer.parseInt(props.getProperty(SCHEMA_VERSION_KEY).trim());
+    }
+
+    /**
+     * Executes the given script the same way the application does: the script must contain ';'
+     * only for statement separation.
+     * 
+     * @param cnx
+     *            the connection to the database
+     * @param script
+     *            the script to execute
+     * @throws SQLException
+     *             a statement failed
+     */
+    private static void execScript(final Connection cnx, final String script)
+            throws SQLException {
+
+        for (final String statement : script.replaceAll("[\r\n]*", "").split(";")) {
+            if (statement.trim().length() > 0) {
+                execute(cnx, statement);
+            }
+        }
+    }
+
+    /**
+     * Executes a single SQL statement.
+     * 
+     * @param cnx
+     *            the connection to the database
+     * @param sql
+     *            the statement to execute
+     * @throws SQLException
+     *             the statement failed
+     */
+    private static void execute(final Connection cnx, final String sql) throws SQLException {
+
+        final Statement statement = cnx.createStatement();
+        try {
+            statement.execute(sql);
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Reads a text file.
+     * 
+     * @param file
+     *            the file to read
+     * @return the content of the file
+     * @throws IOException
+     *             the file can't be read
+     */
+    private static String read(final File file) throws IOException {
+
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), "UTF-8"));
+        try {
+            final StringBuilder content = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                content.append(line).append('\n');
+            }
+            return content.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Compresses a file with gzip.
+     * 
+     * @param source
+     *            the file to compress
+     * @param target
+     *            the compressed file to write
+     * @throws IOException
+     *             an error occurred while reading or writing the files
+     */
+    private static void gzip(final File source, final File target) throws IOException {
+
+        target.getParentFile().mkdirs();
+        final InputStream in = new FileInputStream(source);
+        try {
+            final OutputStream out = new GZIPOutputStream(new FileOutputStream(target));
+            try {
+                final byte[] buffer = new byte[BYTE_BUF_SIZE];
+                int len;
+                while ((len = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, len);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -6,12 +6,28 @@ CREATE TABLE "markers" (
     "lon" INTEGER NOT NULL,
     "lat" INTEGER NOT NULL,
     "search_label" TEXT NOT NULL,
-    "city" TEXT
+    "city" TEXT,
+    "tile" INTEGER NOT NULL DEFAULT 0,
+    "group_id" INTEGER NOT NULL DEFAULT 0
 );
 CREATE UNIQUE INDEX "markers_idx" on markers (type ASC, id ASC);
 CREATE INDEX "markers_type_idx" on markers (type ASC);
 CREATE INDEX "markers_search_label_idx" on markers (search_label);
 CREATE INDEX "markers_label_idx" on markers (label);
+CREATE INDEX "markers_tile_idx" on markers (tile ASC);
+CREATE INDEX "markers_group_idx" on markers (group_id ASC);
+CREATE VIRTUAL TABLE "markers_fts" USING fts3("words");
+
+CREATE TABLE "stop_groups" (
+    "_id" INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
+    "label" TEXT NOT NULL,
+    "type" TEXT NOT NULL,
+    "city" TEXT,
+    "lon" INTEGER NOT NULL,
+    "lat" INTEGER NOT NULL,
+    "member_count" INTEGER NOT NULL
+);
+CREATE INDEX "stop_groups_idx" on stop_groups (label ASC, type ASC, city ASC);
 
 CREATE TABLE "routesstops" (
     "_id" INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
@@ -36,4 +52,20 @@ CREATE TABLE "accessibility" (
     "type" TEXT NOT NULL,
     "wheelchair" BOOLEAN NULL
 );
-CREATE UNIQUE INDEX "accessibility_idx" on accessibility (id ASC);
\ No newline at end of file
+CREATE UNIQUE INDEX "accessibility_idx" on accessibility (id ASC);
+
+CREATE TABLE "datasets" (
+    "name" TEXT PRIMARY KEY NOT NULL,
+    "checksum" INTEGER NOT NULL
+);
+
+CREATE TABLE "cache_entries" (
+    "_id" INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
+    "type" TEXT NOT NULL,
+    "id" TEXT NOT NULL,
+    "fetched" INTEGER NOT NULL,
+    "expires" INTEGER NOT NULL,
+    "content" TEXT NOT NULL
+);
+CREATE UNIQUE INDEX "cache_entries_idx" on cache_entries (type ASC, id ASC);
+CREATE INDEX "cache_entries_expires_idx" on cache_entries (expires ASC);
\ No newline at end of file
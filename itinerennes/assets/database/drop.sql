@@ -3,6 +3,12 @@ DROP INDEX IF EXISTS "markers_idx";
 DROP INDEX IF EXISTS "markers_type_idx";
 DROP INDEX IF EXISTS "markers_search_label_idx";
 DROP INDEX IF EXISTS "markers_label_idx";
+DROP INDEX IF EXISTS "markers_tile_idx";
+DROP INDEX IF EXISTS "markers_group_idx";
+DROP TABLE IF EXISTS "markers_fts";
+
+DROP TABLE IF EXISTS "stop_groups";
+DROP INDEX IF EXISTS "stop_groups_idx";
 
 DROP TABLE IF EXISTS "routesstops";
 DROP INDEX IF EXISTS "routesstops_idx";
@@ -15,6 +21,12 @@ DROP INDEX IF EXISTS "bookmarks_idx";
 DROP TABLE IF EXISTS "accessibility";
 DROP INDEX IF EXISTS "accessibility_idx";
 
+DROP TABLE IF EXISTS "datasets";
+
+DROP TABLE IF EXISTS "cache_entries";
+DROP INDEX IF EXISTS "cache_entries_idx";
+DROP INDEX IF EXISTS "cache_entries_expires_idx";
+
 
 DROP TABLE IF EXISTS "bus_stations";
 DROP INDEX IF EXISTS "bus_stations_id_idx";
@@ -0,0 +1,6 @@
+DELETE FROM stop_groups;
+INSERT INTO stop_groups (label, type, city, lon, lat, member_count)
+    SELECT label, type, city, CAST(avg(lon) AS INTEGER), CAST(avg(lat) AS INTEGER), count(*)
+    FROM markers GROUP BY label, type, city;
+UPDATE markers SET group_id = (SELECT g._id FROM stop_groups g
+    WHERE g.label = markers.label AND g.type = markers.type AND g.city IS markers.city);
\ No newline at end of file
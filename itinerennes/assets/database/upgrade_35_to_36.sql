@@ -0,0 +1,3 @@
+ALTER TABLE "markers" ADD COLUMN "tile" INTEGER NOT NULL DEFAULT 0;
+CREATE INDEX "markers_tile_idx" on markers (tile ASC);
+DELETE FROM markers;
\ No newline at end of file
@@ -0,0 +1,2 @@
+CREATE VIRTUAL TABLE "markers_fts" USING fts3("words");
+DELETE FROM markers;
\ No newline at end of file
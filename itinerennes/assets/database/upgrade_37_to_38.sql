@@ -0,0 +1,4 @@
+CREATE TABLE "datasets" (
+    "name" TEXT PRIMARY KEY NOT NULL,
+    "checksum" INTEGER NOT NULL
+);
\ No newline at end of file
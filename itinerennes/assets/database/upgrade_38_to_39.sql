@@ -0,0 +1,13 @@
+ALTER TABLE "markers" ADD COLUMN "group_id" INTEGER NOT NULL DEFAULT 0;
+CREATE INDEX "markers_group_idx" on markers (group_id ASC);
+CREATE TABLE "stop_groups" (
+    "_id" INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
+    "label" TEXT NOT NULL,
+    "type" TEXT NOT NULL,
+    "city" TEXT,
+    "lon" INTEGER NOT NULL,
+    "lat" INTEGER NOT NULL,
+    "member_count" INTEGER NOT NULL
+);
+CREATE INDEX "stop_groups_idx" on stop_groups (label ASC, type ASC, city ASC);
+DELETE FROM markers;
\ No newline at end of file
@@ -0,0 +1,10 @@
+CREATE TABLE "cache_entries" (
+    "_id" INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
+    "type" TEXT NOT NULL,
+    "id" TEXT NOT NULL,
+    "fetched" INTEGER NOT NULL,
+    "expires" INTEGER NOT NULL,
+    "content" TEXT NOT NULL
+);
+CREATE UNIQUE INDEX "cache_entries_idx" on cache_entries (type ASC, id ASC);
+CREATE INDEX "cache_entries_expires_idx" on cache_entries (expires ASC);
\ No newline at end of file
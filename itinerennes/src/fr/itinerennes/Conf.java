@@ -86,6 +86,39 @@ public final class Conf {
     /** The database schema version. */
     public static final int DATABASE_SCHEMA_VERSION;
 
+    /** Duration in milliseconds above which a query is logged as a slow query. */
+    public static final int DATABASE_SLOW_QUERY_THRESHOLD;
+
+    /*
+     * Cache constants.
+     */
+    /** Age in milliseconds under which a cached stop schedule is displayed without refresh. */
+    public static final int CACHE_SCHEDULE_FRESH;
+
+    /** Age in milliseconds after which a cached stop schedule is evicted. */
+    public static final int CACHE_SCHEDULE_TTL;
+
+    /** Maximum count of entries of each type kept in the cache. */
+    public static final int CACHE_MAX_ENTRIES;
+
+    /** Maximum size in bytes of the cache of the HTTP responses. */
+    public static final int CACHE_HTTP_SIZE;
+
+    /** Age in milliseconds after which the snapshot of the bike stations is refreshed. */
+    public static final int CACHE_BIKE_TTL;
+
+    /** Age in milliseconds after which the relay parks are fetched again. */
+    public static final int CACHE_KEOLIS_PARKS_TTL;
+
+    /** Age in milliseconds after which the line alerts are fetched again. */
+    public static final int CACHE_KEOLIS_ALERTS_TTL;
+
+    /** Age in milliseconds after which the persisted keolis data is evicted. */
+    public static final int CACHE_KEOLIS_RETENTION;
+
+    /** Age in milliseconds after which the cached results of a Nominatim search are evicted. */
+    public static final int CACHE_NOMINATIM_TTL;
+
     /*
      * Misc.
      */
@@ -125,6 +158,17 @@ public final class Conf {
             ITINERENNES_API_URL = getUrl(props, "itinerennes.api.url");
 
             DATABASE_SCHEMA_VERSION = getInteger(props, "database.schema.version");
+            DATABASE_SLOW_QUERY_THRESHOLD = getInteger(props, "database.slow.query.threshold");
+
+            CACHE_SCHEDULE_FRESH = getInteger(props, "cache.schedule.fresh");
+            CACHE_SCHEDULE_TTL = getInteger(props, "cache.schedule.ttl");
+            CACHE_MAX_ENTRIES = getInteger(props, "cache.max.entries");
+            CACHE_HTTP_SIZE = getInteger(props, "cache.http.size");
+            CACHE_BIKE_TTL = getInteger(props, "cache.bike.ttl");
+            CACHE_KEOLIS_PARKS_TTL = getInteger(props, "cache.keolis.parks.ttl");
+            CACHE_KEOLIS_ALERTS_TTL = getInteger(props, "cache.keolis.alerts.ttl");
+            CACHE_KEOLIS_RETENTION = getInteger(props, "cache.keolis.retention");
+            CACHE_NOMINATIM_TTL = getInteger(props, "cache.nominatim.ttl");
 
             ACRA_ENABLED = getBoolean(props, "acra.enabled");
             TOAST_DURATION = getInteger(props, "toast.duration");
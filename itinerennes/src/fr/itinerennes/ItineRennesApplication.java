@@ -22,6 +22,7 @@ package fr.itinerennes;
  * [/license]
  */
 
+import java.io.File;
 import java.lang.reflect.Method;
 
 import org.acra.ACRA;
@@ -52,10 +53,22 @@ import fr.dudie.nominatim.model.BoundingBox;
 import fr.itinerennes.api.client.ItineRennesApiClient;
 import fr.itinerennes.api.client.JsonItineRennesApiClient;
 import fr.itinerennes.business.service.AccessibilityService;
+import fr.itinerennes.business.service.BikeStationRepository;
 import fr.itinerennes.business.service.BookmarkService;
+import fr.itinerennes.business.service.CachingHttpClient;
+import fr.itinerennes.business.service.CoalescingHttpClient;
+import fr.itinerennes.business.service.HttpResponseCache;
+import fr.itinerennes.business.service.KeolisCache;
 import fr.itinerennes.business.service.LineIconService;
+import fr.itinerennes.business.service.NominatimSearchService;
+import fr.itinerennes.business.service.ScheduleService;
+import fr.itinerennes.business.service.SimpleHttpClient;
+import fr.itinerennes.database.CacheEntryDao;
 import fr.itinerennes.database.DatabaseHelper;
 import fr.itinerennes.database.MarkerDao;
+import fr.itinerennes.database.MarkerIndex;
+import fr.itinerennes.database.RouteStopGraph;
+import fr.itinerennes.database.SuggestionIndex;
 import fr.itinerennes.exceptions.DefaultExceptionHandler;
 import fr.itinerennes.exceptions.ExceptionHandler;
 import fr.itinerennes.startup.LoadingActivity;
@@ -71,6 +84,12 @@ public class ItineRennesApplication extends Application {
     private static final Logger LOGGER = LoggerFactory
             .getLogger(ItineRennesApplication.class);
 
+    /** The first API level where {@link SimpleHttpClient} is used instead of the Apache client. */
+    private static final int SIMPLE_HTTP_CLIENT_MIN_SDK = 9;
+
+    /** The timeout in milliseconds to establish a connection. */
+    private static final int CONNECTION_TIMEOUT = 60000;
+
     /** The database helper. */
     private DatabaseHelper databaseHelper;
 
@@ -84,6 +103,15 @@ public class ItineRennesApplication extends Application {
     /** The marker DAO. */
     private MarkerDao markerDao;
 
+    /** The in-memory index of the markers. */
+    private MarkerIndex markerIndex;
+
+    /** The in-memory graph of the routes and stops. */
+    private RouteStopGraph routeStopGraph;
+
+    /** The in-memory index of the labels of the markers, for search suggestions. */
+    private SuggestionIndex suggestionIndex;
+
     /** The line icon service. */
     private LineIconService lineIconService;
 
@@ -93,6 +121,15 @@ public class ItineRennesApplication extends Application {
     /** The accessibility service. */
     private AccessibilityService accessibilityService;
 
+    /** The schedule service. */
+    private ScheduleService scheduleService;
+
+    /** The repository of the bike stations. */
+    private BikeStationRepository bikeStationRepository;
+
+    /** The cache of the keolis data. */
+    private KeolisCache keolisCache;
+
     /** The keolis client. */
     private KeolisClient keolisClient;
 
@@ -102,6 +139,9 @@ public class ItineRennesApplication extends Application {
     /** The Nominatim client. */
     private NominatimClient nominatimClient;
 
+    /** The Nominatim search service. */
+    private NominatimSearchService nominatimSearchService;
+
     /** The Progress Http Client. */
     private HttpClient httpClient;
 
@@ -249,6 +289,62 @@ public class ItineRennesApplication extends Application {
         return accessibilityService;
     }
 
+    /**
+     * Gets a reference to the ScheduleService.
+     * 
+     * @return a reference to the {@link ScheduleService}
+     */
+    public final synchronized ScheduleService getScheduleService() {
+
+        if (scheduleService == null) {
+            scheduleService = new ScheduleService(getItineRennesApiClient(), new CacheEntryDao(
+                    getDatabaseHelper(), Conf.CACHE_MAX_ENTRIES));
+        }
+        return scheduleService;
+    }
+
+    /**
+     * Gets a reference to the BikeStationRepository.
+     * 
+     * @return a reference to the {@link BikeStationRepository}
+     */
+    public final synchronized BikeStationRepository getBikeStationRepository() {
+
+        if (bikeStationRepository == null) {
+            bikeStationRepository = new BikeStationRepository(getKeolisClient(),
+                    Conf.CACHE_BIKE_TTL);
+        }
+        return bikeStationRepository;
+    }
+
+    /**
+     * Gets a reference to the KeolisCache.
+     * 
+     * @return a reference to the {@link KeolisCache}
+     */
+    public final synchronized KeolisCache getKeolisCache() {
+
+        if (keolisCache == null) {
+            keolisCache = new KeolisCache(getKeolisClient(), new CacheEntryDao(
+                    getDatabaseHelper(), Conf.CACHE_MAX_ENTRIES));
+        }
+        return keolisCache;
+    }
+
+    /**
+     * Gets a reference to the NominatimSearchService.
+     * 
+     * @return a reference to the {@link NominatimSearchService}
+     */
+    public final synchronized NominatimSearchService getNominatimSearchService() {
+
+        if (nominatimSearchService == null) {
+            nominatimSearchService = new NominatimSearchService(getNominatimClient(),
+                    new CacheEntryDao(getDatabaseHelper(), Conf.CACHE_MAX_ENTRIES));
+        }
+        return nominatimSearchService;
+    }
+
     /**
      * Gets a reference to the MarkerDao.
      * 
@@ -264,23 +360,74 @@ public class ItineRennesApplication extends Application {
     }
 
     /**
-     * Gets a reference to the HttpClient.
+     * Gets a reference to the MarkerIndex. The first call loads all the markers from the
+     * database, so it shouldn't be done from the UI thread.
      * 
-     * @return a reference to the {@link ProgressHttpClient}
+     * @return a reference to the {@link MarkerIndex}
      */
-    public final HttpClient getHttpClient() {
+    public final synchronized MarkerIndex getMarkerIndex() {
 
-        if (httpClient == null) {
-            final SchemeRegistry registry = new SchemeRegistry();
-            registry.register(new Scheme("http", new PlainSocketFactory(), 80));
-            registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+        if (markerIndex == null) {
+            markerIndex = MarkerIndex.load(getDatabaseHelper());
+            getBookmarksService().addListener(markerIndex);
+        }
+        return markerIndex;
+    }
+
+    /**
+     * Drops the in-memory copies of the database tables, which are stale once the startup
+     * listeners modified the database. They are loaded again the next time they are needed.
+     */
+    public final synchronized void onDatabaseLoaded() {
+
+        if (markerIndex != null) {
+            getBookmarksService().removeListener(markerIndex);
+            markerIndex = null;
+        }
+        suggestionIndex = null;
+        routeStopGraph = null;
+    }
+
+    /**
+     * Gets a reference to the RouteStopGraph. The first call loads all the relationships between
+     * routes and stops from the database, so it shouldn't be done from the UI thread.
+     * 
+     * @return a reference to the {@link RouteStopGraph}
+     */
+    public final synchronized RouteStopGraph getRouteStopGraph() {
 
-            final HttpParams cxParams = new BasicHttpParams();
-            ConnManagerParams.setMaxTotalConnections(cxParams, 5);
-            HttpConnectionParams.setConnectionTimeout(cxParams, 60000);
-            final ThreadSafeClientConnManager connexionManager = new ThreadSafeClientConnManager(
-                    cxParams, registry);
+        if (routeStopGraph == null) {
+            routeStopGraph = RouteStopGraph.load(getDatabaseHelper());
+        }
+        return routeStopGraph;
+    }
+
+    /**
+     * Gets a reference to the SuggestionIndex. The first call loads the labels of all the markers
+     * from the database, so it shouldn't be done from the UI thread.
+     * 
+     * @return a reference to the {@link SuggestionIndex}
+     */
+    public final synchronized SuggestionIndex getSuggestionIndex() {
+
+        if (suggestionIndex == null) {
+            suggestionIndex = SuggestionIndex.load(getDatabaseHelper(), getBookmarksService(),
+                    getString(R.string.search_address));
+        }
+        return suggestionIndex;
+    }
 
+    /**
+     * Gets a reference to the HttpClient. The responses of the GET requests are cached on disk,
+     * see {@link CachingHttpClient}, and shared between the identical requests executed
+     * concurrently, see {@link CoalescingHttpClient}. From Gingerbread, the requests are executed
+     * by the lighter {@link SimpleHttpClient}, the Apache client is used on the older versions.
+     * 
+     * @return a reference to the {@link CoalescingHttpClient}
+     */
+    public final HttpClient getHttpClient() {
+
+        if (httpClient == null) {
             final String appVersion = VersionUtils.getCurrent(this);
             final String userAgent = String.format(
                     "ItineRennes/%s (Android/%s; SDK %s; %s; %s)", appVersion,
@@ -291,7 +438,26 @@ public class ItineRennesApplication extends Application {
             final HttpParams clientParams = new BasicHttpParams();
             clientParams.setParameter(HttpProtocolParams.USER_AGENT, userAgent);
 
-            httpClient = new DefaultHttpClient(connexionManager, clientParams);
+            final HttpClient networkClient;
+            if (android.os.Build.VERSION.SDK_INT >= SIMPLE_HTTP_CLIENT_MIN_SDK) {
+                HttpConnectionParams.setConnectionTimeout(clientParams, CONNECTION_TIMEOUT);
+                networkClient = new SimpleHttpClient(clientParams);
+            } else {
+                final SchemeRegistry registry = new SchemeRegistry();
+                registry.register(new Scheme("http", new PlainSocketFactory(), 80));
+                registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+
+                final HttpParams cxParams = new BasicHttpParams();
+                ConnManagerParams.setMaxTotalConnections(cxParams, 5);
+                HttpConnectionParams.setConnectionTimeout(cxParams, CONNECTION_TIMEOUT);
+                final ThreadSafeClientConnManager connManager = new ThreadSafeClientConnManager(
+                        cxParams, registry);
+                networkClient = new DefaultHttpClient(connManager, clientParams);
+            }
+
+            final HttpClient cachingClient = new CachingHttpClient(networkClient,
+                    new HttpResponseCache(new File(getCacheDir(), "http"), Conf.CACHE_HTTP_SIZE));
+            httpClient = new CoalescingHttpClient(cachingClient);
         }
 
         return httpClient;
@@ -22,17 +22,22 @@ package fr.itinerennes.business.service;
  * [/license]
  */
 
+import java.util.Arrays;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
 
 import fr.itinerennes.database.Columns.AccessibilityColumns;
 import fr.itinerennes.database.DatabaseHelper;
 
 /**
  * A service to fetch accessibility attributes from database.
+ * <p>
+ * The accessible resources are loaded once in a sorted array of keys, so
+ * {@link #isAccessible(String, String)} is a binary search which never queries the database. The
+ * array is loaded by {@link #load()} at startup, or on the first call otherwise.
  * 
  * @author Olivier Boudet
  */
@@ -41,6 +46,13 @@ public class AccessibilityService extends AbstractService implements Accessibili
     /** The event logger. */
     private static final Logger LOGGER = LoggerFactory.getLogger(AccessibilityService.class);
 
+    /** SQL query used to fetch the accessible resources. */
+    private static final String GET_ACCESSIBLE = String.format(
+            "SELECT %s, %s FROM %s WHERE %s = 1", TYPE, ID, ACCESSIBILITY_TABLE_NAME, WHEELCHAIR);
+
+    /** The sorted keys of the accessible resources, see {@link #key(String, String)}. */
+    private volatile String[] accessible;
+
     /**
      * Creates the accessibility service.
      * 
@@ -52,6 +64,46 @@ public class AccessibilityService extends AbstractService implements Accessibili
         super(dbHelper);
     }
 
+    /**
+     * Gets the key of a resource in the array of accessible resources.
+     * 
+     * @param type
+     *            type of the resource
+     * @param id
+     *            the identifier of the resource
+     * @return the key of the resource
+     */
+    private static String key(final String type, final String id) {
+
+        return type + '\n' + id;
+    }
+
+    /**
+     * Loads the accessible resources from the database. It must be called again when the
+     * accessibility table is modified.
+     */
+    public final synchronized void load() {
+
+        LOGGER.debug("load.start");
+
+        final Cursor c = dbHelper.getQueryStats().query(dbHelper.getReadOnlyDatabase(),
+                "accessibility", GET_ACCESSIBLE, null);
+        final String[] keys;
+        try {
+            keys = new String[c.getCount()];
+            int i = 0;
+            while (c.moveToNext()) {
+                keys[i++] = key(c.getString(0), c.getString(1));
+            }
+        } finally {
+            c.close();
+        }
+        Arrays.sort(keys);
+        accessible = keys;
+
+        LOGGER.debug("load.end - {} accessible resources", keys.length);
+    }
+
     /**
      * Returns whether or not a resource is accessible for wheelchairs.
      * 
@@ -66,15 +118,15 @@ public class AccessibilityService extends AbstractService implements Accessibili
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("isAccessible.start - id={}, type={}", id, type);
         }
-        final SQLiteDatabase database = dbHelper.getWritableDatabase();
-        final String selection = String
-                .format("%s = ? AND %s = ? AND %s = ?", ID, TYPE, WHEELCHAIR);
-        final String[] selectionArgs = new String[] { id, type, "1" };
-        final Cursor c = database.query(ACCESSIBILITY_TABLE_NAME, new String[] { _ID }, selection,
-                selectionArgs, null, null, null);
-
-        final boolean hasResult = c.moveToNext();
-        c.close();
+        if (accessible == null) {
+            synchronized (this) {
+                if (accessible == null) {
+                    load();
+                }
+            }
+        }
+
+        final boolean hasResult = Arrays.binarySearch(accessible, key(type, id)) >= 0;
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("isAccessible.end - isAccessible={}", hasResult);
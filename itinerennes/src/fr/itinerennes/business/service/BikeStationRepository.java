@@ -0,0 +1,232 @@
+package fr.itinerennes.business.service;
+
+/*
+ * [license]
+ * ItineRennes
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.dudie.keolis.client.KeolisClient;
+import fr.dudie.keolis.model.BikeStation;
+
+import fr.itinerennes.Conf;
+import fr.itinerennes.commons.utils.RequestCoalescer;
+
+/**
+ * A repository of the bike stations shared by the widget, the map box and the overlays.
+ * <p>
+ * All the bike stations are fetched with a single request and kept in an immutable
+ * {@link Snapshot} indexed by station identifier. The snapshot is fetched again once it is older
+ * than {@link Conf#CACHE_BIKE_TTL} milliseconds, and the callers requesting it concurrently share
+ * the same request.
+ */
+public final class BikeStationRepository {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(BikeStationRepository.class);
+
+    /** The key of the request fetching the bike stations. */
+    private static final String ALL_STATIONS = "all";
+
+    /** The keolis client. */
+    private final KeolisClient client;
+
+    /** Age in milliseconds after which the snapshot is fetched again. */
+    private final long ttl;
+
+    /** The request fetching the bike stations, if any. */
+    private final RequestCoalescer<String, Snapshot> requests;
+
+    /** The last snapshot of the bike stations, or null if they were never fetched. */
+    private volatile Snapshot snapshot;
+
+    /**
+     * Creates the bike station repository.
+     * 
+     * @param client
+     *            the keolis client
+     * @param ttl
+     *            age in milliseconds after which the snapshot is fetched again
+     */
+    public BikeStationRepository(final KeolisClient client, final long ttl) {
+
+        this.client = client;
+        this.ttl = ttl;
+        requests = new RequestCoalescer<String, Snapshot>();
+    }
+
+    /**
+     * Gets the last snapshot of the bike stations. This method doesn't access the network, so it
+     * can be called from the UI thread.
+     * 
+     * @return the last snapshot of the bike stations, or null if they were never fetched
+     */
+    public Snapshot getCachedSnapshot() {
+
+        return snapshot;
+    }
+
+    /**
+     * Gets a snapshot of the bike stations younger than the time to live, fetching all of them
+     * if necessary.
+     * 
+     * @return a snapshot of the bike stations
+     * @throws IOException
+     *             the bike stations can't be fetched
+     */
+    public Snapshot getSnapshot() throws IOException {
+
+        final Snapshot current = snapshot;
+        if (current != null && current.isFresh(ttl)) {
+            return current;
+        }
+        return requests.execute(ALL_STATIONS, new RequestCoalescer.Request<Snapshot>() {
+
+            @Override
+            public Snapshot execute() throws IOException {
+
+                return refresh();
+            }
+        });
+    }
+
+    /**
+     * Gets a bike station from a snapshot younger than the time to live.
+     * 
+     * @param id
+     *            the identifier of the bike station
+     * @return the bike station, or null if it doesn't exist
+     * @throws IOException
+     *             the bike stations can't be fetched
+     */
+    public BikeStation getBikeStation(final String id) throws IOException {
+
+        return getSnapshot().get(id);
+    }
+
+    /**
+     * Fetches all the bike stations and replaces the snapshot.
+     * 
+     * @return the new snapshot
+     * @throws IOException
+     *             the bike stations can't be fetched
+     */
+    private Snapshot refresh() throws IOException {
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("refresh.start");
+        }
+
+        final long fetched = System.currentTimeMillis();
+        final List<BikeStation> stations = client.getAllBikeStations();
+        final Map<String, BikeStation> byId = new HashMap<String, BikeStation>();
+        if (stations != null) {
+            for (final BikeStation station : stations) {
+                byId.put(station.getId(), station);
+            }
+        }
+        final Snapshot refreshed = new Snapshot(byId, fetched);
+        snapshot = refreshed;
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("refresh.end - count={}", byId.size());
+        }
+        return refreshed;
+    }
+
+    /**
+     * An immutable snapshot of the bike stations, indexed by identifier.
+     */
+    public static final class Snapshot {
+
+        /** The bike stations, by identifier. */
+        private final Map<String, BikeStation> stations;
+
+        /** The time in milliseconds at which the bike stations were fetched. */
+        private final long fetched;
+
+        /**
+         * Creates a snapshot of the bike stations.
+         * 
+         * @param stations
+         *            the bike stations, by identifier
+         * @param fetched
+         *            the time in milliseconds at which the bike stations were fetched
+         */
+        private Snapshot(final Map<String, BikeStation> stations, final long fetched) {
+
+            this.stations = Collections.unmodifiableMap(stations);
+            this.fetched = fetched;
+        }
+
+        /**
+         * Gets a bike station.
+         * 
+         * @param id
+         *            the identifier of the bike station
+         * @return the bike station, or null if it doesn't exist
+         */
+        public BikeStation get(final String id) {
+
+            return stations.get(id);
+        }
+
+        /**
+         * Gets all the bike stations.
+         * 
+         * @return an unmodifiable collection of all the bike stations
+         */
+        public Collection<BikeStation> getAll() {
+
+            return stations.values();
+        }
+
+        /**
+         * Gets the time at which the bike stations were fetched.
+         * 
+         * @return the time in milliseconds at which the bike stations were fetched
+         */
+        public long getFetched() {
+
+            return fetched;
+        }
+
+        /**
+         * Gets whether the snapshot is younger than the given age.
+         * 
+         * @param maxAge
+         *            the maximum age in milliseconds
+         * @return true if the snapshot was fetched less than maxAge milliseconds ago
+         */
+        public boolean isFresh(final long maxAge) {
+
+            return System.currentTimeMillis() - fetched < maxAge;
+        }
+    }
+}
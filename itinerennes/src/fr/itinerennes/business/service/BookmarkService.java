@@ -24,6 +24,8 @@ package fr.itinerennes.business.service;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,6 +42,13 @@ import fr.itinerennes.utils.IOUtils;
 
 /**
  * A service to manage user bookmarks.
+ * <p>
+ * The keys of the bookmarks are kept in memory: they are loaded from the database by
+ * {@link #load()}, in background when the application starts, then written through by
+ * {@link #setStarred(String, String, String)} and {@link #setNotStarred(String, String)}. Once
+ * they are loaded, {@link #isStarred(String, String)} is a hash lookup which doesn't lock nor
+ * execute any query, so it can be called from the UI thread. A call made before that loads them
+ * on the calling thread.
  * 
  * @author Jérémie Huchet
  */
@@ -48,8 +57,30 @@ public final class BookmarkService extends AbstractService implements BookmarksC
     /** The event logger. */
     private static final Logger LOGGER = LoggerFactory.getLogger(BookmarkService.class);
 
+    /** SQL query used to fetch the keys of all the bookmarks. */
+    private static final String GET_STARRED = String.format("SELECT %s, %s FROM %s", TYPE, ID,
+            BOOKMARKS_TABLE_NAME);
+
+    /** SQL query used to fetch a bookmark. */
+    private static final String GET_BOOKMARK = String.format(
+            "SELECT %s, %s, %s FROM %s WHERE %s = ? AND %s = ?", LABEL, TYPE, ID,
+            BOOKMARKS_TABLE_NAME, TYPE, ID);
+
+    /** SQL query used to fetch all the bookmarks. */
+    private static final String GET_ALL_BOOKMARKS = String.format("SELECT %s, %s, %s FROM %s",
+            LABEL, TYPE, ID, BOOKMARKS_TABLE_NAME);
+
     /** A list of listeners on bookmarks modifications. */
-    private ArrayList<IBookmarkModificationListener> listeners = null;
+    private final List<IBookmarkModificationListener> listeners;
+
+    /** The keys of the starred resources, see {@link #key(String, String)}. */
+    private final ConcurrentHashMap<String, Boolean> starred;
+
+    /** Whether or not {@link #starred} has been loaded from the database. */
+    private volatile boolean loaded = false;
+
+    /** Lock serializing the load and the modifications of the bookmarks. */
+    private final Object lock = new Object();
 
     /**
      * Creates the bookmark service.
@@ -60,6 +91,8 @@ public final class BookmarkService extends AbstractService implements BookmarksC
     public BookmarkService(final DatabaseHelper dbHelper) {
 
         super(dbHelper);
+        listeners = new CopyOnWriteArrayList<IBookmarkModificationListener>();
+        starred = new ConcurrentHashMap<String, Boolean>();
     }
 
     /**
@@ -73,12 +106,94 @@ public final class BookmarkService extends AbstractService implements BookmarksC
         if (null == listener) {
             throw new NullPointerException("Can't bind a null listener");
         }
-        if (listeners == null) {
-            listeners = new ArrayList<IBookmarkModificationListener>(1);
-        }
         listeners.add(listener);
     }
 
+    /**
+     * Removes a listener previously added with {@link #addListener(IBookmarkModificationListener)}.
+     * 
+     * @param listener
+     *            the listener to unbind from this service.
+     */
+    public void removeListener(final IBookmarkModificationListener listener) {
+
+        listeners.remove(listener);
+    }
+
+    /**
+     * Gets the in-memory key of a resource.
+     * 
+     * @param type
+     *            the type of the resource
+     * @param id
+     *            the identifier of the resource
+     * @return the key of the resource
+     */
+    private static String key(final String type, final String id) {
+
+        return type + '\n' + id;
+    }
+
+    /**
+     * Loads the keys of the bookmarks from the database, unless it is already done. It shouldn't
+     * be called from the UI thread.
+     */
+    public void load() {
+
+        ensureLoaded();
+    }
+
+    /**
+     * Loads the keys of the bookmarks from the database, unless it is already done.
+     */
+    private void ensureLoaded() {
+
+        if (loaded) {
+            return;
+        }
+        synchronized (lock) {
+            if (loaded) {
+                return;
+            }
+            LOGGER.debug("ensureLoaded.start");
+
+            final Cursor c = dbHelper.getQueryStats().query(dbHelper.getReadOnlyDatabase(),
+                    "getStarred", GET_STARRED, null);
+            try {
+                while (c.moveToNext()) {
+                    starred.put(key(c.getString(0), c.getString(1)), Boolean.TRUE);
+                }
+            } finally {
+                c.close();
+            }
+            loaded = true;
+
+            LOGGER.debug("ensureLoaded.end - {} bookmarks", starred.size());
+        }
+    }
+
+    /**
+     * Notifies the listeners a bookmark state changed.
+     * 
+     * @param type
+     *            the type of the resource
+     * @param id
+     *            the identifier of the resource
+     * @param bookmarked
+     *            the new state of the bookmark
+     */
+    private void fireBookmarkStateChanged(final String type, final String id,
+            final boolean bookmarked) {
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("notifying {} listeners for bookmark {}", listeners.size(),
+                    bookmarked ? "addition" : "removal");
+        }
+        for (final IBookmarkModificationListener l : listeners) {
+            l.onBookmarkStateChanged(type, id, bookmarked);
+        }
+    }
+
     /**
      * Sets a resource starred.
      * 
@@ -100,19 +215,21 @@ public final class BookmarkService extends AbstractService implements BookmarksC
         values.put(TYPE, type);
         values.put(ID, id);
 
-        final SQLiteDatabase database = dbHelper.getWritableDatabase();
-        // TJHU est ce nécessaire de vérifier qu'on ne va pas faire péter la contrainte
-        // unique(type,id) ?
-        database.insert(BOOKMARKS_TABLE_NAME, null, values);
-
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("notifying {} listeners for bookmark addition", null == listeners ? 0
-                    : listeners.size());
-        }
-        if (listeners != null) {
-            for (final IBookmarkModificationListener l : listeners) {
-                l.onBookmarkStateChanged(type, id, true);
+        ensureLoaded();
+        synchronized (lock) {
+            final SQLiteDatabase database = dbHelper.getWritableDatabase();
+            DatabaseHelper.beginWriteTransaction(database);
+            try {
+                // TJHU est ce nécessaire de vérifier qu'on ne va pas faire péter la contrainte
+                // unique(type,id) ?
+                database.insert(BOOKMARKS_TABLE_NAME, null, values);
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
             }
+            // the cache is updated once the transaction is committed
+            starred.put(key(type, id), Boolean.TRUE);
+            fireBookmarkStateChanged(type, id, true);
         }
 
         if (LOGGER.isDebugEnabled()) {
@@ -137,17 +254,19 @@ public final class BookmarkService extends AbstractService implements BookmarksC
         final String where = String.format("%s = ? AND %s = ?", TYPE, ID);
         final String[] whereArgs = new String[] { type, id };
 
-        final SQLiteDatabase database = dbHelper.getWritableDatabase();
-        database.delete(BOOKMARKS_TABLE_NAME, where, whereArgs);
-
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("notifying {} listeners for bookmark removal", null == listeners ? 0
-                    : listeners.size());
-        }
-        if (listeners != null) {
-            for (final IBookmarkModificationListener l : listeners) {
-                l.onBookmarkStateChanged(type, id, false);
+        ensureLoaded();
+        synchronized (lock) {
+            final SQLiteDatabase database = dbHelper.getWritableDatabase();
+            DatabaseHelper.beginWriteTransaction(database);
+            try {
+                database.delete(BOOKMARKS_TABLE_NAME, where, whereArgs);
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
             }
+            // the cache is updated once the transaction is committed
+            starred.remove(key(type, id));
+            fireBookmarkStateChanged(type, id, false);
         }
 
         if (LOGGER.isDebugEnabled()) {
@@ -156,7 +275,9 @@ public final class BookmarkService extends AbstractService implements BookmarksC
     }
 
     /**
-     * Returns whether or not a resource is starred.
+     * Returns whether or not a resource is starred. Unless {@link #load()} was already called,
+     * the first call loads the keys of the bookmarks from the database, next calls don't execute
+     * any query.
      * 
      * @param type
      *            the type of the resource
@@ -169,14 +290,8 @@ public final class BookmarkService extends AbstractService implements BookmarksC
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("isStarred.start - type={}, id={}", type, id);
         }
-        final SQLiteDatabase database = dbHelper.getWritableDatabase();
-        final String selection = String.format("%s = ? AND %s = ?", TYPE, ID);
-        final String[] selectionArgs = new String[] { type, id };
-        final Cursor c = database.query(BOOKMARKS_TABLE_NAME, new String[] { _ID }, selection,
-                selectionArgs, null, null, null);
-
-        final boolean hasResult = c.moveToNext();
-        c.close();
+        ensureLoaded();
+        final boolean hasResult = starred.containsKey(key(type, id));
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("isStarred.end - isStarred={}", hasResult);
@@ -199,11 +314,10 @@ public final class BookmarkService extends AbstractService implements BookmarksC
             LOGGER.debug("getBookmark.start - type={}, id={}", type, id);
         }
 
-        final String selection = String.format("%s = ? AND %s = ?", TYPE, ID);
         final String[] args = new String[] { type, id };
 
-        final Cursor c = dbHelper.getWritableDatabase().query(BOOKMARKS_TABLE_NAME,
-                new String[] { LABEL, TYPE, ID }, selection, args, null, null, null);
+        final Cursor c = dbHelper.getQueryStats().query(dbHelper.getReadOnlyDatabase(),
+                "getBookmark", GET_BOOKMARK, args);
 
         final Bookmark bm;
         if (c.moveToNext()) {
@@ -238,8 +352,8 @@ public final class BookmarkService extends AbstractService implements BookmarksC
         final ArrayList<Bookmark> allBookmarks = new ArrayList<Bookmark>();
 
         // retrieve all bookmarks
-        final Cursor c = dbHelper.getWritableDatabase().query(BOOKMARKS_TABLE_NAME,
-                new String[] { LABEL, TYPE, ID }, null, null, null, null, null);
+        final Cursor c = dbHelper.getQueryStats().query(dbHelper.getReadOnlyDatabase(),
+                "getAllBookmarks", GET_ALL_BOOKMARKS, null);
 
         while (c.moveToNext()) {
             final Bookmark bm = new Bookmark();
@@ -0,0 +1,594 @@
+package fr.itinerennes.business.service;
+
+/*
+ * [license]
+ * ItineRennes
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.itinerennes.business.service.HttpResponseCache.CachedResponse;
+
+/**
+ * An {@link HttpClient} caching the responses of the GET requests executed by another client.
+ * <p>
+ * A response is cached when it is successful, unless its <code>Cache-Control</code> header
+ * contains <code>no-store</code>. It is reused without any request until it expires, as given by
+ * the <code>max-age</code> directive of its <code>Cache-Control</code> header, or by its
+ * <code>Expires</code> header, or else estimated from its <code>Last-Modified</code> header.
+ * Once it expired, it is revalidated with a conditional request built from its
+ * <code>ETag</code> and <code>Last-Modified</code> headers: when the server answers
+ * <code>304 Not Modified</code>, the cached body is returned.
+ * <p>
+ * The requests executed against an {@link HttpHost} and the requests other than GET aren't
+ * cached.
+ */
+public final class CachingHttpClient implements HttpClient {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingHttpClient.class);
+
+    /** The maximum duration in milliseconds a response is estimated fresh for. */
+    private static final long MAX_HEURISTIC_FRESHNESS = 24L * 3600L * 1000L;
+
+    /** The headers which aren't stored with the responses. */
+    private static final String[] HOP_BY_HOP_HEADERS = { "Connection", "Keep-Alive",
+            "Transfer-Encoding", "Content-Length" };
+
+    /** The client executing the requests. */
+    private final HttpClient delegate;
+
+    /** The cache of the responses. */
+    private final HttpResponseCache cache;
+
+    /** The count of responses read from the cache without any request. */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /** The count of responses read from the cache after a conditional request. */
+    private final AtomicLong conditionalHitCount = new AtomicLong();
+
+    /** The count of responses which had to be downloaded. */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /** The count of bytes of the responses bodies read from the cache. */
+    private final AtomicLong bytesSaved = new AtomicLong();
+
+    /**
+     * Creates a caching client.
+     * 
+     * @param delegate
+     *            the client executing the requests
+     * @param cache
+     *            the cache of the responses
+     */
+    public CachingHttpClient(final HttpClient delegate, final HttpResponseCache cache) {
+
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.apache.http.client.HttpClient#getParams()
+     */
+    @Override
+    public HttpParams getParams() {
+
+        return delegate.getParams();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.apache.http.client.HttpClient#getConnectionManager()
+     */
+    @Override
+    public ClientConnectionManager getConnectionManager() {
+
+        return delegate.getConnectionManager();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.apache.http.client.HttpClient#execute(org.apache.http.client.methods.HttpUriRequest)
+     */
+    @Override
+    public HttpResponse execute(final HttpUriRequest request) throws IOException {
+
+        return execute(request, (HttpContext) null);
+    }
+
+    /**
+     * Executes a request, or reads its response from the cache.
+     * <p>
+     * {@inheritDoc}
+     * 
+     * @see org.apache.http.client.HttpClient#execute(org.apache.http.client.methods.HttpUriRequest,
+     *      org.apache.http.protocol.HttpContext)
+     */
+    @Override
+    public HttpResponse execute(final HttpUriRequest request, final HttpContext context)
+            throws IOException {
+
+        if (!"GET".equals(request.getMethod())) {
+            return delegate.execute(request, context);
+        }
+
+        final String url = request.getURI().toString();
+        final CachedResponse cached = cache.get(url);
+        if (cached != null && cached.isFresh(System.currentTimeMillis())) {
+            hitCount.incrementAndGet();
+            bytesSaved.addAndGet(cached.getBody().length);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("cache hit - {}", url);
+            }
+            return toHttpResponse(cached);
+        }
+
+        // revalidates the cached response, unless the caller made the request conditional
+        final boolean conditional = cached != null
+                && !request.containsHeader("If-None-Match")
+                && !request.containsHeader("If-Modified-Since");
+        if (conditional) {
+            final String etag = cached.getHeader("ETag");
+            if (etag != null) {
+                request.addHeader("If-None-Match", etag);
+            }
+            final String lastModified = cached.getHeader("Last-Modified");
+            if (lastModified != null) {
+                request.addHeader("If-Modified-Since", lastModified);
+            }
+        }
+
+        final HttpResponse response;
+        try {
+            response = delegate.execute(request, context);
+        } finally {
+            if (conditional) {
+                request.removeHeaders("If-None-Match");
+                request.removeHeaders("If-Modified-Since");
+            }
+        }
+        final long now = System.currentTimeMillis();
+        final int statusCode = response.getStatusLine().getStatusCode();
+
+        if (conditional && statusCode == HttpStatus.SC_NOT_MODIFIED) {
+            consume(response);
+            final CachedResponse revalidated = revalidate(cached, response.getAllHeaders(), now);
+            cache.put(revalidated);
+            conditionalHitCount.incrementAndGet();
+            bytesSaved.addAndGet(cached.getBody().length);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("cache hit after revalidation - {}", url);
+            }
+            return toHttpResponse(revalidated);
+        }
+
+        missCount.incrementAndGet();
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("cache miss - {}: {}", url, statusCode);
+        }
+        if (statusCode != HttpStatus.SC_OK) {
+            return response;
+        }
+
+        final Header[] headers = response.getAllHeaders();
+        final long expires = getExpirationTime(headers, now);
+        if (expires < 0 || expires <= now && !hasValidator(headers)) {
+            // the response can't be reused
+            return response;
+        }
+        final HttpEntity entity = response.getEntity();
+        final byte[] body = null == entity ? new byte[0] : EntityUtils.toByteArray(entity);
+        final CachedResponse downloaded = new CachedResponse(url, statusCode, response
+                .getStatusLine().getReasonPhrase(), expires, getStoredHeaders(headers), body);
+        cache.put(downloaded);
+        return toHttpResponse(downloaded);
+    }
+
+    /**
+     * Executes a request, or reads its response from the cache, and processes the response with
+     * the given handler.
+     * <p>
+     * {@inheritDoc}
+     * 
+     * @see org.apache.http.client.HttpClient#execute(org.apache.http.client.methods.HttpUriRequest,
+     *      org.apache.http.client.ResponseHandler)
+     */
+    @Override
+    public <T> T execute(final HttpUriRequest request,
+            final ResponseHandler<? extends T> responseHandler) throws IOException {
+
+        return execute(request, responseHandler, null);
+    }
+
+    /**
+     * Executes a request, or reads its response from the cache, and processes the response with
+     * the given handler.
+     * <p>
+     * {@inheritDoc}
+     * 
+     * @see org.apache.http.client.HttpClient#execute(org.apache.http.client.methods.HttpUriRequest,
+     *      org.apache.http.client.ResponseHandler, org.apache.http.protocol.HttpContext)
+     */
+    @Override
+    public <T> T execute(final HttpUriRequest request,
+            final ResponseHandler<? extends T> responseHandler, final HttpContext context)
+            throws IOException {
+
+        final HttpResponse response = execute(request, context);
+        try {
+            return responseHandler.handleResponse(response);
+        } finally {
+            consume(response);
+        }
+    }
+
+    /**
+     * The request isn't cached.
+     * <p>
+     * {@inheritDoc}
+     * 
+     * @see org.apache.http.client.HttpClient#execute(org.apache.http.HttpHost,
+     *      org.apache.http.HttpRequest)
+     */
+    @Override
+    public HttpResponse execute(final HttpHost target, final HttpRequest request)
+            throws IOException {
+
+        return delegate.execute(target, request);
+    }
+
+    /**
+     * The request isn't cached.
+     * <p>
+     * {@inheritDoc}
+     * 
+     * @see org.apache.http.client.HttpClient#execute(org.apache.http.HttpHost,
+     *      org.apache.http.HttpRequest, org.apache.http.protocol.HttpContext)
+     */
+    @Override
+    public HttpResponse execute(final HttpHost target, final HttpRequest request,
+            final HttpContext context) throws IOException {
+
+        return delegate.execute(target, request, context);
+    }
+
+    /**
+     * The request isn't cached.
+     * <p>
+     * {@inheritDoc}
+     * 
+     * @see org.apache.http.client.HttpClient#execute(org.apache.http.HttpHost,
+     *      org.apache.http.HttpRequest, org.apache.http.client.ResponseHandler)
+     */
+    @Override
+    public <T> T execute(final HttpHost target, final HttpRequest request,
+            final ResponseHandler<? extends T> responseHandler) throws IOException {
+
+        return delegate.execute(target, request, responseHandler);
+    }
+
+    /**
+     * The request isn't cached.
+     * <p>
+     * {@inheritDoc}
+     * 
+     * @see org.apache.http.client.HttpClient#execute(org.apache.http.HttpHost,
+     *      org.apache.http.HttpRequest, org.apache.http.client.ResponseHandler,
+     *      org.apache.http.protocol.HttpContext)
+     */
+    @Override
+    public <T> T execute(final HttpHost target, final HttpRequest request,
+            final ResponseHandler<? extends T> responseHandler, final HttpContext context)
+            throws IOException {
+
+        return delegate.execute(target, request, responseHandler, context);
+    }
+
+    /**
+     * Gets the count of responses read from the cache without any request.
+     * 
+     * @return the count of cache hits
+     */
+    public long getHitCount() {
+
+        return hitCount.get();
+    }
+
+    /**
+     * Gets the count of responses read from the cache after a conditional request.
+     * 
+     * @return the count of revalidated cache hits
+     */
+    public long getConditionalHitCount() {
+
+        return conditionalHitCount.get();
+    }
+
+    /**
+     * Gets the count of responses which had to be downloaded.
+     * 
+     * @return the count of cache misses
+     */
+    public long getMissCount() {
+
+        return missCount.get();
+    }
+
+    /**
+     * Gets the count of bytes of the responses bodies read from the cache instead of being
+     * downloaded.
+     * 
+     * @return the count of bytes saved
+     */
+    public long getBytesSaved() {
+
+        return bytesSaved.get();
+    }
+
+    /**
+     * Creates a response from a cached response.
+     * 
+     * @param cached
+     *            a cached response
+     * @return a response
+     */
+    private static HttpResponse toHttpResponse(final CachedResponse cached) {
+
+        final BasicHttpResponse response = new BasicHttpResponse(new BasicStatusLine(
+                HttpVersion.HTTP_1_1, cached.getStatusCode(), cached.getReasonPhrase()));
+        response.setHeaders(cached.getHeaders());
+
+        final ByteArrayEntity entity = new ByteArrayEntity(cached.getBody());
+        entity.setContentType(response.getFirstHeader("Content-Type"));
+        entity.setContentEncoding(response.getFirstHeader("Content-Encoding"));
+        response.setEntity(entity);
+        return response;
+    }
+
+    /**
+     * Updates a cached response with the headers of the <code>304 Not Modified</code> response
+     * of its revalidation.
+     * 
+     * @param cached
+     *            a cached response
+     * @param headers
+     *            the headers of the revalidation response
+     * @param now
+     *            the current time in milliseconds
+     * @return the updated response
+     */
+    private static CachedResponse revalidate(final CachedResponse cached, final Header[] headers,
+            final long now) {
+
+        final List<Header> merged = new ArrayList<Header>();
+        for (final Header header : cached.getHeaders()) {
+            if (!contains(headers, header.getName())) {
+                merged.add(header);
+            }
+        }
+        for (final Header header : getStoredHeaders(headers)) {
+            merged.add(header);
+        }
+        final Header[] updated = merged.toArray(new Header[merged.size()]);
+        return new CachedResponse(cached.getUrl(), cached.getStatusCode(),
+                cached.getReasonPhrase(), Math.max(getExpirationTime(updated, now), now), updated,
+                cached.getBody());
+    }
+
+    /**
+     * Gets the time a response expires at.
+     * 
+     * @param headers
+     *            the headers of the response
+     * @param now
+     *            the time in milliseconds the response was received at
+     * @return the time in milliseconds the response expires at, or -1 if it mustn't be stored
+     */
+    private static long getExpirationTime(final Header[] headers, final long now) {
+
+        long maxAge = -1;
+        for (final Header header : headers) {
+            if (!header.getName().equalsIgnoreCase("Cache-Control")) {
+                continue;
+            }
+            for (final HeaderElement directive : header.getElements()) {
+                final String name = directive.getName().toLowerCase();
+                if (name.equals("no-store")) {
+                    return -1;
+                } else if (name.equals("no-cache")) {
+                    return now;
+                } else if (name.equals("max-age")) {
+                    maxAge = parseLong(directive.getValue());
+                }
+            }
+        }
+
+        if (maxAge >= 0) {
+            final long age = Math.max(0, parseLong(getHeader(headers, "Age")));
+            return now + Math.max(0, maxAge - age) * 1000L;
+        }
+
+        final long date = parseDate(getHeader(headers, "Date"), now);
+        final String expires = getHeader(headers, "Expires");
+        if (expires != null) {
+            return now + parseDate(expires, date) - date;
+        }
+        final String lastModified = getHeader(headers, "Last-Modified");
+        if (lastModified != null) {
+            final long age = date - parseDate(lastModified, date);
+            return now + Math.min(age / 10, MAX_HEURISTIC_FRESHNESS);
+        }
+        return now;
+    }
+
+    /**
+     * Gets whether or not a response can be revalidated with a conditional request.
+     * 
+     * @param headers
+     *            the headers of the response
+     * @return true if the response has an <code>ETag</code> or a <code>Last-Modified</code>
+     *         header
+     */
+    private static boolean hasValidator(final Header[] headers) {
+
+        return contains(headers, "ETag") || contains(headers, "Last-Modified");
+    }
+
+    /**
+     * Gets the headers of a response which are stored with it.
+     * 
+     * @param headers
+     *            the headers of the response
+     * @return the headers to store
+     */
+    private static Header[] getStoredHeaders(final Header[] headers) {
+
+        final List<Header> stored = new ArrayList<Header>(headers.length);
+        for (final Header header : headers) {
+            boolean hopByHop = false;
+            for (final String name : HOP_BY_HOP_HEADERS) {
+                hopByHop |= header.getName().equalsIgnoreCase(name);
+            }
+            if (!hopByHop) {
+                stored.add(header);
+            }
+        }
+        return stored.toArray(new Header[stored.size()]);
+    }
+
+    /**
+     * Gets whether or not headers contain a header.
+     * 
+     * @param headers
+     *            some headers
+     * @param name
+     *            the name of a header, case insensitive
+     * @return true if one of the headers has the given name
+     */
+    private static boolean contains(final Header[] headers, final String name) {
+
+        return getHeader(headers, name) != null;
+    }
+
+    /**
+     * Gets the value of the first header having the given name.
+     * 
+     * @param headers
+     *            some headers
+     * @param name
+     *            the name of a header, case insensitive
+     * @return the value of the header, or null
+     */
+    private static String getHeader(final Header[] headers, final String name) {
+
+        for (final Header header : headers) {
+            if (header.getName().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses a number of seconds.
+     * 
+     * @param value
+     *            a number of seconds, may be null
+     * @return the number, or -1 if the value isn't a number
+     */
+    private static long parseLong(final String value) {
+
+        try {
+            return null == value ? -1 : Long.parseLong(value.trim());
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses an HTTP date.
+     * 
+     * @param value
+     *            an HTTP date, may be null
+     * @param defaultValue
+     *            the value to return if the date is missing or invalid
+     * @return the time in milliseconds
+     */
+    private static long parseDate(final String value, final long defaultValue) {
+
+        if (null == value) {
+            return defaultValue;
+        }
+        try {
+            final Date date = DateUtils.parseDate(value);
+            return date.getTime();
+        } catch (final DateParseException e) {
+            // an invalid date, such as "Expires: 0", means the response already expired
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Consumes the entity of a response, so its connection is released.
+     * 
+     * @param response
+     *            a response
+     * @throws IOException
+     *             the entity can't be consumed
+     */
+    private static void consume(final HttpResponse response) throws IOException {
+
+        final HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            entity.consumeContent();
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package fr.itinerennes.business.service;
+
+/*
+ * [license]
+ * ItineRennes
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.itinerennes.commons.utils.RequestCoalescer;
+
+/**
+ * An {@link HttpClient} sharing the responses of identical GET requests executed concurrently by
+ * another client.
+ * <p>
+ * When a GET request is executed while a request to the same URL is in flight, it doesn't reach
+ * the network: it waits for the in-flight request and gets a copy of its response. The responses
+ * of GET requests are read in memory to be shared, the other requests are just delegated.
+ */
+public final class CoalescingHttpClient implements HttpClient {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(CoalescingHttpClient.class);
+
+    /** The client executing the requests. */
+    private final HttpClient delegate;
+
+    /** The GET requests in flight, by URL. */
+    private final RequestCoalescer<String, BufferedResponse> requests;
+
+    /**
+     * Creates a coalescing client.
+     * 
+     * @param delegate
+     *            the client executing the requests
+     */
+    public CoalescingHttpClient(final HttpClient delegate) {
+
+        this.delegate = delegate;
+        requests = new RequestCoalescer<String, BufferedResponse>();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.apache.http.client.HttpClient#getParams()
+     */
+    @Override
+    public HttpParams getParams() {
+
+        return delegate.getParams();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.apache.http.client.HttpClient#getConnectionManager()
+     */
+    @Override
+    public ClientConnectionManager getConnectionManager() {
+
+        return delegate.getConnectionManager();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.apache.http.client.HttpClient#execute(org.apache.http.client.methods.HttpUriRequest)
+     */
+    @Override
+    public HttpResponse execute(final HttpUriRequest request) throws IOException {
+
+        return execute(request, (HttpContext) null);
+    }
+
+    /**
+     * Executes a request, or waits for the identical GET request in flight and copies its
+     * response.
+     * <p>
+     * {@inheritDoc}
+     * 
+     * @see org.apache.http.client.HttpClient#execute(org.apache.http.client.methods.HttpUriRequest,
+     *      org.apache.http.protocol.HttpContext)
+     */
+    @Override
+    public HttpResponse execute(final HttpUriRequest request, final HttpContext context)
+            throws IOException {
+
+        if (!"GET".equals(request.getMethod())) {
+            return delegate.execute(request, context);
+        }
+
+        final String url = request.getURI().toString();
+        final BufferedResponse response = requests.execute(url,
+                new RequestCoalescer.Request<BufferedResponse>() {
+
+                    @Override
+                    public BufferedResponse execute() throws IOException {
+
+                        if (LOGGER.isDebugEnabled()) {
+                            LOGGER.debug("execute - {}", url);
+                        }
+                        return new BufferedResponse(delegate.execute(request, context));
+                    }
+                });
+        return response.toHttpResponse();
+    }
+
+    /**
+     * Executes a request, or waits for the identical GET request in flight and copies its
+     * response, and processes the response with the given handler.
+     * <p>
+     * {@inheritDoc}
+     * 
+     * @see org.apache.http.client.HttpClient#execute(org.apache.http.client.methods.HttpUriRequest,
+     *      org.apache.http.client.ResponseHandler)
+     */
+    @Override
+    public <T> T execute(final HttpUriRequest request,
+            final ResponseHandler<? extends T> responseHandler) throws IOException {
+
+        return execute(request, responseHandler, null);
+    }
+
+    /**
+     * Executes a request, or waits for the identical GET request in flight and copies its
+     * response, and processes the response with the given handler.
+     * <p>
+     * {@inheritDoc}
+     * 
+     * @see org.apache.http.client.HttpClient#execute(org.apache.http.client.methods.HttpUriRequest,
+     *      org.apache.http.client.ResponseHandler, org.apache.http.protocol.HttpContext)
+     */
+    @Override
+    public <T> T execute(final HttpUriRequest request,
+            final ResponseHandler<? extends T> responseHandler, final HttpContext context)
+            throws IOException {
+
+        final HttpResponse response = execute(request, context);
+        try {
+            return responseHandler.handleResponse(response);
+        } finally {
+            final HttpEntity entity = response.getEntity();
+            if (entity != null) {
+                entity.consumeContent();
+            }
+        }
+    }
+
+    /**
+     * The request isn't shared.
+     * <p>
+     * {@inheritDoc}
+     * 
+     * @see org.apache.http.client.HttpClient#execute(org.apache.http.HttpHost,
+     *      org.apache.http.HttpRequest)
+     */
+    @Override
+    public HttpResponse execute(final HttpHost target, final HttpRequest request)
+            throws IOException {
+
+        return delegate.execute(target, request);
+    }
+
+    /**
+     * The request isn't shared.
+     * <p>
+     * {@inheritDoc}
+     * 
+     * @see org.apache.http.client.HttpClient#execute(org.apache.http.HttpHost,
+     *      org.apache.http.HttpRequest, org.apache.http.protocol.HttpContext)
+     */
+    @Override
+    public HttpResponse execute(final HttpHost target, final HttpRequest request,
+            final HttpContext context) throws IOException {
+
+        return delegate.execute(target, request, context);
+    }
+
+    /**
+     * The request isn't shared.
+     * <p>
+     * {@inheritDoc}
+     * 
+     * @see org.apache.http.client.HttpClient#execute(org.apache.http.HttpHost,
+     *      org.apache.http.HttpRequest, org.apache.http.client.ResponseHandler)
+     */
+    @Override
+    public <T> T execute(final HttpHost target, final HttpRequest request,
+            final ResponseHandler<? extends T> responseHandler) throws IOException {
+
+        return delegate.execute(target, request, responseHandler);
+    }
+
+    /**
+     * The request isn't shared.
+     * <p>
+     * {@inheritDoc}
+     * 
+     * @see org.apache.http.client.HttpClient#execute(org.apache.http.HttpHost,
+     *      org.apache.http.HttpRequest, org.apache.http.client.ResponseHandler,
+     *      org.apache.http.protocol.HttpContext)
+     */
+    @Override
+    public <T> T execute(final HttpHost target, final HttpRequest request,
+            final ResponseHandler<? extends T> responseHandler, final HttpContext context)
+            throws IOException {
+
+        return delegate.execute(target, request, responseHandler, context);
+    }
+
+    /**
+     * A response read in memory, which can be copied for each caller.
+     */
+    private static final class BufferedResponse {
+
+        /** The status line of the response. */
+        private final StatusLine status;
+
+        /** The headers of the response. */
+        private final Header[] headers;
+
+        /** The content type of the entity, may be null. */
+        private final Header contentType;
+
+        /** The content encoding of the entity, may be null. */
+        private final Header contentEncoding;
+
+        /** The content of the entity, null if the response has no entity. */
+        private final byte[] content;
+
+        /**
+         * Reads a response in memory.
+         * 
+         * @param response
+         *            the response to read
+         * @throws IOException
+         *             the content of the response can't be read
+         */
+        private BufferedResponse(final HttpResponse response) throws IOException {
+
+            status = response.getStatusLine();
+            headers = response.getAllHeaders();
+            final HttpEntity entity = response.getEntity();
+            if (entity != null) {
+                contentType = entity.getContentType();
+                contentEncoding = entity.getContentEncoding();
+                content = EntityUtils.toByteArray(entity);
+            } else {
+                contentType = null;
+                contentEncoding = null;
+                content = null;
+            }
+        }
+
+        /**
+         * Creates a copy of the response.
+         * 
+         * @return a copy of the response
+         */
+        private HttpResponse toHttpResponse() {
+
+            final BasicHttpResponse response = new BasicHttpResponse(status);
+            response.setHeaders(headers);
+            if (content != null) {
+                final ByteArrayEntity entity = new ByteArrayEntity(content);
+                entity.setContentType(contentType);
+                entity.setContentEncoding(contentEncoding);
+                response.setEntity(entity);
+            }
+            return response;
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package fr.itinerennes.business.service;
+
+/*
+ * [license]
+ * ItineRennes
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache of HTTP responses stored on disk, bounded by the total size of its files.
+ * <p>
+ * Each response is stored in its own file, named after the MD5 hash of its URL: the file starts
+ * with the URL, the status, the time the response expires at and the headers, followed by the
+ * body. When the files exceed the maximum size, the least recently used responses are deleted.
+ * The recency of the responses is kept in memory, and is initialized from the last modification
+ * times of the files, which are updated each time a response is read.
+ */
+public final class HttpResponseCache {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpResponseCache.class);
+
+    /** The extension of the files of the cached responses. */
+    private static final String EXTENSION = ".http";
+
+    /** The version of the format of the files, files of other versions are ignored. */
+    private static final int FORMAT_VERSION = 1;
+
+    /** The directory containing the files of the cached responses. */
+    private final File directory;
+
+    /** The maximum total size in bytes of the files of the cached responses. */
+    private final long maxSize;
+
+    /** The size of the file of each cached response, from the least to the most recently used. */
+    private final LinkedHashMap<String, Long> files;
+
+    /** The total size in bytes of the files of the cached responses. */
+    private long size = 0;
+
+    /** Whether or not {@link #files} has been initialized from the content of the directory. */
+    private boolean loaded = false;
+
+    /**
+     * Creates a cache of HTTP responses.
+     * 
+     * @param directory
+     *            the directory containing the files of the cached responses, it is created if
+     *            necessary
+     * @param maxSize
+     *            the maximum total size in bytes of the files of the cached responses
+     */
+    public HttpResponseCache(final File directory, final long maxSize) {
+
+        this.directory = directory;
+        this.maxSize = maxSize;
+        files = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    }
+
+    /**
+     * Lists the files of the directory from the least to the most recently used, unless it is
+     * already done.
+     */
+    private void ensureLoaded() {
+
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            LOGGER.warn("can't create HTTP cache directory {}", directory);
+            return;
+        }
+
+        final File[] list = directory.listFiles();
+        if (null == list) {
+            return;
+        }
+        Arrays.sort(list, new Comparator<File>() {
+
+            @Override
+            public int compare(final File a, final File b) {
+
+                final long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+            }
+        });
+        for (final File file : list) {
+            if (file.getName().endsWith(EXTENSION)) {
+                files.put(file.getName(), file.length());
+                size += file.length();
+            } else {
+                // an interrupted write
+                file.delete();
+            }
+        }
+        trimToSize();
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("ensureLoaded - {} responses, {} bytes", files.size(), size);
+        }
+    }
+
+    /**
+     * Gets the name of the file of the response of a URL.
+     * 
+     * @param url
+     *            a URL
+     * @return the name of the file
+     */
+    private static String getFileName(final String url) {
+
+        try {
+            final byte[] hash = MessageDigest.getInstance("MD5").digest(url.getBytes("UTF-8"));
+            final StringBuilder name = new StringBuilder(hash.length * 2 + EXTENSION.length());
+            for (final byte b : hash) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16));
+                name.append(Character.forDigit(b & 0xf, 16));
+            }
+            return name.append(EXTENSION).toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Gets the cached response of a URL, even if it expired.
+     * 
+     * @param url
+     *            a URL
+     * @return the cached response, or null
+     */
+    public synchronized CachedResponse get(final String url) {
+
+        ensureLoaded();
+        final String name = getFileName(url);
+        if (!files.containsKey(name)) {
+            return null;
+        }
+
+        final File file = new File(directory, name);
+        CachedResponse response = null;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() == FORMAT_VERSION && in.readUTF().equals(url)) {
+                final int statusCode = in.readInt();
+                final String reasonPhrase = in.readUTF();
+                final long expires = in.readLong();
+                final Header[] headers = new Header[in.readInt()];
+                for (int i = 0; i < headers.length; i++) {
+                    headers[i] = new BasicHeader(in.readUTF(), in.readUTF());
+                }
+                final byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                response = new CachedResponse(url, statusCode, reasonPhrase, expires, headers,
+                        body);
+            }
+        } catch (final IOException e) {
+            LOGGER.warn(String.format("can't read cached response of %s", url), e);
+        } finally {
+            close(in);
+        }
+
+        if (response != null) {
+            file.setLastModified(System.currentTimeMillis());
+        } else {
+            delete(name);
+        }
+        return response;
+    }
+
+    /**
+     * Stores a response, replacing the previous one of the same URL, then deletes the least
+     * recently used responses if the cache is full.
+     * 
+     * @param response
+     *            the response to store
+     */
+    public synchronized void put(final CachedResponse response) {
+
+        ensureLoaded();
+        final String name = getFileName(response.getUrl());
+        final File tmp = new File(directory, name + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(response.getUrl());
+            out.writeInt(response.getStatusCode());
+            out.writeUTF(response.getReasonPhrase());
+            out.writeLong(response.getExpires());
+            out.writeInt(response.getHeaders().length);
+            for (final Header header : response.getHeaders()) {
+                out.writeUTF(header.getName());
+                out.writeUTF(header.getValue());
+            }
+            out.writeInt(response.getBody().length);
+            out.write(response.getBody());
+            out.close();
+            out = null;
+
+            delete(name);
+            final File file = new File(directory, name);
+            if (tmp.renameTo(file)) {
+                files.put(name, file.length());
+                size += file.length();
+                trimToSize();
+            }
+        } catch (final IOException e) {
+            LOGGER.warn(String.format("can't store response of %s", response.getUrl()), e);
+        } finally {
+            close(out);
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Removes the cached response of a URL.
+     * 
+     * @param url
+     *            a URL
+     */
+    public synchronized void remove(final String url) {
+
+        ensureLoaded();
+        delete(getFileName(url));
+    }
+
+    /**
+     * Gets the total size of the files of the cached responses.
+     * 
+     * @return the total size in bytes of the files of the cached responses
+     */
+    public synchronized long getSize() {
+
+        ensureLoaded();
+        return size;
+    }
+
+    /**
+     * Deletes the file of a response.
+     * 
+     * @param name
+     *            the name of the file
+     */
+    private void delete(final String name) {
+
+        final Long length = files.remove(name);
+        if (length != null) {
+            size -= length;
+        }
+        new File(directory, name).delete();
+    }
+
+    /**
+     * Deletes the least recently used responses until the total size of the files doesn't exceed
+     * the maximum size.
+     */
+    private void trimToSize() {
+
+        final Iterator<Map.Entry<String, Long>> i = files.entrySet().iterator();
+        while (size > maxSize && i.hasNext()) {
+            final Map.Entry<String, Long> eldest = i.next();
+            i.remove();
+            size -= eldest.getValue();
+            new File(directory, eldest.getKey()).delete();
+        }
+    }
+
+    /**
+     * Closes a stream, ignoring errors.
+     * 
+     * @param stream
+     *            the stream to close, may be null
+     */
+    private static void close(final Closeable stream) {
+
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (final IOException e) {
+                LOGGER.debug("can't close stream", e);
+            }
+        }
+    }
+
+    /**
+     * A cached HTTP response.
+     */
+    public static final class CachedResponse {
+
+        /** The URL of the request. */
+        private final String url;
+
+        /** The status code of the response. */
+        private final int statusCode;
+
+        /** The reason phrase of the response. */
+        private final String reasonPhrase;
+
+        /** The time in milliseconds the response expires at. */
+        private final long expires;
+
+        /** The headers of the response. */
+        private final Header[] headers;
+
+        /** The body of the response. */
+        private final byte[] body;
+
+        /**
+         * Creates a cached response.
+         * 
+         * @param url
+         *            the URL of the request
+         * @param statusCode
+         *            the status code of the response
+         * @param reasonPhrase
+         *            the reason phrase of the response
+         * @param expires
+         *            the time in milliseconds the response expires at
+         * @param headers
+         *            the headers of the response
+         * @param body
+         *            the body of the response
+         */
+        public CachedResponse(final String url, final int statusCode, final String reasonPhrase,
+                final long expires, final Header[] headers, final byte[] body) {
+
+            this.url = url;
+            this.statusCode = statusCode;
+            this.reasonPhrase = null == reasonPhrase ? "" : reasonPhrase;
+            this.expires = expires;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        /**
+         * Gets the URL of the request.
+         * 
+         * @return the URL of the request
+         */
+        public String getUrl() {
+
+            return url;
+        }
+
+        /**
+         * Gets the status code of the response.
+         * 
+         * @return the status code of the response
+         */
+        public int getStatusCode() {
+
+            return statusCode;
+        }
+
+        /**
+         * Gets the reason phrase of the response.
+         * 
+         * @return the reason phrase of the response
+         */
+        public String getReasonPhrase() {
+
+            return reasonPhrase;
+        }
+
+        /**
+         * Gets the time the response expires at.
+         * 
+         * @return the time in milliseconds the response expires at
+         */
+        public long getExpires() {
+
+            return expires;
+        }
+
+        /**
+         * Gets whether or not the response can be used without revalidation.
+         * 
+         * @param now
+         *            the current time in milliseconds
+         * @return true if the response didn't expire
+         */
+        public boolean isFresh(final long now) {
+
+            return now < expires;
+        }
+
+        /**
+         * Gets the headers of the response.
+         * 
+         * @return the headers of the response
+         */
+        public Header[] getHeaders() {
+
+            return headers;
+        }
+
+        /**
+         * Gets the value of the first header of the response having the given name.
+         * 
+         * @param name
+         *            the name of a header, case insensitive
+         * @return the value of the header, or null if the response doesn't have such a header
+         */
+        public String getHeader(final String name) {
+
+            for (final Header header : headers) {
+                if (header.getName().equalsIgnoreCase(name)) {
+                    return header.getValue();
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Gets the body of the response.
+         * 
+         * @return the body of the response
+         */
+        public byte[] getBody() {
+
+            return body;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package fr.itinerennes.business.service;
+
+/*
+ * [license]
+ * ItineRennes
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.dudie.keolis.client.KeolisClient;
+import fr.dudie.keolis.model.LineAlert;
+import fr.dudie.keolis.model.RelayPark;
+
+import fr.itinerennes.Conf;
+import fr.itinerennes.commons.utils.RequestCoalescer;
+import fr.itinerennes.database.CacheEntryDao;
+
+/**
+ * A cache of the data fetched with the {@link KeolisClient}.
+ * <p>
+ * Each endpoint has its own time to live: the data younger than it is returned without accessing
+ * the network, and the callers requesting concurrently data older than it share the same request.
+ * When the data can't be fetched, the last known data is returned. The line alerts are persisted
+ * in the database too, so they are available immediately after the application starts. The bike
+ * stations are cached by the {@link BikeStationRepository}.
+ */
+public final class KeolisCache {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(KeolisCache.class);
+
+    /** The type of the persisted cache entries. */
+    private static final String TYPE_KEOLIS = "keolis";
+
+    /** The keolis client. */
+    private final KeolisClient client;
+
+    /** The persistent cache. */
+    private final CacheEntryDao cache;
+
+    /** The relay parks. */
+    private final Endpoint<RelayPark> relayParks;
+
+    /** The line alerts. */
+    private final Endpoint<LineAlert> lineAlerts;
+
+    /**
+     * Creates the keolis cache.
+     * 
+     * @param client
+     *            the keolis client
+     * @param cache
+     *            the persistent cache
+     */
+    public KeolisCache(final KeolisClient client, final CacheEntryDao cache) {
+
+        this.client = client;
+        this.cache = cache;
+
+        relayParks = new Endpoint<RelayPark>("relayParks", Conf.CACHE_KEOLIS_PARKS_TTL,
+                RelayPark[].class, false) {
+
+            @Override
+            protected List<RelayPark> fetch() throws IOException {
+
+                return KeolisCache.this.client.getAllRelayParks();
+            }
+        };
+        lineAlerts = new Endpoint<LineAlert>("lineAlerts", Conf.CACHE_KEOLIS_ALERTS_TTL,
+                LineAlert[].class, true) {
+
+            @Override
+            protected List<LineAlert> fetch() throws IOException {
+
+                return KeolisCache.this.client.getAllLinesAlerts();
+            }
+        };
+    }
+
+    /**
+     * Gets the relay parks.
+     * 
+     * @return an unmodifiable list of the relay parks
+     * @throws IOException
+     *             the relay parks are outdated and can't be fetched
+     */
+    public List<RelayPark> getRelayParks() throws IOException {
+
+        return relayParks.get();
+    }
+
+    /**
+     * Gets the line alerts.
+     * 
+     * @return an unmodifiable list of the line alerts
+     * @throws IOException
+     *             the line alerts were never fetched and can't be fetched
+     */
+    public List<LineAlert> getLineAlerts() throws IOException {
+
+        return lineAlerts.get();
+    }
+
+    /**
+     * The cached data of an endpoint of the keolis API.
+     * 
+     * @param <T>
+     *            the type of the elements returned by the endpoint
+     */
+    private abstract class Endpoint<T> {
+
+        /** The name of the endpoint, which identifies its persisted cache entry. */
+        private final String name;
+
+        /** Age in milliseconds after which the data is fetched again. */
+        private final long ttl;
+
+        /** The type of the persisted data. */
+        private final Class<T[]> arrayType;
+
+        /** True if the data is persisted in the database. */
+        private final boolean persistent;
+
+        /** The request fetching the data, if any. */
+        private final RequestCoalescer<String, List<T>> requests;
+
+        /** The last known data, or null if it wasn't loaded yet. */
+        private List<T> values;
+
+        /** The time in milliseconds at which the last known data was fetched. */
+        private long fetched;
+
+        /**
+         * Creates an endpoint.
+         * 
+         * @param name
+         *            the name of the endpoint
+         * @param ttl
+         *            age in milliseconds after which the data is fetched again
+         * @param arrayType
+         *            the type of the persisted data
+         * @param persistent
+         *            true if the data is persisted in the database
+         */
+        protected Endpoint(final String name, final long ttl, final Class<T[]> arrayType,
+                final boolean persistent) {
+
+            this.name = name;
+            this.ttl = ttl;
+            this.arrayType = arrayType;
+            this.persistent = persistent;
+            requests = new RequestCoalescer<String, List<T>>();
+        }
+
+        /**
+         * Fetches the data from the network.
+         * 
+         * @return the data
+         * @throws IOException
+         *             the data can't be fetched
+         */
+        protected abstract List<T> fetch() throws IOException;
+
+        /**
+         * Gets the last known data, loading it from the database if it isn't in memory yet.
+         * 
+         * @return the last known data, or null if it was never fetched
+         */
+        public final synchronized List<T> getCached() {
+
+            if (null == values && persistent) {
+                final CacheEntryDao.Entry<T[]> entry = cache.get(TYPE_KEOLIS, name, arrayType);
+                if (entry != null) {
+                    values = Collections.unmodifiableList(Arrays.asList(entry.getValue()));
+                    fetched = entry.getFetched();
+                }
+            }
+            return values;
+        }
+
+        /**
+         * Gets whether the last known data is younger than the time to live.
+         * 
+         * @return true if the last known data doesn't need to be fetched again
+         */
+        private synchronized boolean isFresh() {
+
+            return values != null && System.currentTimeMillis() - fetched < ttl;
+        }
+
+        /**
+         * Gets the last known data if it is younger than the time to live, otherwise fetches it.
+         * The last known data is returned if it can't be fetched.
+         * 
+         * @return the data
+         * @throws IOException
+         *             the data was never fetched and can't be fetched
+         */
+        public final List<T> get() throws IOException {
+
+            final List<T> cached = getCached();
+            if (isFresh()) {
+                return cached;
+            }
+            try {
+                return requests.execute(name, new RequestCoalescer.Request<List<T>>() {
+
+                    @Override
+                    public List<T> execute() throws IOException {
+
+                        return refresh();
+                    }
+                });
+            } catch (final IOException e) {
+                if (null == cached) {
+                    throw e;
+                }
+                LOGGER.warn("can't fetch {}, using the data fetched at {}: {}", new Object[] {
+                        name, fetched, e.getMessage() });
+                return cached;
+            }
+        }
+
+        /**
+         * Fetches the data and replaces the last known data.
+         * 
+         * @return the fetched data
+         * @throws IOException
+         *             the data can't be fetched
+         */
+        private List<T> refresh() throws IOException {
+
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("refresh.start - name={}", name);
+            }
+
+            final long fetchedAt = System.currentTimeMillis();
+            final List<T> fetchedValues = fetch();
+            final List<T> refreshed;
+            if (null == fetchedValues) {
+                refreshed = Collections.emptyList();
+            } else {
+                refreshed = Collections.unmodifiableList(new ArrayList<T>(fetchedValues));
+            }
+            synchronized (this) {
+                values = refreshed;
+                fetched = fetchedAt;
+            }
+            if (persistent) {
+                @SuppressWarnings("unchecked")
+                final T[] array = refreshed.toArray((T[]) Array.newInstance(
+                        arrayType.getComponentType(), refreshed.size()));
+                cache.put(TYPE_KEOLIS, name, array, fetchedAt, fetchedAt
+                        + Conf.CACHE_KEOLIS_RETENTION);
+            }
+
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("refresh.end - name={}, count={}", name, refreshed.size());
+            }
+            return refreshed;
+        }
+    }
+}
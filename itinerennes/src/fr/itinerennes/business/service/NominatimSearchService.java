@@ -0,0 +1,181 @@
+package fr.itinerennes.business.service;
+
+/*
+ * [license]
+ * ItineRennes
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.dudie.nominatim.client.NominatimClient;
+import fr.dudie.nominatim.model.Address;
+
+import fr.itinerennes.Conf;
+import fr.itinerennes.commons.utils.LruCache;
+import fr.itinerennes.commons.utils.RequestCoalescer;
+import fr.itinerennes.commons.utils.SearchUtils;
+import fr.itinerennes.database.CacheEntryDao;
+
+/**
+ * A service to search addresses with Nominatim and keep the results in a persistent cache.
+ * <p>
+ * The results are cached by normalized query (see {@link SearchUtils#normalize(String)}), so the
+ * queries differing only by their case, their accents or their punctuation share the same
+ * results. The results of the most recent queries are kept in memory too, so they can be
+ * displayed immediately with {@link #getCachedResults(String)}, and the callers searching
+ * concurrently the same query share the same request.
+ */
+public final class NominatimSearchService {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(NominatimSearchService.class);
+
+    /** The type of the cache entries of the search results. */
+    private static final String TYPE_NOMINATIM = "nominatim";
+
+    /** The count of search results kept in memory. */
+    private static final int RESULTS_IN_MEMORY = 32;
+
+    /** The Nominatim client. */
+    private final NominatimClient client;
+
+    /** The persistent cache of the search results. */
+    private final CacheEntryDao cache;
+
+    /** The results of the most recent queries, by normalized query. */
+    private final LruCache<String, List<Address>> results;
+
+    /** The searches in progress, by normalized query. */
+    private final RequestCoalescer<String, List<Address>> requests;
+
+    /**
+     * Creates the Nominatim search service.
+     * 
+     * @param client
+     *            the Nominatim client
+     * @param cache
+     *            the persistent cache of the search results
+     */
+    public NominatimSearchService(final NominatimClient client, final CacheEntryDao cache) {
+
+        this.client = client;
+        this.cache = cache;
+        results = new LruCache<String, List<Address>>(RESULTS_IN_MEMORY);
+        requests = new RequestCoalescer<String, List<Address>>();
+    }
+
+    /**
+     * Gets the results of a query if they are kept in memory. This method doesn't access the
+     * database nor the network, so it can be called from the UI thread.
+     * 
+     * @param query
+     *            the query
+     * @return an unmodifiable list of the results, or null if they aren't in memory
+     */
+    public List<Address> getCachedResults(final String query) {
+
+        final String key = SearchUtils.normalize(query);
+        if (null == key || key.length() == 0) {
+            return Collections.emptyList();
+        }
+        return results.get(key);
+    }
+
+    /**
+     * Searches the addresses matching a query in the memory, in the persistent cache, or with
+     * Nominatim if the query isn't cached.
+     * 
+     * @param query
+     *            the query
+     * @return an unmodifiable list of the results
+     * @throws IOException
+     *             the results aren't cached and the search fails
+     */
+    public List<Address> search(final String query) throws IOException {
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("search.start - query={}", query);
+        }
+
+        final String key = SearchUtils.normalize(query);
+        List<Address> addresses;
+        if (null == key || key.length() == 0) {
+            addresses = Collections.emptyList();
+        } else {
+            addresses = results.get(key);
+            if (null == addresses) {
+                addresses = requests.execute(key, new RequestCoalescer.Request<List<Address>>() {
+
+                    @Override
+                    public List<Address> execute() throws IOException {
+
+                        return load(key, query);
+                    }
+                });
+            }
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("search.end - resultCount={}", addresses.size());
+        }
+        return addresses;
+    }
+
+    /**
+     * Loads the results of a query from the persistent cache, or from Nominatim if they aren't
+     * cached, and keeps them in memory.
+     * 
+     * @param key
+     *            the normalized query
+     * @param query
+     *            the query
+     * @return an unmodifiable list of the results
+     * @throws IOException
+     *             the results aren't cached and the search fails
+     */
+    private List<Address> load(final String key, final String query) throws IOException {
+
+        final List<Address> addresses;
+        final CacheEntryDao.Entry<Address[]> cached = cache.get(TYPE_NOMINATIM, key,
+                Address[].class);
+        if (cached != null) {
+            addresses = Collections.unmodifiableList(Arrays.asList(cached.getValue()));
+        } else {
+            final long fetched = System.currentTimeMillis();
+            final List<Address> found = client.search(query);
+            if (null == found) {
+                addresses = Collections.emptyList();
+            } else {
+                addresses = Collections.unmodifiableList(new ArrayList<Address>(found));
+            }
+            cache.put(TYPE_NOMINATIM, key, addresses.toArray(new Address[addresses.size()]),
+                    fetched, fetched + Conf.CACHE_NOMINATIM_TTL);
+        }
+        results.put(key, addresses);
+        return addresses;
+    }
+}
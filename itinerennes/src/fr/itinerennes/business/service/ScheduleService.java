@@ -0,0 +1,279 @@
+package fr.itinerennes.business.service;
+
+/*
+ * [license]
+ * ItineRennes
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.Date;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.itinerennes.Conf;
+import fr.itinerennes.api.client.ItineRennesApiClient;
+import fr.itinerennes.api.client.model.StopSchedule;
+import fr.itinerennes.api.client.model.TripSchedule;
+import fr.itinerennes.commons.utils.LruCache;
+import fr.itinerennes.commons.utils.RequestCoalescer;
+import fr.itinerennes.database.CacheEntryDao;
+
+/**
+ * A service to fetch the schedules of the stops and of the trips and keep them in a persistent
+ * cache.
+ * <p>
+ * The schedules of the stops are cached by service day, so a cached schedule can be displayed
+ * immediately with {@link #getCachedScheduleForStop(String, Date)} while a fresher one is fetched
+ * in background with {@link #fetchScheduleForStop(String, Date)}. A cached schedule is evicted
+ * {@link Conf#CACHE_SCHEDULE_TTL} milliseconds after it was fetched, or once its service day is
+ * over.
+ * <p>
+ * The schedules of the trips are cached by trip in the same persistent cache, and the most
+ * recently used ones are kept in memory too, so displaying again a trip doesn't even read the
+ * database.
+ * <p>
+ * The callers requesting concurrently the same schedule share the same request and its parsed
+ * result.
+ */
+public final class ScheduleService {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScheduleService.class);
+
+    /** The type of the cache entries of the stop schedules. */
+    private static final String TYPE_STOP_SCHEDULE = "stopSchedule";
+
+    /** The type of the cache entries of the trip schedules. */
+    private static final String TYPE_TRIP_SCHEDULE = "tripSchedule";
+
+    /** The count of trip schedules kept in memory. */
+    private static final int TRIP_SCHEDULES_IN_MEMORY = 16;
+
+    /** The ItineRennes API client. */
+    private final ItineRennesApiClient client;
+
+    /** The cache of the schedules. */
+    private final CacheEntryDao cache;
+
+    /** The most recently used trip schedules. */
+    private final LruCache<String, TripSchedule> trips;
+
+    /** The stop schedules being fetched, by cache key. */
+    private final RequestCoalescer<String, StopSchedule> stopScheduleRequests;
+
+    /** The trip schedules being loaded, by trip identifier. */
+    private final RequestCoalescer<String, TripSchedule> tripScheduleRequests;
+
+    /**
+     * Creates the schedule service.
+     * 
+     * @param client
+     *            the ItineRennes API client
+     * @param cache
+     *            the cache of the schedules
+     */
+    public ScheduleService(final ItineRennesApiClient client, final CacheEntryDao cache) {
+
+        this.client = client;
+        this.cache = cache;
+        trips = new LruCache<String, TripSchedule>(TRIP_SCHEDULES_IN_MEMORY);
+        stopScheduleRequests = new RequestCoalescer<String, StopSchedule>();
+        tripScheduleRequests = new RequestCoalescer<String, TripSchedule>();
+    }
+
+    /**
+     * Gets the cached schedule of a stop. This method doesn't access the network.
+     * 
+     * @param stopId
+     *            the identifier of the stop
+     * @param date
+     *            a date of the service day of the schedule
+     * @return the cache entry of the schedule, or null if it isn't cached
+     */
+    public CacheEntryDao.Entry<StopSchedule> getCachedScheduleForStop(final String stopId,
+            final Date date) {
+
+        return cache.get(TYPE_STOP_SCHEDULE, getKey(stopId, date), StopSchedule.class);
+    }
+
+    /**
+     * Fetches the schedule of a stop from the network and stores it in the cache.
+     * 
+     * @param stopId
+     *            the identifier of the stop
+     * @param date
+     *            a date of the service day of the schedule
+     * @return the schedule of the stop
+     * @throws IOException
+     *             the schedule can't be fetched
+     */
+    public StopSchedule fetchScheduleForStop(final String stopId, final Date date)
+            throws IOException {
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("fetchScheduleForStop.start - stopId={}, date={}", stopId, date);
+        }
+
+        final String key = getKey(stopId, date);
+        final StopSchedule schedule = stopScheduleRequests.execute(key,
+                new RequestCoalescer.Request<StopSchedule>() {
+
+                    @Override
+                    public StopSchedule execute() throws IOException {
+
+                        final long fetched = System.currentTimeMillis();
+                        final StopSchedule fetchedSchedule = client.getScheduleForStop(stopId,
+                                date);
+                        if (fetchedSchedule != null) {
+                            cache.put(TYPE_STOP_SCHEDULE, key, fetchedSchedule, fetched,
+                                    getExpirationTime(date, fetched));
+                        }
+                        return fetchedSchedule;
+                    }
+                });
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("fetchScheduleForStop.end - found={}", schedule != null);
+        }
+        return schedule;
+    }
+
+    /**
+     * Gets the schedule of a trip if it is kept in memory. This method doesn't access the database
+     * nor the network, so it can be called from the UI thread.
+     * 
+     * @param tripId
+     *            the identifier of the trip
+     * @return the schedule of the trip, or null if it isn't in memory
+     */
+    public TripSchedule getCachedTripSchedule(final String tripId) {
+
+        return trips.get(tripId);
+    }
+
+    /**
+     * Gets the schedule of a trip from the memory, from the persistent cache, or from the network
+     * if it isn't cached.
+     * 
+     * @param tripId
+     *            the identifier of the trip
+     * @return the schedule of the trip
+     * @throws IOException
+     *             the schedule isn't cached and can't be fetched
+     */
+    public TripSchedule getTripSchedule(final String tripId) throws IOException {
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("getTripSchedule.start - tripId={}", tripId);
+        }
+
+        TripSchedule schedule = trips.get(tripId);
+        if (null == schedule) {
+            schedule = tripScheduleRequests.execute(tripId,
+                    new RequestCoalescer.Request<TripSchedule>() {
+
+                        @Override
+                        public TripSchedule execute() throws IOException {
+
+                            return loadTripSchedule(tripId);
+                        }
+                    });
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("getTripSchedule.end - found={}", schedule != null);
+        }
+        return schedule;
+    }
+
+    /**
+     * Loads the schedule of a trip from the persistent cache, or from the network if it isn't
+     * cached, and keeps it in memory.
+     * 
+     * @param tripId
+     *            the identifier of the trip
+     * @return the schedule of the trip
+     * @throws IOException
+     *             the schedule isn't cached and can't be fetched
+     */
+    private TripSchedule loadTripSchedule(final String tripId) throws IOException {
+
+        TripSchedule schedule;
+        final CacheEntryDao.Entry<TripSchedule> cached = cache.get(TYPE_TRIP_SCHEDULE, tripId,
+                TripSchedule.class);
+        if (cached != null) {
+            schedule = cached.getValue();
+        } else {
+            final long fetched = System.currentTimeMillis();
+            schedule = client.getTripDetails(tripId);
+            if (schedule != null) {
+                cache.put(TYPE_TRIP_SCHEDULE, tripId, schedule, fetched, fetched
+                        + Conf.CACHE_SCHEDULE_TTL);
+            }
+        }
+        if (schedule != null) {
+            trips.put(tripId, schedule);
+        }
+        return schedule;
+    }
+
+    /**
+     * Gets the cache key of the schedule of a stop: the identifier of the stop and the service
+     * day.
+     * 
+     * @param stopId
+     *            the identifier of the stop
+     * @param date
+     *            a date of the service day
+     * @return the cache key of the schedule
+     */
+    private static String getKey(final String stopId, final Date date) {
+
+        final Calendar c = Calendar.getInstance();
+        c.setTime(date);
+        return String.format("%s/%04d%02d%02d", stopId, c.get(Calendar.YEAR),
+                c.get(Calendar.MONTH) + 1, c.get(Calendar.DAY_OF_MONTH));
+    }
+
+    /**
+     * Gets the time after which a cached schedule is evicted: the end of the day following its
+     * service day, as the trips of a service day may run after midnight, unless the time to live
+     * of the schedules elapses before.
+     * 
+     * @param date
+     *            a date of the service day of the schedule
+     * @param fetched
+     *            the time in milliseconds at which the schedule was fetched
+     * @return the expiration time in milliseconds
+     */
+    private static long getExpirationTime(final Date date, final long fetched) {
+
+        final Calendar c = Calendar.getInstance();
+        c.setTime(date);
+        c.set(Calendar.HOUR_OF_DAY, 0);
+        c.set(Calendar.MINUTE, 0);
+        c.set(Calendar.SECOND, 0);
+        c.set(Calendar.MILLISECOND, 0);
+        c.add(Calendar.DAY_OF_MONTH, 2);
+        return Math.min(c.getTimeInMillis(), fetched + Conf.CACHE_SCHEDULE_TTL);
+    }
+}
@@ -23,12 +23,19 @@ package fr.itinerennes.business.service;
  */
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
@@ -38,11 +45,21 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.message.BasicHeader;
 import org.apache.http.message.BasicHttpResponse;
 import org.apache.http.message.BasicStatusLine;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
 import org.apache.http.protocol.HttpContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +68,16 @@ import fr.itinerennes.commons.utils.StringUtils;
 
 /**
  * An {@link HttpClient} delegating requests to {@link HttpURLConnection}.
+ * <p>
+ * It is a lighter alternative to the Apache client: the connections are kept alive and reused by
+ * {@link HttpURLConnection} once the content of their responses is fully read or closed. The
+ * responses are requested compressed with gzip and decoded transparently. The entities of the
+ * requests and the responses are streamed, and the responses to unsuccessful requests expose the
+ * content of the error stream.
+ * <p>
+ * The timeouts and the user agent are read from its {@link #getParams() parameters}. Its
+ * {@link #getConnectionManager() connection manager} only supports shutting the client down: the
+ * connections are managed by {@link HttpURLConnection}.
  * 
  * @author Jérémie Huchet
  */
@@ -59,9 +86,62 @@ public final class SimpleHttpClient implements HttpClient {
     /** The event logger. */
     private static final Logger LOGGER = LoggerFactory.getLogger(SimpleHttpClient.class);
 
+    /** The default timeout in milliseconds to establish a connection and to read data. */
+    private static final int DEFAULT_TIMEOUT = 30000;
+
+    /** The first API level where {@link HttpURLConnection} can reuse connections safely. */
+    private static final int KEEP_ALIVE_MIN_SDK = 8;
+
     /** Defaults headers to apply to every request. */
     private final List<Header> defaultHeaders = new ArrayList<Header>();
 
+    /** The parameters of the client. */
+    private final HttpParams params;
+
+    /** The connection manager. */
+    private final UrlConnectionManager connectionManager = new UrlConnectionManager();
+
+    /**
+     * Creates a client with the default timeouts.
+     */
+    public SimpleHttpClient() {
+
+        this(DEFAULT_TIMEOUT, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Creates a client.
+     * 
+     * @param connectTimeout
+     *            the timeout in milliseconds to establish a connection, 0 for no timeout
+     * @param readTimeout
+     *            the timeout in milliseconds to read data, 0 for no timeout
+     */
+    public SimpleHttpClient(final int connectTimeout, final int readTimeout) {
+
+        this(new BasicHttpParams());
+        HttpConnectionParams.setConnectionTimeout(params, connectTimeout);
+        HttpConnectionParams.setSoTimeout(params, readTimeout);
+    }
+
+    /**
+     * Creates a client using the given parameters. The timeouts are read from
+     * {@link HttpConnectionParams#CONNECTION_TIMEOUT} and {@link HttpConnectionParams#SO_TIMEOUT},
+     * and the user agent from {@link HttpProtocolParams#USER_AGENT}.
+     * 
+     * @param params
+     *            the parameters of the client
+     */
+    public SimpleHttpClient(final HttpParams params) {
+
+        this.params = params;
+
+        // before Froyo, reusing a connection may return the response of a previous request
+        if (android.os.Build.VERSION.SDK_INT < KEEP_ALIVE_MIN_SDK) {
+            System.setProperty("http.keepAlive", "false");
+        }
+    }
+
     /**
      * Add a default header to apply to every request.
      * 
@@ -76,41 +156,36 @@ public final class SimpleHttpClient implements HttpClient {
     }
 
     /**
-     * <strong>Always throws {@link UnsupportedOperationException}.</strong>
+     * Gets the parameters of the client. The modifications of the timeouts and of the user agent
+     * apply to the next requests.
      * <p>
      * {@inheritDoc}
      * 
-     * @deprecated do not use this method
      * @see org.apache.http.client.HttpClient#getParams()
      */
-    @Deprecated
     @Override
     public HttpParams getParams() {
 
-        throw new UnsupportedOperationException("Method not implemented!");
+        return params;
     }
 
     /**
-     * <strong>Always throws {@link UnsupportedOperationException}.</strong>
+     * Gets the connection manager of the client. The connections are managed by
+     * {@link HttpURLConnection}, so the manager can only shut the client down: connections can't
+     * be requested from it.
      * <p>
      * {@inheritDoc}
      * 
-     * @deprecated do not use this method
      * @see org.apache.http.client.HttpClient#getConnectionManager()
      */
-    @Deprecated
     @Override
     public ClientConnectionManager getConnectionManager() {
 
-        throw new UnsupportedOperationException("Method not implemented!");
+        return connectionManager;
     }
 
     /**
      * Executes the given request using {@link HttpURLConnection}.
-     * <ul>
-     * <li>Any POST parameter will be ignored</li>
-     * <li>Only the URL part of the request is used to make the call</li>
-     * </ul>
      * <p>
      * {@inheritDoc}
      * 
@@ -119,33 +194,14 @@ public final class SimpleHttpClient implements HttpClient {
     @Override
     public HttpResponse execute(final HttpUriRequest request) throws IOException {
 
-        final HttpURLConnection cx = (HttpURLConnection) request.getURI().toURL().openConnection();
-        for (final Header header : defaultHeaders) {
-            cx.addRequestProperty(header.getName(), header.getValue());
-        }
-
-        final StatusLine status = new BasicStatusLine(HttpVersion.HTTP_1_1, cx.getResponseCode(),
-                cx.getResponseMessage());
-        final BasicHttpResponse response = new BasicHttpResponse(status);
-
-        for (final Entry<String, List<String>> header : cx.getHeaderFields().entrySet()) {
-            for (final String headerValue : header.getValue()) {
-                if (!StringUtils.isBlank(header.getKey())) {
-                    response.addHeader(header.getKey(), headerValue);
-                }
-            }
-        }
-        final InputStreamEntity entity = new InputStreamEntity(cx.getInputStream(),
-                cx.getContentLength());
-        response.setEntity(entity);
-        return response;
+        return execute(null, request, (HttpContext) null);
     }
 
     /**
-     * <strong>Always throws {@link UnsupportedOperationException}.</strong>
+     * Executes the given request using {@link HttpURLConnection} and processes the response with
+     * the given handler.
      * <p>
-     * This implementation implies restrictions, see {@link #execute(HttpUriRequest)} to get more
-     * informations. {@inheritDoc}
+     * {@inheritDoc}
      * 
      * @see org.apache.http.client.HttpClient#execute(org.apache.http.client.methods.HttpUriRequest,
      *      org.apache.http.client.ResponseHandler)
@@ -154,118 +210,359 @@ public final class SimpleHttpClient implements HttpClient {
     public <T> T execute(final HttpUriRequest request,
             final ResponseHandler<? extends T> responseHandler) throws IOException {
 
-        final HttpResponse response = execute(request);
-        return responseHandler.handleResponse(response);
+        return execute(null, request, responseHandler, null);
     }
 
     /**
-     * <strong>Always throws {@link UnsupportedOperationException}.</strong>
+     * Executes the given request using {@link HttpURLConnection}. The context is ignored.
      * <p>
      * {@inheritDoc}
      * 
-     * @deprecated do not use this method
-     * @throws UnsupportedOperationException
      * @see org.apache.http.client.HttpClient#execute(org.apache.http.client.methods.HttpUriRequest,
      *      org.apache.http.protocol.HttpContext)
      */
-    @Deprecated
     @Override
     public HttpResponse execute(final HttpUriRequest request, final HttpContext context)
             throws IOException {
 
-        throw new UnsupportedOperationException("Method not implemented!");
+        return execute(null, request, context);
     }
 
     /**
-     * <strong>Always throws {@link UnsupportedOperationException}.</strong>
+     * Executes the given request using {@link HttpURLConnection}.
      * <p>
      * {@inheritDoc}
      * 
-     * @deprecated do not use this method
-     * @throws UnsupportedOperationException
      * @see org.apache.http.client.HttpClient#execute(org.apache.http.HttpHost,
      *      org.apache.http.HttpRequest)
      */
-    @Deprecated
     @Override
     public HttpResponse execute(final HttpHost target, final HttpRequest request)
             throws IOException {
 
-        throw new UnsupportedOperationException("Method not implemented!");
+        return execute(target, request, (HttpContext) null);
     }
 
     /**
-     * <strong>Always throws {@link UnsupportedOperationException}.</strong>
+     * Executes the given request using {@link HttpURLConnection}. The context is ignored.
+     * <ul>
+     * <li>The request is sent to the given target if its URI is relative</li>
+     * <li>The <code>Accept-Encoding: gzip</code> header is added unless the request specifies an
+     * encoding, and gzip responses are decoded</li>
+     * <li>The content of the entity of the request is streamed, with a fixed length when it is
+     * known or chunked otherwise</li>
+     * </ul>
      * <p>
      * {@inheritDoc}
      * 
-     * @deprecated do not use this method
-     * @throws UnsupportedOperationException
      * @see org.apache.http.client.HttpClient#execute(org.apache.http.HttpHost,
      *      org.apache.http.HttpRequest, org.apache.http.protocol.HttpContext)
      */
-    @Deprecated
     @Override
     public HttpResponse execute(final HttpHost target, final HttpRequest request,
             final HttpContext context) throws IOException {
 
-        throw new UnsupportedOperationException("Method not implemented!");
+        if (connectionManager.isShutdown()) {
+            throw new IllegalStateException("the client has been shut down");
+        }
+
+        final URI uri = getUri(target, request);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("execute - {} {}", request.getRequestLine().getMethod(), uri);
+        }
+
+        final HttpURLConnection cx = (HttpURLConnection) uri.toURL().openConnection();
+        cx.setConnectTimeout(HttpConnectionParams.getConnectionTimeout(params));
+        cx.setReadTimeout(HttpConnectionParams.getSoTimeout(params));
+        cx.setRequestMethod(request.getRequestLine().getMethod());
+        for (final Header header : defaultHeaders) {
+            cx.addRequestProperty(header.getName(), header.getValue());
+        }
+        for (final Header header : request.getAllHeaders()) {
+            cx.addRequestProperty(header.getName(), header.getValue());
+        }
+        final String userAgent = HttpProtocolParams.getUserAgent(params);
+        if (userAgent != null && !request.containsHeader("User-Agent")) {
+            cx.setRequestProperty("User-Agent", userAgent);
+        }
+        if (!request.containsHeader("Accept-Encoding")) {
+            cx.setRequestProperty("Accept-Encoding", "gzip");
+        }
+
+        if (request instanceof HttpEntityEnclosingRequest) {
+            final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null) {
+                writeEntity(cx, entity);
+            }
+        }
+
+        final StatusLine status = new BasicStatusLine(HttpVersion.HTTP_1_1, cx.getResponseCode(),
+                cx.getResponseMessage());
+        final BasicHttpResponse response = new BasicHttpResponse(status);
+
+        final boolean gzip = "gzip".equalsIgnoreCase(cx.getContentEncoding());
+        for (final Entry<String, List<String>> header : cx.getHeaderFields().entrySet()) {
+            if (StringUtils.isBlank(header.getKey())
+                    || gzip && (header.getKey().equalsIgnoreCase("Content-Encoding")
+                    || header.getKey().equalsIgnoreCase("Content-Length"))) {
+                // the status line, or headers describing the compressed content
+                continue;
+            }
+            for (final String headerValue : header.getValue()) {
+                response.addHeader(header.getKey(), headerValue);
+            }
+        }
+
+        // the content of unsuccessful responses is only available from the error stream
+        InputStream content = status.getStatusCode() < HttpURLConnection.HTTP_BAD_REQUEST ? cx
+                .getInputStream() : cx.getErrorStream();
+        if (content != null) {
+            final long length;
+            if (gzip) {
+                content = new GZIPInputStream(content);
+                length = -1;
+            } else {
+                length = cx.getContentLength();
+            }
+            final InputStreamEntity entity = new InputStreamEntity(content, length);
+            entity.setContentType(response.getFirstHeader("Content-Type"));
+            response.setEntity(entity);
+        }
+        return response;
     }
 
     /**
-     * <strong>Always throws {@link UnsupportedOperationException}.</strong>
+     * Executes the given request using {@link HttpURLConnection} and processes the response with
+     * the given handler. The context is ignored.
      * <p>
      * {@inheritDoc}
      * 
-     * @deprecated do not use this method
-     * @throws UnsupportedOperationException
      * @see org.apache.http.client.HttpClient#execute(org.apache.http.client.methods.HttpUriRequest,
      *      org.apache.http.client.ResponseHandler, org.apache.http.protocol.HttpContext)
      */
-    @Deprecated
     @Override
     public <T> T execute(final HttpUriRequest request,
             final ResponseHandler<? extends T> responseHandler, final HttpContext context)
             throws IOException {
 
-        throw new UnsupportedOperationException("Method not implemented!");
+        return execute(null, request, responseHandler, context);
     }
 
     /**
-     * <strong>Always throws {@link UnsupportedOperationException}.</strong>
+     * Executes the given request using {@link HttpURLConnection} and processes the response with
+     * the given handler.
      * <p>
      * {@inheritDoc}
      * 
-     * @deprecated do not use this method
-     * @throws UnsupportedOperationException
      * @see org.apache.http.client.HttpClient#execute(org.apache.http.HttpHost,
      *      org.apache.http.HttpRequest, org.apache.http.client.ResponseHandler)
      */
-    @Deprecated
     @Override
     public <T> T execute(final HttpHost target, final HttpRequest request,
             final ResponseHandler<? extends T> responseHandler) throws IOException {
 
-        throw new UnsupportedOperationException("Method not implemented!");
+        return execute(target, request, responseHandler, null);
     }
 
     /**
-     * <strong>Always throws {@link UnsupportedOperationException}.</strong>
+     * Executes the given request using {@link HttpURLConnection} and processes the response with
+     * the given handler. The content of the response is closed once it is processed, so the
+     * connection can be reused. The context is ignored.
      * <p>
      * {@inheritDoc}
      * 
-     * @deprecated do not use this method
-     * @throws UnsupportedOperationException
      * @see org.apache.http.client.HttpClient#execute(org.apache.http.HttpHost,
      *      org.apache.http.HttpRequest, org.apache.http.client.ResponseHandler,
      *      org.apache.http.protocol.HttpContext)
      */
-    @Deprecated
     @Override
     public <T> T execute(final HttpHost target, final HttpRequest request,
             final ResponseHandler<? extends T> responseHandler, final HttpContext context)
             throws IOException {
 
-        throw new UnsupportedOperationException("Method not implemented!");
+        final HttpResponse response = execute(target, request, context);
+        try {
+            return responseHandler.handleResponse(response);
+        } finally {
+            final HttpEntity entity = response.getEntity();
+            if (entity != null) {
+                entity.consumeContent();
+            }
+        }
+    }
+
+    /**
+     * Gets the absolute URI of a request.
+     * 
+     * @param target
+     *            the host to send the request to if its URI is relative, may be null
+     * @param request
+     *            the request
+     * @return the absolute URI of the request
+     * @throws IOException
+     *             the URI of the request is relative and no target is given
+     */
+    private static URI getUri(final HttpHost target, final HttpRequest request)
+            throws IOException {
+
+        final URI uri;
+        if (request instanceof HttpUriRequest) {
+            uri = ((HttpUriRequest) request).getURI();
+        } else {
+            uri = URI.create(request.getRequestLine().getUri());
+        }
+        if (uri.isAbsolute()) {
+            return uri;
+        }
+        if (null == target) {
+            throw new IOException(String.format("no target host for the relative URI %s", uri));
+        }
+        return URI.create(target.toURI()).resolve(uri);
+    }
+
+    /**
+     * Streams the entity of a request to a connection.
+     * 
+     * @param cx
+     *            the connection
+     * @param entity
+     *            the entity of the request
+     * @throws IOException
+     *             the entity can't be written
+     */
+    private static void writeEntity(final HttpURLConnection cx, final HttpEntity entity)
+            throws IOException {
+
+        cx.setDoOutput(true);
+        final long length = entity.getContentLength();
+        if (length >= 0 && length <= Integer.MAX_VALUE) {
+            cx.setFixedLengthStreamingMode((int) length);
+        } else {
+            cx.setChunkedStreamingMode(0);
+        }
+        if (entity.getContentType() != null) {
+            cx.setRequestProperty("Content-Type", entity.getContentType().getValue());
+        }
+        if (entity.getContentEncoding() != null) {
+            cx.setRequestProperty("Content-Encoding", entity.getContentEncoding().getValue());
+        }
+
+        final OutputStream out = cx.getOutputStream();
+        try {
+            entity.writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * The connection manager of a {@link SimpleHttpClient}. It doesn't manage any connection, it
+     * only records the client was shut down.
+     */
+    private static final class UrlConnectionManager implements ClientConnectionManager {
+
+        /** The schemes supported by {@link HttpURLConnection}. */
+        private final SchemeRegistry schemeRegistry = new SchemeRegistry();
+
+        /** Whether or not the client was shut down. */
+        private volatile boolean shutdown = false;
+
+        /**
+         * Creates the connection manager.
+         */
+        UrlConnectionManager() {
+
+            schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+            schemeRegistry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+        }
+
+        /**
+         * Gets whether or not the client was shut down.
+         * 
+         * @return true if the client was shut down
+         */
+        boolean isShutdown() {
+
+            return shutdown;
+        }
+
+        /**
+         * {@inheritDoc}
+         * 
+         * @see org.apache.http.conn.ClientConnectionManager#getSchemeRegistry()
+         */
+        @Override
+        public SchemeRegistry getSchemeRegistry() {
+
+            return schemeRegistry;
+        }
+
+        /**
+         * <strong>Always throws {@link UnsupportedOperationException}</strong>, the connections
+         * are managed by {@link HttpURLConnection}.
+         * <p>
+         * {@inheritDoc}
+         * 
+         * @see org.apache.http.conn.ClientConnectionManager#requestConnection(org.apache.http.conn.routing.HttpRoute,
+         *      java.lang.Object)
+         */
+        @Override
+        public ClientConnectionRequest requestConnection(final HttpRoute route,
+                final Object state) {
+
+            throw new UnsupportedOperationException("connections are managed by HttpURLConnection");
+        }
+
+        /**
+         * Does nothing, this manager doesn't give any connection.
+         * <p>
+         * {@inheritDoc}
+         * 
+         * @see org.apache.http.conn.ClientConnectionManager#releaseConnection(org.apache.http.conn.ManagedClientConnection,
+         *      long, java.util.concurrent.TimeUnit)
+         */
+        @Override
+        public void releaseConnection(final ManagedClientConnection conn, final long validDuration,
+                final TimeUnit timeUnit) {
+
+        }
+
+        /**
+         * Does nothing, {@link HttpURLConnection} closes the idle connections itself.
+         * <p>
+         * {@inheritDoc}
+         * 
+         * @see org.apache.http.conn.ClientConnectionManager#closeIdleConnections(long,
+         *      java.util.concurrent.TimeUnit)
+         */
+        @Override
+        public void closeIdleConnections(final long idletime, final TimeUnit tunit) {
+
+        }
+
+        /**
+         * Does nothing, {@link HttpURLConnection} closes the expired connections itself.
+         * <p>
+         * {@inheritDoc}
+         * 
+         * @see org.apache.http.conn.ClientConnectionManager#closeExpiredConnections()
+         */
+        @Override
+        public void closeExpiredConnections() {
+
+        }
+
+        /**
+         * Shuts the client down: it can't execute requests anymore.
+         * <p>
+         * {@inheritDoc}
+         * 
+         * @see org.apache.http.conn.ClientConnectionManager#shutdown()
+         */
+        @Override
+        public void shutdown() {
+
+            shutdown = true;
+        }
     }
 }
@@ -0,0 +1,328 @@
+package fr.itinerennes.database;
+
+/*
+ * [license]
+ * ItineRennes
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+
+import fr.itinerennes.commons.dataset.ColumnarDatasetReader;
+import fr.itinerennes.database.Columns.AccessibilityColumns;
+import fr.itinerennes.database.Columns.MarkersColumns;
+import fr.itinerennes.database.Columns.RoutesStopsColumns;
+
+/**
+ * An {@link IDataReader} over a binary, column-oriented dataset generated at build time from the
+ * CSV files of the <code>dataset</code> directory, which aren't packaged.
+ * <p>
+ * The dataset is copied into a direct buffer: the assets are compressed in the package, so they
+ * can't be memory-mapped. Reading a row doesn't allocate anything. The factory methods read the
+ * asset, so they shouldn't be called from the UI thread.
+ * @see ColumnarDatasetReader
+ */
+public final class BinaryDataReader implements IDataReader {
+
+    /** The path of the datasets in the assets. */
+    private static final String DATASET_PATH = "dataset/%s.bin";
+
+    /** Byte buffer length for the copy of the assets. */
+    private static final int BYTE_BUF_SIZE = 8192;
+
+    /** The decoder of the dataset. */
+    private final ColumnarDatasetReader dataset;
+
+    /** The table name. */
+    private final String tableName;
+
+    /** The column names. */
+    private final String[] columnNames;
+
+    /** The column types. */
+    private final int[] columnTypes;
+
+    /** The amount of columns identifying a row. */
+    private final int keyColumnCount;
+
+    /**
+     * Constructor.
+     * 
+     * @param buffer
+     *            the buffer containing the dataset
+     * @param tableName
+     *            the table name
+     * @param columnNames
+     *            the columns names
+     * @param columnTypes
+     *            the columns types
+     * @param keyColumnCount
+     *            the amount of columns identifying a row
+     * @throws IllegalArgumentException
+     *             the dataset columns don't match the given column types
+     */
+    public BinaryDataReader(final ByteBuffer buffer, final String tableName,
+            final String[] columnNames, final int[] columnTypes, final int keyColumnCount) {
+
+        this.dataset = new ColumnarDatasetReader(buffer);
+        this.tableName = tableName;
+        this.columnNames = columnNames;
+        this.columnTypes = columnTypes;
+        this.keyColumnCount = keyColumnCount;
+
+        if (dataset.getColumnCount() != columnTypes.length) {
+            throw new IllegalArgumentException(String.format(
+                    "Dataset for table %s has %d columns, %d expected", tableName,
+                    dataset.getColumnCount(), columnTypes.length));
+        }
+        for (int i = 0; i < columnTypes.length; i++) {
+            if (dataset.getColumnType(i) != columnTypes[i]) {
+                throw new IllegalArgumentException(String.format(
+                        "Column %s of the dataset for table %s has an unexpected type",
+                        columnNames[i], tableName));
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see fr.itinerennes.database.IDataReader#getRowCount()
+     */
+    @Override
+    public int getRowCount() {
+
+        return dataset.getRowCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see fr.itinerennes.database.IDataReader#getTable()
+     */
+    @Override
+    public String getTable() {
+
+        return tableName;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see fr.itinerennes.database.IDataReader#getColumns()
+     */
+    @Override
+    public String[] getColumns() {
+
+        return columnNames;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see fr.itinerennes.database.IDataReader#getColumnTypes()
+     */
+    @Override
+    public int[] getColumnTypes() {
+
+        return columnTypes;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see fr.itinerennes.database.IDataReader#getKeyColumnCount()
+     */
+    @Override
+    public int getKeyColumnCount() {
+
+        return keyColumnCount;
+    }
+
+    /**
+     * Returns the checksum of the CSV file the dataset was generated from, which is also the
+     * checksum recorded by the prebuilt database, so importing it doesn't trigger an update of the
+     * table.
+     * <p>
+     * {@inheritDoc}
+     * 
+     * @see fr.itinerennes.database.IDataReader#getChecksum()
+     */
+    @Override
+    public long getChecksum() {
+
+        return dataset.getChecksum();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see fr.itinerennes.database.IDataReader#next(fr.itinerennes.database.DataRow)
+     */
+    @Override
+    public boolean next(final DataRow row) {
+
+        if (!dataset.next()) {
+            return false;
+        }
+        for (int i = 0; i < columnTypes.length; i++) {
+            if (columnTypes[i] == TYPE_TEXT) {
+                row.setString(i, dataset.getString(i));
+            } else if (dataset.isNull(i)) {
+                row.setNull(i);
+            } else {
+                row.setLong(i, dataset.getLong(i));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Nothing to release: the buffer is released when the reader is garbage collected.
+     * 
+     * @see fr.itinerennes.database.IDataReader#close()
+     */
+    @Override
+    public void close() {
+
+    }
+
+    /**
+     * Get a reader for markers initial dataset.
+     * 
+     * @param context
+     *            the context
+     * @return a reader for markers
+     */
+    public static IDataReader markers(final Context context) {
+
+        // type;id;lat;lon;label;search_label;city
+        final String[] columns = new String[] { MarkersColumns.TYPE, MarkersColumns.ID,
+                MarkersColumns.LATITUDE, MarkersColumns.LONGITUDE, MarkersColumns.LABEL,
+                MarkersColumns.SEARCH_LABEL, MarkersColumns.CITY };
+        final int[] types = new int[] { TYPE_TEXT, TYPE_TEXT, TYPE_INTEGER, TYPE_INTEGER,
+                TYPE_TEXT, TYPE_TEXT, TYPE_TEXT };
+
+        return open(context, "markers", MarkersColumns.MARKERS_TABLE_NAME, columns, types, 2);
+    }
+
+    /**
+     * Get a reader for accessibility initial dataset.
+     * 
+     * @param context
+     *            the context
+     * @return a reader for accessibility
+     */
+    public static IDataReader accessibility(final Context context) {
+
+        // id;type;wheelchair
+        final String[] columns = new String[] { AccessibilityColumns.ID, AccessibilityColumns.TYPE,
+                AccessibilityColumns.WHEELCHAIR };
+        final int[] types = new int[] { TYPE_TEXT, TYPE_TEXT, TYPE_INTEGER };
+
+        return open(context, "accessibility", AccessibilityColumns.ACCESSIBILITY_TABLE_NAME,
+                columns, types, 1);
+    }
+
+    /**
+     * Get a reader for routes and stops relationships initial dataset.
+     * 
+     * @param context
+     *            the context
+     * @return a reader for routes and stops relationships
+     */
+    public static IDataReader routesStops(final Context context) {
+
+        // route_id;stop_id
+        final String[] columns = new String[] { RoutesStopsColumns.ROUTE_ID,
+                RoutesStopsColumns.STOP_ID };
+        final int[] types = new int[] { TYPE_TEXT, TYPE_TEXT };
+
+        return open(context, "routes_stops", RoutesStopsColumns.ROUTES_STOPS_TABLE_NAME,
+                columns, types, 2);
+    }
+
+    /**
+     * Opens a binary dataset packaged in the assets.
+     * 
+     * @param context
+     *            the context
+     * @param name
+     *            the name of the dataset
+     * @param tableName
+     *            the table name
+     * @param columnNames
+     *            the columns names
+     * @param columnTypes
+     *            the columns types
+     * @param keyColumnCount
+     *            the amount of columns identifying a row
+     * @return the binary dataset reader
+     */
+    private static IDataReader open(final Context context, final String name,
+            final String tableName, final String[] columnNames, final int[] columnTypes,
+            final int keyColumnCount) {
+
+        final String path = String.format(DATASET_PATH, name);
+        try {
+            return new BinaryDataReader(load(context.getAssets(), path), tableName, columnNames,
+                    columnTypes, keyColumnCount);
+        } catch (final IOException e) {
+            throw new RuntimeException(String.format("Unable to read the binary dataset %s",
+                    path), e);
+        }
+    }
+
+    /**
+     * Copies an asset into a direct buffer.
+     * 
+     * @param assets
+     *            the asset manager
+     * @param path
+     *            the path of the asset
+     * @return a buffer containing the asset
+     * @throws IOException
+     *             the asset can't be read
+     */
+    private static ByteBuffer load(final AssetManager assets, final String path)
+            throws IOException {
+
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        final InputStream in = assets.open(path, AssetManager.ACCESS_STREAMING);
+        try {
+            final byte[] buffer = new byte[BYTE_BUF_SIZE];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                content.write(buffer, 0, len);
+            }
+        } finally {
+            in.close();
+        }
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(content.size());
+        buffer.put(content.toByteArray());
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,283 @@
+package fr.itinerennes.database;
+
+/*
+ * [license]
+ * ItineRennes
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.lang.reflect.Type;
+import java.util.Date;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+
+import fr.itinerennes.database.Columns.CacheEntriesColumns;
+
+/**
+ * A DAO to access the cache of the responses of the web services. An entry is identified by the
+ * type and the identifier of the cached resource, which is stored serialized to JSON.
+ * <p>
+ * The expired entries are evicted each time an entry is stored. The least recently stored entries
+ * of a type are evicted too when the cache holds more than the maximum count of entries of this
+ * type, so a type stored often doesn't evict the entries of the other types.
+ */
+public final class CacheEntryDao implements CacheEntriesColumns {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheEntryDao.class);
+
+    /** SQL query used to fetch an entry. */
+    private static final String GET_ENTRY = String.format(
+            "SELECT %s, %s, %s FROM %s WHERE %s = ? AND %s = ?", FETCHED, EXPIRES, CONTENT,
+            CACHE_ENTRIES_TABLE_NAME, TYPE, ID);
+
+    /** Where clause matching the expired entries. */
+    private static final String WHERE_EXPIRED = String.format("%s < ?", EXPIRES);
+
+    /**
+     * Where clause matching the entries of a type stored before the given count of most recent
+     * entries of this type. An entry gets a new identifier each time it is replaced, so the
+     * identifiers follow the order the entries were stored in.
+     */
+    private static final String WHERE_OVERFLOW = String.format(
+            "%s = ? AND %s <= (SELECT %s FROM %s WHERE %s = ? ORDER BY %s DESC LIMIT 1 OFFSET ?)",
+            TYPE, _ID, _ID, CACHE_ENTRIES_TABLE_NAME, TYPE, _ID);
+
+    /** The database helper. */
+    private final DatabaseHelper dbHelper;
+
+    /** The maximum count of entries of each type kept in the cache. */
+    private final int maxEntries;
+
+    /** Serializes the cached resources, dates are stored as milliseconds since the epoch. */
+    private final Gson gson;
+
+    /**
+     * Creates the cache DAO.
+     * 
+     * @param databaseHelper
+     *            the database helper
+     * @param maxEntries
+     *            the maximum count of entries of each type kept in the cache
+     */
+    public CacheEntryDao(final DatabaseHelper databaseHelper, final int maxEntries) {
+
+        dbHelper = databaseHelper;
+        this.maxEntries = maxEntries;
+        gson = new GsonBuilder().registerTypeAdapter(Date.class, new DateAdapter()).create();
+    }
+
+    /**
+     * Gets a cached resource.
+     * 
+     * @param <T>
+     *            the type of the cached resource
+     * @param type
+     *            the type of the resource
+     * @param id
+     *            the identifier of the resource
+     * @param clazz
+     *            the class of the cached resource
+     * @return the entry of the resource, or null if it isn't cached or if it expired
+     */
+    public <T> Entry<T> get(final String type, final String id, final Class<T> clazz) {
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("get.start - type={}, id={}", type, id);
+        }
+
+        final String[] args = new String[] { type, id };
+        final Cursor c = dbHelper.getQueryStats().query(dbHelper.getReadOnlyDatabase(),
+                "cacheEntry", GET_ENTRY, args);
+
+        Entry<T> entry = null;
+        try {
+            if (c.moveToFirst() && c.getLong(1) >= System.currentTimeMillis()) {
+                entry = new Entry<T>(gson.fromJson(c.getString(2), clazz), c.getLong(0));
+            }
+        } catch (final JsonParseException e) {
+            LOGGER.warn(String.format("Can't read cache entry %s/%s, ignoring it", type, id), e);
+        } finally {
+            c.close();
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("get.end - hit={}", entry != null);
+        }
+        return entry;
+    }
+
+    /**
+     * Stores a resource in the cache, replacing the previous entry of the resource. The expired
+     * entries and the entries of the same type exceeding the maximum count of entries are
+     * evicted.
+     * 
+     * @param type
+     *            the type of the resource
+     * @param id
+     *            the identifier of the resource
+     * @param value
+     *            the resource
+     * @param fetched
+     *            the time in milliseconds at which the resource was fetched
+     * @param expires
+     *            the time in milliseconds after which the entry is evicted
+     */
+    public void put(final String type, final String id, final Object value, final long fetched,
+            final long expires) {
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("put.start - type={}, id={}", type, id);
+        }
+
+        final ContentValues values = new ContentValues();
+        values.put(TYPE, type);
+        values.put(ID, id);
+        values.put(FETCHED, fetched);
+        values.put(EXPIRES, expires);
+        values.put(CONTENT, gson.toJson(value));
+
+        final SQLiteDatabase database = dbHelper.getWritableDatabase();
+        DatabaseHelper.beginWriteTransaction(database);
+        try {
+            database.replace(CACHE_ENTRIES_TABLE_NAME, null, values);
+            final int expired = database.delete(CACHE_ENTRIES_TABLE_NAME, WHERE_EXPIRED,
+                    new String[] { String.valueOf(System.currentTimeMillis()) });
+            final int overflow = database.delete(CACHE_ENTRIES_TABLE_NAME, WHERE_OVERFLOW,
+                    new String[] { type, type, String.valueOf(maxEntries) });
+            database.setTransactionSuccessful();
+
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("put.end - {} expired and {} overflowing entries evicted", expired,
+                        overflow);
+            }
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * A cached resource and the time it was fetched at.
+     * 
+     * @param <T>
+     *            the type of the cached resource
+     */
+    public static final class Entry<T> {
+
+        /** The cached resource. */
+        private final T value;
+
+        /** The time in milliseconds at which the resource was fetched. */
+        private final long fetched;
+
+        /**
+         * Creates an entry.
+         * 
+         * @param value
+         *            the cached resource
+         * @param fetched
+         *            the time in milliseconds at which the resource was fetched
+         */
+        private Entry(final T value, final long fetched) {
+
+            this.value = value;
+            this.fetched = fetched;
+        }
+
+        /**
+         * Gets the cached resource.
+         * 
+         * @return the cached resource
+         */
+        public T getValue() {
+
+            return value;
+        }
+
+        /**
+         * Gets the time at which the resource was fetched.
+         * 
+         * @return the time in milliseconds at which the resource was fetched
+         */
+        public long getFetched() {
+
+            return fetched;
+        }
+
+        /**
+         * Gets whether or not the resource was fetched less than the given duration ago.
+         * 
+         * @param maxAge
+         *            a duration in milliseconds
+         * @return true if the resource is younger than the given duration
+         */
+        public boolean isFresh(final long maxAge) {
+
+            return System.currentTimeMillis() - fetched < maxAge;
+        }
+    }
+
+    /**
+     * Serializes dates as milliseconds since the epoch, so they are restored exactly whatever the
+     * locale and the time zone are.
+     */
+    private static final class DateAdapter implements JsonSerializer<Date>, JsonDeserializer<Date> {
+
+        /**
+         * {@inheritDoc}
+         * 
+         * @see com.google.gson.JsonSerializer#serialize(java.lang.Object, java.lang.reflect.Type,
+         *      com.google.gson.JsonSerializationContext)
+         */
+        @Override
+        public JsonElement serialize(final Date src, final Type typeOfSrc,
+                final JsonSerializationContext context) {
+
+            return new JsonPrimitive(src.getTime());
+        }
+
+        /**
+         * {@inheritDoc}
+         * 
+         * @see com.google.gson.JsonDeserializer#deserialize(com.google.gson.JsonElement,
+         *      java.lang.reflect.Type, com.google.gson.JsonDeserializationContext)
+         */
+        @Override
+        public Date deserialize(final JsonElement json, final Type typeOfT,
+                final JsonDeserializationContext context) {
+
+            return new Date(json.getAsLong());
+        }
+    }
+}
@@ -116,6 +116,96 @@ public final class Columns {
          * </P>
          */
         String CITY = "city";
+
+        /**
+         * The Morton code of the grid cell containing the marker, used as a spatial index.
+         * <P>
+         * Type: INTEGER
+         * </P>
+         * 
+         * @see fr.itinerennes.commons.utils.SpatialUtils#encode(int, int)
+         */
+        String TILE = "tile";
+
+        /**
+         * The identifier of the stop group containing the marker.
+         * <P>
+         * Type: INTEGER
+         * </P>
+         * 
+         * @see StopGroupsColumns
+         */
+        String GROUP_ID = "group_id";
+    }
+
+    /**
+     * Columns of the stop groups. A stop group gathers the markers having the same label, type and
+     * city, its location is their barycenter.
+     */
+    public interface StopGroupsColumns extends LocationColumns {
+
+        /** The name of the stop groups table. */
+        String STOP_GROUPS_TABLE_NAME = "stop_groups";
+
+        /**
+         * The label of the markers of the group.
+         * <P>
+         * Type: TEXT (String)
+         * </P>
+         */
+        String LABEL = "label";
+
+        /**
+         * The type of the markers of the group.
+         * <P>
+         * Type: TEXT (String)
+         * </P>
+         */
+        String TYPE = "type";
+
+        /**
+         * The name of the city of the markers of the group.
+         * <P>
+         * Type: TEXT (String)
+         * </P>
+         */
+        String CITY = "city";
+
+        /**
+         * The amount of markers in the group.
+         * <P>
+         * Type: INTEGER
+         * </P>
+         */
+        String MEMBER_COUNT = "member_count";
+    }
+
+    /**
+     * Columns of the full-text index of the markers. The <code>docid</code> of each row is the
+     * {@link BaseColumns#_ID} of the indexed marker.
+     */
+    public interface MarkersFtsColumns {
+
+        /** The name of the markers full-text index table. */
+        String MARKERS_FTS_TABLE_NAME = "markers_fts";
+
+        /**
+         * The identifier of the indexed marker.
+         * <P>
+         * Type: INTEGER
+         * </P>
+         */
+        String DOCID = "docid";
+
+        /**
+         * The words of the marker label, without accents and in lower case.
+         * <P>
+         * Type: TEXT (String)
+         * </P>
+         * 
+         * @see fr.itinerennes.commons.utils.SearchUtils#toFullTextDocument(String...)
+         */
+        String WORDS = "words";
     }
 
     /**
@@ -216,6 +306,82 @@ public final class Columns {
 
     }
 
+    /**
+     * Columns of the manifest of the imported datasets.
+     */
+    public interface DatasetsColumns {
+
+        /** The name of the datasets table. */
+        String DATASETS_TABLE_NAME = "datasets";
+
+        /**
+         * The name of the table the dataset was imported into.
+         * <P>
+         * Type: TEXT (String)
+         * </P>
+         */
+        String NAME = "name";
+
+        /**
+         * The CRC32 checksum of the imported dataset.
+         * <P>
+         * Type: INTEGER
+         * </P>
+         * 
+         * @see fr.itinerennes.database.IDataReader#getChecksum()
+         */
+        String CHECKSUM = "checksum";
+    }
+
+    /**
+     * Columns of the cache of the responses of the web services.
+     */
+    public interface CacheEntriesColumns extends BaseColumns {
+
+        /** The name of the cache table. */
+        String CACHE_ENTRIES_TABLE_NAME = "cache_entries";
+
+        /**
+         * The type of the cached resource.
+         * <P>
+         * Type: STRING
+         * </P>
+         */
+        String TYPE = "type";
+
+        /**
+         * The identifier of the cached resource.
+         * <P>
+         * Type: STRING
+         * </P>
+         */
+        String ID = "id";
+
+        /**
+         * The time in milliseconds at which the resource was fetched.
+         * <P>
+         * Type: INTEGER
+         * </P>
+         */
+        String FETCHED = "fetched";
+
+        /**
+         * The time in milliseconds after which the entry is evicted.
+         * <P>
+         * Type: INTEGER
+         * </P>
+         */
+        String EXPIRES = "expires";
+
+        /**
+         * The resource serialized to JSON.
+         * <P>
+         * Type: STRING
+         * </P>
+         */
+        String CONTENT = "content";
+    }
+
     /**
      * Columns for nominatim address.
      * 
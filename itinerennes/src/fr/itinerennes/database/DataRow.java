@@ -0,0 +1,126 @@
+package fr.itinerennes.database;
+
+/*
+ * [license]
+ * ItineRennes
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+/**
+ * A row read by an {@link IDataReader}. Instances are reused: each call to
+ * {@link IDataReader#next(DataRow)} overwrites the values of the row.
+ */
+public final class DataRow {
+
+    /** The values of the text columns. */
+    private final String[] texts;
+
+    /** The values of the integer columns. */
+    private final long[] values;
+
+    /** The null flags of the integer columns. */
+    private final boolean[] nulls;
+
+    /**
+     * Creates an empty row.
+     * 
+     * @param columnCount
+     *            the amount of columns
+     */
+    public DataRow(final int columnCount) {
+
+        texts = new String[columnCount];
+        values = new long[columnCount];
+        nulls = new boolean[columnCount];
+    }
+
+    /**
+     * Sets the value of a text column.
+     * 
+     * @param column
+     *            the index of the column
+     * @param value
+     *            the value
+     */
+    public void setString(final int column, final String value) {
+
+        texts[column] = value;
+    }
+
+    /**
+     * Sets the value of an integer column.
+     * 
+     * @param column
+     *            the index of the column
+     * @param value
+     *            the value
+     */
+    public void setLong(final int column, final long value) {
+
+        values[column] = value;
+        nulls[column] = false;
+    }
+
+    /**
+     * Sets the value of an integer column to null.
+     * 
+     * @param column
+     *            the index of the column
+     */
+    public void setNull(final int column) {
+
+        nulls[column] = true;
+    }
+
+    /**
+     * Gets the value of a text column.
+     * 
+     * @param column
+     *            the index of the column
+     * @return the value
+     */
+    public String getString(final int column) {
+
+        return texts[column];
+    }
+
+    /**
+     * Gets the value of an integer column.
+     * 
+     * @param column
+     *            the index of the column
+     * @return the value
+     */
+    public long getLong(final int column) {
+
+        return values[column];
+    }
+
+    /**
+     * Gets whether or not the value of an integer column is null.
+     * 
+     * @param column
+     *            the index of the column
+     * @return true if the value is null
+     */
+    public boolean isNull(final int column) {
+
+        return nulls[column];
+    }
+}
@@ -23,6 +23,7 @@ package fr.itinerennes.database;
  */
 
 import java.io.IOException;
+import java.lang.reflect.Method;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +38,10 @@ import fr.itinerennes.utils.IOUtils;
 
 /**
  * The database helper. Manage database creation and update.
+ * <p>
+ * When the platform supports it (API level 11 and later), write-ahead logging is enabled on the
+ * database. Readers then use a separate read-only connection, see {@link #getReadOnlyDatabase()},
+ * so that they never wait for a write transaction to complete.
  * 
  * @author Jérémie Huchet
  */
@@ -57,9 +62,24 @@ public final class DatabaseHelper extends SQLiteOpenHelper {
     /** The database upgrade script URI. */
     private static final String UPGRADE_SCRIPT = "database/upgrade_%s_to_%s.sql";
 
+    /** The script building the stop groups from the markers. */
+    private static final String STOP_GROUPS_SCRIPT = "database/stop_groups.sql";
+
     /** The assets manager. */
     private final AssetManager assets;
 
+    /** The path to the database file. */
+    private final String path;
+
+    /** Whether or not write-ahead logging is enabled on the writable database. */
+    private volatile boolean writeAheadLogging = false;
+
+    /** The read-only connection, opened when write-ahead logging is enabled. */
+    private SQLiteDatabase readOnlyDatabase;
+
+    /** The statistics of the queries executed by the DAOs. */
+    private final QueryStats queryStats = new QueryStats(Conf.DATABASE_SLOW_QUERY_THRESHOLD);
+
     /**
      * Creates the database helper.
      * 
@@ -70,6 +90,7 @@ public final class DatabaseHelper extends SQLiteOpenHelper {
 
         super(context, DATABASE_NAME, null, Conf.DATABASE_SCHEMA_VERSION);
         assets = context.getAssets();
+        path = context.getDatabasePath(DATABASE_NAME).getPath();
     }
 
     /**
@@ -114,6 +135,143 @@ public final class DatabaseHelper extends SQLiteOpenHelper {
 
     }
 
+    /**
+     * Enables write-ahead logging on the writable database when the platform supports it.
+     * 
+     * @see android.database.sqlite.SQLiteOpenHelper#onOpen(android.database.sqlite.SQLiteDatabase)
+     */
+    @Override
+    public void onOpen(final SQLiteDatabase db) {
+
+        super.onOpen(db);
+        if (!db.isReadOnly()) {
+            writeAheadLogging = invoke(db, "enableWriteAheadLogging");
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("database opened - writeAheadLogging={}", writeAheadLogging);
+            }
+        }
+    }
+
+    /**
+     * Gets a database to execute queries which don't modify the database. When write-ahead logging
+     * is enabled, it is a read-only connection distinct from the writable database, so queries
+     * are executed concurrently with write transactions. Otherwise, it is the writable database.
+     * 
+     * @return a database to execute read queries
+     */
+    public synchronized SQLiteDatabase getReadOnlyDatabase() {
+
+        // the writable database must be opened first to create or upgrade the schema
+        final SQLiteDatabase db = getWritableDatabase();
+        if (!writeAheadLogging) {
+            return db;
+        }
+        if (readOnlyDatabase == null || !readOnlyDatabase.isOpen()) {
+            readOnlyDatabase = SQLiteDatabase.openDatabase(path, null,
+                    SQLiteDatabase.OPEN_READONLY);
+        }
+        return readOnlyDatabase;
+    }
+
+    /**
+     * Opens a new read-write connection to the database. The caller is responsible for closing it.
+     * It is intended for statements which must not be executed on the writable database because
+     * they would disable write-ahead logging, such as <code>ATTACH DATABASE</code>.
+     * 
+     * @return a new connection to the database
+     */
+    public synchronized SQLiteDatabase openConnection() {
+
+        getWritableDatabase();
+        return SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READWRITE);
+    }
+
+    /**
+     * Gets the statistics of the queries executed by the DAOs.
+     * 
+     * @return the statistics of the queries
+     */
+    public QueryStats getQueryStats() {
+
+        return queryStats;
+    }
+
+    /**
+     * Gets whether or not write-ahead logging is enabled on the writable database.
+     * 
+     * @return true if write-ahead logging is enabled
+     */
+    public boolean isWriteAheadLoggingEnabled() {
+
+        getWritableDatabase();
+        return writeAheadLogging;
+    }
+
+    /**
+     * Begins a write transaction. When the platform supports it (API level 11 and later), the
+     * transaction is started in IMMEDIATE mode so the other connections can keep reading the
+     * database until the transaction is committed. Otherwise, an EXCLUSIVE transaction is started.
+     * 
+     * @param db
+     *            the database to begin the transaction on
+     */
+    public static void beginWriteTransaction(final SQLiteDatabase db) {
+
+        if (!invoke(db, "beginTransactionNonExclusive")) {
+            db.beginTransaction();
+        }
+    }
+
+    /**
+     * Rebuilds the stop groups from the markers and links each marker to its group. It must be
+     * called in the transaction modifying the markers.
+     * 
+     * @param db
+     *            the database containing the markers
+     */
+    public void buildStopGroups(final SQLiteDatabase db) {
+
+        execScript(db, readScript(STOP_GROUPS_SCRIPT));
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see android.database.sqlite.SQLiteOpenHelper#close()
+     */
+    @Override
+    public synchronized void close() {
+
+        if (readOnlyDatabase != null) {
+            readOnlyDatabase.close();
+            readOnlyDatabase = null;
+        }
+        super.close();
+    }
+
+    /**
+     * Invokes a method of the database which may not be available at the current API level.
+     * 
+     * @param db
+     *            the database
+     * @param methodName
+     *            the name of the method, it must not have any parameter
+     * @return false if the method isn't supported or returned false, true otherwise
+     */
+    private static boolean invoke(final SQLiteDatabase db, final String methodName) {
+
+        try {
+            final Method method = SQLiteDatabase.class.getMethod(methodName);
+            final Object result = method.invoke(db);
+            return !Boolean.FALSE.equals(result);
+        } catch (final NoSuchMethodException e) {
+            return false;
+        } catch (final Exception e) {
+            LOGGER.warn(String.format("SQLiteDatabase#%s() failed", methodName), e);
+            return false;
+        }
+    }
+
     /**
      * Reads a script located in the assets folder.
      * 
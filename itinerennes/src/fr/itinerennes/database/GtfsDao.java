@@ -25,13 +25,16 @@ package fr.itinerennes.database;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import android.content.Context;
+import android.database.AbstractCursor;
 import android.database.Cursor;
 
 import fr.itinerennes.database.Columns.RoutesStopsColumns;
 
 /**
  * A DAO to access GTFS data loaded in database.
+ * <p>
+ * The relationships between routes and stops are read from the {@link RouteStopGraph}: the
+ * lookups don't execute any query, the returned cursors read the identifiers from the graph.
  * 
  * @author Jérémie Huchet
  */
@@ -40,24 +43,18 @@ public final class GtfsDao implements RoutesStopsColumns {
     /** The event logger. */
     private static final Logger LOGGER = LoggerFactory.getLogger(GtfsDao.class);
 
-    /** The context. */
-    private final Context context;
-
-    /** The database helper. */
-    private final DatabaseHelper dbHelper;
+    /** The graph of the routes and stops. */
+    private final RouteStopGraph graph;
 
     /**
      * Constructor.
      * 
-     * @param context
-     *            the context
-     * @param databaseHelper
-     *            the itinerennes context
+     * @param graph
+     *            the graph of the routes and stops
      */
-    public GtfsDao(final Context context, final DatabaseHelper databaseHelper) {
+    public GtfsDao(final RouteStopGraph graph) {
 
-        this.context = context;
-        dbHelper = databaseHelper;
+        this.graph = graph;
     }
 
     /**
@@ -71,12 +68,16 @@ public final class GtfsDao implements RoutesStopsColumns {
 
         LOGGER.debug("getRoutesForStop.start - stopId={}", stopAndAgencyId);
 
-        final String sel = String.format("%s = ?", STOP_ID);
-        final String[] args = new String[] { stopAndAgencyId };
-        final String[] cols = new String[] { ROUTE_ID };
+        final int stop = graph.getStopIndex(stopAndAgencyId);
+        final int count = stop < 0 ? 0 : graph.getRouteCountForStop(stop);
+        final Cursor c = new IdentifierCursor(ROUTE_ID, count) {
+
+            @Override
+            protected String getId(final int position) {
 
-        final Cursor c = dbHelper.getReadableDatabase().query(ROUTES_STOPS_TABLE_NAME, cols, sel,
-                args, null, null, null);
+                return graph.getRouteId(graph.getRouteForStop(stop, position));
+            }
+        };
 
         LOGGER.debug("getRoutesForStop.end");
         return c;
@@ -93,14 +94,107 @@ public final class GtfsDao implements RoutesStopsColumns {
 
         LOGGER.debug("getStopsForRoute.start - routeId={}", routeAndAgencyId);
 
-        final String sel = String.format("%s = ?", ROUTE_ID);
-        final String[] args = new String[] { routeAndAgencyId };
-        final String[] cols = new String[] { STOP_ID };
+        final int route = graph.getRouteIndex(routeAndAgencyId);
+        final int count = route < 0 ? 0 : graph.getStopCountForRoute(route);
+        final Cursor c = new IdentifierCursor(STOP_ID, count) {
 
-        final Cursor c = dbHelper.getReadableDatabase().query(ROUTES_STOPS_TABLE_NAME, cols, sel,
-                args, null, null, null);
+            @Override
+            protected String getId(final int position) {
+
+                return graph.getStopId(graph.getStopForRoute(route, position));
+            }
+        };
 
         LOGGER.debug("getStopsForRoute.end");
         return c;
     }
+
+    /**
+     * A cursor having a single column of identifiers read from the {@link RouteStopGraph}.
+     */
+    private abstract static class IdentifierCursor extends AbstractCursor {
+
+        /** The name of the column. */
+        private final String[] columnNames;
+
+        /** The amount of rows. */
+        private final int count;
+
+        /**
+         * Creates a cursor over the given amount of identifiers.
+         * 
+         * @param columnName
+         *            the name of the column
+         * @param count
+         *            the amount of rows
+         */
+        IdentifierCursor(final String columnName, final int count) {
+
+            columnNames = new String[] { columnName };
+            this.count = count;
+        }
+
+        /**
+         * Gets the identifier of a row.
+         * 
+         * @param position
+         *            the position of the row
+         * @return the identifier
+         */
+        protected abstract String getId(int position);
+
+        @Override
+        public int getCount() {
+
+            return count;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+
+            return columnNames;
+        }
+
+        @Override
+        public String getString(final int column) {
+
+            return getId(getPosition());
+        }
+
+        @Override
+        public short getShort(final int column) {
+
+            throw new UnsupportedOperationException("the identifiers are strings");
+        }
+
+        @Override
+        public int getInt(final int column) {
+
+            throw new UnsupportedOperationException("the identifiers are strings");
+        }
+
+        @Override
+        public long getLong(final int column) {
+
+            throw new UnsupportedOperationException("the identifiers are strings");
+        }
+
+        @Override
+        public float getFloat(final int column) {
+
+            throw new UnsupportedOperationException("the identifiers are strings");
+        }
+
+        @Override
+        public double getDouble(final int column) {
+
+            throw new UnsupportedOperationException("the identifiers are strings");
+        }
+
+        @Override
+        public boolean isNull(final int column) {
+
+            return false;
+        }
+    }
 }
@@ -22,14 +22,20 @@ package fr.itinerennes.database;
  * [/license]
  */
 
-import java.util.Iterator;
-
 /**
  * An interface providing a way to iterate over data to import into a DB table.
+ * <p>
+ * Rows are read into a {@link DataRow} so the same instance can be reused for each row.
  * 
  * @author Jérémie Huchet
  */
-public interface IDataReader extends Iterator<String[]> {
+public interface IDataReader {
+
+    /** Type of a column containing text. */
+    int TYPE_TEXT = 0;
+
+    /** Type of a column containing an integer. */
+    int TYPE_INTEGER = 1;
 
     /**
      * Gets the total amount of rows.
@@ -51,4 +57,40 @@ public interface IDataReader extends Iterator<String[]> {
      * @return the columns names
      */
     String[] getColumns();
+
+    /**
+     * Gets the type of the columns of the table, in the same order as {@link #getColumns()}.
+     * 
+     * @return the columns types, {@link #TYPE_TEXT} or {@link #TYPE_INTEGER}
+     */
+    int[] getColumnTypes();
+
+    /**
+     * Gets the amount of columns identifying a row. The key of a row is made of the first
+     * columns returned by {@link #getColumns()}.
+     * 
+     * @return the amount of key columns
+     */
+    int getKeyColumnCount();
+
+    /**
+     * Gets a checksum of the data, used to detect the data changed since it was imported.
+     * 
+     * @return a CRC32 checksum of the data
+     */
+    long getChecksum();
+
+    /**
+     * Reads the next row.
+     * 
+     * @param row
+     *            the row to fill with the values of the next row
+     * @return false if there is no more row to read
+     */
+    boolean next(DataRow row);
+
+    /**
+     * Releases the resources used to read the data.
+     */
+    void close();
 }
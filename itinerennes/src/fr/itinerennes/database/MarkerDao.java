@@ -23,25 +23,29 @@ package fr.itinerennes.database;
  */
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.osmdroid.util.BoundingBoxE6;
-import org.osmdroid.util.GeoPoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import android.app.SearchManager;
 import android.content.Context;
 import android.database.Cursor;
-import android.database.sqlite.SQLiteQueryBuilder;
 import android.provider.BaseColumns;
 
 import fr.itinerennes.R;
 import fr.itinerennes.TypeConstants;
 import fr.itinerennes.commons.utils.SearchUtils;
+import fr.itinerennes.commons.utils.SpatialUtils;
+import fr.itinerennes.commons.utils.StringUtils;
 import fr.itinerennes.database.Columns.BookmarksColumns;
 import fr.itinerennes.database.Columns.MarkersColumns;
+import fr.itinerennes.database.Columns.MarkersFtsColumns;
+import fr.itinerennes.database.Columns.StopGroupsColumns;
 import fr.itinerennes.ui.views.overlays.StopOverlayItem;
 
 /**
@@ -54,17 +58,74 @@ public class MarkerDao implements MarkersColumns {
     /** The event logger. */
     private static final Logger LOGGER = LoggerFactory.getLogger(MarkerDao.class);
 
+    /** Intent data id used when the line "search an address" is clicked in suggestions. */
+    public static final String NOMINATIM_INTENT_DATA_ID = "nominatim";
+
+    /** Maximum amount of markers returned as suggestions. */
+    static final int MAX_SUGGESTIONS = 50;
+
+    /** Name of the column used to rank suggestions. */
+    private static final String SUGGESTION_RANK = "rank";
+
+    /** Columns and tables of the queries whose rows are mapped by {@link MarkerRowMapper}. */
+    private static final String SELECT_MARKER_ITEMS = String.format(
+            "SELECT m.%s, m.%s, m.%s, %s, %s, b.%s is not null AS %s"
+                    + " FROM %s m LEFT JOIN %s b ON m.%s=b.%s AND m.%s=b.%s", ID, TYPE, LABEL,
+            LONGITUDE, LATITUDE, BookmarksColumns.ID, IS_BOOKMARKED, MARKERS_TABLE_NAME,
+            BookmarksColumns.BOOKMARKS_TABLE_NAME, TYPE, BookmarksColumns.TYPE, ID,
+            BookmarksColumns.ID);
+
+    /** SQL query used to fetch a marker by its unique android id. */
+    private static final String GET_MARKER_BY_ANDROID_ID = String.format(
+            "%s WHERE m.%s = ? ORDER BY m.%s", SELECT_MARKER_ITEMS, BaseColumns._ID, LABEL);
+
+    /** SQL query used to fetch a marker by its identifier and its type. */
+    private static final String GET_MARKER_BY_ID_AND_TYPE = String.format(
+            "%s WHERE m.%s = ? AND m.%s = ? ORDER BY m.%s", SELECT_MARKER_ITEMS, ID, TYPE, LABEL);
+
+    /** SQL query used to fetch the markers in the same stop group than a marker. */
+    private static final String GET_MARKERS_WITH_SAME_LABEL = String.format(
+            "SELECT * FROM %s WHERE %s = (SELECT %s FROM %s WHERE %s = ?)", MARKERS_TABLE_NAME,
+            GROUP_ID, GROUP_ID, MARKERS_TABLE_NAME, _ID);
+
+    /** SQL query used to fetch the stop group of a marker. */
+    private static final String GET_STOP_GROUP = String.format(
+            "SELECT g.%s, g.%s, g.%s, g.%s, g.%s, g.%s, g.%s FROM %s m CROSS JOIN %s g"
+                    + " ON g.%s = m.%s WHERE m.%s = ?", StopGroupsColumns._ID,
+            StopGroupsColumns.TYPE, StopGroupsColumns.LABEL, StopGroupsColumns.CITY,
+            StopGroupsColumns.LONGITUDE, StopGroupsColumns.LATITUDE,
+            StopGroupsColumns.MEMBER_COUNT, MARKERS_TABLE_NAME,
+            StopGroupsColumns.STOP_GROUPS_TABLE_NAME, StopGroupsColumns._ID, GROUP_ID, _ID);
+
+    /**
+     * SQL query used to search markers in the full-text index. One row is returned per stop
+     * group, located at the barycenter of the group.
+     */
+    private static final String SEARCH_MARKERS = String.format(
+            "SELECT m.%s, m.%s, g.%s, g.%s, g.%s, g.%s, g.%s"
+                    + " FROM %s f CROSS JOIN %s m ON m.%s = f.%s CROSS JOIN %s g ON g.%s = m.%s"
+                    + " WHERE f.%s MATCH ? GROUP BY m.%s ORDER BY m.%s LIKE ? DESC, g.%s",
+            BaseColumns._ID, ID, StopGroupsColumns.TYPE, StopGroupsColumns.LABEL,
+            StopGroupsColumns.LONGITUDE, StopGroupsColumns.LATITUDE, StopGroupsColumns.CITY,
+            MarkersFtsColumns.MARKERS_FTS_TABLE_NAME, MARKERS_TABLE_NAME, BaseColumns._ID,
+            MarkersFtsColumns.DOCID, StopGroupsColumns.STOP_GROUPS_TABLE_NAME,
+            StopGroupsColumns._ID, GROUP_ID, MarkersFtsColumns.WORDS, GROUP_ID, SEARCH_LABEL,
+            StopGroupsColumns.LABEL);
+
+    /** Key of the suggestions query in the statements cache. */
+    private static final String SUGGESTIONS_SHAPE = "suggestions";
+
     /** The context. */
     private final Context context;
 
     /** The database helper. */
     private final DatabaseHelper dbHelper;
 
-    /** SQL query used to fetch suggestions from the database. */
-    private String getSuggestionsStatement;
-
-    /** Intent data id used when the line "search an address" is clicked in suggestions. */
-    public static final String NOMINATIM_INTENT_DATA_ID = "nominatim";
+    /**
+     * The SQL queries whose text depends on the amount of parameters, by query shape. Reusing the
+     * same SQL for a given shape lets SQLite reuse the statement compiled by the database.
+     */
+    private final Map<String, String> statements = new HashMap<String, String>();
 
     /**
      * Constructor.
@@ -104,34 +165,44 @@ public class MarkerDao implements MarkersColumns {
             return null;
         }
 
-        final String tables = String.format("%s m left join %s b on m.%s=b.%s", MARKERS_TABLE_NAME,
-                Columns.BookmarksColumns.BOOKMARKS_TABLE_NAME, ID, Columns.BookmarksColumns.ID);
+        // candidates are looked up with the tile index, then filtered on their exact location
+        final long[] ranges = SpatialUtils.getRanges(bbox.getLatSouthE6(), bbox.getLonWestE6(),
+                bbox.getLatNorthE6(), bbox.getLonEastE6());
+        final int rangeCount = ranges.length / 2;
 
-        final String[] columns = new String[] { String.format("m.%s", ID),
-                String.format("m.%s", TYPE), String.format("m.%s", LABEL), LONGITUDE, LATITUDE,
-                String.format("b.%s is not null  AS %s", ID, MarkersColumns.IS_BOOKMARKED) };
-
-        final StringBuilder selection = new StringBuilder();
-
-        selection.append(String.format("%s >= ? AND %s <= ? AND %s >= ? AND %s <= ?", LONGITUDE,
-                LONGITUDE, LATITUDE, LATITUDE));
+        final String[] args = new String[ranges.length + 4 + types.size()];
+        int i = 0;
+        for (final long bound : ranges) {
+            args[i++] = String.valueOf(bound);
+        }
+        args[i++] = String.valueOf(bbox.getLonWestE6());
+        args[i++] = String.valueOf(bbox.getLonEastE6());
+        args[i++] = String.valueOf(bbox.getLatSouthE6());
+        args[i++] = String.valueOf(bbox.getLatNorthE6());
+        for (final String type : types) {
+            args[i++] = type;
+        }
 
-        if (types.size() > 0) {
-            selection.append(" AND ( ");
-            // filter on visible types
-            for (int i = 0; i < types.size(); i++) {
-                selection.append(String.format(" %s m.%s = '%s'", (i > 0) ? "OR" : "", TYPE,
-                        types.get(i)));
+        final String shape = String.format("bbox:%d:%d", rangeCount, types.size());
+        String sql = getStatement(shape);
+        if (sql == null) {
+            final StringBuilder sb = new StringBuilder(SELECT_MARKER_ITEMS);
+            sb.append(String.format(" WHERE m.%s IN (", BaseColumns._ID));
+            for (int r = 0; r < rangeCount; r++) {
+                sb.append(String.format("%s SELECT %s FROM %s WHERE %s BETWEEN ? AND ?",
+                        (r > 0) ? " UNION ALL" : "", BaseColumns._ID, MARKERS_TABLE_NAME, TILE));
             }
-            selection.append(")");
+            sb.append(")");
+            sb.append(String.format(" AND %s >= ? AND %s <= ? AND %s >= ? AND %s <= ?",
+                    LONGITUDE, LONGITUDE, LATITUDE, LATITUDE));
+            // filter on visible types
+            sb.append(String.format(" AND m.%s IN (", TYPE));
+            appendParameters(sb, types.size());
+            sb.append(String.format(") ORDER BY m.%s ASC", BaseColumns._ID));
+            sql = putStatement(shape, sb.toString());
         }
 
-        final String[] selectionArgs = new String[] { String.valueOf(bbox.getLonWestE6()),
-                String.valueOf(bbox.getLonEastE6()), String.valueOf(bbox.getLatSouthE6()),
-                String.valueOf(bbox.getLatNorthE6()) };
-
-        final Cursor c = query(tables, selection.toString(), selectionArgs, columns, null,
-                "m._id ASC");
+        final Cursor c = query(shape, sql, args);
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("getMarkers.end - count={}", (c != null) ? c.getCount() : 0);
@@ -152,15 +223,8 @@ public class MarkerDao implements MarkersColumns {
             LOGGER.debug("getMarker.start - id={}", id);
         }
 
-        final String[] columns = new String[] { String.format("m.%s", ID),
-                String.format("m.%s", TYPE), String.format("m.%s", LABEL), LONGITUDE, LATITUDE,
-                String.format("b.%s is not null  AS %s", ID, MarkersColumns.IS_BOOKMARKED) };
-
-        final String selection = String.format("m.%s = ?", BaseColumns._ID);
-
-        final String[] selectionArgs = new String[] { id };
-
-        final Cursor c = query(selection, selectionArgs, columns);
+        final Cursor c = query("markerByAndroidId", GET_MARKER_BY_ANDROID_ID,
+                new String[] { id });
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("getMarkers.end - count={}", (c != null) ? c.getCount() : 0);
@@ -188,60 +252,55 @@ public class MarkerDao implements MarkersColumns {
             LOGGER.debug("getMarkers.start - type={}, labelFilter={}", type, labelFilter);
         }
 
-        final StringBuffer sb = new StringBuffer();
-
-        sb.append(String.format("SELECT %s, %s, %s ", _ID, ID, LABEL));
-        sb.append(String.format("FROM %s ", MARKERS_TABLE_NAME));
+        final boolean filtered = labelFilter != null && !labelFilter.equals("");
+        final int selectedCount = (selectedIds != null) ? selectedIds.size() : 0;
 
         final ArrayList<String> selectionArgsList = new ArrayList<String>();
-
-        if (labelFilter != null && !labelFilter.equals("")) {
-            // if labelFilter is not empty, filtering markers on the type and the label
-            sb.append(String.format("WHERE %s = ? AND (%s LIKE ? OR %s LIKE ?)",
-                    MarkersColumns.TYPE, MarkersColumns.LABEL, MarkersColumns.SEARCH_LABEL));
-
-            selectionArgsList.add(type);
+        selectionArgsList.add(type);
+        if (filtered) {
             selectionArgsList.add(String.format("%%%s%%", labelFilter));
             selectionArgsList.add(SearchUtils.canonicalize(labelFilter));
-
-        } else {
-            // else, filtering markers on the type only
-            sb.append(String.format("WHERE %s = ?", MarkersColumns.TYPE));
+        }
+        if (selectedCount > 0) {
             selectionArgsList.add(type);
+            selectionArgsList.addAll(selectedIds);
         }
 
-        if (selectedIds != null && selectedIds.size() > 0) {
-            // if some markers id are given, build an union query to retrieve also those markers
-            sb.append(" UNION");
-            sb.append(String.format(" SELECT  %s, %s, %s", _ID, ID, LABEL));
-            sb.append(String.format(" FROM %s", MARKERS_TABLE_NAME));
-            sb.append(String.format(" WHERE %s = ? AND %s IN (", MarkersColumns.TYPE,
-                    MarkersColumns.ID));
-
-            boolean first = true;
-            for (final String id : selectedIds) {
-                if (!first) {
-                    sb.append(",");
-
-                }
-                sb.append(id);
-                first = false;
+        final String shape = String.format("type:%b:%d", filtered, selectedCount);
+        String sql = getStatement(shape);
+        if (sql == null) {
+            final StringBuilder sb = new StringBuilder();
+            sb.append(String.format("SELECT %s, %s, %s ", _ID, ID, LABEL));
+            sb.append(String.format("FROM %s ", MARKERS_TABLE_NAME));
+
+            if (filtered) {
+                // if labelFilter is not empty, filtering markers on the type and the label
+                sb.append(String.format("WHERE %s = ? AND (%s LIKE ? OR %s LIKE ?)", TYPE, LABEL,
+                        SEARCH_LABEL));
+            } else {
+                // else, filtering markers on the type only
+                sb.append(String.format("WHERE %s = ?", TYPE));
             }
 
-            sb.append(")");
+            if (selectedCount > 0) {
+                // if some markers id are given, build an union query to retrieve also those
+                // markers
+                sb.append(String.format(" UNION SELECT %s, %s, %s FROM %s", _ID, ID, LABEL,
+                        MARKERS_TABLE_NAME));
+                sb.append(String.format(" WHERE %s = ? AND %s IN (", TYPE, ID));
+                appendParameters(sb, selectedCount);
+                sb.append(")");
+            }
 
-            selectionArgsList.add(type);
+            sb.append(String.format(" ORDER BY %s ASC", LABEL));
+            sql = putStatement(shape, sb.toString());
         }
 
-        // ordering first on boolean "selected", and after on labels
-        sb.append(String.format(" ORDER BY %s ASC", MarkersColumns.LABEL));
-
-        final Cursor c = dbHelper.getReadableDatabase().rawQuery(sb.toString(),
+        final Cursor c = rawQuery(shape, sql,
                 selectionArgsList.toArray(new String[selectionArgsList.size()]));
 
         if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("query = {}", sb.toString());
-            LOGGER.debug("getMarkers.end - count={}", (c != null) ? c.getCount() : 0);
+            LOGGER.debug("getMarkers.end - count={}", c.getCount());
         }
         return c;
     }
@@ -261,15 +320,8 @@ public class MarkerDao implements MarkersColumns {
             LOGGER.debug("getMarker.start - id={}, type={}", id, type);
         }
 
-        final String[] columns = new String[] { String.format("m.%s", ID),
-                String.format("m.%s", TYPE), String.format("m.%s", LABEL), LONGITUDE, LATITUDE,
-                String.format("b.%s is not null AS %s", ID, MarkersColumns.IS_BOOKMARKED) };
-
-        final String selection = String.format("m.%s = ? AND m.%s = ?", ID, TYPE);
-
-        final String[] selectionArgs = new String[] { id, type };
-
-        final Cursor c = query(selection, selectionArgs, columns);
+        final Cursor c = query("markerByIdAndType", GET_MARKER_BY_ID_AND_TYPE, new String[] { id,
+                type });
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("getMarkers.end - count={}", (c != null) ? c.getCount() : 0);
@@ -280,7 +332,7 @@ public class MarkerDao implements MarkersColumns {
 
     /**
      * Fetch all markers from the database having the same label than the marker identified by its
-     * unique android id .
+     * unique android id, i.e. the markers of its stop group.
      * 
      * @param id
      *            unique id of the marker
@@ -292,29 +344,45 @@ public class MarkerDao implements MarkersColumns {
             LOGGER.debug("getMarkersWithSameLabel.start - id={}", id);
         }
 
-        final String[] selectionArgs = new String[] { id, id, id };
+        final Cursor c = rawQuery("markersWithSameLabel", GET_MARKERS_WITH_SAME_LABEL,
+                new String[] { id });
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("getMarkersWithSameLabel.end - count={}", c.getCount());
+        }
+        return c;
+    }
 
-        final Cursor c = dbHelper
-                .getReadableDatabase()
-                .rawQuery(
-                        String.format(
-                                "SELECT * FROM %s WHERE label=(SELECT %s FROM %s where %s = ?) AND type=(SELECT %s FROM %s WHERE %s = ?) AND city=(SELECT %s FROM %s WHERE %s = ?)",
-                                MarkersColumns.MARKERS_TABLE_NAME, MarkersColumns.LABEL,
-                                MarkersColumns.MARKERS_TABLE_NAME, MarkersColumns._ID,
-                                MarkersColumns.TYPE, MarkersColumns.MARKERS_TABLE_NAME,
-                                MarkersColumns._ID, MarkersColumns.CITY,
-                                MarkersColumns.MARKERS_TABLE_NAME, MarkersColumns._ID),
-                        selectionArgs);
+    /**
+     * Fetch the stop group of the marker identified by its unique android id. The group gathers
+     * the markers having the same label, type and city, its location is their barycenter.
+     * 
+     * @param id
+     *            unique id of the marker
+     * @return a cursor positioned on the stop group (see {@link StopGroupsColumns}), or null if
+     *         the marker doesn't exist
+     */
+    public final Cursor getStopGroup(final String id) {
 
         if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("getMarkersWithSameLabel.end - count={}", (c != null) ? c.getCount() : 0);
+            LOGGER.debug("getStopGroup.start - id={}", id);
+        }
+
+        final Cursor c = query("stopGroup", GET_STOP_GROUP, new String[] { id });
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("getStopGroup.end - found={}", c != null);
         }
         return c;
     }
 
     /**
-     * Search markers containing the given string. This method returns only one row with same label
-     * and same type.
+     * Search markers having words starting with the words of the given string. This method returns
+     * only one row per stop group, i.e. with same label, same type and same city, located at the
+     * barycenter of the group. Markers whose label starts with the query are returned first.
+     * <p>
+     * The rows hold the type, label, city and location of the stop group, so the results can be
+     * shown on the map without querying the group again.
      * 
      * @param query
      *            string to search in markers' label
@@ -326,29 +394,28 @@ public class MarkerDao implements MarkersColumns {
             LOGGER.debug("searchMarkers.start - query={}", query);
         }
 
-        final String selection = String.format("%s LIKE ? OR %s LIKE ?", MarkersColumns.LABEL,
-                MarkersColumns.SEARCH_LABEL);
-        final String[] columns = new String[] { BaseColumns._ID, MarkersColumns.ID,
-                MarkersColumns.TYPE, MarkersColumns.LABEL, MarkersColumns.LONGITUDE,
-                MarkersColumns.LATITUDE, MarkersColumns.CITY };
-
-        final String[] selectionArgs = new String[] { String.format("%%%s%%", query),
-                SearchUtils.canonicalize(query) };
-
-        final String groupBy = String.format("%s, %s, %s", MarkersColumns.LABEL,
-                MarkersColumns.CITY, MarkersColumns.TYPE);
+        final String ftsQuery = SearchUtils.toFullTextQuery(query);
+        if (StringUtils.isBlank(ftsQuery)) {
+            LOGGER.debug("searchMarkers.end - nothing to search");
+            return null;
+        }
 
-        final Cursor c = query(MARKERS_TABLE_NAME, selection, selectionArgs, columns, groupBy, null);
+        // matching markers are looked up in the full-text index first
+        final String[] selectionArgs = new String[] { ftsQuery, toLabelPrefixPattern(query) };
+        final Cursor c = query("search", SEARCH_MARKERS, selectionArgs);
 
         if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("searchMarkers.end - query={}");
+            LOGGER.debug("searchMarkers.end - query={}", query);
         }
         return c;
     }
 
     /**
-     * Fetches suggestions for searches. All markers containing the query in the label will be
-     * fetched.
+     * Fetches suggestions for searches. Markers having words starting with the words of the query
+     * will be fetched, those whose label starts with the query first. At most
+     * {@value #MAX_SUGGESTIONS} markers are returned.
+     * <p>
+     * The search provider gets the same suggestions from the in-memory {@link SuggestionIndex}.
      * 
      * @param query
      *            string to search in markers' label
@@ -360,20 +427,15 @@ public class MarkerDao implements MarkersColumns {
             LOGGER.debug("getSuggestions.start - query={}", query);
         }
 
-        final String[] selectionArgs = new String[] { String.format("%%%s%%", query),
-                SearchUtils.canonicalize(query), query };
-
-        if (getSuggestionsStatement == null) {
-
-            getSuggestionsStatement = buildSuggestionsQuery();
-        }
+        final String[] selectionArgs = new String[] { toLabelPrefixPattern(query),
+                SearchUtils.toFullTextQuery(query), query };
 
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug(String.format("Marker query : %s", getSuggestionsStatement));
+        String sql = getStatement(SUGGESTIONS_SHAPE);
+        if (sql == null) {
+            sql = putStatement(SUGGESTIONS_SHAPE, buildSuggestionsQuery());
         }
 
-        final Cursor c = dbHelper.getReadableDatabase().rawQuery(getSuggestionsStatement,
-                selectionArgs);
+        final Cursor c = rawQuery(SUGGESTIONS_SHAPE, sql, selectionArgs);
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("getSuggestions.end");
@@ -411,13 +473,21 @@ public class MarkerDao implements MarkersColumns {
 
         // SUGGEST_COLUMN_QUERY will be used to send the query string to SearchResultsActivity.
         // filled with the typed query for the "search address" line, empty for markers line
-        sql.append(String.format("'' AS %s", SearchManager.SUGGEST_COLUMN_QUERY));
+        sql.append(String.format("'' AS %s,", SearchManager.SUGGEST_COLUMN_QUERY));
 
-        sql.append(String.format(" FROM %s m LEFT JOIN %s b ON m.%s=b.%s", MARKERS_TABLE_NAME,
-                BookmarksColumns.BOOKMARKS_TABLE_NAME, ID, BookmarksColumns.ID));
+        // rank: 1 when the label starts with the query
+        sql.append(String.format(" m.%s LIKE ? AS %s", Columns.MarkersColumns.SEARCH_LABEL,
+                SUGGESTION_RANK));
 
-        sql.append(String.format(" WHERE m.%s LIKE ?", Columns.MarkersColumns.LABEL));
-        sql.append(String.format(" OR m.%s LIKE ?", Columns.MarkersColumns.SEARCH_LABEL));
+        // matching markers are looked up in the full-text index first
+        sql.append(String.format(" FROM %s f CROSS JOIN %s m ON m.%s = f.%s",
+                MarkersFtsColumns.MARKERS_FTS_TABLE_NAME, MARKERS_TABLE_NAME, BaseColumns._ID,
+                MarkersFtsColumns.DOCID));
+        sql.append(String.format(" LEFT JOIN %s b ON m.%s=b.%s AND m.%s=b.%s",
+                BookmarksColumns.BOOKMARKS_TABLE_NAME, TYPE, BookmarksColumns.TYPE, ID,
+                BookmarksColumns.ID));
+
+        sql.append(String.format(" WHERE f.%s MATCH ?", MarkersFtsColumns.WORDS));
 
         // delete duplicates
         sql.append(String.format(" GROUP BY suggest_text_1, m.type, %s, suggest_icon_2",
@@ -425,70 +495,95 @@ public class MarkerDao implements MarkersColumns {
 
         // union to add the "search address" line in results
         sql.append(String.format(
-                " UNION ALL select 'A', 'nominatim','%s' as %s,'%s','%s' as %s,'', ? as %s",
+                " UNION ALL select 'A', 'nominatim','%s' as %s,'%s','%s' as %s,'', ? as %s, 1",
                 R.drawable.ic_osm, SearchManager.SUGGEST_COLUMN_ICON_1, context.getResources()
                         .getString(R.string.search_address), NOMINATIM_INTENT_DATA_ID,
                 SearchManager.SUGGEST_COLUMN_INTENT_DATA_ID, SearchManager.SUGGEST_COLUMN_QUERY));
 
-        // showing the "search address" line in first, and after ordering marker by label
-        sql.append(String.format(" ORDER BY 1,m.%s", Columns.MarkersColumns.LABEL));
+        // showing the "search address" line in first, then the markers whose label starts with
+        // the query, and after ordering marker by label
+        sql.append(String.format(" ORDER BY 1, %s DESC, m.%s LIMIT %d", SUGGESTION_RANK,
+                Columns.MarkersColumns.LABEL, MAX_SUGGESTIONS + 1));
 
         return sql.toString();
     }
 
     /**
-     * Queries the database.
+     * Gets a LIKE pattern matching the {@link MarkersColumns#SEARCH_LABEL} of the markers whose
+     * label starts with the given query.
      * 
-     * @param selection
-     *            the where clause
-     * @param selectionArgs
-     *            parameters for the selection
-     * @param columns
-     *            columns to retrieve
-     * @return results
+     * @param query
+     *            the query string
+     * @return a LIKE pattern
      */
-    private Cursor query(final String selection, final String[] selectionArgs,
-            final String[] columns) {
+    private static String toLabelPrefixPattern(final String query) {
 
-        final String tables = String.format("%s m left join %s b on m.%s=b.%s", MARKERS_TABLE_NAME,
-                Columns.BookmarksColumns.BOOKMARKS_TABLE_NAME, ID, Columns.BookmarksColumns.ID);
+        return String.format("%s%%", SearchUtils.toFullTextDocument(query).replace(" ", ""));
+    }
 
-        final String order = String.format("m.%s", MarkersColumns.LABEL);
-        return query(tables, selection, selectionArgs, columns, null, order);
+    /**
+     * Gets the SQL of a query shape from the statements cache.
+     * 
+     * @param shape
+     *            the shape of the query
+     * @return the SQL, or null if it hasn't been built yet
+     */
+    private String getStatement(final String shape) {
 
+        synchronized (statements) {
+            return statements.get(shape);
+        }
     }
 
     /**
-     * Queries the database.
+     * Stores the SQL of a query shape in the statements cache.
      * 
-     * @param tables
-     *            the from clause
-     * @param selection
-     *            the where clause
-     * @param selectionArgs
-     *            parameters for the selection
-     * @param columns
-     *            columns to retrieve
-     * @param groupBy
-     *            group by clause
-     * @param orderBy
-     *            order by clause
-     * @return results
+     * @param shape
+     *            the shape of the query
+     * @param sql
+     *            the SQL of the query
+     * @return the given SQL
      */
-    private Cursor query(final String tables, final String selection, final String[] selectionArgs,
-            final String[] columns, final String groupBy, final String orderBy) {
+    private String putStatement(final String shape, final String sql) {
 
-        final SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("putStatement - shape={}, sql={}", shape, sql);
+        }
+        synchronized (statements) {
+            statements.put(shape, sql);
+        }
+        return sql;
+    }
 
-        builder.setTables(tables);
+    /**
+     * Appends a comma separated list of parameters.
+     * 
+     * @param sb
+     *            the SQL being built
+     * @param count
+     *            the amount of parameters
+     */
+    private static void appendParameters(final StringBuilder sb, final int count) {
 
-        // if (LOGGER.isDebugEnabled()) {
-        // LOGGER.debug(String.format("Marker query : %s", builder.buildQuery(columns, selection,
-        // selectionArgs, null, null, orderBy, null)));
-        // }
+        for (int i = 0; i < count; i++) {
+            sb.append((i > 0) ? ",?" : "?");
+        }
+    }
 
-        final Cursor c = builder.query(dbHelper.getReadableDatabase(), columns, selection,
-                selectionArgs, groupBy, null, orderBy);
+    /**
+     * Queries the database and returns null when no row matches.
+     * 
+     * @param shape
+     *            the shape of the query, used to identify it in the statistics
+     * @param sql
+     *            the SQL query
+     * @param selectionArgs
+     *            parameters of the query
+     * @return results positioned on the first row, or null if there is no result
+     */
+    private Cursor query(final String shape, final String sql, final String[] selectionArgs) {
+
+        final Cursor c = rawQuery(shape, sql, selectionArgs);
 
         if (c == null) {
             return null;
@@ -501,7 +596,25 @@ public class MarkerDao implements MarkersColumns {
     }
 
     /**
-     * Transforms single a row from a Cursor to a {@link StopOverlayItem}.
+     * Queries the database and records the statistics of the query.
+     * 
+     * @param shape
+     *            the shape of the query, used to identify it in the statistics
+     * @param sql
+     *            the SQL query
+     * @param selectionArgs
+     *            parameters of the query
+     * @return results
+     */
+    private Cursor rawQuery(final String shape, final String sql, final String[] selectionArgs) {
+
+        return dbHelper.getQueryStats().query(dbHelper.getReadOnlyDatabase(), shape, sql,
+                selectionArgs);
+    }
+
+    /**
+     * Transforms single a row from a Cursor to a {@link StopOverlayItem}. To transform several rows
+     * of the same cursor, use a {@link MarkerRowMapper}.
      * 
      * @param c
      *            Cursor to use
@@ -509,15 +622,7 @@ public class MarkerDao implements MarkersColumns {
      */
     public final StopOverlayItem getMarkerOverlayItem(final Cursor c) {
 
-        final StopOverlayItem marker = new StopOverlayItem();
-        marker.setId(c.getString(c.getColumnIndex(MarkersColumns.ID)));
-        marker.setType(c.getString(c.getColumnIndex(MarkersColumns.TYPE)));
-        marker.setLabel(c.getString(c.getColumnIndex(MarkersColumns.LABEL)));
-        marker.setLocation(new GeoPoint(c.getInt(c.getColumnIndex(MarkersColumns.LATITUDE)), c
-                .getInt(c.getColumnIndex(MarkersColumns.LONGITUDE))));
-        marker.setBookmarked(c.getInt(c.getColumnIndex(MarkersColumns.IS_BOOKMARKED)) != 0);
-
-        return marker;
+        return new MarkerRowMapper(c).map(c);
     }
 
-}
+}
\ No newline at end of file
@@ -0,0 +1,433 @@
+package fr.itinerennes.database;
+
+/*
+ * [license]
+ * ItineRennes
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+import org.osmdroid.util.BoundingBoxE6;
+import org.osmdroid.util.GeoPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.database.Cursor;
+
+import fr.itinerennes.business.event.IBookmarkModificationListener;
+import fr.itinerennes.commons.utils.SpatialUtils;
+import fr.itinerennes.database.Columns.BookmarksColumns;
+import fr.itinerennes.database.Columns.MarkersColumns;
+import fr.itinerennes.ui.views.overlays.StopOverlayItem;
+
+/**
+ * An in-memory copy of the markers table, used to display markers on the map without querying the
+ * database each time the map moves.
+ * <p>
+ * Markers are stored in parallel arrays sorted by {@link MarkersColumns#TILE}, so the markers
+ * contained in a bounding box are found with a few binary searches. A marker is referenced by its
+ * position in these arrays, and a {@link StopOverlayItem} is only created when it is needed.
+ */
+public final class MarkerIndex implements IBookmarkModificationListener, MarkersColumns {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MarkerIndex.class);
+
+    /** Query used to load the markers sorted by tile. */
+    private static final String LOAD_QUERY = String.format(
+            "SELECT m.%s, m.%s, m.%s, m.%s, m.%s, m.%s, b.%s IS NOT NULL"
+                    + " FROM %s m LEFT JOIN %s b ON m.%s = b.%s AND m.%s = b.%s ORDER BY m.%s",
+            ID, TYPE, LABEL, LATITUDE, LONGITUDE, TILE, BookmarksColumns.ID, MARKERS_TABLE_NAME,
+            BookmarksColumns.BOOKMARKS_TABLE_NAME, ID, BookmarksColumns.ID, TYPE,
+            BookmarksColumns.TYPE, TILE);
+
+    /** The amount of markers. */
+    private final int size;
+
+    /** The tile of each marker, sorted. */
+    private final long[] tiles;
+
+    /** The latitude of each marker. */
+    private final int[] latE6;
+
+    /** The longitude of each marker. */
+    private final int[] lonE6;
+
+    /** The type of each marker, as an index in {@link #typeNames}. */
+    private final byte[] types;
+
+    /** The distinct types of marker. */
+    private final String[] typeNames;
+
+    /** The identifier of each marker. */
+    private final String[] ids;
+
+    /** The label of each marker, equal labels share the same instance. */
+    private final String[] labels;
+
+    /** The positions of the bookmarked markers. */
+    private final BitSet bookmarked;
+
+    /**
+     * Creates the index from a cursor returned by {@link #LOAD_QUERY}.
+     * 
+     * @param c
+     *            the cursor containing the markers
+     */
+    private MarkerIndex(final Cursor c) {
+
+        size = c.getCount();
+        tiles = new long[size];
+        latE6 = new int[size];
+        lonE6 = new int[size];
+        types = new byte[size];
+        ids = new String[size];
+        labels = new String[size];
+        bookmarked = new BitSet(size);
+
+        final List<String> typeList = new ArrayList<String>();
+        final HashMap<String, String> labelPool = new HashMap<String, String>();
+
+        int i = 0;
+        while (c.moveToNext()) {
+            ids[i] = c.getString(0);
+
+            final String type = c.getString(1);
+            int typeIndex = typeList.indexOf(type);
+            if (typeIndex < 0) {
+                typeIndex = typeList.size();
+                typeList.add(type);
+            }
+            types[i] = (byte) typeIndex;
+
+            final String label = c.getString(2);
+            final String pooled = labelPool.get(label);
+            if (pooled == null) {
+                labelPool.put(label, label);
+                labels[i] = label;
+            } else {
+                labels[i] = pooled;
+            }
+
+            latE6[i] = c.getInt(3);
+            lonE6[i] = c.getInt(4);
+            tiles[i] = c.getLong(5);
+            if (c.getInt(6) != 0) {
+                bookmarked.set(i);
+            }
+            i++;
+        }
+        typeNames = typeList.toArray(new String[typeList.size()]);
+    }
+
+    /**
+     * Loads all the markers from the database.
+     * 
+     * @param dbHelper
+     *            the database helper
+     * @return an index of all the markers
+     */
+    public static MarkerIndex load(final DatabaseHelper dbHelper) {
+
+        LOGGER.debug("load.start");
+        final long start = System.currentTimeMillis();
+
+        final Cursor c = dbHelper.getQueryStats().query(dbHelper.getReadOnlyDatabase(),
+                "markerIndex", LOAD_QUERY, null);
+        final MarkerIndex index;
+        try {
+            index = new MarkerIndex(c);
+        } finally {
+            c.close();
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("load.end - size={}, duration={}ms", index.size,
+                    System.currentTimeMillis() - start);
+        }
+        return index;
+    }
+
+    /**
+     * Selects the markers located in the given bounding box and having one of the given types.
+     * 
+     * @param bbox
+     *            the bounding box
+     * @param visibleTypes
+     *            the types of the markers to select
+     * @param selection
+     *            the selection to fill, it is cleared before the markers are added
+     */
+    public void select(final BoundingBoxE6 bbox, final List<String> visibleTypes,
+            final Selection selection) {
+
+        selection.clear();
+
+        final boolean[] visible = new boolean[typeNames.length];
+        boolean anyVisible = false;
+        for (int t = 0; t < typeNames.length; t++) {
+            visible[t] = visibleTypes.contains(typeNames[t]);
+            anyVisible |= visible[t];
+        }
+        if (!anyVisible) {
+            return;
+        }
+
+        final int south = bbox.getLatSouthE6();
+        final int north = bbox.getLatNorthE6();
+        final int west = bbox.getLonWestE6();
+        final int east = bbox.getLonEastE6();
+
+        final long[] ranges = SpatialUtils.getRanges(south, west, north, east);
+        for (int r = 0; r < ranges.length; r += 2) {
+            for (int i = lowerBound(ranges[r]); i < size && tiles[i] <= ranges[r + 1]; i++) {
+                if (visible[types[i]] && latE6[i] >= south && latE6[i] <= north
+                        && lonE6[i] >= west && lonE6[i] <= east) {
+                    selection.add(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the position of the first marker whose tile is greater than or equal to the given
+     * tile.
+     * 
+     * @param tile
+     *            a tile
+     * @return the position of the first marker in the tile or after it
+     */
+    private int lowerBound(final long tile) {
+
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (tiles[mid] < tile) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets the position of the marker having the given type and identifier.
+     * 
+     * @param type
+     *            the type of the marker
+     * @param id
+     *            the identifier of the marker
+     * @return the position of the marker, or -1 if it isn't indexed
+     */
+    public int indexOf(final String type, final String id) {
+
+        for (int i = 0; i < size; i++) {
+            if (ids[i].equals(id) && typeNames[types[i]].equals(type)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the amount of markers.
+     * 
+     * @return the amount of markers
+     */
+    public int size() {
+
+        return size;
+    }
+
+    /**
+     * Gets the latitude of a marker.
+     * 
+     * @param position
+     *            the position of the marker
+     * @return the latitude in microdegrees
+     */
+    public int getLatitudeE6(final int position) {
+
+        return latE6[position];
+    }
+
+    /**
+     * Gets the longitude of a marker.
+     * 
+     * @param position
+     *            the position of the marker
+     * @return the longitude in microdegrees
+     */
+    public int getLongitudeE6(final int position) {
+
+        return lonE6[position];
+    }
+
+    /**
+     * Gets the type of a marker.
+     * 
+     * @param position
+     *            the position of the marker
+     * @return the type of the marker
+     */
+    public String getType(final int position) {
+
+        return typeNames[types[position]];
+    }
+
+    /**
+     * Gets the identifier of a marker.
+     * 
+     * @param position
+     *            the position of the marker
+     * @return the identifier of the marker
+     */
+    public String getId(final int position) {
+
+        return ids[position];
+    }
+
+    /**
+     * Gets the label of a marker.
+     * 
+     * @param position
+     *            the position of the marker
+     * @return the label of the marker
+     */
+    public String getLabel(final int position) {
+
+        return labels[position];
+    }
+
+    /**
+     * Gets whether or not a marker is bookmarked.
+     * 
+     * @param position
+     *            the position of the marker
+     * @return true if the marker is bookmarked
+     */
+    public boolean isBookmarked(final int position) {
+
+        synchronized (bookmarked) {
+            return bookmarked.get(position);
+        }
+    }
+
+    /**
+     * Creates an overlay item for a marker.
+     * 
+     * @param position
+     *            the position of the marker
+     * @return a new overlay item representing the marker
+     */
+    public StopOverlayItem toOverlayItem(final int position) {
+
+        final StopOverlayItem item = new StopOverlayItem();
+        item.setId(ids[position]);
+        item.setType(typeNames[types[position]]);
+        item.setLabel(labels[position]);
+        item.setLocation(new GeoPoint(latE6[position], lonE6[position]));
+        item.setBookmarked(isBookmarked(position));
+        return item;
+    }
+
+    /**
+     * Keeps the bookmarked state of the markers up to date.
+     * <p>
+     * {@inheritDoc}
+     * 
+     * @see fr.itinerennes.business.event.IBookmarkModificationListener#onBookmarkStateChanged(java.lang.String,
+     *      java.lang.String, boolean)
+     */
+    @Override
+    public void onBookmarkStateChanged(final String type, final String id,
+            final boolean isBookmarked) {
+
+        final int position = indexOf(type, id);
+        if (position >= 0) {
+            synchronized (bookmarked) {
+                bookmarked.set(position, isBookmarked);
+            }
+        }
+    }
+
+    /**
+     * A list of marker positions, growing when needed, which can be reused between queries.
+     */
+    public static final class Selection {
+
+        /** The positions of the selected markers. */
+        private int[] positions = new int[64];
+
+        /** The amount of selected markers. */
+        private int count = 0;
+
+        /**
+         * Removes all the selected markers.
+         */
+        public void clear() {
+
+            count = 0;
+        }
+
+        /**
+         * Adds a marker to the selection.
+         * 
+         * @param position
+         *            the position of the marker
+         */
+        public void add(final int position) {
+
+            if (count == positions.length) {
+                final int[] grown = new int[count * 2];
+                System.arraycopy(positions, 0, grown, 0, count);
+                positions = grown;
+            }
+            positions[count++] = position;
+        }
+
+        /**
+         * Gets the amount of selected markers.
+         * 
+         * @return the amount of selected markers
+         */
+        public int size() {
+
+            return count;
+        }
+
+        /**
+         * Gets the position of the i-th selected marker.
+         * 
+         * @param i
+         *            the index in the selection
+         * @return the position of the marker in the {@link MarkerIndex}
+         */
+        public int get(final int i) {
+
+            return positions[i];
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package fr.itinerennes.database;
+
+/*
+ * [license]
+ * ItineRennes
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import org.osmdroid.util.GeoPoint;
+
+import android.database.Cursor;
+
+import fr.itinerennes.database.Columns.MarkersColumns;
+import fr.itinerennes.ui.views.overlays.StopOverlayItem;
+
+/**
+ * Maps the rows of a cursor returned by the {@link MarkerDao} to {@link StopOverlayItem}s. The
+ * indexes of the columns are resolved once when the mapper is created, so a mapper should be
+ * created once per cursor and reused for each of its rows.
+ */
+public final class MarkerRowMapper {
+
+    /** The index of the {@link MarkersColumns#ID} column. */
+    private final int id;
+
+    /** The index of the {@link MarkersColumns#TYPE} column. */
+    private final int type;
+
+    /** The index of the {@link MarkersColumns#LABEL} column. */
+    private final int label;
+
+    /** The index of the {@link MarkersColumns#LATITUDE} column. */
+    private final int latitude;
+
+    /** The index of the {@link MarkersColumns#LONGITUDE} column. */
+    private final int longitude;
+
+    /** The index of the {@link MarkersColumns#IS_BOOKMARKED} column. */
+    private final int bookmarked;
+
+    /**
+     * Creates a mapper for the rows of the given cursor.
+     * 
+     * @param c
+     *            the cursor whose rows will be mapped
+     * @throws IllegalArgumentException
+     *             a column required to create a {@link StopOverlayItem} is missing
+     */
+    public MarkerRowMapper(final Cursor c) {
+
+        id = c.getColumnIndexOrThrow(MarkersColumns.ID);
+        type = c.getColumnIndexOrThrow(MarkersColumns.TYPE);
+        label = c.getColumnIndexOrThrow(MarkersColumns.LABEL);
+        latitude = c.getColumnIndexOrThrow(MarkersColumns.LATITUDE);
+        longitude = c.getColumnIndexOrThrow(MarkersColumns.LONGITUDE);
+        bookmarked = c.getColumnIndexOrThrow(MarkersColumns.IS_BOOKMARKED);
+    }
+
+    /**
+     * Transforms the current row of the cursor to a {@link StopOverlayItem}.
+     * 
+     * @param c
+     *            the cursor this mapper was created for, positioned on the row to map
+     * @return a {@link StopOverlayItem}
+     */
+    public StopOverlayItem map(final Cursor c) {
+
+        final StopOverlayItem marker = new StopOverlayItem();
+        marker.setId(c.getString(id));
+        marker.setType(c.getString(type));
+        marker.setLabel(c.getString(label));
+        marker.setLocation(new GeoPoint(c.getInt(latitude), c.getInt(longitude)));
+        marker.setBookmarked(c.getInt(bookmarked) != 0);
+        return marker;
+    }
+}
@@ -0,0 +1,628 @@
+package fr.itinerennes.database;
+
+/*
+ * [license]
+ * ItineRennes
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.database.Cursor;
+import android.database.DataSetObserver;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Executes queries and collects statistics about them, by query shape. The shape of a query
+ * identifies its SQL independently of the values of its parameters (e.g. <code>bbox:2:3</code>
+ * for the markers contained in a bounding box covering 2 tile ranges, of 3 different types).
+ * <p>
+ * For each shape, the latencies are counted in a histogram, along with the amount of rows fetched
+ * and the time the cursors stay open. The queries slower than a threshold are kept in a slow
+ * query log along with their query plan.
+ */
+public final class QueryStats {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryStats.class);
+
+    /** The upper bounds of the latency histogram buckets in milliseconds. */
+    private static final long[] BUCKETS = new long[] { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000 };
+
+    /** The maximum amount of queries kept in the slow query log. */
+    private static final int SLOW_QUERY_LOG_SIZE = 20;
+
+    /** Amount of nanoseconds in a millisecond. */
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /** Amount of nanoseconds in a microsecond. */
+    private static final long NANOS_PER_MICRO = 1000L;
+
+    /** The duration in milliseconds above which a query is logged as a slow query. */
+    private final long slowQueryThreshold;
+
+    /** The statistics of each query shape. */
+    private final Map<String, Shape> shapes = new HashMap<String, Shape>();
+
+    /** The last slow queries, the most recent first. */
+    private final LinkedList<SlowQuery> slowQueries = new LinkedList<SlowQuery>();
+
+    /**
+     * Creates a statistics collector.
+     * 
+     * @param slowQueryThreshold
+     *            the duration in milliseconds above which a query is logged as a slow query
+     */
+    public QueryStats(final long slowQueryThreshold) {
+
+        this.slowQueryThreshold = slowQueryThreshold;
+    }
+
+    /**
+     * Executes a query and records its statistics. The statement is prepared (or taken from the
+     * statement cache of the database) when the cursor is created, and it is executed when the
+     * cursor window is filled to count the rows: both durations are recorded separately.
+     * 
+     * @param db
+     *            the database to query
+     * @param shape
+     *            the shape of the query
+     * @param sql
+     *            the SQL query
+     * @param selectionArgs
+     *            parameters of the query
+     * @return results
+     */
+    public Cursor query(final SQLiteDatabase db, final String shape, final String sql,
+            final String[] selectionArgs) {
+
+        final long start = System.nanoTime();
+        final Cursor c = db.rawQuery(sql, selectionArgs);
+        final long prepared = System.nanoTime();
+        final int count = c.getCount();
+        final long executed = System.nanoTime();
+
+        final Shape stats;
+        synchronized (shapes) {
+            Shape s = shapes.get(shape);
+            if (s == null) {
+                s = new Shape(shape);
+                shapes.put(shape, s);
+            }
+            s.record(sql, selectionArgs, prepared - start, executed - prepared, count);
+            stats = s;
+        }
+        c.registerDataSetObserver(new LifetimeObserver(stats));
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("query - shape={}, count={}, prepare={}us, execute={}us", new Object[] {
+                    shape, count, (prepared - start) / NANOS_PER_MICRO,
+                    (executed - prepared) / NANOS_PER_MICRO });
+        }
+
+        final long duration = (executed - start) / NANOS_PER_MILLI;
+        if (duration >= slowQueryThreshold) {
+            final List<String> plan = explain(db, sql, selectionArgs);
+            LOGGER.warn("slow query - shape={}, duration={}ms, count={}, plan={}", new Object[] {
+                    shape, duration, count, plan });
+            synchronized (slowQueries) {
+                slowQueries.addFirst(new SlowQuery(shape, sql, duration, count, plan));
+                if (slowQueries.size() > SLOW_QUERY_LOG_SIZE) {
+                    slowQueries.removeLast();
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Gets the plan SQLite uses to execute a query.
+     * 
+     * @param db
+     *            the database
+     * @param sql
+     *            the SQL query
+     * @param selectionArgs
+     *            parameters of the query
+     * @return the detail of each step of the query plan
+     */
+    public static List<String> explain(final SQLiteDatabase db, final String sql,
+            final String[] selectionArgs) {
+
+        final List<String> plan = new ArrayList<String>();
+        final Cursor c = db.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+        try {
+            // the detail is the last column whatever the version of SQLite
+            final int detail = c.getColumnCount() - 1;
+            while (c.moveToNext()) {
+                plan.add(c.getString(detail));
+            }
+        } finally {
+            c.close();
+        }
+        return plan;
+    }
+
+    /**
+     * Returns true if a step of a query plan reads a whole table or index instead of searching
+     * it. Both the format of SQLite 3.6 (<code>TABLE markers AS m</code>) and the format of later
+     * versions (<code>SCAN TABLE markers AS m</code>) are recognized.
+     * 
+     * @param detail
+     *            the detail of a step of a query plan
+     * @return true if the step is a full scan
+     */
+    public static boolean isFullScan(final String detail) {
+
+        final String step = detail.toUpperCase(Locale.US);
+        if (step.startsWith("SCAN ")) {
+            return !step.contains("VIRTUAL TABLE") && !step.startsWith("SCAN CONSTANT ROW")
+                    && !step.startsWith("SCAN SUBQUERY");
+        }
+        if (step.startsWith("TABLE ")) {
+            return !step.contains("INDEX") && !step.contains("PRIMARY KEY");
+        }
+        return false;
+    }
+
+    /**
+     * Gets a copy of the statistics of each query shape, the shapes which took the longest time
+     * first.
+     * 
+     * @return the statistics of each query shape
+     */
+    public List<Shape> getShapes() {
+
+        final List<Shape> copy = new ArrayList<Shape>();
+        synchronized (shapes) {
+            for (final Shape shape : shapes.values()) {
+                copy.add(new Shape(shape));
+            }
+        }
+        Collections.sort(copy, new Comparator<Shape>() {
+
+            @Override
+            public int compare(final Shape a, final Shape b) {
+
+                final long total = a.getTotalTime() - b.getTotalTime();
+                return total < 0 ? 1 : total > 0 ? -1 : a.name.compareTo(b.name);
+            }
+        });
+        return copy;
+    }
+
+    /**
+     * Gets a copy of the statistics of a query shape.
+     * 
+     * @param name
+     *            the shape of the query
+     * @return the statistics of the queries of this shape, or null if none was executed
+     */
+    public Shape getShape(final String name) {
+
+        synchronized (shapes) {
+            final Shape shape = shapes.get(name);
+            return shape == null ? null : new Shape(shape);
+        }
+    }
+
+    /**
+     * Gets the last slow queries.
+     * 
+     * @return the last slow queries, the most recent first
+     */
+    public List<SlowQuery> getSlowQueries() {
+
+        synchronized (slowQueries) {
+            return new ArrayList<SlowQuery>(slowQueries);
+        }
+    }
+
+    /**
+     * Clears all the statistics and the slow query log.
+     */
+    public void reset() {
+
+        synchronized (shapes) {
+            shapes.clear();
+        }
+        synchronized (slowQueries) {
+            slowQueries.clear();
+        }
+    }
+
+    /**
+     * Gets a human readable report of the statistics and the slow query log.
+     * 
+     * @return a report
+     */
+    public String getReport() {
+
+        final StringBuilder report = new StringBuilder();
+        for (final Shape shape : getShapes()) {
+            report.append(shape).append('\n');
+        }
+        report.append(String.format("\nslow queries (>= %d ms):\n", slowQueryThreshold));
+        for (final SlowQuery query : getSlowQueries()) {
+            report.append(query).append('\n');
+        }
+        return report.toString();
+    }
+
+    /**
+     * Statistics of the queries of a shape.
+     */
+    public static final class Shape {
+
+        /** The shape of the queries. */
+        private final String name;
+
+        /** The SQL of the last query. */
+        private String sql;
+
+        /** The parameters of the last query. */
+        private String[] selectionArgs;
+
+        /** The amount of queries. */
+        private int count;
+
+        /** The amount of rows fetched. */
+        private long rows;
+
+        /** The cumulated time spent preparing the statements, in nanoseconds. */
+        private long prepareTime;
+
+        /** The cumulated time spent executing the statements, in nanoseconds. */
+        private long executeTime;
+
+        /** The longest query duration, in nanoseconds. */
+        private long maxTime;
+
+        /** The amount of queries in each latency bucket, the last one is unbounded. */
+        private final int[] histogram;
+
+        /** The amount of cursors closed. */
+        private int closed;
+
+        /** The cumulated time the closed cursors stayed open, in nanoseconds. */
+        private long lifetime;
+
+        /**
+         * Creates empty statistics.
+         * 
+         * @param name
+         *            the shape of the queries
+         */
+        private Shape(final String name) {
+
+            this.name = name;
+            this.histogram = new int[BUCKETS.length + 1];
+        }
+
+        /**
+         * Copies statistics.
+         * 
+         * @param other
+         *            the statistics to copy
+         */
+        private Shape(final Shape other) {
+
+            name = other.name;
+            sql = other.sql;
+            selectionArgs = other.selectionArgs;
+            count = other.count;
+            rows = other.rows;
+            prepareTime = other.prepareTime;
+            executeTime = other.executeTime;
+            maxTime = other.maxTime;
+            histogram = other.histogram.clone();
+            closed = other.closed;
+            lifetime = other.lifetime;
+        }
+
+        /**
+         * Records a query.
+         * 
+         * @param sql
+         *            the SQL query
+         * @param selectionArgs
+         *            the parameters of the query
+         * @param prepare
+         *            the time spent preparing the statement, in nanoseconds
+         * @param execute
+         *            the time spent executing the statement, in nanoseconds
+         * @param rowCount
+         *            the amount of rows fetched
+         */
+        private void record(final String sql, final String[] selectionArgs, final long prepare,
+                final long execute, final int rowCount) {
+
+            this.sql = sql;
+            this.selectionArgs = selectionArgs;
+            count++;
+            rows += rowCount;
+            prepareTime += prepare;
+            executeTime += execute;
+            maxTime = Math.max(maxTime, prepare + execute);
+
+            final long millis = (prepare + execute) / NANOS_PER_MILLI;
+            int bucket = 0;
+            while (bucket < BUCKETS.length && millis >= BUCKETS[bucket]) {
+                bucket++;
+            }
+            histogram[bucket]++;
+        }
+
+        /**
+         * Gets the shape of the queries.
+         * 
+         * @return the shape of the queries
+         */
+        public String getName() {
+
+            return name;
+        }
+
+        /**
+         * Gets the SQL of the last query.
+         * 
+         * @return the SQL of the last query
+         */
+        public String getSql() {
+
+            return sql;
+        }
+
+        /**
+         * Gets the parameters of the last query.
+         * 
+         * @return the parameters of the last query
+         */
+        public String[] getSelectionArgs() {
+
+            return selectionArgs;
+        }
+
+        /**
+         * Gets the amount of queries.
+         * 
+         * @return the amount of queries
+         */
+        public int getCount() {
+
+            return count;
+        }
+
+        /**
+         * Gets the amount of rows fetched by all the queries.
+         * 
+         * @return the amount of rows
+         */
+        public long getRows() {
+
+            return rows;
+        }
+
+        /**
+         * Gets the time spent preparing and executing all the queries.
+         * 
+         * @return the total time in nanoseconds
+         */
+        public long getTotalTime() {
+
+            return prepareTime + executeTime;
+        }
+
+        /**
+         * Gets the amount of cursors which haven't been closed yet.
+         * 
+         * @return the amount of open cursors
+         */
+        public int getOpenCursors() {
+
+            return count - closed;
+        }
+
+        /**
+         * Gets the latency under which the given percentage of the queries completed, with the
+         * precision of the histogram buckets.
+         * 
+         * @param percent
+         *            a percentage
+         * @return the upper bound in milliseconds of the bucket containing the percentile, or -1
+         *         if it is in the unbounded bucket
+         */
+        public long getPercentile(final int percent) {
+
+            final int rank = (int) Math.ceil(count * percent / 100d);
+            int cumulated = 0;
+            for (int bucket = 0; bucket < BUCKETS.length; bucket++) {
+                cumulated += histogram[bucket];
+                if (cumulated >= rank) {
+                    return BUCKETS[bucket];
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * {@inheritDoc}
+         * 
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+
+            final StringBuilder histo = new StringBuilder();
+            for (int bucket = 0; bucket < histogram.length; bucket++) {
+                if (histogram[bucket] > 0) {
+                    histo.append(bucket < BUCKETS.length ? " <" + BUCKETS[bucket] : " >="
+                            + BUCKETS[BUCKETS.length - 1]);
+                    histo.append("ms:").append(histogram[bucket]);
+                }
+            }
+            final int queries = Math.max(1, count);
+            final long prepare = prepareTime / NANOS_PER_MICRO / queries;
+            final long execute = executeTime / NANOS_PER_MICRO / queries;
+            final long cursor = lifetime / NANOS_PER_MILLI / Math.max(1, closed);
+            return String.format("%s: n=%d rows=%d prepare=%dus execute=%dus max=%dms p50=%s"
+                    + " p95=%s cursor=%dms open=%d\n %s", name, count, rows, prepare, execute,
+                    maxTime / NANOS_PER_MILLI, toBound(getPercentile(50)),
+                    toBound(getPercentile(95)), cursor, getOpenCursors(), histo);
+        }
+
+        /**
+         * Formats a percentile.
+         * 
+         * @param bound
+         *            an upper bound returned by {@link #getPercentile(int)}
+         * @return the formatted bound
+         */
+        private static String toBound(final long bound) {
+
+            return bound < 0 ? ">=" + BUCKETS[BUCKETS.length - 1] + "ms" : "<" + bound + "ms";
+        }
+    }
+
+    /**
+     * A query slower than the threshold.
+     */
+    public static final class SlowQuery {
+
+        /** The shape of the query. */
+        private final String shape;
+
+        /** The SQL query. */
+        private final String sql;
+
+        /** The duration of the query in milliseconds. */
+        private final long duration;
+
+        /** The amount of rows fetched. */
+        private final int count;
+
+        /** The query plan. */
+        private final List<String> plan;
+
+        /**
+         * Creates a slow query log entry.
+         * 
+         * @param shape
+         *            the shape of the query
+         * @param sql
+         *            the SQL query
+         * @param duration
+         *            the duration of the query in milliseconds
+         * @param count
+         *            the amount of rows fetched
+         * @param plan
+         *            the query plan
+         */
+        private SlowQuery(final String shape, final String sql, final long duration,
+                final int count, final List<String> plan) {
+
+            this.shape = shape;
+            this.sql = sql;
+            this.duration = duration;
+            this.count = count;
+            this.plan = plan;
+        }
+
+        /**
+         * Gets the query plan.
+         * 
+         * @return the detail of each step of the query plan
+         */
+        public List<String> getPlan() {
+
+            return plan;
+        }
+
+        /**
+         * {@inheritDoc}
+         * 
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+
+            final StringBuilder s = new StringBuilder();
+            s.append(String.format("%s: %dms rows=%d\n %s", shape, duration, count, sql));
+            for (final String step : plan) {
+                s.append("\n  ").append(step);
+            }
+            return s.toString();
+        }
+    }
+
+    /**
+     * Records the time a cursor stays open. The observers of a cursor are notified it is
+     * invalidated when it is closed.
+     */
+    private final class LifetimeObserver extends DataSetObserver {
+
+        /** The statistics of the query shape of the cursor. */
+        private final Shape shape;
+
+        /** The time the cursor was opened, in nanoseconds. */
+        private final long opened = System.nanoTime();
+
+        /** Whether or not the lifetime has been recorded. */
+        private boolean recorded = false;
+
+        /**
+         * Creates an observer recording the lifetime of a cursor.
+         * 
+         * @param shape
+         *            the statistics of the query shape of the cursor
+         */
+        private LifetimeObserver(final Shape shape) {
+
+            this.shape = shape;
+        }
+
+        /**
+         * {@inheritDoc}
+         * 
+         * @see android.database.DataSetObserver#onInvalidated()
+         */
+        @Override
+        public void onInvalidated() {
+
+            if (!recorded) {
+                recorded = true;
+                final long lifetime = System.nanoTime() - opened;
+                synchronized (shapes) {
+                    shape.closed++;
+                    shape.lifetime += lifetime;
+                }
+            }
+        }
+    }
+}
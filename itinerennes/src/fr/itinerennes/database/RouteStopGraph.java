@@ -0,0 +1,361 @@
+package fr.itinerennes.database;
+
+/*
+ * [license]
+ * ItineRennes
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.database.Cursor;
+
+import fr.itinerennes.database.Columns.RoutesStopsColumns;
+
+/**
+ * An in-memory copy of the relationships between routes and stops.
+ * <p>
+ * Routes and stops are identified by an index assigned when the graph is loaded. The routes of
+ * each stop and the stops of each route are stored in compressed sparse row form: the neighbours
+ * of all the nodes are concatenated in a single array, and an array of offsets gives the position
+ * of the neighbours of each node. Neighbours are sorted by index. Looking up the neighbours of a
+ * node therefore doesn't execute any query and doesn't allocate anything.
+ */
+public final class RouteStopGraph implements RoutesStopsColumns {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RouteStopGraph.class);
+
+    /** Query used to load the relationships between routes and stops. */
+    private static final String LOAD_QUERY = String.format("SELECT %s, %s FROM %s ORDER BY %s, %s",
+            ROUTE_ID, STOP_ID, ROUTES_STOPS_TABLE_NAME, ROUTE_ID, STOP_ID);
+
+    /** The identifier of each route. */
+    private final String[] routeIds;
+
+    /** The identifier of each stop. */
+    private final String[] stopIds;
+
+    /** The index of each route by identifier. */
+    private final HashMap<String, Integer> routeIndexes = new HashMap<String, Integer>();
+
+    /** The index of each stop by identifier. */
+    private final HashMap<String, Integer> stopIndexes = new HashMap<String, Integer>();
+
+    /** The position in {@link #routeStops} of the first stop of each route, plus the end. */
+    private final int[] routeOffsets;
+
+    /** The stops of all the routes. */
+    private final int[] routeStops;
+
+    /** The position in {@link #stopRoutes} of the first route of each stop, plus the end. */
+    private final int[] stopOffsets;
+
+    /** The routes of all the stops. */
+    private final int[] stopRoutes;
+
+    /**
+     * Creates the graph from a cursor returned by {@link #LOAD_QUERY}.
+     * 
+     * @param c
+     *            the cursor containing the relationships between routes and stops
+     */
+    private RouteStopGraph(final Cursor c) {
+
+        final int edgeCount = c.getCount();
+        final int[] edgeRoutes = new int[edgeCount];
+        final int[] edgeStops = new int[edgeCount];
+        final List<String> routeList = new ArrayList<String>();
+        final List<String> stopList = new ArrayList<String>();
+
+        int i = 0;
+        while (c.moveToNext()) {
+            edgeRoutes[i] = intern(c.getString(0), routeIndexes, routeList);
+            edgeStops[i] = intern(c.getString(1), stopIndexes, stopList);
+            i++;
+        }
+        routeIds = routeList.toArray(new String[routeList.size()]);
+        stopIds = stopList.toArray(new String[stopList.size()]);
+
+        routeOffsets = toOffsets(edgeRoutes, i, routeIds.length);
+        routeStops = toNeighbours(edgeRoutes, edgeStops, i, routeOffsets);
+        stopOffsets = toOffsets(edgeStops, i, stopIds.length);
+        stopRoutes = toNeighbours(edgeStops, edgeRoutes, i, stopOffsets);
+    }
+
+    /**
+     * Gets the index of an identifier, a new index is assigned to unknown identifiers.
+     * 
+     * @param id
+     *            an identifier
+     * @param indexes
+     *            the index of each known identifier
+     * @param ids
+     *            the known identifiers
+     * @return the index of the identifier
+     */
+    private static int intern(final String id, final HashMap<String, Integer> indexes,
+            final List<String> ids) {
+
+        Integer index = indexes.get(id);
+        if (index == null) {
+            index = ids.size();
+            indexes.put(id, index);
+            ids.add(id);
+        }
+        return index;
+    }
+
+    /**
+     * Computes the offsets of the neighbours of each node.
+     * 
+     * @param sources
+     *            the source node of each edge
+     * @param edgeCount
+     *            the amount of edges
+     * @param nodeCount
+     *            the amount of nodes
+     * @return the position of the first neighbour of each node, followed by the amount of edges
+     */
+    private static int[] toOffsets(final int[] sources, final int edgeCount, final int nodeCount) {
+
+        final int[] offsets = new int[nodeCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            offsets[sources[e] + 1]++;
+        }
+        for (int n = 0; n < nodeCount; n++) {
+            offsets[n + 1] += offsets[n];
+        }
+        return offsets;
+    }
+
+    /**
+     * Groups the targets of the edges by source node.
+     * 
+     * @param sources
+     *            the source node of each edge
+     * @param targets
+     *            the target node of each edge
+     * @param edgeCount
+     *            the amount of edges
+     * @param offsets
+     *            the offsets computed by {@link #toOffsets(int[], int, int)}
+     * @return the neighbours of each node, sorted
+     */
+    private static int[] toNeighbours(final int[] sources, final int[] targets,
+            final int edgeCount, final int[] offsets) {
+
+        final int[] neighbours = new int[edgeCount];
+        final int[] next = new int[offsets.length - 1];
+        System.arraycopy(offsets, 0, next, 0, next.length);
+        for (int e = 0; e < edgeCount; e++) {
+            neighbours[next[sources[e]]++] = targets[e];
+        }
+        for (int n = 0; n < offsets.length - 1; n++) {
+            Arrays.sort(neighbours, offsets[n], offsets[n + 1]);
+        }
+        return neighbours;
+    }
+
+    /**
+     * Loads the relationships between routes and stops from the database.
+     * 
+     * @param dbHelper
+     *            the database helper
+     * @return the graph of the routes and stops
+     */
+    public static RouteStopGraph load(final DatabaseHelper dbHelper) {
+
+        LOGGER.debug("load.start");
+        final long start = System.currentTimeMillis();
+
+        final Cursor c = dbHelper.getQueryStats().query(dbHelper.getReadOnlyDatabase(),
+                "routeStopGraph", LOAD_QUERY, null);
+        final RouteStopGraph graph;
+        try {
+            graph = new RouteStopGraph(c);
+        } finally {
+            c.close();
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("load.end - routes={}, stops={}, edges={}, duration={}ms", new Object[] {
+                    graph.routeIds.length, graph.stopIds.length, graph.routeStops.length,
+                    System.currentTimeMillis() - start });
+        }
+        return graph;
+    }
+
+    /**
+     * Gets the amount of routes.
+     * 
+     * @return the amount of routes
+     */
+    public int getRouteCount() {
+
+        return routeIds.length;
+    }
+
+    /**
+     * Gets the amount of stops.
+     * 
+     * @return the amount of stops
+     */
+    public int getStopCount() {
+
+        return stopIds.length;
+    }
+
+    /**
+     * Gets the index of a route.
+     * 
+     * @param routeId
+     *            a route identifier with its agency identifier (e.g. 1_6789)
+     * @return the index of the route, or -1 if it is unknown
+     */
+    public int getRouteIndex(final String routeId) {
+
+        final Integer index = routeIndexes.get(routeId);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Gets the index of a stop.
+     * 
+     * @param stopId
+     *            a stop identifier with its agency identifier (e.g. 1_2345)
+     * @return the index of the stop, or -1 if it is unknown
+     */
+    public int getStopIndex(final String stopId) {
+
+        final Integer index = stopIndexes.get(stopId);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Gets the identifier of a route.
+     * 
+     * @param route
+     *            the index of the route
+     * @return the route identifier with its agency identifier
+     */
+    public String getRouteId(final int route) {
+
+        return routeIds[route];
+    }
+
+    /**
+     * Gets the identifier of a stop.
+     * 
+     * @param stop
+     *            the index of the stop
+     * @return the stop identifier with its agency identifier
+     */
+    public String getStopId(final int stop) {
+
+        return stopIds[stop];
+    }
+
+    /**
+     * Gets the amount of routes stopping at a stop.
+     * 
+     * @param stop
+     *            the index of the stop
+     * @return the amount of routes
+     */
+    public int getRouteCountForStop(final int stop) {
+
+        return stopOffsets[stop + 1] - stopOffsets[stop];
+    }
+
+    /**
+     * Gets a route stopping at a stop.
+     * 
+     * @param stop
+     *            the index of the stop
+     * @param i
+     *            the position of the route among the routes of the stop, from 0 to
+     *            {@link #getRouteCountForStop(int)} excluded
+     * @return the index of the route
+     */
+    public int getRouteForStop(final int stop, final int i) {
+
+        return stopRoutes[stopOffsets[stop] + i];
+    }
+
+    /**
+     * Gets the amount of stops of a route.
+     * 
+     * @param route
+     *            the index of the route
+     * @return the amount of stops
+     */
+    public int getStopCountForRoute(final int route) {
+
+        return routeOffsets[route + 1] - routeOffsets[route];
+    }
+
+    /**
+     * Gets a stop of a route.
+     * 
+     * @param route
+     *            the index of the route
+     * @param i
+     *            the position of the stop among the stops of the route, from 0 to
+     *            {@link #getStopCountForRoute(int)} excluded
+     * @return the index of the stop
+     */
+    public int getStopForRoute(final int route, final int i) {
+
+        return routeStops[routeOffsets[route] + i];
+    }
+
+    /**
+     * Returns true if a route stops at a stop.
+     * 
+     * @param route
+     *            the index of the route
+     * @param stop
+     *            the index of the stop
+     * @return true if the route stops at the stop
+     */
+    public boolean stopsAt(final int route, final int stop) {
+
+        // Arrays.binarySearch() on a range is only available from API level 9
+        int low = routeOffsets[route];
+        int high = routeOffsets[route + 1] - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            if (routeStops[middle] < stop) {
+                low = middle + 1;
+            } else if (routeStops[middle] > stop) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+}
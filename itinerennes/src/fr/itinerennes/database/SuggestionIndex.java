@@ -0,0 +1,247 @@
+package fr.itinerennes.database;
+
+/*
+ * [license]
+ * ItineRennes
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.app.SearchManager;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.provider.BaseColumns;
+
+import fr.itinerennes.R;
+import fr.itinerennes.TypeConstants;
+import fr.itinerennes.business.service.BookmarkService;
+import fr.itinerennes.commons.utils.PrefixIndex;
+import fr.itinerennes.commons.utils.SearchUtils;
+import fr.itinerennes.database.Columns.MarkersColumns;
+
+/**
+ * An in-memory index of the labels of the markers, used to suggest markers while the user types
+ * a search query.
+ * <p>
+ * Suggestions are the same as the ones returned by {@link MarkerDao#getSuggestions(String)}, but
+ * they are looked up in a {@link PrefixIndex} and returned in a {@link MatrixCursor}, without
+ * querying the database. As the user types, each query usually extends the previous one, so the
+ * previous result is refined instead of looking up the index again.
+ */
+public final class SuggestionIndex implements MarkersColumns {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(SuggestionIndex.class);
+
+    /** Query used to load the markers, sorted by label so results are sorted too. */
+    private static final String LOAD_QUERY = String.format(
+            "SELECT %s, %s, %s, %s, %s, %s FROM %s ORDER BY %s", _ID, ID, TYPE, LABEL,
+            SEARCH_LABEL, GROUP_ID, MARKERS_TABLE_NAME, LABEL);
+
+    /** The columns of the suggestions cursor. */
+    private static final String[] COLUMNS = new String[] { BaseColumns._ID,
+            SearchManager.SUGGEST_COLUMN_ICON_1, SearchManager.SUGGEST_COLUMN_TEXT_1,
+            SearchManager.SUGGEST_COLUMN_INTENT_DATA_ID, SearchManager.SUGGEST_COLUMN_ICON_2,
+            SearchManager.SUGGEST_COLUMN_QUERY };
+
+    /** The android identifier of each marker. */
+    private final String[] androidIds;
+
+    /** The identifier of each marker. */
+    private final String[] ids;
+
+    /** The type of each marker. */
+    private final String[] types;
+
+    /** The label of each marker. */
+    private final String[] labels;
+
+    /** The canonical label of each marker, without spaces. */
+    private final String[] searchLabels;
+
+    /** The stop group of each marker. */
+    private final int[] groups;
+
+    /** The index of the labels. */
+    private final PrefixIndex index;
+
+    /** The bookmark service, to display a star on the bookmarked markers. */
+    private final BookmarkService bookmarks;
+
+    /** The label of the suggestion to search an address. */
+    private final String searchAddressLabel;
+
+    /** The result of the last query, refined by the next one. */
+    private volatile PrefixIndex.Result lastResult;
+
+    /**
+     * Creates the index from a cursor returned by {@link #LOAD_QUERY}.
+     * 
+     * @param c
+     *            the cursor containing the markers
+     * @param bookmarks
+     *            the bookmark service
+     * @param searchAddressLabel
+     *            the label of the suggestion to search an address
+     */
+    private SuggestionIndex(final Cursor c, final BookmarkService bookmarks,
+            final String searchAddressLabel) {
+
+        final int size = c.getCount();
+        androidIds = new String[size];
+        ids = new String[size];
+        types = new String[size];
+        labels = new String[size];
+        searchLabels = new String[size];
+        groups = new int[size];
+        final List<String> documents = new ArrayList<String>(size);
+
+        int i = 0;
+        while (c.moveToNext()) {
+            androidIds[i] = c.getString(0);
+            ids[i] = c.getString(1);
+            types[i] = c.getString(2);
+            labels[i] = c.getString(3);
+            searchLabels[i] = c.getString(4);
+            groups[i] = c.getInt(5);
+            // same document as the one of the full-text index
+            documents.add(SearchUtils.toFullTextDocument(labels[i], searchLabels[i]));
+            i++;
+        }
+        index = new PrefixIndex(documents);
+        this.bookmarks = bookmarks;
+        this.searchAddressLabel = searchAddressLabel;
+    }
+
+    /**
+     * Loads the labels of the markers from the database.
+     * 
+     * @param dbHelper
+     *            the database helper
+     * @param bookmarks
+     *            the bookmark service, to display a star on the bookmarked markers
+     * @param searchAddressLabel
+     *            the label of the suggestion to search an address
+     * @return the index of the labels of the markers
+     */
+    public static SuggestionIndex load(final DatabaseHelper dbHelper,
+            final BookmarkService bookmarks, final String searchAddressLabel) {
+
+        LOGGER.debug("load.start");
+        final long start = System.currentTimeMillis();
+
+        final Cursor c = dbHelper.getQueryStats().query(dbHelper.getReadOnlyDatabase(),
+                "suggestionIndex", LOAD_QUERY, null);
+        final SuggestionIndex suggestions;
+        try {
+            suggestions = new SuggestionIndex(c, bookmarks, searchAddressLabel);
+        } finally {
+            c.close();
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("load.end - size={}, duration={}ms", suggestions.labels.length,
+                    System.currentTimeMillis() - start);
+        }
+        return suggestions;
+    }
+
+    /**
+     * Gets the suggestions for a query: the line to search an address first, then at most
+     * {@value MarkerDao#MAX_SUGGESTIONS} markers having words starting with the words of the
+     * query, those whose label starts with the query first. Only one marker is suggested per stop
+     * group.
+     * 
+     * @param query
+     *            the query typed by the user
+     * @return the suggestions
+     */
+    public Cursor getSuggestions(final String query) {
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("getSuggestions.start - query={}", query);
+        }
+        final long start = System.nanoTime();
+
+        final PrefixIndex.Result result = index.refine(lastResult, query);
+        lastResult = result;
+
+        final MatrixCursor cursor = new MatrixCursor(COLUMNS, MarkerDao.MAX_SUGGESTIONS + 1);
+        cursor.addRow(new Object[] { MarkerDao.NOMINATIM_INTENT_DATA_ID,
+                String.valueOf(R.drawable.ic_osm), searchAddressLabel,
+                MarkerDao.NOMINATIM_INTENT_DATA_ID, "", query });
+
+        // markers whose label starts with the query are suggested first, both passes keep the
+        // label order of the result
+        final String prefix = result.getPrefix();
+        final Set<String> suggestedGroups = new HashSet<String>();
+        int count = 0;
+        for (int pass = 0; pass < 2 && count < MarkerDao.MAX_SUGGESTIONS; pass++) {
+            for (int i = 0; i < result.size() && count < MarkerDao.MAX_SUGGESTIONS; i++) {
+                final int marker = result.get(i);
+                if (searchLabels[marker].startsWith(prefix) == (pass == 0)) {
+                    final boolean starred = bookmarks.isStarred(types[marker], ids[marker]);
+                    if (suggestedGroups.add(starred ? groups[marker] + "*" : String
+                            .valueOf(groups[marker]))) {
+                        cursor.addRow(new Object[] { androidIds[marker], getIcon(types[marker]),
+                                labels[marker], androidIds[marker],
+                                starred ? String.valueOf(android.R.drawable.btn_star_big_on)
+                                        : null, "" });
+                        count++;
+                    }
+                }
+            }
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("getSuggestions.end - count={}, duration={}us", count,
+                    (System.nanoTime() - start) / 1000);
+        }
+        return cursor;
+    }
+
+    /**
+     * Gets the icon of a type of marker.
+     * 
+     * @param type
+     *            the type of the marker
+     * @return the identifier of the icon resource, or null
+     */
+    private static String getIcon(final String type) {
+
+        final String icon;
+        if (TypeConstants.TYPE_BUS.equals(type)) {
+            icon = String.valueOf(R.drawable.ic_mapbox_bus);
+        } else if (TypeConstants.TYPE_BIKE.equals(type)) {
+            icon = String.valueOf(R.drawable.ic_mapbox_bike);
+        } else if (TypeConstants.TYPE_SUBWAY.equals(type)) {
+            icon = String.valueOf(R.drawable.ic_mapbox_subway);
+        } else {
+            icon = null;
+        }
+        return icon;
+    }
+}
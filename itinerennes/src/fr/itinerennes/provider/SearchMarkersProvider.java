@@ -76,6 +76,9 @@ public class SearchMarkersProvider extends ContentProvider {
     /** The Marker service to retrieve markers from the database. */
     private MarkerDao markerService;
 
+    /** The application, which holds the in-memory index of the suggestions. */
+    private ItineRennesApplication application;
+
     /**
      * {@inheritDoc}
      * 
@@ -87,7 +90,8 @@ public class SearchMarkersProvider extends ContentProvider {
         final boolean initialized;
         if (getContext() instanceof ItineRennesApplication) {
 
-            markerService = ((ItineRennesApplication) getContext()).getMarkerDao();
+            application = (ItineRennesApplication) getContext();
+            markerService = application.getMarkerDao();
             initialized = true;
         } else {
             LOGGER.error("Bad application context type, expected {} but was {}",
@@ -129,7 +133,8 @@ public class SearchMarkersProvider extends ContentProvider {
                 return null;
             }
 
-            return markerService.getSuggestions(selectionArgs[0]);
+            // suggestions are looked up in memory, the database isn't queried while typing
+            return application.getSuggestionIndex().getSuggestions(selectionArgs[0]);
 
         default:
             throw new IllegalArgumentException("Unknown URI " + uri);
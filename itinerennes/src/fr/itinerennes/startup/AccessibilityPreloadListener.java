@@ -0,0 +1,62 @@
+package fr.itinerennes.startup;
+
+/*
+ * [license]
+ * ItineRennes
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import android.os.AsyncTask;
+
+import fr.itinerennes.business.service.AccessibilityService;
+
+/**
+ * Listener which loads the accessibility attributes in memory, so the first screens displaying
+ * them don't wait for the database.
+ */
+public final class AccessibilityPreloadListener extends AsyncTask<Void, Void, Void> {
+
+    /** The accessibility service. */
+    private final AccessibilityService accessibilityService;
+
+    /**
+     * Constructor.
+     * 
+     * @param accessibilityService
+     *            the accessibility service to warm up
+     */
+    public AccessibilityPreloadListener(final AccessibilityService accessibilityService) {
+
+        this.accessibilityService = accessibilityService;
+    }
+
+    /**
+     * Loads the accessibility attributes.
+     * 
+     * @param params
+     *            no parameter needed
+     * @return null
+     */
+    @Override
+    protected Void doInBackground(final Void... params) {
+
+        accessibilityService.load();
+        return null;
+    }
+}
@@ -0,0 +1,62 @@
+package fr.itinerennes.startup;
+
+/*
+ * [license]
+ * ItineRennes
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import android.os.AsyncTask;
+
+import fr.itinerennes.business.service.BookmarkService;
+
+/**
+ * Listener which loads the keys of the bookmarks in memory, so the map boxes showing whether a
+ * resource is starred don't query the database from the UI thread.
+ */
+public final class BookmarkPreloadListener extends AsyncTask<Void, Void, Void> {
+
+    /** The bookmark service. */
+    private final BookmarkService bookmarkService;
+
+    /**
+     * Constructor.
+     * 
+     * @param bookmarkService
+     *            the bookmark service to warm up
+     */
+    public BookmarkPreloadListener(final BookmarkService bookmarkService) {
+
+        this.bookmarkService = bookmarkService;
+    }
+
+    /**
+     * Loads the keys of the bookmarks.
+     * 
+     * @param params
+     *            no parameter needed
+     * @return null
+     */
+    @Override
+    protected Void doInBackground(final Void... params) {
+
+        bookmarkService.load();
+        return null;
+    }
+}
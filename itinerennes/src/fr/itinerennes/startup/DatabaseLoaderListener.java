@@ -22,22 +22,42 @@ package fr.itinerennes.startup;
  * [/license]
  */
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import android.database.DatabaseUtils.InsertHelper;
+import android.content.ContentValues;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteStatement;
 import android.provider.BaseColumns;
 
 import fr.itinerennes.ItineRennesApplication;
+import fr.itinerennes.commons.utils.SearchUtils;
+import fr.itinerennes.commons.utils.SpatialUtils;
 import fr.itinerennes.database.Columns.AccessibilityColumns;
+import fr.itinerennes.database.Columns.DatasetsColumns;
 import fr.itinerennes.database.Columns.MarkersColumns;
+import fr.itinerennes.database.Columns.MarkersFtsColumns;
+import fr.itinerennes.database.DataRow;
+import fr.itinerennes.database.DatabaseHelper;
 import fr.itinerennes.database.IDataReader;
 import fr.itinerennes.startup.LoadingActivity.ProgressObserver;
 
 /**
  * Load data into the database at startup.
+ * <p>
+ * An empty table is filled by a pipeline: rows are parsed by a background thread and handed over
+ * by batches to the thread writing them into the database, so parsing and insertion overlap.
+ * Progress is published once per batch.
+ * <p>
+ * The checksum of each imported dataset is recorded in the {@link DatasetsColumns datasets}
+ * table. When a table isn't empty and its dataset changed, only the differences are applied: rows
+ * are matched by their key columns then inserted, updated or deleted.
  * 
  * @author Olivier Boudet
  * @author Jérémie Huchet
@@ -48,11 +68,23 @@ public final class DatabaseLoaderListener extends AbstractStartupListener implem
     /** The event logger. */
     private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseLoaderListener.class);
 
+    /** The amount of rows parsed, inserted and reported at once. */
+    private static final int BATCH_SIZE = 256;
+
+    /** The amount of batches which can be parsed ahead of the insertions. */
+    private static final int BATCH_COUNT = 4;
+
     /** Database instance. */
     private final SQLiteDatabase db;
 
-    /** The source data reader. */
-    private final IDataReader reader;
+    /** The database helper. */
+    private final DatabaseHelper dbHelper;
+
+    /** Opens the source data reader, null if the reader was given at construction time. */
+    private final ReaderFactory readerFactory;
+
+    /** The source data reader, null until it is opened. */
+    private IDataReader reader;
 
     /**
      * Constructor.
@@ -62,16 +94,48 @@ public final class DatabaseLoaderListener extends AbstractStartupListener implem
      * @param listener
      *            the observer to notify about progression
      * @param reader
-     *            the CSV data reader to use to get input data
+     *            the data reader to use to get input data
      */
     public DatabaseLoaderListener(final ItineRennesApplication context,
             final ProgressObserver listener, final IDataReader reader) {
 
         super(listener);
-        this.db = context.getDatabaseHelper().getWritableDatabase();
+        this.dbHelper = context.getDatabaseHelper();
+        this.db = dbHelper.getWritableDatabase();
+        this.readerFactory = null;
         this.reader = reader;
     }
 
+    /**
+     * Constructor. The data reader is opened by the thread executing the listener, so the dataset
+     * isn't read from the UI thread.
+     * 
+     * @param context
+     *            the application context
+     * @param listener
+     *            the observer to notify about progression
+     * @param readerFactory
+     *            opens the data reader to use to get input data
+     */
+    public DatabaseLoaderListener(final ItineRennesApplication context,
+            final ProgressObserver listener, final ReaderFactory readerFactory) {
+
+        super(listener);
+        this.dbHelper = context.getDatabaseHelper();
+        this.db = dbHelper.getWritableDatabase();
+        this.readerFactory = readerFactory;
+    }
+
+    /**
+     * Opens the data reader if it isn't opened yet.
+     */
+    private void openReader() {
+
+        if (null == reader) {
+            reader = readerFactory.open();
+        }
+    }
+
     /**
      * Gets the total amount of rows to insert.
      * 
@@ -80,6 +144,7 @@ public final class DatabaseLoaderListener extends AbstractStartupListener implem
     @Override
     public int progressCount() {
 
+        openReader();
         return reader.getRowCount();
     }
 
@@ -89,85 +154,579 @@ public final class DatabaseLoaderListener extends AbstractStartupListener implem
     @Override
     public void execute() {
 
-        if (isExecutionNeeded()) {
-
-            LOGGER.debug("Inserting data in table {}", reader.getTable());
-            final long start = System.currentTimeMillis();
+        openReader();
+        final String table = reader.getTable();
+        final long checksum = reader.getChecksum();
+        final long start = System.currentTimeMillis();
 
+        if (isTableEmpty()) {
+            LOGGER.debug("Inserting data in table {}", table);
             insertData();
 
-            final long end = System.currentTimeMillis();
-            LOGGER.debug("Data inserted in table {} in {} ms", reader.getTable(), (end - start));
+        } else if (checksum != getImportedChecksum()) {
+            LOGGER.debug("Updating data in table {}", table);
+            updateData();
 
-        } else if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Data seems to be already inserted in table {}", reader.getTable());
+        } else {
+            reader.close();
+            publishProgress(reader.getRowCount());
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Data seems to be already inserted in table {}", table);
+            }
+            return;
         }
+
+        final long end = System.currentTimeMillis();
+        LOGGER.debug("Data imported in table {} in {} ms", table, (end - start));
     }
 
     /**
-     * Returns true if {@link MarkersColumns#MARKERS_TABLE_NAME} is empty.
+     * Records the checksum of the dataset imported in the table. It must be called in the
+     * transaction importing the data, so the checksum is never recorded without the data.
+     */
+    private void saveChecksum() {
+
+        final ContentValues values = new ContentValues(2);
+        values.put(DatasetsColumns.NAME, reader.getTable());
+        values.put(DatasetsColumns.CHECKSUM, reader.getChecksum());
+        db.replace(DatasetsColumns.DATASETS_TABLE_NAME, null, values);
+    }
+
+    /**
+     * Returns true if the table of the dataset is empty.
      * 
-     * @return true if {@link MarkersColumns#MARKERS_TABLE_NAME} is empty
+     * @return true if the table of the dataset is empty
      */
-    private boolean isExecutionNeeded() {
+    private boolean isTableEmpty() {
 
         final SQLiteStatement statement = db.compileStatement(String.format(
                 "SELECT count(%s) FROM %s", BaseColumns._ID, reader.getTable()));
         final long count = statement.simpleQueryForLong();
         statement.close();
 
-        if (count <= 0) {
-            return true;
-        } else {
+        if (LOGGER.isDebugEnabled() && count > 0) {
+            LOGGER.debug("Table {} is not empty", reader.getTable());
+        }
+        return count <= 0;
+    }
 
-            if (LOGGER.isDebugEnabled()) {
-                LOGGER.debug("Table {} is not empty", reader.getTable());
-            }
+    /**
+     * Gets the checksum of the dataset imported in the table.
+     * 
+     * @return the checksum of the imported dataset, or -1 if it is unknown
+     */
+    private long getImportedChecksum() {
 
-            return false;
+        final Cursor c = db.query(DatasetsColumns.DATASETS_TABLE_NAME,
+                new String[] { DatasetsColumns.CHECKSUM },
+                String.format("%s = ?", DatasetsColumns.NAME),
+                new String[] { reader.getTable() }, null, null, null);
+        try {
+            return c.moveToFirst() ? c.getLong(0) : -1;
+        } finally {
+            c.close();
         }
     }
 
     /**
-     * Insert data into the database.
+     * Insert data into the database. Rows are parsed by a {@link Parser} thread while the current
+     * thread inserts them in a single transaction.
      */
     private void insertData() {
 
         final String[] columnNames = reader.getColumns();
-        final int[] columnIndexes = new int[columnNames.length];
+        final int[] columnTypes = reader.getColumnTypes();
 
-        // setup insert helper for data
-        final InsertHelper insertHelper = new InsertHelper(db, reader.getTable());
+        // markers are indexed by the tile containing their location and their labels are also
+        // indexed in the full-text search table
+        final boolean isMarkersTable = MARKERS_TABLE_NAME.equals(reader.getTable());
+        final int tileIndex = columnNames.length + 1;
+
+        final StringBuilder columns = new StringBuilder();
+        final StringBuilder values = new StringBuilder();
         for (int i = 0; i < columnNames.length; i++) {
-            columnIndexes[i] = insertHelper.getColumnIndex(columnNames[i]);
+            columns.append(i > 0 ? ", " : "").append(columnNames[i]);
+            values.append(i > 0 ? ", ?" : "?");
+        }
+        if (isMarkersTable) {
+            columns.append(", ").append(TILE);
+            values.append(", ?");
         }
 
+        final SQLiteStatement insert = db.compileStatement(String.format(
+                "INSERT INTO %s (%s) VALUES (%s)", reader.getTable(), columns, values));
+        SQLiteStatement ftsInsert = null;
+        if (isMarkersTable) {
+            ftsInsert = db.compileStatement(String.format("INSERT INTO %s (%s, %s) VALUES (?, ?)",
+                    MarkersFtsColumns.MARKERS_FTS_TABLE_NAME, MarkersFtsColumns.DOCID,
+                    MarkersFtsColumns.WORDS));
+        }
+
+        final Parser parser = new Parser(isMarkersTable);
+        parser.start();
+
+        DatabaseHelper.beginWriteTransaction(db);
         try {
-            // walking through data to insert
-            while (reader.hasNext()) {
-                final String[] data = reader.next();
+            if (isMarkersTable) {
+                db.delete(MarkersFtsColumns.MARKERS_FTS_TABLE_NAME, null, null);
+            }
+            Batch batch;
+            while ((batch = parser.parsed.take()) != Batch.END) {
+                for (int r = 0; r < batch.size; r++) {
+                    bind(insert, batch.rows[r], columnTypes);
+                    if (isMarkersTable) {
+                        insert.bindLong(tileIndex, batch.tiles[r]);
+                    }
+                    final long rowId = insert.executeInsert();
+
+                    if (ftsInsert != null) {
+                        ftsInsert.bindLong(1, rowId);
+                        ftsInsert.bindString(2, batch.documents[r]);
+                        ftsInsert.executeInsert();
+                    }
+                }
+                publishProgress(batch.size);
+                parser.free.put(batch);
+            }
+
+            if (parser.error != null) {
+                throw new IllegalStateException(String.format("Unable to read data for table %s",
+                        reader.getTable()), parser.error);
+            }
+            if (isMarkersTable) {
+                dbHelper.buildStopGroups(db);
+            }
+            saveChecksum();
+            db.setTransactionSuccessful();
 
-                insertHelper.prepareForInsert();
-                for (int i = 0; i < columnIndexes.length; i++) {
-                    insertHelper.bind(columnIndexes[i], data[i]);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(String.format("Data insertion in table %s interrupted",
+                    reader.getTable()), e);
+        } finally {
+            parser.interrupt();
+            db.endTransaction();
+            insert.close();
+            if (ftsInsert != null) {
+                ftsInsert.close();
+            }
+        }
+    }
+
+    /**
+     * Applies the differences between the dataset and the rows of the table in a single
+     * transaction. Rows are matched on their key columns: unknown rows are inserted, modified rows
+     * are updated and rows missing from the dataset are deleted.
+     */
+    private void updateData() {
+
+        final String table = reader.getTable();
+        final String[] columnNames = reader.getColumns();
+        final int[] columnTypes = reader.getColumnTypes();
+        final int keyColumnCount = reader.getKeyColumnCount();
+        final boolean isMarkersTable = MARKERS_TABLE_NAME.equals(table);
+        final int latPosition = indexOf(columnNames, LATITUDE);
+        final int lonPosition = indexOf(columnNames, LONGITUDE);
+        final int labelPosition = indexOf(columnNames, LABEL);
+        final int searchLabelPosition = indexOf(columnNames, SEARCH_LABEL);
+
+        final Map<String, ExistingRow> existing = loadExistingRows(columnNames, keyColumnCount);
+
+        final StringBuilder columns = new StringBuilder();
+        final StringBuilder values = new StringBuilder();
+        final StringBuilder assignments = new StringBuilder();
+        for (int i = 0; i < columnNames.length; i++) {
+            columns.append(i > 0 ? ", " : "").append(columnNames[i]);
+            values.append(i > 0 ? ", ?" : "?");
+            assignments.append(i > 0 ? ", " : "").append(columnNames[i]).append(" = ?");
+        }
+        if (isMarkersTable) {
+            columns.append(", ").append(TILE);
+            values.append(", ?");
+            assignments.append(", ").append(TILE).append(" = ?");
+        }
+        final int tileIndex = columnNames.length + 1;
+        final int idIndex = isMarkersTable ? tileIndex + 1 : tileIndex;
+
+        final SQLiteStatement insert = db.compileStatement(String.format(
+                "INSERT INTO %s (%s) VALUES (%s)", table, columns, values));
+        final SQLiteStatement update = db.compileStatement(String.format(
+                "UPDATE %s SET %s WHERE %s = ?", table, assignments, BaseColumns._ID));
+        final SQLiteStatement delete = db.compileStatement(String.format(
+                "DELETE FROM %s WHERE %s = ?", table, BaseColumns._ID));
+        final SQLiteStatement ftsInsert = db.compileStatement(String.format(
+                "INSERT INTO %s (%s, %s) VALUES (?, ?)",
+                MarkersFtsColumns.MARKERS_FTS_TABLE_NAME, MarkersFtsColumns.DOCID,
+                MarkersFtsColumns.WORDS));
+        final SQLiteStatement ftsDelete = db.compileStatement(String.format(
+                "DELETE FROM %s WHERE %s = ?", MarkersFtsColumns.MARKERS_FTS_TABLE_NAME,
+                MarkersFtsColumns.DOCID));
+
+        int inserted = 0;
+        int updated = 0;
+        int pending = 0;
+        final DataRow row = new DataRow(columnNames.length);
+        DatabaseHelper.beginWriteTransaction(db);
+        try {
+            while (reader.next(row)) {
+                final ExistingRow current = existing.remove(key(row, keyColumnCount));
+                long rowId = -1;
+                if (current == null) {
+                    bind(insert, row, columnTypes);
+                    if (isMarkersTable) {
+                        insert.bindLong(tileIndex, tile(row, latPosition, lonPosition));
+                    }
+                    rowId = insert.executeInsert();
+                    inserted++;
+                } else if (!current.matches(row, columnTypes)) {
+                    bind(update, row, columnTypes);
+                    if (isMarkersTable) {
+                        update.bindLong(tileIndex, tile(row, latPosition, lonPosition));
+                    }
+                    update.bindLong(idIndex, current.id);
+                    update.execute();
+                    rowId = current.id;
+                    updated++;
+                    if (isMarkersTable) {
+                        ftsDelete.bindLong(1, rowId);
+                        ftsDelete.execute();
+                    }
                 }
 
-                if (!db.inTransaction()) {
-                    db.beginTransaction();
+                if (isMarkersTable && rowId >= 0) {
+                    ftsInsert.bindLong(1, rowId);
+                    ftsInsert.bindString(2, SearchUtils.toFullTextDocument(
+                            row.getString(labelPosition), row.getString(searchLabelPosition)));
+                    ftsInsert.executeInsert();
                 }
-                insertHelper.execute();
-                publishProgress(1);
+
+                if (++pending == BATCH_SIZE) {
+                    publishProgress(pending);
+                    pending = 0;
+                }
+            }
+            publishProgress(pending);
+
+            for (final ExistingRow removed : existing.values()) {
+                delete.bindLong(1, removed.id);
+                delete.execute();
+                if (isMarkersTable) {
+                    ftsDelete.bindLong(1, removed.id);
+                    ftsDelete.execute();
+                }
+            }
+
+            if (isMarkersTable) {
+                dbHelper.buildStopGroups(db);
             }
+            saveChecksum();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            reader.close();
+            insert.close();
+            update.close();
+            delete.close();
+            ftsInsert.close();
+            ftsDelete.close();
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Table {} updated - inserted={}, updated={}, deleted={}", new Object[] {
+                    table, inserted, updated, existing.size() });
+        }
+    }
+
+    /**
+     * Loads the rows of the table, indexed by their key.
+     * 
+     * @param columnNames
+     *            the columns of the dataset
+     * @param keyColumnCount
+     *            the amount of columns identifying a row
+     * @return the rows of the table
+     */
+    private Map<String, ExistingRow> loadExistingRows(final String[] columnNames,
+            final int keyColumnCount) {
 
-            if (db.inTransaction()) {
-                db.setTransactionSuccessful();
+        final String[] projection = new String[columnNames.length + 1];
+        projection[0] = BaseColumns._ID;
+        System.arraycopy(columnNames, 0, projection, 1, columnNames.length);
+
+        final Cursor c = db.query(reader.getTable(), projection, null, null, null, null, null);
+        try {
+            final Map<String, ExistingRow> rows = new HashMap<String, ExistingRow>(
+                    c.getCount() * 4 / 3 + 1);
+            final StringBuilder key = new StringBuilder();
+            while (c.moveToNext()) {
+                final String[] values = new String[columnNames.length];
+                key.setLength(0);
+                for (int i = 0; i < columnNames.length; i++) {
+                    values[i] = c.isNull(i + 1) ? "" : c.getString(i + 1);
+                    if (i < keyColumnCount) {
+                        key.append(values[i]).append(';');
+                    }
+                }
+                rows.put(key.toString(), new ExistingRow(c.getLong(0), values));
             }
+            return rows;
         } finally {
-            if (db.inTransaction()) {
-                db.endTransaction();
+            c.close();
+        }
+    }
+
+    /**
+     * Computes the tile containing a marker.
+     * 
+     * @param row
+     *            the marker
+     * @param latPosition
+     *            the position of the latitude column
+     * @param lonPosition
+     *            the position of the longitude column
+     * @return the tile containing the marker
+     */
+    private static long tile(final DataRow row, final int latPosition, final int lonPosition) {
+
+        return SpatialUtils.encode((int) row.getLong(latPosition), (int) row.getLong(lonPosition));
+    }
+
+    /**
+     * Builds the key of a row.
+     * 
+     * @param row
+     *            the row
+     * @param keyColumnCount
+     *            the amount of columns identifying a row
+     * @return the key of the row
+     */
+    private static String key(final DataRow row, final int keyColumnCount) {
+
+        final StringBuilder key = new StringBuilder();
+        for (int i = 0; i < keyColumnCount; i++) {
+            key.append(row.getString(i)).append(';');
+        }
+        return key.toString();
+    }
+
+    /**
+     * Binds the fields of a row to the first parameters of a statement, according to the type of
+     * each column.
+     * 
+     * @param statement
+     *            the statement
+     * @param row
+     *            the row
+     * @param columnTypes
+     *            the type of each column
+     */
+    private static void bind(final SQLiteStatement statement, final DataRow row,
+            final int[] columnTypes) {
+
+        for (int i = 0; i < columnTypes.length; i++) {
+            if (columnTypes[i] == IDataReader.TYPE_TEXT) {
+                statement.bindString(i + 1, row.getString(i));
+            } else if (row.isNull(i)) {
+                statement.bindNull(i + 1);
+            } else {
+                statement.bindLong(i + 1, row.getLong(i));
+            }
+        }
+    }
+
+    /**
+     * Gets the position of a column in the given column names.
+     * 
+     * @param columnNames
+     *            the column names
+     * @param name
+     *            the name of the column to look for
+     * @return the position of the column or -1 if it is not found
+     */
+    private static int indexOf(final String[] columnNames, final String name) {
+
+        for (int i = 0; i < columnNames.length; i++) {
+            if (name.equals(columnNames[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Opens the data reader of a {@link DatabaseLoaderListener}.
+     */
+    public interface ReaderFactory {
+
+        /**
+         * Opens the data reader.
+         * 
+         * @return the data reader
+         */
+        IDataReader open();
+    }
+
+    /**
+     * A row already stored in the table.
+     */
+    private static final class ExistingRow {
+
+        /** The {@link BaseColumns#_ID} of the row. */
+        private final long id;
+
+        /** The values of the dataset columns, empty strings for null values. */
+        private final String[] values;
+
+        /**
+         * Creates a row.
+         * 
+         * @param id
+         *            the {@link BaseColumns#_ID} of the row
+         * @param values
+         *            the values of the dataset columns
+         */
+        private ExistingRow(final long id, final String[] values) {
+
+            this.id = id;
+            this.values = values;
+        }
+
+        /**
+         * Gets whether or not the row has the same values as a row of the dataset.
+         * 
+         * @param row
+         *            a row of the dataset
+         * @param columnTypes
+         *            the type of each column
+         * @return true if all the values are equal
+         */
+        private boolean matches(final DataRow row, final int[] columnTypes) {
+
+            for (int i = 0; i < values.length; i++) {
+                final String value;
+                if (columnTypes[i] == IDataReader.TYPE_TEXT) {
+                    value = row.getString(i);
+                } else {
+                    value = row.isNull(i) ? "" : String.valueOf(row.getLong(i));
+                }
+                if (!values[i].equals(value)) {
+                    return false;
+                }
             }
+            return true;
         }
+    }
+
+    /**
+     * A batch of parsed rows. Batches are recycled once their rows are inserted.
+     */
+    private static final class Batch {
+
+        /** Marks the end of the data. */
+        private static final Batch END = new Batch(0);
+
+        /** The parsed rows. */
+        private final DataRow[] rows = new DataRow[BATCH_SIZE];
+
+        /** The tile of each marker. */
+        private final long[] tiles = new long[BATCH_SIZE];
+
+        /** The full-text document of each marker. */
+        private final String[] documents = new String[BATCH_SIZE];
 
+        /** The amount of rows in the batch. */
+        private int size = 0;
+
+        /**
+         * Creates an empty batch.
+         * 
+         * @param columnCount
+         *            the amount of columns of the rows
+         */
+        private Batch(final int columnCount) {
+
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                rows[i] = new DataRow(columnCount);
+            }
+        }
     }
 
+    /**
+     * Reads the rows and fills batches with them. The end of the data is signaled with
+     * {@link Batch#END}, even if reading fails.
+     */
+    private final class Parser extends Thread {
+
+        /** The batches ready to be filled. */
+        private final BlockingQueue<Batch> free = new ArrayBlockingQueue<Batch>(BATCH_COUNT);
+
+        /** The batches ready to be inserted, followed by {@link Batch#END}. */
+        private final BlockingQueue<Batch> parsed = new ArrayBlockingQueue<Batch>(
+                BATCH_COUNT + 1);
+
+        /** True if the tiles and full-text documents of the markers have to be computed. */
+        private final boolean isMarkersTable;
+
+        /** The error which stopped the parsing, if any. */
+        private volatile RuntimeException error;
+
+        /**
+         * Creates the parser and its batches.
+         * 
+         * @param isMarkersTable
+         *            true if the rows are markers
+         */
+        private Parser(final boolean isMarkersTable) {
+
+            super("dataset-parser-" + reader.getTable());
+            this.isMarkersTable = isMarkersTable;
+            for (int i = 0; i < BATCH_COUNT; i++) {
+                free.add(new Batch(reader.getColumns().length));
+            }
+        }
+
+        /**
+         * Fills the batches until the end of the data.
+         * 
+         * @see java.lang.Thread#run()
+         */
+        @Override
+        public void run() {
+
+            final String[] columnNames = reader.getColumns();
+            final int latPosition = indexOf(columnNames, LATITUDE);
+            final int lonPosition = indexOf(columnNames, LONGITUDE);
+            final int labelPosition = indexOf(columnNames, LABEL);
+            final int searchLabelPosition = indexOf(columnNames, SEARCH_LABEL);
+
+            try {
+                boolean hasNext = true;
+                while (hasNext) {
+                    final Batch batch = free.take();
+                    batch.size = 0;
+                    while (batch.size < BATCH_SIZE
+                            && (hasNext = reader.next(batch.rows[batch.size]))) {
+                        if (isMarkersTable) {
+                            final DataRow row = batch.rows[batch.size];
+                            batch.tiles[batch.size] = tile(row, latPosition, lonPosition);
+                            batch.documents[batch.size] = SearchUtils.toFullTextDocument(
+                                    row.getString(labelPosition),
+                                    row.getString(searchLabelPosition));
+                        }
+                        batch.size++;
+                    }
+                    if (batch.size > 0) {
+                        parsed.put(batch);
+                    }
+                }
+            } catch (final InterruptedException e) {
+                LOGGER.debug("Parsing of table {} interrupted", reader.getTable());
+            } catch (final RuntimeException e) {
+                error = e;
+            } finally {
+                reader.close();
+                parsed.offer(Batch.END);
+            }
+        }
+    }
 }
@@ -37,9 +37,10 @@ import android.widget.ProgressBar;
 
 import fr.itinerennes.ITRPrefs;
 import fr.itinerennes.R;
-import fr.itinerennes.database.CSVDataReader;
+import fr.itinerennes.database.BinaryDataReader;
 import fr.itinerennes.database.Columns.AccessibilityColumns;
 import fr.itinerennes.database.Columns.MarkersColumns;
+import fr.itinerennes.database.IDataReader;
 import fr.itinerennes.ui.activity.ItineRennesActivity;
 import fr.itinerennes.utils.VersionUtils;
 
@@ -145,14 +146,42 @@ public class LoadingActivity extends ItineRennesActivity implements MarkersColum
             final List<AbstractStartupListener> syncListeners = new ArrayList<AbstractStartupListener>();
             final TaskRunner syncListenerRunner = new TaskRunner(syncListeners);
 
+            // the prebuilt database fills the empty tables, datasets are only loaded when changed
+            syncListeners.add(new PrebuiltDatabaseListener(this.getApplicationContext(),
+                    syncListenerRunner));
+            // the datasets are read by the task runner thread
             syncListeners.add(new DatabaseLoaderListener(this.getApplicationContext(),
-                    syncListenerRunner, CSVDataReader.markers(getBaseContext())));
+                    syncListenerRunner, new DatabaseLoaderListener.ReaderFactory() {
+
+                        @Override
+                        public IDataReader open() {
+
+                            return BinaryDataReader.markers(getBaseContext());
+                        }
+                    }));
             syncListeners.add(new DatabaseLoaderListener(this.getApplicationContext(),
-                    syncListenerRunner, CSVDataReader.accessibility(getBaseContext())));
+                    syncListenerRunner, new DatabaseLoaderListener.ReaderFactory() {
+
+                        @Override
+                        public IDataReader open() {
+
+                            return BinaryDataReader.accessibility(getBaseContext());
+                        }
+                    }));
             syncListeners.add(new DatabaseLoaderListener(this.getApplicationContext(),
-                    syncListenerRunner, CSVDataReader.routesStops(getBaseContext())));
+                    syncListenerRunner, new DatabaseLoaderListener.ReaderFactory() {
+
+                        @Override
+                        public IDataReader open() {
+
+                            return BinaryDataReader.routesStops(getBaseContext());
+                        }
+                    }));
             syncListenerRunner.start();
         } else {
+            new AccessibilityPreloadListener(getApplicationContext().getAccessibilityService())
+                    .execute();
+            new BookmarkPreloadListener(getApplicationContext().getBookmarksService()).execute();
             finish();
         }
 
@@ -261,6 +290,11 @@ public class LoadingActivity extends ItineRennesActivity implements MarkersColum
             for (final AbstractStartupListener listener : syncListeners) {
                 listener.execute();
             }
+            // the accessibility table may have been modified by the listeners
+            getApplicationContext().getAccessibilityService().load();
+            // the in-memory copies of the other tables may be stale too
+            getApplicationContext().onDatabaseLoaded();
+            getApplicationContext().getBookmarksService().load();
 
             progressHandler.sendMessage(progressHandler.obtainMessage(MSG_PROGRESS_FINISH));
         }
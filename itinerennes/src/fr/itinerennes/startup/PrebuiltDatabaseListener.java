@@ -0,0 +1,324 @@
+package fr.itinerennes.startup;
+
+/*
+ * [license]
+ * ItineRennes
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.content.res.AssetManager;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.provider.BaseColumns;
+
+import fr.itinerennes.Conf;
+import fr.itinerennes.ItineRennesApplication;
+import fr.itinerennes.database.Columns.AccessibilityColumns;
+import fr.itinerennes.database.Columns.DatasetsColumns;
+import fr.itinerennes.database.Columns.MarkersColumns;
+import fr.itinerennes.database.Columns.MarkersFtsColumns;
+import fr.itinerennes.database.Columns.RoutesStopsColumns;
+import fr.itinerennes.database.Columns.StopGroupsColumns;
+import fr.itinerennes.database.DatabaseHelper;
+import fr.itinerennes.startup.LoadingActivity.ProgressObserver;
+
+/**
+ * Imports the initial dataset from the prebuilt database packaged in the assets.
+ * <p>
+ * The prebuilt database is generated at build time by the <code>itinerennes-dataset</code>
+ * module. It is uncompressed to the cache directory, attached to the application database and
+ * each empty table is filled with a single <code>INSERT ... SELECT</code>, along with the checksum
+ * of its dataset so the {@link DatabaseLoaderListener}s don't update it again. If the prebuilt
+ * database is missing or its schema version doesn't match {@link Conf#DATABASE_SCHEMA_VERSION},
+ * nothing is imported and the {@link DatabaseLoaderListener}s load the binary datasets instead.
+ */
+public final class PrebuiltDatabaseListener extends AbstractStartupListener {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrebuiltDatabaseListener.class);
+
+    /** The prebuilt database, gzipped, relative to the assets directory. */
+    private static final String PREBUILT_DATABASE = "database/itinerennes.db.gz";
+
+    /** The name of the attached prebuilt database. */
+    private static final String SCHEMA = "prebuilt";
+
+    /** The tables to import. */
+    private static final String[] TABLES = new String[] { MarkersColumns.MARKERS_TABLE_NAME,
+            AccessibilityColumns.ACCESSIBILITY_TABLE_NAME,
+            RoutesStopsColumns.ROUTES_STOPS_TABLE_NAME };
+
+    /** Byte buffer length for the copy of the prebuilt database. */
+    private static final int BYTE_BUF_SIZE = 8192;
+
+    /** The database helper. */
+    private final DatabaseHelper dbHelper;
+
+    /** Database instance, the connection the prebuilt database is attached to. */
+    private SQLiteDatabase db;
+
+    /** The assets manager. */
+    private final AssetManager assets;
+
+    /** The file where the prebuilt database is uncompressed. */
+    private final File prebuiltFile;
+
+    /**
+     * Constructor.
+     * 
+     * @param context
+     *            the application context
+     * @param listener
+     *            the observer to notify about progression
+     */
+    public PrebuiltDatabaseListener(final ItineRennesApplication context,
+            final ProgressObserver listener) {
+
+        super(listener);
+        this.dbHelper = context.getDatabaseHelper();
+        this.assets = context.getAssets();
+        this.prebuiltFile = new File(context.getCacheDir(), "prebuilt.db");
+    }
+
+    /**
+     * One unit of work per table to import.
+     * 
+     * @return the amount of tables to import
+     */
+    @Override
+    public int progressCount() {
+
+        return TABLES.length;
+    }
+
+    /**
+     * Imports the tables which are empty from the prebuilt database.
+     */
+    @Override
+    public void execute() {
+
+        // attaching a database disables write-ahead logging on the connection, so the prebuilt
+        // database is attached to a dedicated connection when it is enabled
+        final boolean dedicated = dbHelper.isWriteAheadLoggingEnabled();
+        db = dedicated ? dbHelper.openConnection() : dbHelper.getWritableDatabase();
+        try {
+            importDatabase();
+        } finally {
+            if (dedicated) {
+                db.close();
+            }
+            db = null;
+        }
+    }
+
+    /**
+     * Imports the tables which are empty from the prebuilt database, if it is available.
+     */
+    private void importDatabase() {
+
+        boolean needed = false;
+        for (final String table : TABLES) {
+            needed |= isEmpty(table);
+        }
+        if (!needed) {
+            LOGGER.debug("No table to import from the prebuilt database");
+            return;
+        }
+
+        final long start = System.currentTimeMillis();
+        try {
+            if (!extract()) {
+                return;
+            }
+            db.execSQL(String.format("ATTACH DATABASE %s AS %s",
+                    DatabaseUtils.sqlEscapeString(prebuiltFile.getAbsolutePath()), SCHEMA));
+            try {
+                final long version = simpleQueryForLong(String.format("PRAGMA %s.user_version",
+                        SCHEMA));
+                if (version == Conf.DATABASE_SCHEMA_VERSION) {
+                    importTables();
+                } else {
+                    LOGGER.warn("Prebuilt database schema version is {}, expected {}", version,
+                            Conf.DATABASE_SCHEMA_VERSION);
+                }
+            } finally {
+                db.execSQL(String.format("DETACH DATABASE %s", SCHEMA));
+            }
+        } catch (final IOException e) {
+            LOGGER.error("Unable to extract the prebuilt database", e);
+        } catch (final SQLException e) {
+            LOGGER.error("Unable to import the prebuilt database", e);
+        } finally {
+            prebuiltFile.delete();
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Prebuilt database imported in {} ms", System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Copies each empty table from the attached prebuilt database, in a single transaction.
+     */
+    private void importTables() {
+
+        DatabaseHelper.beginWriteTransaction(db);
+        try {
+            for (final String table : TABLES) {
+                if (isEmpty(table)) {
+                    copy(table, null);
+                    if (MarkersColumns.MARKERS_TABLE_NAME.equals(table)) {
+                        db.delete(MarkersFtsColumns.MARKERS_FTS_TABLE_NAME, null, null);
+                        copy(MarkersFtsColumns.MARKERS_FTS_TABLE_NAME, MarkersFtsColumns.DOCID);
+                        // the group of each marker is copied with it
+                        db.delete(StopGroupsColumns.STOP_GROUPS_TABLE_NAME, null, null);
+                        copy(StopGroupsColumns.STOP_GROUPS_TABLE_NAME, null);
+                    }
+                    db.execSQL(String.format(
+                            "INSERT OR REPLACE INTO main.%s (%s, %s) SELECT %s, %s FROM %s.%s"
+                                    + " WHERE %s = ?", DatasetsColumns.DATASETS_TABLE_NAME,
+                            DatasetsColumns.NAME, DatasetsColumns.CHECKSUM, DatasetsColumns.NAME,
+                            DatasetsColumns.CHECKSUM, SCHEMA, DatasetsColumns.DATASETS_TABLE_NAME,
+                            DatasetsColumns.NAME), new Object[] { table });
+                } else if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Table {} is not empty", table);
+                }
+                publishProgress(1);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Copies all the rows of a table of the prebuilt database. Columns are listed explicitly
+     * because upgraded databases may declare them in a different order.
+     * 
+     * @param table
+     *            the table to copy
+     * @param hiddenColumn
+     *            an optional column to copy which isn't listed in the table info (e.g. the docid
+     *            of a full-text table)
+     */
+    private void copy(final String table, final String hiddenColumn) {
+
+        final StringBuilder columns = new StringBuilder();
+        if (hiddenColumn != null) {
+            columns.append(hiddenColumn);
+        }
+        final Cursor c = db.rawQuery(String.format("PRAGMA %s.table_info(%s)", SCHEMA, table),
+                null);
+        try {
+            final int nameIndex = c.getColumnIndex("name");
+            while (c.moveToNext()) {
+                if (columns.length() > 0) {
+                    columns.append(", ");
+                }
+                columns.append('"').append(c.getString(nameIndex)).append('"');
+            }
+        } finally {
+            c.close();
+        }
+
+        db.execSQL(String.format("INSERT INTO main.%s (%s) SELECT %s FROM %s.%s", table, columns,
+                columns, SCHEMA, table));
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Table {} imported from the prebuilt database", table);
+        }
+    }
+
+    /**
+     * Uncompresses the prebuilt database to the cache directory in a single streamed copy.
+     * 
+     * @return false if no prebuilt database is packaged
+     * @throws IOException
+     *             an error occurred while copying the database
+     */
+    private boolean extract() throws IOException {
+
+        final InputStream in;
+        try {
+            in = new GZIPInputStream(assets.open(PREBUILT_DATABASE, AssetManager.ACCESS_STREAMING),
+                    BYTE_BUF_SIZE);
+        } catch (final IOException e) {
+            LOGGER.warn("No prebuilt database found: {}", PREBUILT_DATABASE);
+            return false;
+        }
+        try {
+            final OutputStream out = new FileOutputStream(prebuiltFile);
+            try {
+                final byte[] buffer = new byte[BYTE_BUF_SIZE];
+                int len;
+                while ((len = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, len);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the given table of the application database is empty.
+     * 
+     * @param table
+     *            the table name
+     * @return true if the table is empty
+     */
+    private boolean isEmpty(final String table) {
+
+        return simpleQueryForLong(String.format("SELECT count(%s) FROM main.%s", BaseColumns._ID,
+                table)) <= 0;
+    }
+
+    /**
+     * Executes a query returning a single number.
+     * 
+     * @param sql
+     *            the query
+     * @return the result of the query
+     */
+    private long simpleQueryForLong(final String sql) {
+
+        final SQLiteStatement statement = db.compileStatement(sql);
+        try {
+            return statement.simpleQueryForLong();
+        } finally {
+            statement.close();
+        }
+    }
+}
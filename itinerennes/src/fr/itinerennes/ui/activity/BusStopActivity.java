@@ -52,11 +52,12 @@ import android.widget.ToggleButton;
 import fr.itinerennes.Conf;
 import fr.itinerennes.R;
 import fr.itinerennes.TypeConstants;
-import fr.itinerennes.api.client.ItineRennesApiClient;
 import fr.itinerennes.api.client.model.Route;
 import fr.itinerennes.api.client.model.ScheduleStopTime;
 import fr.itinerennes.api.client.model.StopSchedule;
+import fr.itinerennes.business.service.ScheduleService;
 import fr.itinerennes.commons.utils.DateUtils;
+import fr.itinerennes.database.CacheEntryDao;
 import fr.itinerennes.ui.adapter.BusStopTimeAdapter;
 import fr.itinerennes.ui.views.LineImageView;
 import fr.itinerennes.ui.views.event.ToggleStarListener;
@@ -104,8 +105,8 @@ public final class BusStopActivity extends ItineRennesActivity {
     /** flag indicating if this stop is accessible or not. */
     private boolean isAccessible = false;
 
-    /** The OneBusAway client. */
-    private ItineRennesApiClient obaClient;
+    /** The service fetching and caching the schedules. */
+    private ScheduleService scheduleService;
 
     /** Adapter for the departures list view. */
     private BusStopTimeAdapter adapter;
@@ -120,7 +121,7 @@ public final class BusStopActivity extends ItineRennesActivity {
      * If an update of the content displayed is requested, the task which result is expected is
      * referenced by this variable. It's typically the last requested started.
      */
-    private AsyncTask<Void, Void, StopSchedule> refreshStopScheduleTask;
+    private AsyncTask<Void, StopSchedule, StopSchedule> refreshStopScheduleTask;
 
     /**
      * Creates the activity.
@@ -147,7 +148,7 @@ public final class BusStopActivity extends ItineRennesActivity {
 
         setContentView(R.layout.act_bus_stop);
 
-        obaClient = getApplicationContext().getItineRennesApiClient();
+        scheduleService = getApplicationContext().getScheduleService();
 
         // retrieve intent parameters
         stopId = getIntent().getStringExtra(INTENT_STOP_ID);
@@ -305,8 +306,52 @@ public final class BusStopActivity extends ItineRennesActivity {
         }
     }
 
+    /**
+     * Displays a schedule.
+     * 
+     * @param schedule
+     *            the schedule to display
+     * @param scroll
+     *            true to scroll the list to the next departure
+     */
+    private void showStopSchedule(final StopSchedule schedule, final boolean scroll) {
+
+        /* Hide progress bar and show list view. */
+        findViewById(R.id.misc_view_is_loading).setVisibility(View.GONE);
+        findViewById(R.activity_bus_stop.list_bus).setVisibility(View.VISIBLE);
+
+        /* Displaying routes icons. */
+
+        final ViewGroup lineList = (ViewGroup) findViewById(R.id.line_icon_container);
+        lineList.removeAllViews();
+        for (final Route busRoute : schedule.getRoutes()) {
+
+            final LineImageView lineIcon = new LineImageView(BusStopActivity.this);
+            lineIcon.setLine(busRoute.getShortName());
+            lineIcon.fitToHeight(24);
+            lineIcon.setPadding(2, 0, 2, 0);
+            lineList.addView(lineIcon);
+        }
+
+        /* Displaying departures dates. */
+        // get, if available, the tripId of the previous BusTripActivity displayed
+        final String tripId = getIntent().getExtras().getString(INTENT_FROM_TRIP_ID);
+
+        adapter.setTripIdToHighlight(tripId);
+        adapter.setStopSchedule(schedule);
+
+        if (scroll) {
+            listTimes.setSelectionFromTop(adapter.getInitialIndex(), SELECTION_FROM_TOP);
+        }
+    }
+
     /**
      * Called when the day changed so refreshing the schedule view is necessary.
+     * <p>
+     * The cached schedule of the day is displayed as soon as it is read. Unless it was fetched
+     * less than {@link Conf#CACHE_SCHEDULE_FRESH} milliseconds ago, the schedule is then fetched
+     * from the network and the view is refreshed with it. The failure dialog is displayed only if
+     * the schedule isn't cached and can't be fetched.
      * 
      * @param newDate
      *            date to fetch schedule
@@ -319,7 +364,10 @@ public final class BusStopActivity extends ItineRennesActivity {
 
         scheduleDate = newDate;
 
-        refreshStopScheduleTask = new AsyncTask<Void, Void, StopSchedule>() {
+        refreshStopScheduleTask = new AsyncTask<Void, StopSchedule, StopSchedule>() {
+
+            /** The schedule displayed by this task, if any. */
+            private StopSchedule displayed;
 
             /**
              * {@inheritDoc}
@@ -329,7 +377,7 @@ public final class BusStopActivity extends ItineRennesActivity {
             @Override
             protected void onPreExecute() {
 
-                /* Hide progress bar and show list view. */
+                /* Show progress bar and hide list view. */
                 findViewById(R.id.misc_view_is_loading).setVisibility(View.VISIBLE);
                 findViewById(R.activity_bus_stop.list_bus).setVisibility(View.GONE);
             };
@@ -342,19 +390,46 @@ public final class BusStopActivity extends ItineRennesActivity {
             @Override
             protected StopSchedule doInBackground(final Void... params) {
 
+                /* Displaying the cached schedule while a fresher one is fetched. */
+                final CacheEntryDao.Entry<StopSchedule> cached = scheduleService
+                        .getCachedScheduleForStop(stopId, newDate);
+                if (cached != null) {
+                    publishProgress(cached.getValue());
+                    if (cached.isFresh(Conf.CACHE_SCHEDULE_FRESH)) {
+                        return cached.getValue();
+                    }
+                }
+
                 try {
                     /* Fetching stop informations for this station from the network. */
 
-                    return obaClient.getScheduleForStop(stopId, newDate);
+                    return scheduleService.fetchScheduleForStop(stopId, newDate);
 
                 } catch (final IOException e) {
                     LOGGER.debug(
                             String.format("Can't load informations for the station %s.", stopId), e);
                 }
 
-                return null;
+                return null == cached ? null : cached.getValue();
             }
 
+            /**
+             * {@inheritDoc}
+             * 
+             * @see android.os.AsyncTask#onProgressUpdate(Progress[])
+             */
+            @Override
+            protected void onProgressUpdate(final StopSchedule... cached) {
+
+                if (refreshStopScheduleTask == this) {
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug("displaying the cached schedule for {}", newDate);
+                    }
+                    displayed = cached[0];
+                    showStopSchedule(displayed, true);
+                }
+            };
+
             /**
              * {@inheritDoc}
              * 
@@ -364,43 +439,19 @@ public final class BusStopActivity extends ItineRennesActivity {
             protected void onPostExecute(final StopSchedule schedule) {
 
                 if (schedule != null) {
-                    if (refreshStopScheduleTask == this) {
+                    if (refreshStopScheduleTask != this) {
                         if (LOGGER.isDebugEnabled()) {
-                            LOGGER.debug("received schedule for {} and refreshing UI with it",
+                            LOGGER.debug(
+                                    "received schedule for {} but this is not the expected one (another one should have or will be received)",
                                     newDate);
                         }
-
-                        /* Hide progress bar and show list view. */
-                        findViewById(R.id.misc_view_is_loading).setVisibility(View.GONE);
-                        findViewById(R.activity_bus_stop.list_bus).setVisibility(View.VISIBLE);
-
-                        /* Displaying routes icons. */
-
-                        final ViewGroup lineList = (ViewGroup) findViewById(R.id.line_icon_container);
-                        lineList.removeAllViews();
-                        for (final Route busRoute : schedule.getRoutes()) {
-
-                            final LineImageView lineIcon = new LineImageView(BusStopActivity.this);
-                            lineIcon.setLine(busRoute.getShortName());
-                            lineIcon.fitToHeight(24);
-                            lineIcon.setPadding(2, 0, 2, 0);
-                            lineList.addView(lineIcon);
+                    } else if (schedule != displayed) {
+                        if (LOGGER.isDebugEnabled()) {
+                            LOGGER.debug("received schedule for {} and refreshing UI with it",
+                                    newDate);
                         }
-
-                        /* Displaying departures dates. */
-                        // get, if available, the tripId of the previous BusTripActivity displayed
-                        final String tripId = getIntent().getExtras()
-                                .getString(INTENT_FROM_TRIP_ID);
-
-                        adapter.setTripIdToHighlight(tripId);
-                        adapter.setStopSchedule(schedule);
-
-                        listTimes
-                                .setSelectionFromTop(adapter.getInitialIndex(), SELECTION_FROM_TOP);
-                    } else if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug(
-                                "received schedule for {} but this is not the expected one (another one should have or will be received)",
-                                newDate);
+                        // keep the scroll position if the cached schedule is already displayed
+                        showStopSchedule(schedule, null == displayed);
                     }
                 } else {
                     if (LOGGER.isDebugEnabled()) {
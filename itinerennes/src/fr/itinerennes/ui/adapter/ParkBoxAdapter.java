@@ -98,8 +98,8 @@ public class ParkBoxAdapter implements MapBoxAdapter<RelayPark> {
         RelayPark carPark = null;
 
         try {
-            for (final RelayPark park : context.getApplicationContext().getKeolisClient()
-                    .getAllRelayParks()) {
+            for (final RelayPark park : context.getApplicationContext().getKeolisCache()
+                    .getRelayParks()) {
                 if (item.getLocation().getLatitudeE6() == park.getLatitude()
                         && item.getLocation().getLongitudeE6() == park.getLongitude()) {
                     carPark = park;
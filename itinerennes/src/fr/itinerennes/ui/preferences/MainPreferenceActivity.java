@@ -27,6 +27,7 @@ import org.slf4j.LoggerFactory;
 
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.content.pm.ApplicationInfo;
 import android.os.Bundle;
 import android.preference.PreferenceActivity;
 import android.preference.PreferenceManager;
@@ -45,12 +46,20 @@ public final class MainPreferenceActivity extends PreferenceActivity implements
     private static final Logger LOGGER = LoggerFactory
             .getLogger(MainPreferenceActivity.class);
 
+    /** The key of the preference category holding the debugging tools. */
+    private static final String DEBUG_CATEGORY = "fr.itinerennes.debug";
+
     @Override
     protected void onCreate(final Bundle savedInstanceState) {
 
         super.onCreate(savedInstanceState);
         addPreferencesFromResource(R.xml.pref_main);
 
+        // the query statistics are only meant for the developers
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) == 0) {
+            getPreferenceScreen().removePreference(findPreference(DEBUG_CATEGORY));
+        }
+
         PreferenceManager.getDefaultSharedPreferences(this)
                 .registerOnSharedPreferenceChangeListener(this);
     }
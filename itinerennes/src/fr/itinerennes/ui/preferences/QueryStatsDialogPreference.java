@@ -0,0 +1,110 @@
+package fr.itinerennes.ui.preferences;
+
+/*
+ * [license]
+ * ItineRennes
+ * ----
+ * Copyright (C) 2013 - 2014 Dudie
+ * ----
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * [/license]
+ */
+
+import android.content.Context;
+import android.content.DialogInterface;
+import android.preference.DialogPreference;
+import android.util.AttributeSet;
+import android.view.View;
+import android.widget.TextView;
+
+import fr.itinerennes.ItineRennesApplication;
+import fr.itinerennes.R;
+import fr.itinerennes.database.QueryStats;
+
+/**
+ * Debug dialog preference component displaying the statistics of the database queries. The
+ * negative button resets the statistics.
+ */
+public final class QueryStatsDialogPreference extends DialogPreference {
+
+    /**
+     * Constructor.
+     * 
+     * @param context
+     *            the context
+     * @param attrs
+     *            the xml attributes
+     */
+    public QueryStatsDialogPreference(final Context context, final AttributeSet attrs) {
+
+        super(context, attrs);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param context
+     *            the context
+     * @param attrs
+     *            the xml attributes
+     * @param defStyle
+     *            the default style
+     */
+    public QueryStatsDialogPreference(final Context context, final AttributeSet attrs,
+            final int defStyle) {
+
+        super(context, attrs, defStyle);
+    }
+
+    /**
+     * Gets the statistics of the database queries.
+     * 
+     * @return the statistics of the database queries
+     */
+    private QueryStats getQueryStats() {
+
+        return ((ItineRennesApplication) getContext().getApplicationContext())
+                .getDatabaseHelper().getQueryStats();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see android.preference.DialogPreference#onCreateDialogView()
+     */
+    @Override
+    protected View onCreateDialogView() {
+
+        final View statsView = super.onCreateDialogView();
+        final TextView reportText = (TextView) statsView.findViewById(R.id.query_stats_report);
+        reportText.setText(getQueryStats().getReport());
+
+        return statsView;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see android.preference.DialogPreference#onClick(android.content.DialogInterface, int)
+     */
+    @Override
+    public void onClick(final DialogInterface dialog, final int which) {
+
+        super.onClick(dialog, which);
+        if (which == DialogInterface.BUTTON_NEGATIVE) {
+            getQueryStats().reset();
+        }
+    }
+}
@@ -57,9 +57,6 @@ public class ParkOverlay extends LazyOverlay implements ILayerSelector {
     /** The event logger. */
     private static final Logger LOGGER = LoggerFactory.getLogger(ParkOverlay.class);
 
-    /** Data refresh interval in milliseconds. */
-    private static final long REFRESH_INTERVAL = 900 * 1000;
-
     /** The MapActivity context. */
     private final ItineRennesActivity context;
 
@@ -69,9 +66,6 @@ public class ParkOverlay extends LazyOverlay implements ILayerSelector {
     /** The list of all parkings. */
     private final List<ParkOverlayItem> parks = new ArrayList<ParkOverlayItem>(4);
 
-    /** Last overlay update time. */
-    private long lastUpdate;
-
     /** This property references the task currently loading parks from keolis. */
     private AsyncTask<Void, Void, List<ParkOverlayItem>> refreshTask = null;
 
@@ -293,28 +287,21 @@ public class ParkOverlay extends LazyOverlay implements ILayerSelector {
 
             final List<ParkOverlayItem> newParks = new ArrayList<ParkOverlayItem>(4);
 
-            if (System.currentTimeMillis() - lastUpdate > (REFRESH_INTERVAL)) {
-
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("ParkOverlay : refreshing data from keolis");
+            try {
+                for (final RelayPark park : context.getApplicationContext().getKeolisCache()
+                        .getRelayParks()) {
+                    final ParkOverlayItem item = new ParkOverlayItem();
+                    item.setType(TypeConstants.TYPE_CAR_PARK);
+                    item.setLabel(park.getName());
+                    item.setLocation(new GeoPoint(park.getLatitude(), park.getLongitude()));
+                    item.setAvailable(park.getCarParkAvailable());
+                    item.setCapacity(park.getCarParkCapacity());
+                    item.setState(park.getState());
+                    newParks.add(item);
                 }
 
-                try {
-                    for (final RelayPark park : context.getApplicationContext().getKeolisClient()
-                            .getAllRelayParks()) {
-                        final ParkOverlayItem item = new ParkOverlayItem();
-                        item.setType(TypeConstants.TYPE_CAR_PARK);
-                        item.setLabel(park.getName());
-                        item.setLocation(new GeoPoint(park.getLatitude(), park.getLongitude()));
-                        item.setAvailable(park.getCarParkAvailable());
-                        item.setCapacity(park.getCarParkCapacity());
-                        item.setState(park.getState());
-                        newParks.add(item);
-                    }
-
-                } catch (final IOException e) {
-                    LOGGER.warn("Update of relay parks failed.");
-                }
+            } catch (final IOException e) {
+                LOGGER.warn("Update of relay parks failed.");
             }
 
             return newParks;
@@ -334,7 +321,6 @@ public class ParkOverlay extends LazyOverlay implements ILayerSelector {
                     LOGGER.debug("ParkOverlay : refreshing map");
                 }
 
-                lastUpdate = System.currentTimeMillis();
                 parks.clear();
                 parks.addAll(newParks);
             }
@@ -24,17 +24,15 @@ package fr.itinerennes.ui.views.overlays;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 
+import org.osmdroid.util.GeoPoint;
 import org.osmdroid.views.MapView;
 import org.osmdroid.views.Projection;
 import org.osmdroid.views.overlay.Overlay;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import android.database.Cursor;
 import android.graphics.Canvas;
 import android.graphics.Point;
 import android.graphics.Rect;
@@ -44,14 +42,18 @@ import android.view.MotionEvent;
 import fr.itinerennes.R;
 import fr.itinerennes.TypeConstants;
 import fr.itinerennes.business.event.IBookmarkModificationListener;
-import fr.itinerennes.database.Columns.MarkersColumns;
-import fr.itinerennes.database.MarkerDao;
+import fr.itinerennes.business.service.BookmarkService;
+import fr.itinerennes.database.MarkerIndex;
+import fr.itinerennes.database.MarkerIndex.Selection;
 import fr.itinerennes.ui.activity.ItineRennesActivity;
 import fr.itinerennes.ui.views.ItinerennesMapView;
 import fr.itinerennes.utils.ResourceResolver;
 
 /**
  * This overlay displays a different icon for each type of marker.
+ * <p>
+ * Markers are read from the {@link MarkerIndex}: the overlay only keeps the positions of the
+ * displayed markers and a {@link StopOverlayItem} is created when one of them is tapped.
  * 
  * @author Jérémie Huchet
  * @author Olivier Boudet
@@ -61,25 +63,45 @@ public class StopOverlay extends LazyOverlay implements ILayerSelector {
     /** The event logger. */
     private static final Logger LOGGER = LoggerFactory.getLogger(StopOverlay.class);
 
+    /** The drawable state of a bookmarked marker. */
+    private static final int[] BOOKMARKED_STATE = new int[] { R.attr.state_bookmarked };
+
     /** The MapActivity context. */
     private final ItineRennesActivity context;
 
     /** The map view containing this overlay. */
     private final ItinerennesMapView map;
 
+    /** The bookmark service. */
+    private final BookmarkService bookmarks;
+
     /** The list containing visible types of markers. */
     private final List<String> visibleMarkerTypes = new ArrayList<String>(3);
 
-    /** The list of all displayed markers. */
-    private final LinkedHashMap<String, StopOverlayItem> markers = new LinkedHashMap<String, StopOverlayItem>(
-            20);
+    /** The index containing all the markers, null until it is loaded. */
+    private MarkerIndex index = null;
+
+    /** The positions of the displayed markers in the index. */
+    private Selection markers = new Selection();
+
+    /** A selection which is not used anymore and can be filled by the next refresh. */
+    private Selection spareSelection = new Selection();
 
     /** This property references the task currently loading the current displayed bounding box. */
-    private AsyncTask<Void, Void, LinkedHashMap<String, StopOverlayItem>> refreshTask = null;
+    private AsyncTask<Void, Void, Selection> refreshTask = null;
 
     /** Simple cache for markers icons. */
     private final HashMap<String, Drawable> markerIcons = new HashMap<String, Drawable>();
 
+    /** A location reused to compute the screen coordinates of the markers. */
+    private final GeoPoint location = new GeoPoint(0, 0);
+
+    /** Screen coordinates reused to draw the markers. */
+    private final Point point = new Point();
+
+    /** Bounds reused to draw the markers. */
+    private final Rect bounds = new Rect();
+
     /**
      * Creates the marker overlay.
      * 
@@ -98,38 +120,33 @@ public class StopOverlay extends LazyOverlay implements ILayerSelector {
         visibleMarkerTypes.add(TypeConstants.TYPE_BUS);
         visibleMarkerTypes.add(TypeConstants.TYPE_SUBWAY);
 
-        context.getApplicationContext().getBookmarksService()
-                .addListener(new IBookmarkModificationListener() {
-
-                    /**
-                     * When a bookmark is added/removed, ensure to dispatch modification to the
-                     * overlay item representing it: add the star or remove the star.
-                     * <p>
-                     * {@inheritDoc}
-                     * 
-                     * @see fr.itinerennes.business.event.IBookmarkModificationListener#onBookmarkStateChanged(java.lang.String,
-                     *      java.lang.String, boolean)
-                     */
-                    @Override
-                    public void onBookmarkStateChanged(final String type, final String id,
-                            final boolean bookmarked) {
-
-                        StopOverlayItem stopItem = null;
-                        final Iterator<StopOverlayItem> i = markers.values().iterator();
-                        while (null == stopItem && i.hasNext()) {
-                            final StopOverlayItem overlayItem = i.next();
-                            if (overlayItem.getType().equals(type)
-                                    && overlayItem.getId().equals(id)) {
-                                stopItem = overlayItem;
-                            }
-                        }
-
-                        if (null != stopItem) {
-                            stopItem.setBookmarked(bookmarked);
-                            map.postInvalidate();
-                        }
-                    }
-                });
+        bookmarks = context.getApplicationContext().getBookmarksService();
+        bookmarks.addListener(new IBookmarkModificationListener() {
+
+            /**
+             * When a bookmark is added/removed, the {@link MarkerIndex} updates the marker state,
+             * the map just has to be redrawn to add or remove the star. The selected item is a
+             * copy of the marker, so its state is updated too.
+             * <p>
+             * {@inheritDoc}
+             * 
+             * @see fr.itinerennes.business.event.IBookmarkModificationListener#onBookmarkStateChanged(java.lang.String,
+             *      java.lang.String, boolean)
+             */
+            @Override
+            public void onBookmarkStateChanged(final String type, final String id,
+                    final boolean bookmarked) {
+
+                final OverlayItem selectedItem = map.getMapBoxController().getSelectedItem();
+                if (selectedItem instanceof StopOverlayItem && type.equals(selectedItem.getType())
+                        && id.equals(((StopOverlayItem) selectedItem).getId())) {
+                    ((StopOverlayItem) selectedItem).setBookmarked(bookmarked);
+                }
+                if (indexOfDisplayed(type, id) >= 0) {
+                    map.postInvalidate();
+                }
+            }
+        });
     }
 
     /**
@@ -140,52 +157,41 @@ public class StopOverlay extends LazyOverlay implements ILayerSelector {
     @Override
     public final void onMapMove(final MapView source) {
 
-        refreshTask = new AsyncTask<Void, Void, LinkedHashMap<String, StopOverlayItem>>() {
+        final Selection selection = (spareSelection != null) ? spareSelection : new Selection();
+        spareSelection = null;
+        final List<String> types = new ArrayList<String>(visibleMarkerTypes);
+
+        refreshTask = new AsyncTask<Void, Void, Selection>() {
+
+            /** The index used to select the markers. */
+            private MarkerIndex markerIndex;
 
             /**
-             * Retrieves the markers for the currently displayed bounding boxes.
+             * Selects the markers located in the currently displayed bounding box.
              * 
              * @see android.os.AsyncTask#doInBackground(Params[])
              */
             @Override
-            protected LinkedHashMap<String, StopOverlayItem> doInBackground(final Void... params) {
-
-                final MarkerDao markerDao = context.getApplicationContext().getMarkerDao();
-                final Cursor c = context
-                        .getApplicationContext()
-                        .getMarkerDao()
-                        .getMarkers(source.getBoundingBox(),
-                                new ArrayList<String>(visibleMarkerTypes));
-
-                final LinkedHashMap<String, StopOverlayItem> markers = new LinkedHashMap<String, StopOverlayItem>();
-                if (c != null && c.moveToFirst()) {
-                    while (!c.isAfterLast()) {
-
-                        final String markerId = c.getString(c.getColumnIndex(MarkersColumns.ID));
+            protected Selection doInBackground(final Void... params) {
 
-                        markers.put(markerId, markerDao.getMarkerOverlayItem(c));
-
-                        c.moveToNext();
-                    }
-                    c.close();
-                }
-
-                return markers;
+                markerIndex = context.getApplicationContext().getMarkerIndex();
+                markerIndex.select(source.getBoundingBox(), types, selection);
+                return selection;
             }
 
             @Override
-            protected void onPostExecute(final LinkedHashMap<String, StopOverlayItem> newMarkers) {
+            protected void onPostExecute(final Selection newMarkers) {
 
                 if (refreshTask == this) {
                     LOGGER.debug("refreshing map");
-                    markers.clear();
-                    if (newMarkers != null) {
-                        markers.putAll(newMarkers);
-                    }
+                    index = markerIndex;
+                    spareSelection = markers;
+                    markers = newMarkers;
 
                     source.postInvalidate();
                 } else {
                     LOGGER.debug("NOT refreshing map");
+                    spareSelection = newMarkers;
                 }
             }
         };
@@ -256,10 +262,6 @@ public class StopOverlay extends LazyOverlay implements ILayerSelector {
     @Override
     protected final void draw(final Canvas c, final MapView osmv, final boolean shadow) {
 
-        // if (LOGGER.isDebugEnabled()) {
-        // LOGGER.debug(String.format("draw.start"));
-        // }
-
         // on dessine les items seulement s'il ne s'agit pas du mode shadow
         if (!shadow && markers.size() > 0) {
 
@@ -269,76 +271,55 @@ public class StopOverlay extends LazyOverlay implements ILayerSelector {
             }
 
             final Projection pj = osmv.getProjection();
-            final Point point = new Point();
 
             // first draw markers
-            for (final StopOverlayItem marker : markers.values()) {
-                pj.toPixels(marker.getLocation(), point);
-
-                drawItem(c, marker, point, osmv);
+            for (int i = 0; i < markers.size(); i++) {
+                drawItem(c, markers.get(i), pj);
             }
 
             // then if a marker is selected draw it over the others
             final OverlayItem selectedItem = ((ItinerennesMapView) osmv).getMapBoxController()
                     .getSelectedItem();
             if (null != selectedItem && selectedItem instanceof StopOverlayItem) {
-                if (markers.containsKey(((StopOverlayItem) selectedItem).getId())) {
-                    pj.toPixels(selectedItem.getLocation(), point);
-                    drawItem(c, (StopOverlayItem) selectedItem, point, osmv);
+                final int selected = indexOfDisplayed(selectedItem.getType(),
+                        ((StopOverlayItem) selectedItem).getId());
+                if (selected >= 0) {
+                    drawItem(c, selected, pj);
                 }
             }
         }
-
-        // if (LOGGER.isDebugEnabled()) {
-        // LOGGER.debug(String.format("draw.end"));
-        // }
     }
 
     /**
-     * Draws an item located at the provided screen coordinates to the canvas.
+     * Draws a marker of the index to the canvas.
      * 
      * @param canvas
      *            what the item is drawn upon
-     * @param item
-     *            the item to be drawn
-     * @param curScreenCoords
-     *            the screen coordinates of the item
-     * @param mapView
-     *            the map view
+     * @param position
+     *            the position of the marker in the index
+     * @param pj
+     *            the projection of the map view
      */
-    protected final void drawItem(final Canvas canvas, final StopOverlayItem item,
-            final Point curScreenCoords, final MapView mapView) {
+    private void drawItem(final Canvas canvas, final int position, final Projection pj) {
 
-        if (!markerIcons.containsKey(item.getType())) {
-            // TJHU set the default marker resource identifier
-            final int iconId = ResourceResolver.getDrawableId(context,
-                    String.format("icx_marker_%s", item.getType()), 0);
-            markerIcons.put(item.getType(), context.getResources().getDrawable(iconId));
-        }
+        final Drawable drawable = getMarkerIcon(index.getType(position));
 
-        final Drawable drawable = markerIcons.get(item.getType());
         int[] originalState = null;
-
-        final int[] states = new int[2];
-        int index = 0;
-
-        if (item.isBookmarked()) {
-            states[index++] = R.attr.state_bookmarked;
-        }
-
-        if (index > 0) {
+        if (index.isBookmarked(position)) {
             originalState = drawable.getState();
-            drawable.setState(states);
-
+            drawable.setState(BOOKMARKED_STATE);
         }
 
         final int leftRight = drawable.getIntrinsicWidth() / 2;
         final int topBottom = drawable.getIntrinsicHeight() / 2;
-        final Rect bounds = new Rect(-leftRight, -topBottom, leftRight, topBottom);
+        bounds.set(-leftRight, -topBottom, leftRight, topBottom);
         drawable.setBounds(bounds);
 
         // draw it
-        Overlay.drawAt(canvas, drawable, curScreenCoords.x, curScreenCoords.y, false, 0f);
+        location.setLatitudeE6(index.getLatitudeE6(position));
+        location.setLongitudeE6(index.getLongitudeE6(position));
+        pj.toPixels(location, point);
+        Overlay.drawAt(canvas, drawable, point.x, point.y, false, 0f);
 
         if (originalState != null) {
             // restore original state
@@ -346,6 +327,47 @@ public class StopOverlay extends LazyOverlay implements ILayerSelector {
         }
     }
 
+    /**
+     * Gets the icon for a type of marker.
+     * 
+     * @param type
+     *            the type of the marker
+     * @return the icon to draw for markers of this type
+     */
+    private Drawable getMarkerIcon(final String type) {
+
+        Drawable icon = markerIcons.get(type);
+        if (icon == null) {
+            // TJHU set the default marker resource identifier
+            final int iconId = ResourceResolver.getDrawableId(context,
+                    String.format("icx_marker_%s", type), 0);
+            icon = context.getResources().getDrawable(iconId);
+            icon.setLevel(map.getZoomLevel());
+            markerIcons.put(type, icon);
+        }
+        return icon;
+    }
+
+    /**
+     * Gets the position in the index of a displayed marker.
+     * 
+     * @param type
+     *            the type of the marker
+     * @param id
+     *            the identifier of the marker
+     * @return the position of the marker in the index, or -1 if it isn't displayed
+     */
+    private int indexOfDisplayed(final String type, final String id) {
+
+        for (int i = 0; i < markers.size(); i++) {
+            final int position = markers.get(i);
+            if (index.getId(position).equals(id) && index.getType(position).equals(type)) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Check if an touched point of the screen is over an item of this overlay.
      * 
@@ -353,7 +375,8 @@ public class StopOverlay extends LazyOverlay implements ILayerSelector {
      *            event triggered
      * @param mapView
      *            map view containing the overlay
-     * @return if found, the MarkerOverlayItem under the touch point
+     * @return if found, the MarkerOverlayItem under the touch point, with its current bookmark
+     *         state
      */
     private StopOverlayItem checkItemPresence(final MotionEvent event, final MapView mapView) {
 
@@ -361,15 +384,19 @@ public class StopOverlay extends LazyOverlay implements ILayerSelector {
         final int eventX = (int) event.getX();
         final int eventY = (int) event.getY();
 
-        final Point itemPoint = new Point();
-        for (final StopOverlayItem marker : markers.values()) {
-            final Drawable drawable = markerIcons.get(marker.getType());
+        for (int i = 0; i < markers.size(); i++) {
+            final int position = markers.get(i);
+            final Drawable drawable = getMarkerIcon(index.getType(position));
 
-            pj.toPixels(marker.getLocation(), itemPoint);
+            location.setLatitudeE6(index.getLatitudeE6(position));
+            location.setLongitudeE6(index.getLongitudeE6(position));
+            pj.toPixels(location, point);
 
-            if (drawable.getBounds().contains(eventX - itemPoint.x,
-                    eventY - itemPoint.y)) {
-                return marker;
+            if (drawable.getBounds().contains(eventX - point.x, eventY - point.y)) {
+                final StopOverlayItem item = index.toOverlayItem(position);
+                // the displayed index may have been replaced and no longer follow the bookmarks
+                item.setBookmarked(bookmarks.isStarred(item.getType(), item.getId()));
+                return item;
             }
 
         }
@@ -43,6 +43,7 @@ import fr.dudie.keolis.model.BikeStation;
 
 import fr.itinerennes.ItineRennesApplication;
 import fr.itinerennes.R;
+import fr.itinerennes.business.service.BikeStationRepository;
 
 /**
  * Provider to update the bike widget.
@@ -210,8 +211,8 @@ public class BikeWidgetProvider extends AppWidgetProvider {
         }
 
         /**
-         * Load the list of bike stations from preferences and fetch updated informations from
-         * network.
+         * Gets the bike stations saved in preferences from a snapshot of all the bike stations,
+         * so a single request is sent whatever the count of bike stations.
          * 
          * @param context
          *            the context
@@ -223,25 +224,19 @@ public class BikeWidgetProvider extends AppWidgetProvider {
 
             final List<BikeStation> bikeStations = new ArrayList<BikeStation>();
 
-            // fetch information from keolis for each bike station saved in preferences
-            for (int j = 0; j < stationIds.length; j++) {
+            try {
+                final BikeStationRepository.Snapshot snapshot = ((ItineRennesApplication) context
+                        .getApplicationContext()).getBikeStationRepository().getSnapshot();
 
-                try {
-
-                    // TOBO ici on fait autant de requêtes qu'on a de stations. Voir pour faire
-                    // un appel a getAllBikeStations si nécessaire.
-                    final BikeStation bikeStation = ((ItineRennesApplication) context
-                            .getApplicationContext()).getKeolisClient().getBikeStation(
-                            stationIds[j]);
+                for (int j = 0; j < stationIds.length; j++) {
+                    final BikeStation bikeStation = snapshot.get(stationIds[j]);
                     if (bikeStation != null) {
                         bikeStations.add(bikeStation);
                     }
-
-                } catch (final IOException e) {
-                    LOGGER.error("onUpdate : can't get bike station from keolis. {}",
-                            e.getMessage());
                 }
 
+            } catch (final IOException e) {
+                LOGGER.error("onUpdate : can't get bike stations from keolis. {}", e.getMessage());
             }
 
             return bikeStations;
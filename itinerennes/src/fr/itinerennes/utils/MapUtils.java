@@ -104,7 +104,9 @@ public final class MapUtils {
     }
 
     /**
-     * Calculates the barycentre of all markers in the given Cursor.
+     * Calculates the barycentre of all markers in the given Cursor. The barycentre of the markers
+     * having the same label is precomputed in their stop group, see
+     * {@link fr.itinerennes.database.MarkerDao#getStopGroup(String)}.
      * 
      * @param c
      *            cursor containing markers
@@ -114,12 +116,14 @@ public final class MapUtils {
 
         if (c != null && c.moveToFirst()) {
 
+            final int latIndex = c.getColumnIndex(Columns.MarkersColumns.LATITUDE);
+            final int lonIndex = c.getColumnIndex(Columns.MarkersColumns.LONGITUDE);
             int newLat = 0;
             int newLon = 0;
 
             while (!c.isAfterLast()) {
-                newLat += c.getInt(c.getColumnIndex(Columns.MarkersColumns.LATITUDE));
-                newLon += c.getInt(c.getColumnIndex(Columns.MarkersColumns.LONGITUDE));
+                newLat += c.getInt(latIndex);
+                newLon += c.getInt(lonIndex);
 
                 c.moveToNext();
             }